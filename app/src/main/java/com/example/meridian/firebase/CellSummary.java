@@ -0,0 +1,116 @@
+package com.example.meridian.firebase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-cell summary of the potholes collection, so the map reads one small document
+ * per geohash cell instead of one full document per pothole. Document
+ * {@code potholeCells/<cell>} holds a map field {@link #FIELD_ENTRIES} from pothole
+ * id to an 8-character code: latitude and longitude as offsets from the cell's
+ * corner (1e-6 degree, 3 base-36 digits each), then severity and status.
+ *
+ * Entries are written with a merge on the one key, so concurrent writers never
+ * overwrite each other's potholes and no transaction is needed. Everything a pin
+ * does not show (followers, dates, waveform) stays in the pothole document.
+ *
+ * The app only maintains entries for the writes it makes. Reports older than the
+ * summaries (or the {@link Geohash#FIELD} field) are indexed once with admin
+ * credentials by {@code tools/map-index-backfill/backfill.js}, which repeats this
+ * encoding; a change here must be made there too.
+ */
+public final class CellSummary {
+
+    public static final String COLLECTION = "potholeCells";
+    public static final String FIELD_ENTRIES = "p";
+    /** About 4.9 x 4.9 km. */
+    public static final int PRECISION = 5;
+
+    private static final int OFFSET_DIGITS = 3;
+    private static final double UNIT_DEG = 1e-6;
+    private static final String[] SEVERITIES = {"Unknown", "Negligible", "Minor", "Moderate", "Severe"};
+    private static final String[] STATUSES = {"Unknown", "Reported", "In Progress", "Repaired"};
+
+    /** One decoded pothole. */
+    public static final class Entry {
+        public final String id;
+        public final double lat;
+        public final double lon;
+        public final String severity;
+        public final String status;
+
+        Entry(String id, double lat, double lon, String severity, String status) {
+            this.id = id;
+            this.lat = lat;
+            this.lon = lon;
+            this.severity = severity;
+            this.status = status;
+        }
+    }
+
+    private CellSummary() {}
+
+    public static String cellOf(double lat, double lon) {
+        return Geohash.encode(lat, lon, PRECISION);
+    }
+
+    /** Field path of a pothole's entry, for merges and deletes. */
+    public static String entryPath(String potholeId) {
+        return FIELD_ENTRIES + "." + potholeId;
+    }
+
+    /** Outbox write that adds or replaces a pothole's entry. */
+    public static ReportOutbox.Write entryWrite(String potholeId, double lat, double lon,
+                                                String severity, String status) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(entryPath(potholeId), encode(lat, lon, severity, status));
+        return new ReportOutbox.Write(OutboxEntry.OP_MERGE, COLLECTION, cellOf(lat, lon), fields);
+    }
+
+    public static String encode(double lat, double lon, String severity, String status) {
+        double[] cell = Geohash.bounds(cellOf(lat, lon));
+        StringBuilder sb = new StringBuilder(2 * OFFSET_DIGITS + 2);
+        appendOffset(sb, lat - cell[0]);
+        appendOffset(sb, lon - cell[1]);
+        sb.append(Character.forDigit(indexOf(SEVERITIES, severity), 36));
+        sb.append(Character.forDigit(indexOf(STATUSES, status), 36));
+        return sb.toString();
+    }
+
+    /** Decodes an entry of the summary for {@code cell}; throws on a malformed code. */
+    public static Entry decode(String cell, String potholeId, String code) {
+        if (code == null || code.length() != 2 * OFFSET_DIGITS + 2) {
+            throw new IllegalArgumentException("Bad summary entry for " + potholeId);
+        }
+        double[] b = Geohash.bounds(cell);
+        return new Entry(potholeId,
+                b[0] + parseOffset(code, 0) * UNIT_DEG,
+                b[1] + parseOffset(code, OFFSET_DIGITS) * UNIT_DEG,
+                SEVERITIES[digit(code, 2 * OFFSET_DIGITS, SEVERITIES.length)],
+                STATUSES[digit(code, 2 * OFFSET_DIGITS + 1, STATUSES.length)]);
+    }
+
+    private static void appendOffset(StringBuilder sb, double deg) {
+        long units = Math.max(0, Math.round(deg / UNIT_DEG));
+        String s = Long.toString(units, 36);
+        for (int i = s.length(); i < OFFSET_DIGITS; i++) sb.append('0');
+        sb.append(s);
+    }
+
+    private static long parseOffset(String code, int at) {
+        return Long.parseLong(code.substring(at, at + OFFSET_DIGITS), 36);
+    }
+
+    private static int digit(String code, int at, int limit) {
+        int d = Character.digit(code.charAt(at), 36);
+        if (d < 0 || d >= limit) throw new IllegalArgumentException("Bad summary code " + code);
+        return d;
+    }
+
+    private static int indexOf(String[] values, String v) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i].equalsIgnoreCase(v)) return i;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.meridian.firebase;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Commits outbox entries as one Firestore {@link WriteBatch}. A commit that times
+ * out is still queued in Firestore's local cache and will be sent, so it is kept
+ * and awaited again when the outbox retries the same batch. Called only from the
+ * outbox's flusher thread.
+ */
+public class FirestoreBatchWriter implements ReportOutbox.BatchWriter {
+
+    private static final long COMMIT_TIMEOUT_MS = 30_000L;
+
+    private final FirebaseFirestore db;
+
+    private Task<Void> pending;
+    private long pendingFirstSeq;
+    private int pendingSize;
+
+    public FirestoreBatchWriter(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    @Override
+    public void write(List<OutboxEntry> batch) throws Exception {
+        Task<Void> commit = pending != null && pendingFirstSeq == batch.get(0).seq
+                && pendingSize == batch.size() ? pending : commit(batch);
+        pending = null;
+        try {
+            Tasks.await(commit, COMMIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            pending = commit;
+            pendingFirstSeq = batch.get(0).seq;
+            pendingSize = batch.size();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private Task<Void> commit(List<OutboxEntry> batch) {
+        WriteBatch wb = db.batch();
+        for (OutboxEntry e : batch) {
+            DocumentReference ref = db.collection(e.collection).document(e.documentId);
+            Map<String, Object> data = toFirestore(e.fields);
+            if (e.op == OutboxEntry.OP_UPDATE) wb.update(ref, data);
+            else if (e.op == OutboxEntry.OP_MERGE) wb.set(ref, nest(data), SetOptions.merge());
+            else wb.set(ref, data);
+        }
+        return wb.commit();
+    }
+
+    @Override
+    public boolean isPermanent(Exception e) {
+        if (!(e instanceof FirebaseFirestoreException)) return false;
+        switch (((FirebaseFirestoreException) e).getCode()) {
+            case NOT_FOUND:
+            case INVALID_ARGUMENT:
+            case PERMISSION_DENIED:
+            case FAILED_PRECONDITION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Turns dotted field names into nested maps, which a merge treats key by key. */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> nest(Map<String, Object> data) {
+        Map<String, Object> root = new HashMap<>();
+        for (Map.Entry<String, Object> f : data.entrySet()) {
+            String[] path = f.getKey().split("\\.");
+            Map<String, Object> m = root;
+            for (int i = 0; i < path.length - 1; i++) {
+                m = (Map<String, Object>) m.computeIfAbsent(path[i], k -> new HashMap<String, Object>());
+            }
+            m.put(path[path.length - 1], f.getValue());
+        }
+        return root;
+    }
+
+    private static Map<String, Object> toFirestore(Map<String, Object> fields) {
+        Map<String, Object> data = new HashMap<>(fields.size());
+        for (Map.Entry<String, Object> f : fields.entrySet()) {
+            Object v = f.getValue();
+            if (v instanceof OutboxEntry.GeoValue) {
+                OutboxEntry.GeoValue g = (OutboxEntry.GeoValue) v;
+                v = new GeoPoint(g.lat, g.lon);
+            } else if (v instanceof OutboxEntry.TimeValue) {
+                v = new Timestamp(new Date(((OutboxEntry.TimeValue) v).epochMs));
+            } else if (v instanceof byte[]) {
+                v = Blob.fromBytes((byte[]) v);
+            }
+            data.put(f.getKey(), v);
+        }
+        return data;
+    }
+}
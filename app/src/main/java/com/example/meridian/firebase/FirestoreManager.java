@@ -1,20 +1,34 @@
 package com.example.meridian.firebase;
 
+import android.content.Context;
 import android.util.Log;
 
 import com.example.meridian.items.Pothole;
-import com.google.firebase.Timestamp;
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
 
-import java.util.Date;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FirestoreManager {
     private static final FirebaseFirestore db = FirebaseFirestore.getInstance();
     private static final String USERS_COLLECTION = "users";
+    private static final String POTHOLES_COLLECTION = "potholes";
+    private static final String OUTBOX_FILE = "report-outbox.log";
+
+    private static ReportOutbox outbox;
+    private static final ExecutorService io = Executors.newSingleThreadExecutor();
 
     private FirestoreManager() {}
 
@@ -29,20 +43,72 @@ public class FirestoreManager {
     public static CollectionReference getUsersCollection() { return db.collection(USERS_COLLECTION); }
 
 
-    public static void addPotholeReport(GeoPoint location, String severity, String detectedBy) {
+    /** Queues a manual report; it reaches Firestore through the outbox even if offline now. */
+    public static void addPotholeReport(Context context, GeoPoint location, String severity, String detectedBy) {
+        String id = ReportOutbox.newDocumentId();
         Map<String, Object> pothole = new HashMap<>();
-        pothole.put("location", location);
+        pothole.put("id", id);
+        pothole.put("location", new OutboxEntry.GeoValue(location.getLatitude(), location.getLongitude()));
+        pothole.put(Geohash.FIELD, Geohash.encode(location.getLatitude(), location.getLongitude(),
+                Geohash.STORED_PRECISION));
         pothole.put("severity", severity != null ? severity : "Unknown");
         pothole.put("status", "Reported");
-        pothole.put("timestamp", new Timestamp(new Date()));
+        pothole.put("timestamp", new OutboxEntry.TimeValue(System.currentTimeMillis()));
         pothole.put("detectedBy", detectedBy != null ? detectedBy : "AppUser");
 
-        db.collection("potholes")
-                .add(pothole)
-                .addOnSuccessListener(ref ->
-                        Log.d("FirestoreManager", "Pothole added successfully: " + ref.getId()))
-                .addOnFailureListener(e ->
-                        Log.e("FirestoreManager", "Error adding pothole: ", e));
+        List<ReportOutbox.Write> writes = new ArrayList<>(2);
+        writes.add(new ReportOutbox.Write(OutboxEntry.OP_SET, POTHOLES_COLLECTION, id, pothole));
+        writes.add(CellSummary.entryWrite(id, location.getLatitude(), location.getLongitude(),
+                (String) pothole.get("severity"), "Reported"));
+
+        Context app = context.getApplicationContext();
+        io.execute(() -> {
+            try {
+                getOutbox(app).enqueueAll(writes);
+                Log.d("FirestoreManager", "Pothole queued: " + id);
+            } catch (IOException e) {
+                Log.e("FirestoreManager", "Error queueing pothole: ", e);
+            }
+        });
+    }
+
+    /** Changes a pothole's status and its map summary entry in one batch. */
+    public static Task<Void> updatePotholeStatus(String id, GeoPoint location, String severity, String status) {
+        WriteBatch batch = db.batch();
+        batch.update(db.collection(POTHOLES_COLLECTION).document(id), "status", status);
+        if (location != null) {
+            setSummaryEntry(batch, id, location,
+                    CellSummary.encode(location.getLatitude(), location.getLongitude(), severity, status));
+        }
+        return batch.commit();
+    }
+
+    /** Deletes a pothole and its map summary entry in one batch. */
+    public static Task<Void> deletePothole(String id, GeoPoint location) {
+        WriteBatch batch = db.batch();
+        batch.delete(db.collection(POTHOLES_COLLECTION).document(id));
+        if (location != null) setSummaryEntry(batch, id, location, FieldValue.delete());
+        return batch.commit();
+    }
+
+    private static void setSummaryEntry(WriteBatch batch, String id, GeoPoint location, Object value) {
+        Map<String, Object> entries = new HashMap<>();
+        entries.put(id, value);
+        Map<String, Object> cell = new HashMap<>();
+        cell.put(CellSummary.FIELD_ENTRIES, entries);
+        batch.set(db.collection(CellSummary.COLLECTION)
+                        .document(CellSummary.cellOf(location.getLatitude(), location.getLongitude())),
+                cell, SetOptions.merge());
+    }
+
+    /** Process-wide outbox for pothole writes, started on first use. */
+    public static synchronized ReportOutbox getOutbox(Context context) throws IOException {
+        if (outbox == null) {
+            File file = new File(context.getApplicationContext().getFilesDir(), OUTBOX_FILE);
+            outbox = new ReportOutbox(file, new FirestoreBatchWriter(db));
+            outbox.start();
+        }
+        return outbox;
     }
 
 }
@@ -0,0 +1,157 @@
+package com.example.meridian.firebase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Standard base-32 geohashes. Pothole documents carry one in {@link #FIELD}, so the
+ * documents inside a cell are the string range {@code [cell, cell + "~")} and a
+ * map viewport becomes a handful of indexed range queries.
+ */
+public final class Geohash {
+
+    public static final String FIELD = "geohash";
+    /** Stored on documents; about 5 m, finer than any cell the map queries. */
+    public static final int STORED_PRECISION = 9;
+    public static final int MAX_PRECISION = 12;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private Geohash() {}
+
+    public static String encode(double lat, double lon, int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) throw new IllegalArgumentException("precision");
+        double latLo = -90, latHi = 90, lonLo = -180, lonHi = 180;
+        char[] out = new char[precision];
+        boolean even = true;
+        int bits = 0, ch = 0, n = 0;
+        while (n < precision) {
+            if (even) {
+                double mid = (lonLo + lonHi) / 2;
+                if (lon >= mid) {
+                    ch = (ch << 1) | 1;
+                    lonLo = mid;
+                } else {
+                    ch <<= 1;
+                    lonHi = mid;
+                }
+            } else {
+                double mid = (latLo + latHi) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    latLo = mid;
+                } else {
+                    ch <<= 1;
+                    latHi = mid;
+                }
+            }
+            even = !even;
+            if (++bits == 5) {
+                out[n++] = BASE32.charAt(ch);
+                bits = 0;
+                ch = 0;
+            }
+        }
+        return new String(out);
+    }
+
+    /** {@code {south, west, north, east}} of a cell. */
+    public static double[] bounds(String cell) {
+        double latLo = -90, latHi = 90, lonLo = -180, lonHi = 180;
+        boolean even = true;
+        for (int i = 0; i < cell.length(); i++) {
+            int v = BASE32.indexOf(cell.charAt(i));
+            if (v < 0) throw new IllegalArgumentException("Not a geohash: " + cell);
+            for (int bit = 4; bit >= 0; bit--) {
+                boolean one = ((v >> bit) & 1) != 0;
+                if (even) {
+                    double mid = (lonLo + lonHi) / 2;
+                    if (one) lonLo = mid;
+                    else lonHi = mid;
+                } else {
+                    double mid = (latLo + latHi) / 2;
+                    if (one) latLo = mid;
+                    else latHi = mid;
+                }
+                even = !even;
+            }
+        }
+        return new double[]{latLo, lonLo, latHi, lonHi};
+    }
+
+    /** Exclusive upper bound of the stored hashes that start with {@code prefix}. */
+    public static String rangeEnd(String prefix) {
+        return prefix + "~";
+    }
+
+    public static double cellHeightDeg(int precision) {
+        return 180.0 / (1L << (5 * precision / 2));
+    }
+
+    public static double cellWidthDeg(int precision) {
+        return 360.0 / (1L << ((5 * precision + 1) / 2));
+    }
+
+    /** Number of cells {@link #cover} would return. */
+    public static long countCover(double south, double west, double north, double east, int precision) {
+        if (west > east) {
+            return countCover(south, west, north, 180, precision) + countCover(south, -180, north, east, precision);
+        }
+        double h = cellHeightDeg(precision), w = cellWidthDeg(precision);
+        long rows = row(north, h) - row(south, h) + 1;
+        long cols = col(east, w) - col(west, w) + 1;
+        return rows * cols;
+    }
+
+    /**
+     * Cells of {@code precision} that together cover the box, sorted. A box whose
+     * west edge is east of its east edge crosses the antimeridian.
+     */
+    public static List<String> cover(double south, double west, double north, double east, int precision) {
+        List<String> cells = new ArrayList<>();
+        if (west > east) {
+            addCover(cells, south, west, north, 180, precision);
+            addCover(cells, south, -180, north, east, precision);
+        } else {
+            addCover(cells, south, west, north, east, precision);
+        }
+        Collections.sort(cells);
+        return cells;
+    }
+
+    /** The next cell of the same precision in hash order, or null after the last one. */
+    public static String successor(String cell) {
+        char[] c = cell.toCharArray();
+        for (int i = c.length - 1; i >= 0; i--) {
+            int v = BASE32.indexOf(c[i]);
+            if (v < 0) throw new IllegalArgumentException("Not a geohash: " + cell);
+            if (v < 31) {
+                c[i] = BASE32.charAt(v + 1);
+                return new String(c);
+            }
+            c[i] = BASE32.charAt(0);
+        }
+        return null;
+    }
+
+    private static void addCover(List<String> cells, double south, double west, double north, double east,
+                                 int precision) {
+        double h = cellHeightDeg(precision), w = cellWidthDeg(precision);
+        long r1 = row(north, h), c0 = col(west, w), c1 = col(east, w);
+        for (long r = row(south, h); r <= r1; r++) {
+            double lat = -90 + (r + 0.5) * h;
+            for (long c = c0; c <= c1; c++) cells.add(encode(lat, -180 + (c + 0.5) * w, precision));
+        }
+    }
+
+    private static long row(double lat, double h) {
+        double clamped = Math.max(-90, Math.min(90, lat));
+        return Math.min((long) Math.floor((clamped + 90) / h), Math.round(180 / h) - 1);
+    }
+
+    private static long col(double lon, double w) {
+        double clamped = Math.max(-180, Math.min(180, lon));
+        return Math.min((long) Math.floor((clamped + 180) / w), Math.round(360 / w) - 1);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.meridian.firebase;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One pending document write in the {@link ReportOutbox}. Field values are plain
+ * Java types or the small value classes below, so entries can be persisted
+ * without Firestore on the classpath; {@link FirestoreBatchWriter} converts them.
+ */
+public final class OutboxEntry {
+
+    /** Full document write; idempotent, so safe to retry. */
+    public static final int OP_SET = 1;
+    /** Field update on an existing document. */
+    public static final int OP_UPDATE = 2;
+    /**
+     * Set with merge: creates the document if needed and leaves other fields alone.
+     * Dotted field names address keys of map fields.
+     */
+    public static final int OP_MERGE = 3;
+
+    public static final class GeoValue {
+        public final double lat;
+        public final double lon;
+
+        public GeoValue(double lat, double lon) {
+            this.lat = lat;
+            this.lon = lon;
+        }
+    }
+
+    public static final class TimeValue {
+        public final long epochMs;
+
+        public TimeValue(long epochMs) {
+            this.epochMs = epochMs;
+        }
+    }
+
+    public final long seq;
+    public final long enqueuedAtMs;
+    public final int op;
+    public final String collection;
+    public final String documentId;
+    public final Map<String, Object> fields;
+    /**
+     * Last seq of the {@link ReportOutbox#enqueueAll} call this entry came from; the
+     * entries up to it are committed or dropped together. A lone write ends its own.
+     */
+    public final long groupEndSeq;
+
+    OutboxEntry(long seq, long enqueuedAtMs, int op, String collection, String documentId,
+                Map<String, Object> fields) {
+        this(seq, enqueuedAtMs, op, collection, documentId, fields, seq);
+    }
+
+    OutboxEntry(long seq, long enqueuedAtMs, int op, String collection, String documentId,
+                Map<String, Object> fields, long groupEndSeq) {
+        this.seq = seq;
+        this.enqueuedAtMs = enqueuedAtMs;
+        this.op = op;
+        this.collection = collection;
+        this.documentId = documentId;
+        this.fields = Collections.unmodifiableMap(new LinkedHashMap<>(fields));
+        this.groupEndSeq = groupEndSeq;
+    }
+
+    static void checkValue(String name, Object v) {
+        if (v == null || v instanceof String || v instanceof Boolean || v instanceof Double
+                || v instanceof Float || v instanceof Long || v instanceof Integer
+                || v instanceof byte[]
+                || v instanceof GeoValue || v instanceof TimeValue) {
+            return;
+        }
+        if (v instanceof List) {
+            for (Object o : (List<?>) v) {
+                if (!(o instanceof String)) throw new IllegalArgumentException(name + ": lists hold strings only");
+            }
+            return;
+        }
+        throw new IllegalArgumentException(name + ": unsupported type " + v.getClass().getName());
+    }
+}
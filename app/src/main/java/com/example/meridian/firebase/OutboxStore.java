@@ -0,0 +1,341 @@
+package com.example.meridian.firebase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log behind {@link ReportOutbox}. Every enqueue and every completed
+ * batch is one record ({@code int length, int crc32, payload}), synced before
+ * the call returns. On open the log is replayed; a torn record at the end (crash
+ * mid-write) is cut off. When most records are completed the log is rewritten
+ * with just the pending entries.
+ *
+ * Not thread-safe; {@link ReportOutbox} serialises access.
+ */
+final class OutboxStore {
+
+    private static final int KIND_ENQUEUE = 1;
+    private static final int KIND_DONE = 2;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_LONG = 2;
+    private static final int TAG_DOUBLE = 3;
+    private static final int TAG_BOOL = 4;
+    private static final int TAG_GEO = 5;
+    private static final int TAG_TIME = 6;
+    // 7 was a server-side increment, which a replayed batch would apply twice.
+    private static final int TAG_STRING_LIST = 8;
+    private static final int TAG_BYTES = 9;
+
+    private static final int MAX_RECORD = 1 << 20;
+    private static final int COMPACT_AFTER_DONE = 512;
+
+    private final File file;
+    private final Deque<OutboxEntry> pending = new ArrayDeque<>();
+    private FileOutputStream out;
+    private long nextSeq = 1;
+    private int doneSinceCompact;
+    private int compactFailures;
+    private long truncatedBytes;
+
+    OutboxStore(File file) throws IOException {
+        this.file = file;
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        replay();
+        out = new FileOutputStream(file, true);
+    }
+
+    /** Pending entries, oldest first. The caller must not modify it. */
+    Deque<OutboxEntry> pending() {
+        return pending;
+    }
+
+    OutboxEntry append(long nowMs, int op, String collection, String documentId,
+                       Map<String, Object> fields) throws IOException {
+        OutboxEntry e = new OutboxEntry(nextSeq, nowMs, op, collection, documentId, fields);
+        writeRecord(encodeEnqueue(e));
+        nextSeq++;
+        pending.addLast(e);
+        return e;
+    }
+
+    /** Appends several entries with a single sync. */
+    void appendAll(List<OutboxEntry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (OutboxEntry e : entries) bytes.write(frame(encodeEnqueue(e)));
+        out.write(bytes.toByteArray());
+        out.getFD().sync();
+        for (OutboxEntry e : entries) {
+            nextSeq = Math.max(nextSeq, e.seq + 1);
+            pending.addLast(e);
+        }
+    }
+
+    long nextSeq() {
+        return nextSeq;
+    }
+
+    /**
+     * Marks the oldest {@code count} pending entries as written. Throws only if
+     * that could not be logged; a failed compaction leaves the log as it was.
+     */
+    void completeOldest(int count) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream d = new DataOutputStream(bytes);
+        d.writeByte(KIND_DONE);
+        d.writeInt(count);
+        Iterator<OutboxEntry> it = pending.iterator();
+        for (int i = 0; i < count; i++) d.writeLong(it.next().seq);
+        writeRecord(bytes.toByteArray());
+        for (int i = 0; i < count; i++) pending.removeFirst();
+
+        doneSinceCompact += count;
+        // After a failure, wait for as many completions again before the next try.
+        if (doneSinceCompact >= COMPACT_AFTER_DONE * (compactFailures + 1)
+                && doneSinceCompact > pending.size() * 2) {
+            try {
+                compact();
+                compactFailures = 0;
+            } catch (IOException e) {
+                compactFailures++;
+            }
+        }
+    }
+
+    int getCompactFailures() {
+        return compactFailures;
+    }
+
+    long getTruncatedBytes() {
+        return truncatedBytes;
+    }
+
+    void close() {
+        try {
+            out.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void writeRecord(byte[] payload) throws IOException {
+        out.write(frame(payload));
+        out.getFD().sync();
+    }
+
+    private static byte[] frame(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 8);
+        DataOutputStream d = new DataOutputStream(bytes);
+        d.writeInt(payload.length);
+        d.writeInt((int) crc.getValue());
+        d.write(payload);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Rewrites the log with just the pending entries. {@link #out} keeps appending
+     * to the old log until the new one has replaced it, and the stream that wrote
+     * the new one takes over after the rename, so no step can leave the store
+     * without a working log.
+     */
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream t = new FileOutputStream(tmp, false);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (OutboxEntry e : pending) bytes.write(frame(encodeEnqueue(e)));
+            t.write(bytes.toByteArray());
+            t.getFD().sync();
+            if (!tmp.renameTo(file)) throw new IOException("Cannot replace " + file);
+        } catch (IOException e) {
+            try {
+                t.close();
+            } catch (IOException ignored) {}
+            tmp.delete();
+            throw e;
+        }
+        FileOutputStream old = out;
+        out = t;
+        doneSinceCompact = 0;
+        try {
+            old.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void replay() throws IOException {
+        if (!file.exists()) return;
+        Map<Long, OutboxEntry> bySeq = new LinkedHashMap<>();
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            while (true) {
+                int len;
+                try {
+                    len = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (len <= 0 || len > MAX_RECORD) break;
+                int crc = in.readInt();
+                byte[] payload = new byte[len];
+                try {
+                    in.readFully(payload);
+                } catch (EOFException torn) {
+                    break;
+                }
+                CRC32 c = new CRC32();
+                c.update(payload, 0, len);
+                if ((int) c.getValue() != crc) break;
+
+                apply(payload, bySeq);
+                good += 8 + len;
+            }
+        } catch (EOFException torn) {
+            // Length or CRC cut off; everything before it is intact.
+        }
+
+        long size = file.length();
+        if (good < size) {
+            truncatedBytes = size - good;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(good);
+            }
+        }
+        pending.addAll(bySeq.values());
+    }
+
+    private void apply(byte[] payload, Map<Long, OutboxEntry> bySeq) throws IOException {
+        DataInputStream d = new DataInputStream(new ByteArrayInputStream(payload));
+        int kind = d.readByte();
+        if (kind == KIND_ENQUEUE) {
+            OutboxEntry e = decodeEnqueue(d);
+            bySeq.put(e.seq, e);
+            nextSeq = Math.max(nextSeq, e.seq + 1);
+        } else if (kind == KIND_DONE) {
+            int n = d.readInt();
+            Set<Long> done = new HashSet<>();
+            for (int i = 0; i < n; i++) done.add(d.readLong());
+            bySeq.keySet().removeAll(done);
+        }
+    }
+
+    private static byte[] encodeEnqueue(OutboxEntry e) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream d = new DataOutputStream(bytes);
+        d.writeByte(KIND_ENQUEUE);
+        d.writeLong(e.seq);
+        d.writeLong(e.enqueuedAtMs);
+        d.writeByte(e.op);
+        d.writeUTF(e.collection);
+        d.writeUTF(e.documentId);
+        d.writeShort(e.fields.size());
+        for (Map.Entry<String, Object> f : e.fields.entrySet()) {
+            d.writeUTF(f.getKey());
+            writeValue(d, f.getValue());
+        }
+        d.writeLong(e.groupEndSeq);
+        return bytes.toByteArray();
+    }
+
+    private static OutboxEntry decodeEnqueue(DataInputStream d) throws IOException {
+        long seq = d.readLong();
+        long at = d.readLong();
+        int op = d.readByte();
+        String collection = d.readUTF();
+        String id = d.readUTF();
+        int n = d.readUnsignedShort();
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            String name = d.readUTF();
+            fields.put(name, readValue(d));
+        }
+        // Records from before groups were logged end with the fields.
+        long groupEnd = d.available() >= 8 ? d.readLong() : seq;
+        return new OutboxEntry(seq, at, op, collection, id, fields, groupEnd);
+    }
+
+    private static void writeValue(DataOutputStream d, Object v) throws IOException {
+        if (v == null) {
+            d.writeByte(TAG_NULL);
+        } else if (v instanceof String) {
+            d.writeByte(TAG_STRING);
+            d.writeUTF((String) v);
+        } else if (v instanceof Long || v instanceof Integer) {
+            d.writeByte(TAG_LONG);
+            d.writeLong(((Number) v).longValue());
+        } else if (v instanceof Double || v instanceof Float) {
+            d.writeByte(TAG_DOUBLE);
+            d.writeDouble(((Number) v).doubleValue());
+        } else if (v instanceof Boolean) {
+            d.writeByte(TAG_BOOL);
+            d.writeBoolean((Boolean) v);
+        } else if (v instanceof OutboxEntry.GeoValue) {
+            d.writeByte(TAG_GEO);
+            d.writeDouble(((OutboxEntry.GeoValue) v).lat);
+            d.writeDouble(((OutboxEntry.GeoValue) v).lon);
+        } else if (v instanceof OutboxEntry.TimeValue) {
+            d.writeByte(TAG_TIME);
+            d.writeLong(((OutboxEntry.TimeValue) v).epochMs);
+        } else if (v instanceof byte[]) {
+            byte[] b = (byte[]) v;
+            d.writeByte(TAG_BYTES);
+            d.writeInt(b.length);
+            d.write(b);
+        } else if (v instanceof List) {
+            List<?> list = (List<?>) v;
+            d.writeByte(TAG_STRING_LIST);
+            d.writeShort(list.size());
+            for (Object o : list) d.writeUTF((String) o);
+        } else {
+            throw new IOException("Unsupported value " + v.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream d) throws IOException {
+        int tag = d.readByte();
+        switch (tag) {
+            case TAG_NULL: return null;
+            case TAG_STRING: return d.readUTF();
+            case TAG_LONG: return d.readLong();
+            case TAG_DOUBLE: return d.readDouble();
+            case TAG_BOOL: return d.readBoolean();
+            case TAG_GEO: return new OutboxEntry.GeoValue(d.readDouble(), d.readDouble());
+            case TAG_TIME: return new OutboxEntry.TimeValue(d.readLong());
+            case TAG_STRING_LIST: {
+                int n = d.readUnsignedShort();
+                List<String> list = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) list.add(d.readUTF());
+                return list;
+            }
+            case TAG_BYTES: {
+                int n = d.readInt();
+                if (n < 0 || n > MAX_RECORD) throw new IOException("Bad blob length " + n);
+                byte[] b = new byte[n];
+                d.readFully(b);
+                return b;
+            }
+            default: throw new IOException("Unknown value tag " + tag);
+        }
+    }
+}
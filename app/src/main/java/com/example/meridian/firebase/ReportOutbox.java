@@ -0,0 +1,405 @@
+package com.example.meridian.firebase;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Durable queue for pothole writes. {@link #enqueue} persists the write before
+ * returning; a single flusher thread then commits pending writes in order, in
+ * batches of up to {@link #MAX_BATCH}, retrying with jittered exponential backoff.
+ * A batch must succeed before anything behind it is attempted.
+ *
+ * Writes may be held back until a given time, so a drive's detections go out in a
+ * few large batches ({@link #enqueueAll(List, long)}). A write that comes due takes
+ * everything queued before it along. Holds live in memory only: after a restart
+ * every pending write is due, which costs batching, never data.
+ *
+ * Document IDs are generated on the client so a new report is one {@code set},
+ * which makes a retried batch harmless. The writes of one {@link #enqueueAll} call
+ * always share a batch. A batch rejected outright (say, an update to a deleted
+ * document) is retried one such group at a time and only the offending group is
+ * dropped, so a pothole update never lands without its summary entry or the
+ * other way round.
+ */
+public final class ReportOutbox {
+
+    /**
+     * Commits a batch; throws if nothing was written. A {@link TimeoutException}
+     * means the commit may still land: the next call gets the same batch, and the
+     * writer should wait on that commit rather than send it again.
+     */
+    public interface BatchWriter {
+        void write(List<OutboxEntry> batch) throws Exception;
+        /** True if retrying {@code e} can never succeed. */
+        boolean isPermanent(Exception e);
+    }
+
+    public interface Listener {
+        void onFlushed(List<OutboxEntry> batch);
+        void onDropped(OutboxEntry entry, Exception cause);
+    }
+
+    /** A write to queue with {@link #enqueueAll}. */
+    public static final class Write {
+        final int op;
+        final String collection;
+        final String documentId;
+        final Map<String, Object> fields;
+
+        public Write(int op, String collection, String documentId, Map<String, Object> fields) {
+            this.op = op;
+            this.collection = collection;
+            this.documentId = documentId;
+            this.fields = fields;
+        }
+    }
+
+    /** Firestore allows 500 writes per batch; smaller batches fail faster on bad links. */
+    public static final int MAX_BATCH = 100;
+    public static final long BASE_RETRY_MS = 1_000L;
+    public static final long MAX_RETRY_MS = 60_000L;
+
+    private static final String ID_CHARS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    private static final int ID_LENGTH = 20;
+    private static final SecureRandom ID_RANDOM = new SecureRandom();
+
+    private final OutboxStore store;
+    private final BatchWriter writer;
+    private final Random jitter = new Random();
+    private final Object lock = new Object();
+    private volatile Listener listener;
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    /** Entries up to this seq are due; later ones wait for a hold to run out. */
+    private long releasedThroughSeq;
+    /** Last seq of each held group to the time it comes due, in seq order. */
+    private final Map<Long, Long> holds = new LinkedHashMap<>();
+
+    private long enqueued;
+    private long written;
+    private long dropped;
+    private long batches;
+    private long failures;
+    private int consecutiveFailures;
+    private long lastFlushLatencyMs = -1;
+    private long maxFlushLatencyMs;
+    private long totalFlushLatencyMs;
+
+    public ReportOutbox(File file, BatchWriter writer) throws IOException {
+        this.store = new OutboxStore(file);
+        this.writer = writer;
+        this.releasedThroughSeq = store.nextSeq() - 1;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Same shape as Firestore's auto IDs. */
+    public static String newDocumentId() {
+        char[] c = new char[ID_LENGTH];
+        for (int i = 0; i < ID_LENGTH; i++) c[i] = ID_CHARS.charAt(ID_RANDOM.nextInt(ID_CHARS.length()));
+        return new String(c);
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (running) return;
+            running = true;
+            flusher = new Thread(this::runFlusher, "Outbox-Flusher");
+            flusher.start();
+        }
+    }
+
+    public void stop() {
+        Thread t;
+        synchronized (lock) {
+            if (!running) return;
+            running = false;
+            t = flusher;
+            lock.notifyAll();
+        }
+        t.interrupt();
+    }
+
+    /** Persists a write and wakes the flusher. Does disk I/O; keep off the main thread. */
+    public OutboxEntry enqueue(int op, String collection, String documentId,
+                               Map<String, Object> fields) throws IOException {
+        for (Map.Entry<String, Object> f : fields.entrySet()) OutboxEntry.checkValue(f.getKey(), f.getValue());
+        synchronized (lock) {
+            OutboxEntry e = store.append(System.currentTimeMillis(), op, collection, documentId, fields);
+            enqueued++;
+            release(e.seq);
+            lock.notifyAll();
+            return e;
+        }
+    }
+
+    /**
+     * Persists several writes with one disk sync and wakes the flusher once. They
+     * go out in the same batch and are committed or dropped together; at most
+     * {@link #MAX_BATCH} of them.
+     */
+    public void enqueueAll(List<Write> writes) throws IOException {
+        enqueueAll(writes, 0);
+    }
+
+    /**
+     * Like {@link #enqueueAll(List)}, but the writes are not sent before
+     * {@code holdUntilMs} unless something queued after them comes due first, or
+     * {@link #releaseHeld} is called. {@code Long.MAX_VALUE} holds them until then.
+     */
+    public void enqueueAll(List<Write> writes, long holdUntilMs) throws IOException {
+        if (writes.isEmpty()) return;
+        if (writes.size() > MAX_BATCH) throw new IllegalArgumentException(writes.size() + " writes in one group");
+        for (Write w : writes) {
+            for (Map.Entry<String, Object> f : w.fields.entrySet()) OutboxEntry.checkValue(f.getKey(), f.getValue());
+        }
+        synchronized (lock) {
+            long now = System.currentTimeMillis();
+            long seq = store.nextSeq();
+            long last = seq + writes.size() - 1;
+            List<OutboxEntry> entries = new ArrayList<>(writes.size());
+            for (Write w : writes) {
+                entries.add(new OutboxEntry(seq++, now, w.op, w.collection, w.documentId, w.fields, last));
+            }
+            store.appendAll(entries);
+            enqueued += entries.size();
+            if (holdUntilMs <= now) release(last);
+            else holds.put(last, holdUntilMs);
+            lock.notifyAll();
+        }
+    }
+
+    /** Makes every held write due now. */
+    public void releaseHeld() {
+        synchronized (lock) {
+            release(store.nextSeq() - 1);
+            lock.notifyAll();
+        }
+    }
+
+    /** Retries now instead of waiting out the backoff. */
+    public void flushNow() {
+        synchronized (lock) {
+            consecutiveFailures = 0;
+            lock.notifyAll();
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return store.pending().size();
+        }
+    }
+
+    /** Pending writes still waiting for a hold to run out. */
+    public int getHeld() {
+        synchronized (lock) {
+            int n = 0;
+            Iterator<OutboxEntry> it = store.pending().descendingIterator();
+            while (it.hasNext() && it.next().seq > releasedThroughSeq) n++;
+            return n;
+        }
+    }
+
+    /** Age of the oldest unwritten report, or 0 when the queue is empty. */
+    public long getOldestPendingAgeMs() {
+        synchronized (lock) {
+            OutboxEntry e = store.pending().peekFirst();
+            return e == null ? 0 : System.currentTimeMillis() - e.enqueuedAtMs;
+        }
+    }
+
+    public long getEnqueued() { synchronized (lock) { return enqueued; } }
+
+    public long getWritten() { synchronized (lock) { return written; } }
+
+    public long getDropped() { synchronized (lock) { return dropped; } }
+
+    public long getBatches() { synchronized (lock) { return batches; } }
+
+    public long getFailures() { synchronized (lock) { return failures; } }
+
+    public long getLastFlushLatencyMs() { synchronized (lock) { return lastFlushLatencyMs; } }
+
+    public long getMaxFlushLatencyMs() { synchronized (lock) { return maxFlushLatencyMs; } }
+
+    public double getMeanFlushLatencyMs() {
+        synchronized (lock) {
+            return batches == 0 ? 0 : totalFlushLatencyMs / (double) batches;
+        }
+    }
+
+    long retryDelayMs(int failures) {
+        long cap = BASE_RETRY_MS << Math.min(failures - 1, 16);
+        if (cap > MAX_RETRY_MS || cap <= 0) cap = MAX_RETRY_MS;
+        long half = cap / 2;
+        return half + (long) (jitter.nextDouble() * (cap - half));
+    }
+
+    private void runFlusher() {
+        // After a batch is rejected outright, its writes are retried one group at a
+        // time; this many are left to go that way.
+        int retryLeft = 0;
+        // A batch whose commit timed out; offered again as is until it resolves.
+        List<OutboxEntry> inFlight = null;
+        while (running) {
+            List<OutboxEntry> batch;
+            synchronized (lock) {
+                while (running) {
+                    long now = System.currentTimeMillis();
+                    long nextHoldMs = expireHolds(now);
+                    OutboxEntry first = store.pending().peekFirst();
+                    if (first != null && first.seq <= releasedThroughSeq) break;
+                    if (first == null) retryLeft = 0;
+                    try {
+                        if (nextHoldMs == Long.MAX_VALUE) lock.wait();
+                        else lock.wait(nextHoldMs - now);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) return;
+                batch = inFlight != null ? inFlight : head(retryLeft > 0);
+            }
+
+            long t0 = System.nanoTime();
+            Exception error = null;
+            try {
+                writer.write(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                error = e;
+            }
+            long latencyMs = (System.nanoTime() - t0) / 1_000_000L;
+            inFlight = error instanceof TimeoutException ? batch : null;
+
+            if (error == null) {
+                if (!complete(batch, latencyMs)) return;
+                retryLeft = Math.max(0, retryLeft - batch.size());
+                Listener l = listener;
+                if (l != null) l.onFlushed(batch);
+                continue;
+            }
+
+            if (writer.isPermanent(error)) {
+                if (batch.get(0).groupEndSeq < batch.get(batch.size() - 1).seq) {
+                    retryLeft = batch.size();
+                    continue;
+                }
+                if (!drop(batch.size())) return;
+                retryLeft = Math.max(0, retryLeft - batch.size());
+                Listener l = listener;
+                if (l != null) for (OutboxEntry e : batch) l.onDropped(e, error);
+                continue;
+            }
+
+            long delay;
+            synchronized (lock) {
+                failures++;
+                consecutiveFailures++;
+                delay = retryDelayMs(consecutiveFailures);
+            }
+            if (!backoff(delay)) return;
+        }
+    }
+
+    /** Due entries from the head of the queue, in whole groups. */
+    private List<OutboxEntry> head(boolean oneGroup) {
+        List<OutboxEntry> batch = new ArrayList<>(Math.min(MAX_BATCH, store.pending().size()));
+        long groupEnd = 0;
+        for (OutboxEntry e : store.pending()) {
+            if (e.seq > releasedThroughSeq) break;
+            if (e.seq > groupEnd) {
+                if (!batch.isEmpty() && (oneGroup || batch.size() + e.groupEndSeq - e.seq + 1 > MAX_BATCH)) break;
+                groupEnd = e.groupEndSeq;
+            }
+            batch.add(e);
+        }
+        return batch;
+    }
+
+    /** Everything up to {@code seq} is due; drops the holds it covers. */
+    private void release(long seq) {
+        if (seq <= releasedThroughSeq) return;
+        releasedThroughSeq = seq;
+        Iterator<Long> it = holds.keySet().iterator();
+        while (it.hasNext() && it.next() <= seq) it.remove();
+    }
+
+    /** Releases holds that ran out; returns when the next one does, or {@code Long.MAX_VALUE}. */
+    private long expireHolds(long nowMs) {
+        long through = releasedThroughSeq;
+        for (Map.Entry<Long, Long> h : holds.entrySet()) {
+            if (h.getValue() <= nowMs) through = Math.max(through, h.getKey());
+        }
+        release(through);
+        long next = Long.MAX_VALUE;
+        for (long until : holds.values()) next = Math.min(next, until);
+        return next;
+    }
+
+    private boolean complete(List<OutboxEntry> batch, long latencyMs) {
+        synchronized (lock) {
+            try {
+                store.completeOldest(batch.size());
+            } catch (IOException e) {
+                // The writes landed but the log could not record it; they will be
+                // sent again after a restart, which a set tolerates.
+                running = false;
+                return false;
+            }
+            written += batch.size();
+            batches++;
+            consecutiveFailures = 0;
+            lastFlushLatencyMs = latencyMs;
+            maxFlushLatencyMs = Math.max(maxFlushLatencyMs, latencyMs);
+            totalFlushLatencyMs += latencyMs;
+            return true;
+        }
+    }
+
+    private boolean drop(int count) {
+        synchronized (lock) {
+            try {
+                store.completeOldest(count);
+            } catch (IOException e) {
+                running = false;
+                return false;
+            }
+            dropped += count;
+            return true;
+        }
+    }
+
+    /** Sleeps for the backoff unless stopped or told to flush now. */
+    private boolean backoff(long delayMs) {
+        long until = System.currentTimeMillis() + delayMs;
+        synchronized (lock) {
+            int failuresAtStart = consecutiveFailures;
+            long left;
+            while (running && consecutiveFailures == failuresAtStart
+                    && (left = until - System.currentTimeMillis()) > 0) {
+                try {
+                    lock.wait(left);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return running;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.example.meridian.items;
 
 import static java.lang.Math.abs;
 
+import com.example.meridian.firebase.Geohash;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.GeoPoint;
 
@@ -17,6 +18,7 @@ public class Pothole {
     private String detectedBy;
     private Timestamp timestamp;
     private GeoPoint location;
+    private String geohash;
     private List<String> followers;
 
 
@@ -29,27 +31,39 @@ public class Pothole {
         this.status = status;
         this.detectedBy = detectedBy;
         this.timestamp = timestamp;
-        this.location = location;
+        setLocation(location);
     }
 
     public Pothole(double lat, double lon, double az) {
         this.id = null;
 
+        this.severity = severityFor(az);
+
+        this.status = "Reported";
+        this.detectedBy = "Hardware Device";
+        this.timestamp = Timestamp.now();
+        setLocation(new GeoPoint(lat, lon));
+    }
+
+    public static String severityFor(double az) {
         double a = Math.abs(az);
         if (a >= 4) {
-            this.severity = "Severe";
+            return "Severe";
         } else if (a < 4 && a >= 2) {
-            this.severity = "Moderate";
+            return "Moderate";
         } else if (a < 2 && a >= 1.25) {
-            this.severity = "Minor";
+            return "Minor";
         } else {
-            this.severity = "Negligible";
+            return "Negligible";
         }
+    }
 
-        this.status = "Reported";
-        this.detectedBy = "Hardware Device";
-        this.timestamp = Timestamp.now();
-        this.location = new GeoPoint(lat, lon);
+    /** Orders severities for comparison; unknown values rank lowest. */
+    public static int severityRank(String severity) {
+        if ("Severe".equals(severity)) return 3;
+        if ("Moderate".equals(severity)) return 2;
+        if ("Minor".equals(severity)) return 1;
+        return 0;
     }
 
     public String getId() {
@@ -98,6 +112,18 @@ public class Pothole {
 
     public void setLocation(GeoPoint location) {
         this.location = location;
+        this.geohash = location != null
+                ? Geohash.encode(location.getLatitude(), location.getLongitude(), Geohash.STORED_PRECISION)
+                : null;
+    }
+
+    /** Written with the document so the map can query by area; see {@link Geohash}. */
+    public String getGeohash() {
+        return geohash;
+    }
+
+    public void setGeohash(String geohash) {
+        this.geohash = geohash;
     }
 
     public List<String> getFollowers() {
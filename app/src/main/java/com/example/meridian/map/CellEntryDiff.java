@@ -0,0 +1,75 @@
+package com.example.meridian.map;
+
+import com.example.meridian.firebase.CellSummary;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last seen entries of every loaded cell summary, so a snapshot of a
+ * changed cell turns into per-pothole adds, changes and removals. A cell with
+ * thousands of potholes where one changed status yields one callback.
+ */
+public final class CellEntryDiff {
+
+    public interface Callback {
+        void onAdded(CellSummary.Entry entry);
+        void onChanged(CellSummary.Entry entry);
+        void onRemoved(String potholeId);
+    }
+
+    private final Map<String, Map<String, String>> cells = new HashMap<>();
+    private long malformed;
+
+    /**
+     * Applies the current entries of {@code cell}; null when the cell document is
+     * gone. An entry that does not decode is counted and its previous value kept.
+     */
+    public void apply(String cell, Map<?, ?> entries, Callback callback) {
+        Map<String, String> previous = cells.remove(cell);
+        if (previous == null) previous = new HashMap<>();
+        Map<String, String> current = new HashMap<>();
+
+        if (entries != null) {
+            for (Map.Entry<?, ?> e : entries.entrySet()) {
+                if (!(e.getValue() instanceof String)) continue;
+                String id = String.valueOf(e.getKey());
+                String code = (String) e.getValue();
+                String before = previous.remove(id);
+                if (code.equals(before)) {
+                    current.put(id, code);
+                    continue;
+                }
+                CellSummary.Entry decoded;
+                try {
+                    decoded = CellSummary.decode(cell, id, code);
+                } catch (IllegalArgumentException bad) {
+                    // Keep showing what was there before.
+                    malformed++;
+                    if (before != null) current.put(id, before);
+                    continue;
+                }
+                current.put(id, code);
+                if (before == null) callback.onAdded(decoded);
+                else callback.onChanged(decoded);
+            }
+        }
+
+        for (String id : previous.keySet()) callback.onRemoved(id);
+        if (!current.isEmpty()) cells.put(cell, current);
+    }
+
+    public int size() {
+        int n = 0;
+        for (Map<String, String> c : cells.values()) n += c.size();
+        return n;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    public void clear() {
+        cells.clear();
+    }
+}
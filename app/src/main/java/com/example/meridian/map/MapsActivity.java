@@ -5,6 +5,8 @@ import android.app.DatePickerDialog;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.Color;
+import android.graphics.drawable.ShapeDrawable;
+import android.graphics.drawable.shapes.OvalShape;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
@@ -20,14 +22,18 @@ import androidx.fragment.app.FragmentActivity;
 
 import com.example.meridian.R;
 import com.example.meridian.databinding.ActivityMapsBinding;
+import com.example.meridian.firebase.CellSummary;
+import com.example.meridian.firebase.FirestoreManager;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
+import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.MapStyleOptions;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
@@ -39,14 +45,25 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.maps.android.SphericalUtil;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.ClusterItem;
+import com.google.maps.android.clustering.ClusterManager;
+import com.google.maps.android.clustering.algo.Algorithm;
+import com.google.maps.android.clustering.algo.NonHierarchicalDistanceBasedAlgorithm;
+import com.google.maps.android.clustering.algo.PreCachingAlgorithmDecorator;
+import com.google.maps.android.clustering.view.DefaultClusterRenderer;
 import com.google.maps.android.heatmaps.HeatmapTileProvider;
 import com.google.maps.android.heatmaps.WeightedLatLng;
+import com.google.maps.android.ui.IconGenerator;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -54,12 +71,17 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import okhttp3.*;
 
 public class MapsActivity extends FragmentActivity implements OnMapReadyCallback {
 
     private static final String TAG = "MapsActivity";
 
+    /** Snapshots are decoded here; the main thread only gets batches ready to apply. */
+    private static final ExecutorService decoder = Executors.newSingleThreadExecutor();
+
     private GoogleMap mMap;
     private ActivityMapsBinding binding;
     private FirebaseFirestore db;
@@ -74,10 +96,23 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
 
     private boolean isAdmin = false;
 
-    private final List<Marker> potholeMarkers = new ArrayList<>();
+    private final Map<String, PotholeData> potholesById = new HashMap<>();
+    private ClusterManager<PotholeData> clusterManager;
+    private boolean pinsVisible;
+    private final ViewportCells viewportCells =
+            new ViewportCells(ViewportCells.MIN_PRECISION, CellSummary.PRECISION);
+    /** Only touched on {@link #decoder}. */
+    private final CellEntryDiff cellEntries = new CellEntryDiff();
+    private final List<ListenerRegistration> cellListeners = new ArrayList<>();
+    private long mapReadyAtMs;
+    private boolean firstPinsLogged;
+    private volatile long summaryDocumentsRead;
+    private int pinBatches;
+    private long pinDecodeNanos;
+    private long pinMainNanos;
     private HeatmapTileProvider heatmapProvider;
     private TileOverlay heatmapOverlay;
-    private final List<WeightedLatLng> heatmapPoints = new ArrayList<>();
+    private final Map<String, WeightedLatLng> heatmapById = new HashMap<>();
     private final List<Polyline> closurePolylines = new ArrayList<>();
     private final List<Marker> closureMarkers = new ArrayList<>();
 
@@ -88,18 +123,204 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     private final List<LatLng> tempClosurePoints = new ArrayList<>();
 
     private static final float MAX_SNAP_DISTANCE = 25f;
+    /** Zoom from which pins replace the heatmap. */
+    private static final float PINS_MIN_ZOOM = 13f;
+
+    private static final int SEVERITY_RANK_MINOR = 0;
+    private static final int SEVERITY_RANK_MODERATE = 1;
+    private static final int SEVERITY_RANK_SEVERE = 2;
 
 
-    private static class PotholeData {
+    private static class PotholeData implements ClusterItem {
         String id, status, severity;
         GeoPoint location;
+        /** {@link #location} as the clustering code asks for it, many times per pass. */
+        private LatLng position;
         Timestamp timestamp;
         List<String> followers;
+        /** Built from a cell summary; the rest comes from the document on tap. */
+        boolean summaryOnly;
 
         PotholeData(String i, String st, String sev, GeoPoint loc, Timestamp ts, List<String> f) {
-            id = i; status = st; severity = sev; location = loc; timestamp = ts;
+            id = i; status = st; severity = sev; timestamp = ts;
+            setLocation(loc);
+            followers = (f != null) ? f : new ArrayList<>();
+        }
+
+        void setLocation(GeoPoint loc) {
+            location = loc;
+            position = new LatLng(loc.getLatitude(), loc.getLongitude());
+        }
+
+        void fill(DocumentSnapshot doc) {
+            status = doc.getString("status");
+            severity = doc.getString("severity");
+            timestamp = doc.getTimestamp("timestamp");
+            List<String> f = (List<String>) doc.get("followers");
             followers = (f != null) ? f : new ArrayList<>();
+            summaryOnly = false;
+        }
+
+        @Override
+        public LatLng getPosition() {
+            return position;
+        }
+
+        @Override
+        public String getTitle() {
+            return null;
+        }
+
+        @Override
+        public String getSnippet() {
+            return null;
+        }
+
+        @Override
+        public Float getZIndex() {
+            return null;
+        }
+    }
+
+    /**
+     * Pins take the colour of their severity; a cluster takes the colour of the
+     * worst pothole in it. Cluster icons are cached per colour and size bucket.
+     */
+    private class PotholeRenderer extends DefaultClusterRenderer<PotholeData> {
+        private final IconGenerator iconGenerator = new IconGenerator(MapsActivity.this);
+        private final ShapeDrawable circle = new ShapeDrawable(new OvalShape());
+        private final Map<Integer, BitmapDescriptor> clusterIcons = new HashMap<>();
+
+        PotholeRenderer(GoogleMap map, ClusterManager<PotholeData> manager) {
+            super(MapsActivity.this, map, manager);
+            int padding = (int) (12 * getResources().getDisplayMetrics().density);
+            iconGenerator.setBackground(circle);
+            iconGenerator.setContentPadding(padding, padding, padding, padding);
+            iconGenerator.setTextAppearance(com.google.maps.android.R.style.amu_ClusterIcon_TextAppearance);
+        }
+
+        @Override
+        protected void onBeforeClusterItemRendered(PotholeData item, MarkerOptions markerOptions) {
+            markerOptions.icon(BitmapDescriptorFactory.defaultMarker(hueForSeverity(item.severity)))
+                    .visible(pinsVisible);
+        }
+
+        @Override
+        protected void onClusterItemUpdated(PotholeData item, Marker marker) {
+            super.onClusterItemUpdated(item, marker);
+            marker.setIcon(BitmapDescriptorFactory.defaultMarker(hueForSeverity(item.severity)));
+        }
+
+        @Override
+        protected void onBeforeClusterRendered(Cluster<PotholeData> cluster, MarkerOptions markerOptions) {
+            markerOptions.icon(getDescriptorForCluster(cluster)).visible(pinsVisible);
+        }
+
+        @Override
+        protected BitmapDescriptor getDescriptorForCluster(Cluster<PotholeData> cluster) {
+            int rank = cluster instanceof RankedCluster
+                    ? ((RankedCluster) cluster).rank : worstRank(cluster.getItems());
+            int bucket = getBucket(cluster);
+            int key = bucket * 4 + rank;
+            BitmapDescriptor icon = clusterIcons.get(key);
+            if (icon == null) {
+                float hue = hueForSeverity(rank == SEVERITY_RANK_SEVERE ? "Severe"
+                        : rank == SEVERITY_RANK_MODERATE ? "Moderate" : null);
+                circle.getPaint().setColor(Color.HSVToColor(new float[]{hue, 0.85f, 0.9f}));
+                icon = BitmapDescriptorFactory.fromBitmap(iconGenerator.makeIcon(getClusterText(bucket)));
+                clusterIcons.put(key, icon);
+            }
+            return icon;
+        }
+    }
+
+    /** A cluster and the worst severity in it, worked out on the clustering thread. */
+    private static final class RankedCluster implements Cluster<PotholeData> {
+        final Cluster<PotholeData> cluster;
+        final int rank;
+
+        RankedCluster(Cluster<PotholeData> cluster) {
+            this.cluster = cluster;
+            this.rank = worstRank(cluster.getItems());
+        }
+
+        @Override
+        public LatLng getPosition() {
+            return cluster.getPosition();
+        }
+
+        @Override
+        public Collection<PotholeData> getItems() {
+            return cluster.getItems();
+        }
+
+        @Override
+        public int getSize() {
+            return cluster.getSize();
+        }
+
+        // The renderer matches clusters across passes; keep the wrapped cluster's identity.
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RankedCluster && cluster.equals(((RankedCluster) o).cluster);
+        }
+
+        @Override
+        public int hashCode() {
+            return cluster.hashCode();
+        }
+    }
+
+    /**
+     * The default clustering, with each cluster's colour decided next to the
+     * clustering itself instead of on the main thread at every render. The cached
+     * clusters of a zoom level come back as the same set until the items change,
+     * so the ranking is redone only then.
+     */
+    private static final class RankingAlgorithm implements Algorithm<PotholeData> {
+        private final Algorithm<PotholeData> algorithm =
+                new PreCachingAlgorithmDecorator<>(new NonHierarchicalDistanceBasedAlgorithm<>());
+        private Set<? extends Cluster<PotholeData>> lastClusters;
+        private Set<RankedCluster> lastRanked;
+
+        @Override
+        public Set<? extends Cluster<PotholeData>> getClusters(float zoom) {
+            Set<? extends Cluster<PotholeData>> clusters = algorithm.getClusters(zoom);
+            synchronized (this) {
+                if (clusters != lastClusters) {
+                    Set<RankedCluster> ranked = new HashSet<>(clusters.size() * 2);
+                    for (Cluster<PotholeData> c : clusters) ranked.add(new RankedCluster(c));
+                    lastClusters = clusters;
+                    lastRanked = ranked;
+                }
+                return lastRanked;
+            }
+        }
+
+        @Override public boolean addItem(PotholeData item) { return algorithm.addItem(item); }
+        @Override public boolean addItems(Collection<PotholeData> items) { return algorithm.addItems(items); }
+        @Override public void clearItems() { algorithm.clearItems(); }
+        @Override public boolean removeItem(PotholeData item) { return algorithm.removeItem(item); }
+        @Override public boolean updateItem(PotholeData item) { return algorithm.updateItem(item); }
+        @Override public boolean removeItems(Collection<PotholeData> items) { return algorithm.removeItems(items); }
+        @Override public Collection<PotholeData> getItems() { return algorithm.getItems(); }
+        @Override public void setMaxDistanceBetweenClusteredItems(int maxDistance) {
+            algorithm.setMaxDistanceBetweenClusteredItems(maxDistance);
         }
+        @Override public int getMaxDistanceBetweenClusteredItems() {
+            return algorithm.getMaxDistanceBetweenClusteredItems();
+        }
+        @Override public void lock() { algorithm.lock(); }
+        @Override public void unlock() { algorithm.unlock(); }
+    }
+
+    private static int worstRank(Collection<PotholeData> items) {
+        int rank = SEVERITY_RANK_MINOR;
+        for (PotholeData item : items) {
+            rank = Math.max(rank, severityRank(item.severity));
+            if (rank == SEVERITY_RANK_SEVERE) break;
+        }
+        return rank;
     }
 
     private static class RoadClosureData {
@@ -184,13 +405,30 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
                 });
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (mMap != null) loadVisiblePotholes();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        stopCellListeners();
+        if (pinBatches > 0) {
+            Log.d(TAG, String.format(Locale.ROOT,
+                    "Pins: %d batches, %.1f ms decoding, %.1f ms on the main thread",
+                    pinBatches, pinDecodeNanos / 1e6, pinMainNanos / 1e6));
+        }
+    }
+
     @Override
     public void onMapReady(GoogleMap gmap) {
         mMap = gmap;
+        mapReadyAtMs = System.currentTimeMillis();
 
         setupMapUI();
         focusOnUserLocation();
-        loadPotholes();
         loadAdminClosures();
 
         mMap.setOnPolylineClickListener(polyline -> {
@@ -211,18 +449,38 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
 
 
 
-        mMap.setOnMarkerClickListener(marker -> {
-            if (isDrawingClosure) return true;
+        clusterManager = new ClusterManager<>(this, mMap);
+        clusterManager.setAlgorithm(new RankingAlgorithm());
+        clusterManager.setRenderer(new PotholeRenderer(mMap, clusterManager));
+        mMap.setOnMarkerClickListener(marker -> isDrawingClosure || clusterManager.onMarkerClick(marker));
+
+        clusterManager.setOnClusterClickListener(cluster -> {
+            mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(
+                    cluster.getPosition(), mMap.getCameraPosition().zoom + 2f));
+            return true;
+        });
 
-            Object tag = marker.getTag();
-            if (tag instanceof PotholeData) {
-                PotholeData potholeData = (PotholeData) tag;
-                mMap.animateCamera(CameraUpdateFactory.newLatLng(marker.getPosition()));
-                showPotholeDetailCard(potholeData, marker);
+        clusterManager.setOnClusterItemClickListener(potholeData -> {
+            mMap.animateCamera(CameraUpdateFactory.newLatLng(potholeData.getPosition()));
+            if (!potholeData.summaryOnly) {
+                showPotholeDetailCard(potholeData);
                 return true;
             }
-
-            return false;
+            db.collection("potholes").document(potholeData.id).get()
+                    .addOnSuccessListener(doc -> {
+                        if (!doc.exists()) {
+                            removePin(potholeData.id);
+                            clusterManager.cluster();
+                            return;
+                        }
+                        potholeData.fill(doc);
+                        clusterManager.updateItem(potholeData);
+                        clusterManager.cluster();
+                        showPotholeDetailCard(potholeData);
+                    })
+                    .addOnFailureListener(e ->
+                            Toast.makeText(this, "Failed to load pothole.", Toast.LENGTH_SHORT).show());
+            return true;
         });
 
         mMap.setOnMapClickListener(tap -> {
@@ -244,6 +502,8 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         mMap.setOnCameraIdleListener(() -> {
             float zoom = mMap.getCameraPosition().zoom;
             updateHeatmapAndPinsVisibility(zoom);
+            clusterManager.onCameraIdle();
+            loadVisiblePotholes();
         });
     }
 
@@ -296,22 +556,24 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         mMap.getUiSettings().setCompassEnabled(false);
     }
 
+    /**
+     * Heatmap when zoomed out, pins and clusters when zoomed in. Runs on every camera
+     * frame, so it only touches markers when the zoom crosses the threshold, and
+     * then only the rendered ones.
+     */
     private void updateHeatmapAndPinsVisibility(float zoom) {
-        if (heatmapOverlay == null) return;
-
-        float fadeStart = 12.5f;
-        float fadeEnd = 13.5f;
-
-        float alpha = Math.min(1f, Math.max(0f, (zoom - fadeStart) / (fadeEnd - fadeStart)));
-
-        boolean showHeatmap = alpha < 0.5f;
-        heatmapOverlay.setVisible(showHeatmap);
-
-        for (Marker marker : potholeMarkers) {
-            marker.setVisible(alpha > 0f);
-            marker.setAlpha(alpha);
+        boolean showPins = zoom >= PINS_MIN_ZOOM;
+        if (heatmapOverlay != null) heatmapOverlay.setVisible(!showPins);
+        if (showPins == pinsVisible) return;
+
+        pinsVisible = showPins;
+        if (showPins) {
+            clusterManager.getMarkerCollection().showAll();
+            clusterManager.getClusterMarkerCollection().showAll();
+        } else {
+            clusterManager.getMarkerCollection().hideAll();
+            clusterManager.getClusterMarkerCollection().hideAll();
         }
-
     }
 
 
@@ -778,14 +1040,14 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
 
     private void loadAdminClosures() {
         db.collection("closures").get()
-                .addOnSuccessListener(snap -> {
-                    clearClosures();
-
+                .addOnSuccessListener(decoder, snap -> {
+                    long t0 = System.nanoTime();
+                    List<RoadClosureData> closures = new ArrayList<>(snap.size());
                     for (QueryDocumentSnapshot doc : snap) {
                         List<Map<String,Object>> pm = (List<Map<String,Object>>) doc.get("points");
                         if (pm == null) continue;
 
-                        List<LatLng> pts = new ArrayList<>();
+                        List<LatLng> pts = new ArrayList<>(pm.size());
                         for (Map<String,Object> m : pm) {
                             pts.add(new LatLng(
                                     ((Number)m.get("lat")).doubleValue(),
@@ -793,16 +1055,29 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
                             ));
                         }
 
-                        addSingleClosureToMap(new RoadClosureData(
+                        Long endDate = doc.getLong("endDate");
+                        closures.add(new RoadClosureData(
                                 doc.getId(),
-                                doc.getLong("endDate") != null ? doc.getLong("endDate") : 0L,
+                                endDate != null ? endDate : 0L,
                                 doc.getString("description"),
-                                pts
+                                Collections.unmodifiableList(pts)
                         ));
                     }
+                    long decodeNanos = System.nanoTime() - t0;
+                    runOnUiThread(() -> showClosures(closures, decodeNanos));
                 });
     }
 
+    private void showClosures(List<RoadClosureData> closures, long decodeNanos) {
+        if (isDestroyed()) return;
+        long t0 = System.nanoTime();
+        clearClosures();
+        for (RoadClosureData c : closures) addSingleClosureToMap(c);
+        Log.d(TAG, String.format(Locale.ROOT,
+                "Loaded %d closures: %.1f ms decoding, %.1f ms on the main thread",
+                closures.size(), decodeNanos / 1e6, (System.nanoTime() - t0) / 1e6));
+    }
+
     private void showClosureDetailCard(RoadClosureData closure) {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
 
@@ -910,101 +1185,221 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     }
 
 
-    private void loadPotholes() {
-        db.collection("potholes").get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-                        List<String> followers = (List<String>) doc.get("followers");
+    /**
+     * Starts listening to the pothole summaries of the part of the viewport (plus a
+     * margin) not covered yet: one listener per run of adjacent geohash cells, over
+     * a document-id range. Later snapshots carry only the cells that changed.
+     */
+    private void loadVisiblePotholes() {
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        List<ViewportCells.Range> ranges = viewportCells.request(
+                bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude);
+
+        for (ViewportCells.Range range : ranges) {
+            boolean[] first = {true};
+            ListenerRegistration[] self = new ListenerRegistration[1];
+            self[0] = db.collection(CellSummary.COLLECTION)
+                    .orderBy(FieldPath.documentId())
+                    .startAt(range.start)
+                    .endBefore(range.end)
+                    .addSnapshotListener(decoder, (snapshot, e) -> {
+                        if (e != null || snapshot == null) {
+                            // The listener is dead; let the next camera idle try again.
+                            viewportCells.onFailed(range);
+                            runOnUiThread(() -> {
+                                cellListeners.remove(self[0]);
+                                Toast.makeText(this, "Failed to load potholes.", Toast.LENGTH_SHORT).show();
+                            });
+                            return;
+                        }
+                        if (first[0]) {
+                            first[0] = false;
+                            viewportCells.onLoaded(range);
+                        }
+                        PinBatch batch = decodeCellChanges(snapshot.getDocumentChanges());
+                        if (!batch.isEmpty()) runOnUiThread(() -> applyPinBatch(batch));
+                    });
+            cellListeners.add(self[0]);
+        }
+    }
 
-                        PotholeData potholeData = new PotholeData(
-                                doc.getId(),
-                                doc.getString("status"),
-                                doc.getString("severity"),
-                                doc.getGeoPoint("location"),
-                                doc.getTimestamp("timestamp"),
-                                followers
-                        );
+    /** Runs on {@link #decoder}: turns changed cell summaries into the potholes that changed. */
+    private PinBatch decodeCellChanges(List<DocumentChange> changes) {
+        summaryDocumentsRead += changes.size();
+        PinBatch.Builder builder = new PinBatch.Builder();
+        for (DocumentChange change : changes) {
+            DocumentSnapshot cell = change.getDocument();
+            Object entries = change.getType() == DocumentChange.Type.REMOVED
+                    ? null : cell.get(CellSummary.FIELD_ENTRIES);
+            cellEntries.apply(cell.getId(), entries instanceof Map ? (Map<?, ?>) entries : null, builder);
+        }
+        return builder.build(changes.size());
+    }
 
-                        if (potholeData.location != null) {
-                            LatLng potholeLocation = new LatLng(
-                                    potholeData.location.getLatitude(),
-                                    potholeData.location.getLongitude()
-                            );
-
-                            float markerColor;
-                            double weight;
-
-                            if ("Severe".equalsIgnoreCase(potholeData.severity)) {
-                                markerColor = BitmapDescriptorFactory.HUE_RED;
-                                weight = 3.0;
-                            } else if ("Moderate".equalsIgnoreCase(potholeData.severity)) {
-                                markerColor = BitmapDescriptorFactory.HUE_ORANGE;
-                                weight = 2.0;
-                            } else {
-                                markerColor = BitmapDescriptorFactory.HUE_YELLOW;
-                                weight = 1.0;
-                            }
+    /** Applies decoded pin edits to the cluster items and the heatmap dataset. */
+    private void applyPinBatch(PinBatch batch) {
+        if (isDestroyed()) return;
+        long t0 = System.nanoTime();
+
+        for (CellSummary.Entry entry : batch.added) addPin(entry);
+        for (CellSummary.Entry entry : batch.changed) changePin(entry);
+        for (String potholeId : batch.removed) removePin(potholeId);
+
+        clusterManager.cluster();
+        refreshHeatmap();
+        updateHeatmapAndPinsVisibility(mMap.getCameraPosition().zoom);
+
+        long mainNanos = System.nanoTime() - t0;
+        pinBatches++;
+        pinDecodeNanos += batch.decodeNanos;
+        pinMainNanos += mainNanos;
+        Log.d(TAG, String.format(Locale.ROOT,
+                "Applied %d pin edits from %d cells: %.1f ms decoding, %.1f ms on the main thread",
+                batch.size(), batch.cells, batch.decodeNanos / 1e6, mainNanos / 1e6));
+        if (!firstPinsLogged) {
+            firstPinsLogged = true;
+            Log.d(TAG, "First pins after " + (System.currentTimeMillis() - mapReadyAtMs)
+                    + " ms, " + summaryDocumentsRead + " cell documents read");
+        }
+    }
 
-                            heatmapPoints.add(new WeightedLatLng(potholeLocation, weight));
+    private void addPin(CellSummary.Entry entry) {
+        PotholeData potholeData = new PotholeData(entry.id, entry.status, entry.severity,
+                new GeoPoint(entry.lat, entry.lon), null, null);
+        potholeData.summaryOnly = true;
+        addPotholeMarker(potholeData);
+    }
 
-                            Marker marker = mMap.addMarker(new MarkerOptions()
-                                    .position(potholeLocation)
-                                    .icon(BitmapDescriptorFactory.defaultMarker(markerColor)));
-                            if (marker != null) {
-                                marker.setTag(potholeData);
-                                marker.setVisible(false);
-                                potholeMarkers.add(marker);
-                            }
-                        }
-                    }
+    private void changePin(CellSummary.Entry entry) {
+        PotholeData potholeData = potholesById.get(entry.id);
+        if (potholeData == null) {
+            addPin(entry);
+            return;
+        }
+        // The clustering index finds items by position: take it out before moving it.
+        clusterManager.removeItem(potholeData);
+        potholeData.status = entry.status;
+        potholeData.severity = entry.severity;
+        potholeData.setLocation(new GeoPoint(entry.lat, entry.lon));
+        clusterManager.addItem(potholeData);
+        heatmapById.put(entry.id, new WeightedLatLng(potholeData.getPosition(), heatWeight(entry.severity)));
+    }
 
-                    if (!heatmapPoints.isEmpty()) {
-                        if (heatmapProvider == null) {
-                            int[] colors = {
-                                    Color.rgb(255, 255, 102),
-                                    Color.rgb(255, 165, 0),
-                                    Color.rgb(255, 69, 0),
-                                    Color.rgb(178, 34, 34)
-                            };
-                            float[] startPoints = {0.2f, 0.5f, 0.7f, 1.0f};
-
-                            com.google.maps.android.heatmaps.Gradient gradient =
-                                    new com.google.maps.android.heatmaps.Gradient(colors, startPoints);
-
-                            heatmapProvider = new HeatmapTileProvider.Builder()
-                                    .weightedData(heatmapPoints)
-                                    .gradient(gradient)
-                                    .radius(40)
-                                    .build();
-
-                            heatmapOverlay = mMap.addTileOverlay(
-                                    new TileOverlayOptions().tileProvider(heatmapProvider));
-                            if (heatmapOverlay != null) {
-                                heatmapOverlay.setVisible(true);
-                            }
-                        } else {
-                            heatmapProvider.setWeightedData(heatmapPoints);
-                            if (heatmapOverlay != null) {
-                                heatmapOverlay.clearTileCache();
-                            }
-                        }
-                    }
-                })
-                .addOnFailureListener(e ->
-                        Toast.makeText(this, "Failed to load potholes.", Toast.LENGTH_SHORT).show());
+    /**
+     * Safe to call twice: an admin delete removes the pin before the listener reports
+     * it. The caller reclusters.
+     */
+    private void removePin(String potholeId) {
+        PotholeData potholeData = potholesById.remove(potholeId);
+        if (potholeData != null) clusterManager.removeItem(potholeData);
+        heatmapById.remove(potholeId);
+    }
+
+    /**
+     * Detaches the cell listeners and drops the pins they fed: only the viewport is
+     * listened to again, so a pin kept from another cell would go stale. The diff
+     * state is cleared on {@link #decoder}, after any batch it already decoded, and
+     * the pins after that batch applies; snapshots from new listeners come later.
+     */
+    private void stopCellListeners() {
+        for (ListenerRegistration registration : cellListeners) registration.remove();
+        cellListeners.clear();
+        viewportCells.clear();
+        decoder.execute(() -> {
+            cellEntries.clear();
+            runOnUiThread(this::clearPins);
+        });
+    }
+
+    private void clearPins() {
+        if (isDestroyed() || clusterManager == null) return;
+        potholesById.clear();
+        heatmapById.clear();
+        clusterManager.clearItems();
+        clusterManager.cluster();
+        refreshHeatmap();
+    }
+
+    private void addPotholeMarker(PotholeData potholeData) {
+        heatmapById.put(potholeData.id, new WeightedLatLng(potholeData.getPosition(), heatWeight(potholeData.severity)));
+        potholesById.put(potholeData.id, potholeData);
+        clusterManager.addItem(potholeData);
+    }
+
+    private static double heatWeight(String severity) {
+        if ("Severe".equalsIgnoreCase(severity)) return 3.0;
+        if ("Moderate".equalsIgnoreCase(severity)) return 2.0;
+        return 1.0;
     }
 
-    private void showAdminOptionsDialog(final String potholeId, final Marker marker) {
+    private static int severityRank(String severity) {
+        if ("Severe".equalsIgnoreCase(severity)) return SEVERITY_RANK_SEVERE;
+        if ("Moderate".equalsIgnoreCase(severity)) return SEVERITY_RANK_MODERATE;
+        return SEVERITY_RANK_MINOR;
+    }
+
+    private static float hueForSeverity(String severity) {
+        switch (severityRank(severity)) {
+            case SEVERITY_RANK_SEVERE: return BitmapDescriptorFactory.HUE_RED;
+            case SEVERITY_RANK_MODERATE: return BitmapDescriptorFactory.HUE_ORANGE;
+            default: return BitmapDescriptorFactory.HUE_YELLOW;
+        }
+    }
+
+    /** The heatmap library only takes whole datasets; pins above are edited in place. */
+    private void refreshHeatmap() {
+        if (heatmapById.isEmpty()) {
+            if (heatmapOverlay != null) heatmapOverlay.remove();
+            heatmapOverlay = null;
+            heatmapProvider = null;
+            return;
+        }
+        List<WeightedLatLng> heatmapPoints = new ArrayList<>(heatmapById.values());
+
+        if (heatmapProvider == null) {
+            int[] colors = {
+                    Color.rgb(255, 255, 102),
+                    Color.rgb(255, 165, 0),
+                    Color.rgb(255, 69, 0),
+                    Color.rgb(178, 34, 34)
+            };
+            float[] startPoints = {0.2f, 0.5f, 0.7f, 1.0f};
+
+            com.google.maps.android.heatmaps.Gradient gradient =
+                    new com.google.maps.android.heatmaps.Gradient(colors, startPoints);
+
+            heatmapProvider = new HeatmapTileProvider.Builder()
+                    .weightedData(heatmapPoints)
+                    .gradient(gradient)
+                    .radius(40)
+                    .build();
+
+            heatmapOverlay = mMap.addTileOverlay(
+                    new TileOverlayOptions().tileProvider(heatmapProvider));
+            if (heatmapOverlay != null) {
+                heatmapOverlay.setVisible(true);
+            }
+        } else {
+            heatmapProvider.setWeightedData(heatmapPoints);
+            if (heatmapOverlay != null) {
+                heatmapOverlay.clearTileCache();
+            }
+        }
+    }
+
+    private void showAdminOptionsDialog(final PotholeData potholeData) {
         final CharSequence[] options = {"Change Status", "Delete Report", "Cancel"};
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Admin Options");
         builder.setItems(options, (dialog, item) -> {
             if (options[item].equals("Change Status")) {
-                showStatusChangeDialog(potholeId, marker);
+                showStatusChangeDialog(potholeData);
             } else if (options[item].equals("Delete Report")) {
-                marker.remove();
+                removePin(potholeData.id);
+                clusterManager.cluster();
                 binding.potholeDetailCard.setVisibility(View.GONE);
-                deletePotholeFromFirestore(potholeId);
+                deletePotholeFromFirestore(potholeData.id, potholeData.location);
             } else {
                 dialog.dismiss();
             }
@@ -1012,7 +1407,7 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         builder.show();
     }
 
-    private void showPotholeDetailCard(PotholeData potholeData, Marker marker) {
+    private void showPotholeDetailCard(PotholeData potholeData) {
         binding.infoWindowLayout.tvTitle.setText(
                 "Pothole - " + potholeData.id.substring(0, Math.min(6, potholeData.id.length()))
         );
@@ -1036,7 +1431,7 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
 
         binding.infoWindowLayout.btnModify.setVisibility(isAdmin ? View.VISIBLE : View.GONE);
         binding.infoWindowLayout.btnModify.setOnClickListener(v ->
-                showAdminOptionsDialog(potholeData.id, marker)
+                showAdminOptionsDialog(potholeData)
         );
 
         if (currentUser == null) {
@@ -1060,7 +1455,7 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
 
             starIcon.setOnClickListener(v -> {
                 if (currentUser.getUid() != null) {
-                    toggleFollowPothole(potholeData, currentUser.getUid(), starIcon, marker);
+                    toggleFollowPothole(potholeData, currentUser.getUid(), starIcon);
                 }
             });
 
@@ -1069,8 +1464,7 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     }
     private void toggleFollowPothole(PotholeData potholeData,
                                      String userId,
-                                     ImageView starIcon,
-                                     Marker marker) {
+                                     ImageView starIcon) {
         boolean isCurrentlyFollowing = potholeData.followers.contains(userId);
 
         if (isCurrentlyFollowing) {
@@ -1078,7 +1472,6 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
                     .update("followers", FieldValue.arrayRemove(userId))
                     .addOnSuccessListener(aVoid -> {
                         potholeData.followers.remove(userId);
-                        marker.setTag(potholeData);
                         starIcon.setImageResource(R.drawable.ic_star_border);
                         Toast.makeText(this, "Unfollowed", Toast.LENGTH_SHORT).show();
                     })
@@ -1089,7 +1482,6 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
                     .update("followers", FieldValue.arrayUnion(userId))
                     .addOnSuccessListener(aVoid -> {
                         potholeData.followers.add(userId);
-                        marker.setTag(potholeData);
                         starIcon.setImageResource(R.drawable.ic_star_filled);
                         Toast.makeText(this, "Following", Toast.LENGTH_SHORT).show();
                     })
@@ -1098,20 +1490,19 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         }
     }
 
-    private void showStatusChangeDialog(final String potholeId, final Marker marker) {
+    private void showStatusChangeDialog(final PotholeData potholeData) {
         final CharSequence[] statuses = {"Reported", "In Progress", "Repaired"};
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Select New Status");
         builder.setItems(statuses, (dialog, which) -> {
             String newStatus = statuses[which].toString();
-            updatePotholeStatusInFirestore(potholeId, newStatus, marker);
+            updatePotholeStatusInFirestore(potholeData, newStatus);
         });
         builder.show();
     }
 
-    private void updatePotholeStatusInFirestore(String potholeId,
-                                                String newStatus,
-                                                Marker marker) {
+    private void updatePotholeStatusInFirestore(PotholeData potholeData, String newStatus) {
+        String potholeId = potholeData.id;
 
         db.collection("potholes")
                 .document(potholeId)
@@ -1127,20 +1518,15 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
                     }
 
 
-                    snapshot.getReference()
-                            .update("status", newStatus)
+                    FirestoreManager.updatePotholeStatus(potholeId, snapshot.getGeoPoint("location"),
+                                    snapshot.getString("severity"), newStatus)
                             .addOnSuccessListener(aVoid -> {
 
                                 Toast.makeText(this,
                                         "Status updated to " + newStatus, Toast.LENGTH_SHORT).show();
 
-                                PotholeData data = (PotholeData) marker.getTag();
-
-                                if (data != null) {
-                                    data.status = newStatus;
-                                    marker.setTag(data);
-                                    binding.infoWindowLayout.tvStatus.setText("Status: " + newStatus);
-                                }
+                                potholeData.status = newStatus;
+                                binding.infoWindowLayout.tvStatus.setText("Status: " + newStatus);
 
 
                                 notifyPotholeFollowers(potholeId, newStatus);
@@ -1173,9 +1559,8 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
                 });
     }
 
-    private void deletePotholeFromFirestore(String potholeId) {
-        db.collection("potholes").document(potholeId)
-                .delete()
+    private void deletePotholeFromFirestore(String potholeId, GeoPoint location) {
+        FirestoreManager.deletePothole(potholeId, location)
                 .addOnSuccessListener(aVoid ->
                         Toast.makeText(this,
                                 "Pothole report deleted", Toast.LENGTH_SHORT).show())
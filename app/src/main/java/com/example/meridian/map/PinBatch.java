@@ -0,0 +1,75 @@
+package com.example.meridian.map;
+
+import com.example.meridian.firebase.CellSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pin edits decoded from one snapshot of cell summaries, ready for the main thread
+ * to apply. Built off the main thread by feeding a {@link Builder} to
+ * {@link CellEntryDiff#apply}; immutable once built.
+ */
+public final class PinBatch {
+
+    public final List<CellSummary.Entry> added;
+    public final List<CellSummary.Entry> changed;
+    public final List<String> removed;
+    /** Cell documents in the snapshot, changed or not. */
+    public final int cells;
+    public final long decodeNanos;
+
+    private PinBatch(Builder b, int cells, long decodeNanos) {
+        this.added = Collections.unmodifiableList(b.added);
+        this.changed = Collections.unmodifiableList(b.changed);
+        this.removed = Collections.unmodifiableList(b.removed);
+        this.cells = cells;
+        this.decodeNanos = decodeNanos;
+    }
+
+    public int size() {
+        return added.size() + changed.size() + removed.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /** Collects diff callbacks; use once. */
+    public static final class Builder implements CellEntryDiff.Callback {
+        private final List<CellSummary.Entry> added = new ArrayList<>();
+        private final List<CellSummary.Entry> changed = new ArrayList<>();
+        private final List<String> removed = new ArrayList<>();
+        private final long startNanos = System.nanoTime();
+        private boolean built;
+
+        @Override
+        public void onAdded(CellSummary.Entry entry) {
+            check();
+            added.add(entry);
+        }
+
+        @Override
+        public void onChanged(CellSummary.Entry entry) {
+            check();
+            changed.add(entry);
+        }
+
+        @Override
+        public void onRemoved(String potholeId) {
+            check();
+            removed.add(potholeId);
+        }
+
+        public PinBatch build(int cells) {
+            check();
+            built = true;
+            return new PinBatch(this, cells, System.nanoTime() - startNanos);
+        }
+
+        private void check() {
+            if (built) throw new IllegalStateException("Batch already built");
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.example.meridian.map;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,7 +18,9 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 
 import com.example.meridian.R;
+import com.example.meridian.firebase.FirestoreManager;
 import com.example.meridian.navigation.TrackingFragment;
+import com.example.meridian.realtime.WaveformCodec;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.MapView;
@@ -25,8 +28,10 @@ import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.GeoPoint;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -73,6 +78,7 @@ public class ReportFragment extends DialogFragment implements OnMapReadyCallback
         ImageView starIcon = view.findViewById(R.id.iv_star);
         Button btnDelete = view.findViewById(R.id.btnDeletePothole);
         mapView = view.findViewById(R.id.mapView);
+        WaveformView waveformView = view.findViewById(R.id.waveformView);
 
 
         btnDelete.setVisibility(View.GONE);
@@ -135,6 +141,8 @@ public class ReportFragment extends DialogFragment implements OnMapReadyCallback
         FirebaseFirestore db = FirebaseFirestore.getInstance();
         String uid = FirebaseAuth.getInstance().getUid();
 
+        if (potholeId != null) loadWaveform(db, waveformView);
+
         if (uid != null) {
             if(allowDelete) {
                 db.collection("users").document(uid).get()
@@ -153,14 +161,25 @@ public class ReportFragment extends DialogFragment implements OnMapReadyCallback
     }
 
 
+    /** Shows the impact trace recorded with the report, if the tracker sent one. */
+    private void loadWaveform(FirebaseFirestore db, WaveformView waveformView) {
+        db.collection("potholes").document(potholeId).get()
+                .addOnSuccessListener(doc -> {
+                    Blob blob = doc.getBlob("waveform");
+                    if (blob == null || !isAdded()) return;
+                    try {
+                        waveformView.setWaveform(WaveformCodec.decode(blob.toBytes()));
+                        waveformView.setVisibility(View.VISIBLE);
+                    } catch (IllegalArgumentException e) {
+                        Log.w("ReportFragment", "Unreadable waveform for " + potholeId, e);
+                    }
+                });
+    }
+
     private void deletePothole() {
         if (potholeId == null) return;
 
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-
-        db.collection("potholes")
-                .document(potholeId)
-                .delete()
+        FirestoreManager.deletePothole(potholeId, new GeoPoint(latitude, longitude))
                 .addOnSuccessListener(a -> {
                     Toast.makeText(requireContext(), "Pothole deleted", Toast.LENGTH_SHORT).show();
                     dismiss();
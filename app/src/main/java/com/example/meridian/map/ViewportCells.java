@@ -0,0 +1,139 @@
+package com.example.meridian.map;
+
+import com.example.meridian.firebase.Geohash;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks which geohash cells of the pothole map are loaded, so a camera move only
+ * queries the newly exposed area. {@link #request} covers the viewport plus a
+ * margin with the finest cells that keep the query count bounded, skips cells that
+ * are loaded or in flight (directly or through a coarser cell), and merges cells
+ * that are adjacent in hash order into one range query.
+ *
+ * A viewport too large for even the coarsest cells loads nothing; the map keeps
+ * showing what it has.
+ */
+public final class ViewportCells {
+
+    /** About 39 x 20 km. */
+    public static final int MIN_PRECISION = 4;
+    /** About 1.2 x 0.6 km. */
+    public static final int MAX_PRECISION = 6;
+    public static final int MAX_CELLS = 24;
+    /** Margin added on every side, as a fraction of the viewport. */
+    public static final double MARGIN = 0.25;
+
+    /** One range query: stored hashes in {@code [start, end)}. */
+    public static final class Range {
+        public final String start;
+        public final String end;
+        final List<String> cells;
+
+        Range(List<String> cells) {
+            this.cells = cells;
+            this.start = cells.get(0);
+            this.end = Geohash.rangeEnd(cells.get(cells.size() - 1));
+        }
+    }
+
+    private final int minPrecision;
+    private final int maxPrecision;
+    private final Set<String> loaded = new HashSet<>();
+    private final Set<String> pending = new HashSet<>();
+    private long requestedCells;
+
+    public ViewportCells() {
+        this(MIN_PRECISION, MAX_PRECISION);
+    }
+
+    /**
+     * Cells no finer than {@code maxPrecision}; for documents keyed by a cell of
+     * that precision, whose ids then fall inside the ranges.
+     */
+    public ViewportCells(int minPrecision, int maxPrecision) {
+        if (minPrecision < 1 || maxPrecision < minPrecision) throw new IllegalArgumentException("precision");
+        this.minPrecision = minPrecision;
+        this.maxPrecision = maxPrecision;
+    }
+
+    /** Ranges to query for the viewport; they count as in flight until reported back. */
+    public synchronized List<Range> request(double south, double west, double north, double east) {
+        double dLat = (north - south) * MARGIN;
+        double width = west <= east ? east - west : east + 360 - west;
+        double dLon = width * MARGIN;
+        double s = Math.max(-90, south - dLat), n = Math.min(90, north + dLat);
+        double w = west - dLon, e = east + dLon;
+        if (width + 2 * dLon >= 360) {
+            w = -180;
+            e = 180;
+        } else {
+            if (w < -180) w += 360;
+            if (e > 180) e -= 360;
+        }
+
+        int precision = -1;
+        for (int p = maxPrecision; p >= minPrecision; p--) {
+            if (Geohash.countCover(s, w, n, e, p) <= MAX_CELLS) {
+                precision = p;
+                break;
+            }
+        }
+        if (precision < 0) return Collections.emptyList();
+
+        List<Range> ranges = new ArrayList<>();
+        List<String> run = null;
+        String expected = null;
+        for (String cell : Geohash.cover(s, w, n, e, precision)) {
+            if (isCovered(cell)) continue;
+            pending.add(cell);
+            requestedCells++;
+            if (run != null && cell.equals(expected)) {
+                run.add(cell);
+            } else {
+                if (run != null) ranges.add(new Range(run));
+                run = new ArrayList<>();
+                run.add(cell);
+            }
+            expected = Geohash.successor(cell);
+        }
+        if (run != null) ranges.add(new Range(run));
+        return ranges;
+    }
+
+    public synchronized void onLoaded(Range range) {
+        pending.removeAll(range.cells);
+        loaded.addAll(range.cells);
+    }
+
+    /** The range can be requested again. */
+    public synchronized void onFailed(Range range) {
+        pending.removeAll(range.cells);
+    }
+
+    public synchronized void clear() {
+        loaded.clear();
+        pending.clear();
+    }
+
+    public synchronized int getLoadedCells() {
+        return loaded.size();
+    }
+
+    /** Cells handed out by {@link #request} so far, including retries. */
+    public synchronized long getRequestedCells() {
+        return requestedCells;
+    }
+
+    private boolean isCovered(String cell) {
+        for (int len = minPrecision; len <= cell.length(); len++) {
+            String prefix = cell.substring(0, len);
+            if (loaded.contains(prefix) || pending.contains(prefix)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.meridian.map;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.meridian.realtime.WaveformCodec;
+
+/** Plots a decoded impact waveform, with the event time marked. */
+public class WaveformView extends View {
+
+    private final Paint tracePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint axisPaint = new Paint();
+    private final Path path = new Path();
+    private WaveformCodec.Waveform waveform;
+
+    public WaveformView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        tracePaint.setColor(Color.parseColor("#FE2C55"));
+        tracePaint.setStyle(Paint.Style.STROKE);
+        tracePaint.setStrokeWidth(2 * getResources().getDisplayMetrics().density);
+        axisPaint.setColor(Color.LTGRAY);
+        axisPaint.setStrokeWidth(getResources().getDisplayMetrics().density);
+    }
+
+    public void setWaveform(@Nullable WaveformCodec.Waveform waveform) {
+        this.waveform = waveform;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        WaveformCodec.Waveform w = waveform;
+        if (w == null || w.size() < 2) return;
+
+        long t0 = w.offsetsMs[0];
+        long span = Math.max(1, w.offsetsMs[w.size() - 1] - t0);
+        double min = w.az[0], max = w.az[0];
+        for (double v : w.az) {
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        double range = Math.max(0.1, max - min);
+        float width = getWidth(), height = getHeight();
+
+        float eventX = (float) ((0 - t0) * width / (double) span);
+        canvas.drawLine(eventX, 0, eventX, height, axisPaint);
+
+        path.rewind();
+        for (int i = 0; i < w.size(); i++) {
+            float x = (float) ((w.offsetsMs[i] - t0) * width / (double) span);
+            float y = (float) (height - (w.az[i] - min) * height / range);
+            if (i == 0) path.moveTo(x, y);
+            else path.lineTo(x, y);
+        }
+        canvas.drawPath(path, tracePaint);
+    }
+}
@@ -125,7 +125,7 @@ public class HomeFragment extends Fragment implements OnMapReadyCallback {
 
         if (selectedLocation != null) {
             GeoPoint geoPoint = new GeoPoint(selectedLocation.latitude, selectedLocation.longitude);
-            FirestoreManager.addPotholeReport(geoPoint, selectedSeverity, detectedBy);
+            FirestoreManager.addPotholeReport(requireContext(), geoPoint, selectedSeverity, detectedBy);
             Toast.makeText(getContext(), "Report sent (selected location)", Toast.LENGTH_SHORT).show();
             resetUI();
         }
@@ -135,7 +135,7 @@ public class HomeFragment extends Fragment implements OnMapReadyCallback {
                     .addOnSuccessListener(location -> {
                         if (location != null) {
                             GeoPoint geoPoint = new GeoPoint(location.getLatitude(), location.getLongitude());
-                            FirestoreManager.addPotholeReport(geoPoint, selectedSeverity, detectedBy);
+                            FirestoreManager.addPotholeReport(requireContext(), geoPoint, selectedSeverity, detectedBy);
                             Toast.makeText(getContext(), "Report sent (current location)", Toast.LENGTH_SHORT).show();
                             resetUI();
                         } else {
@@ -0,0 +1,147 @@
+package com.example.meridian.realtime;
+
+/**
+ * Wire format for the tracker's binary mode:
+ *
+ * <pre>
+ *   0xA5 0x5A | len:u8 | type:u8 | payload[len] | crc16:u16be
+ * </pre>
+ *
+ * The CRC is CRC-16/CCITT-FALSE over len, type and payload. All multi-byte
+ * fields are big-endian. A sample payload is
+ * {@code deviceTimeMs:u32, latE7:i32, lonE7:i32, azMilliG:i16}; a lat/lon of
+ * {@link #NO_FIX} means the tracker had no GPS fix.
+ */
+public final class BinaryFrameCodec {
+
+    public static final int SYNC_0 = 0xA5;
+    public static final int SYNC_1 = 0x5A;
+
+    public static final int TYPE_SAMPLE = 0x01;
+    /** Phone to tracker; payload is a u32 sequence number echoed back in a pong. */
+    public static final int TYPE_PING = 0x02;
+    public static final int TYPE_PONG = 0x03;
+
+    public static final int HEADER_LENGTH = 4;
+    public static final int CRC_LENGTH = 2;
+    public static final int MAX_PAYLOAD = 255;
+    public static final int MAX_FRAME = HEADER_LENGTH + MAX_PAYLOAD + CRC_LENGTH;
+
+    public static final int SAMPLE_PAYLOAD = 14;
+    public static final int SAMPLE_FRAME = HEADER_LENGTH + SAMPLE_PAYLOAD + CRC_LENGTH;
+
+    public static final int PING_PAYLOAD = 4;
+    public static final int PING_FRAME = HEADER_LENGTH + PING_PAYLOAD + CRC_LENGTH;
+
+    public static final int NO_FIX = Integer.MIN_VALUE;
+
+    /** Sent before START to offer binary mode; old firmware ignores it. */
+    public static final String OFFER_LINE = "MODE BIN1\n";
+    /** Line the tracker answers with right before it switches to frames. */
+    public static final String ACK_LINE = "MODE=BIN1";
+
+    private BinaryFrameCodec() {}
+
+    public static int encodeSample(long deviceTimeMs, double lat, double lon, double az,
+                                   boolean hasFix, byte[] out, int off) {
+        int p = off + HEADER_LENGTH;
+        p = putInt(out, p, (int) deviceTimeMs);
+        p = putInt(out, p, hasFix ? toE7(lat) : NO_FIX);
+        p = putInt(out, p, hasFix ? toE7(lon) : NO_FIX);
+        putShort(out, p, toMilliG(az));
+        return finishFrame(TYPE_SAMPLE, SAMPLE_PAYLOAD, out, off);
+    }
+
+    /** Encodes a ping ({@link #TYPE_PING}) or pong ({@link #TYPE_PONG}) frame. */
+    public static int encodeHeartbeat(int type, long seq, byte[] out, int off) {
+        putInt(out, off + HEADER_LENGTH, (int) seq);
+        return finishFrame(type, PING_PAYLOAD, out, off);
+    }
+
+    static long decodeHeartbeatSeq(byte[] b, int payloadOff) {
+        return getInt(b, payloadOff) & 0xFFFFFFFFL;
+    }
+
+    /** Writes the header and CRC around a payload already placed at off + HEADER_LENGTH. */
+    public static int finishFrame(int type, int payloadLength, byte[] out, int off) {
+        out[off] = (byte) SYNC_0;
+        out[off + 1] = (byte) SYNC_1;
+        out[off + 2] = (byte) payloadLength;
+        out[off + 3] = (byte) type;
+        int crc = crc16(out, off + 2, payloadLength + 2);
+        int c = off + HEADER_LENGTH + payloadLength;
+        out[c] = (byte) (crc >>> 8);
+        out[c + 1] = (byte) crc;
+        return HEADER_LENGTH + payloadLength + CRC_LENGTH;
+    }
+
+    static void decodeSample(byte[] b, int payloadOff, SensorSample into) {
+        into.clear();
+        into.deviceTimeMs = getInt(b, payloadOff) & 0xFFFFFFFFL;
+        into.hasDeviceTime = true;
+        int latE7 = getInt(b, payloadOff + 4);
+        int lonE7 = getInt(b, payloadOff + 8);
+        if (latE7 != NO_FIX && lonE7 != NO_FIX) {
+            into.lat = latE7 / 1e7;
+            into.lon = lonE7 / 1e7;
+            into.hasLat = true;
+            into.hasLon = true;
+        }
+        into.az = getShort(b, payloadOff + 12) / 1000.0;
+        into.hasAz = true;
+    }
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    public static int crc16(byte[] b, int off, int len) {
+        int crc = 0xFFFF;
+        for (int i = off; i < off + len; i++) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ b[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    static int toE7(double deg) {
+        return (int) Math.round(deg * 1e7);
+    }
+
+    static short toMilliG(double g) {
+        long v = Math.round(g * 1000.0);
+        if (v > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (v < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) v;
+    }
+
+    static int putInt(byte[] b, int p, int v) {
+        b[p] = (byte) (v >>> 24);
+        b[p + 1] = (byte) (v >>> 16);
+        b[p + 2] = (byte) (v >>> 8);
+        b[p + 3] = (byte) v;
+        return p + 4;
+    }
+
+    static int putShort(byte[] b, int p, int v) {
+        b[p] = (byte) (v >>> 8);
+        b[p + 1] = (byte) v;
+        return p + 2;
+    }
+
+    static int getInt(byte[] b, int p) {
+        return ((b[p] & 0xFF) << 24) | ((b[p + 1] & 0xFF) << 16)
+                | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+    }
+
+    static short getShort(byte[] b, int p) {
+        return (short) (((b[p] & 0xFF) << 8) | (b[p + 1] & 0xFF));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.meridian.realtime;
+
+/**
+ * Streaming decoder for {@link BinaryFrameCodec} frames. Bytes are staged in a
+ * fixed buffer so frames may be split across reads. On a bad length, unknown
+ * type or CRC mismatch the decoder drops one byte and hunts for the next sync
+ * pair, so a corrupted stretch costs at most the frames it overlaps.
+ *
+ * Not thread-safe: feed it from the reader thread only.
+ */
+public final class BinaryFrameDecoder {
+
+    /** Gets frames of types other than samples (e.g. link control). */
+    public interface FrameListener {
+        void onFrame(int type, byte[] buf, int payloadOff, int payloadLength);
+    }
+
+    private final SampleListener listener;
+    private FrameListener frameListener;
+    private final SensorSample sample = new SensorSample();
+
+    private final byte[] buf = new byte[BinaryFrameCodec.MAX_FRAME * 4];
+    private int start;
+    private int end;
+
+    private long framesDecoded;
+    private long crcErrors;
+    private long bytesSkipped;
+
+    public BinaryFrameDecoder(SampleListener listener) {
+        this.listener = listener;
+    }
+
+    public void setFrameListener(FrameListener frameListener) {
+        this.frameListener = frameListener;
+    }
+
+    public void feed(byte[] in, int off, int len) {
+        while (len > 0) {
+            if (end == buf.length) compact();
+            int n = Math.min(len, buf.length - end);
+            System.arraycopy(in, off, buf, end, n);
+            end += n;
+            off += n;
+            len -= n;
+            drain();
+        }
+    }
+
+    public void reset() {
+        start = end = 0;
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    public long getCrcErrors() {
+        return crcErrors;
+    }
+
+    public long getBytesSkipped() {
+        return bytesSkipped;
+    }
+
+    private void drain() {
+        while (end - start >= BinaryFrameCodec.HEADER_LENGTH) {
+            if ((buf[start] & 0xFF) != BinaryFrameCodec.SYNC_0
+                    || (buf[start + 1] & 0xFF) != BinaryFrameCodec.SYNC_1) {
+                skip();
+                continue;
+            }
+
+            int payloadLength = buf[start + 2] & 0xFF;
+            int type = buf[start + 3] & 0xFF;
+            if ((type == BinaryFrameCodec.TYPE_SAMPLE
+                    && payloadLength != BinaryFrameCodec.SAMPLE_PAYLOAD)
+                    || (type == BinaryFrameCodec.TYPE_PONG
+                    && payloadLength != BinaryFrameCodec.PING_PAYLOAD)) {
+                skip();
+                continue;
+            }
+
+            int frameLength = BinaryFrameCodec.HEADER_LENGTH + payloadLength
+                    + BinaryFrameCodec.CRC_LENGTH;
+            if (end - start < frameLength) return;
+
+            int crcAt = start + BinaryFrameCodec.HEADER_LENGTH + payloadLength;
+            int expected = ((buf[crcAt] & 0xFF) << 8) | (buf[crcAt + 1] & 0xFF);
+            if (BinaryFrameCodec.crc16(buf, start + 2, payloadLength + 2) != expected) {
+                crcErrors++;
+                skip();
+                continue;
+            }
+
+            int payloadOff = start + BinaryFrameCodec.HEADER_LENGTH;
+            start += frameLength;
+            framesDecoded++;
+
+            if (type == BinaryFrameCodec.TYPE_SAMPLE) {
+                BinaryFrameCodec.decodeSample(buf, payloadOff, sample);
+                listener.onSample(sample);
+            } else if (frameListener != null) {
+                frameListener.onFrame(type, buf, payloadOff, payloadLength);
+            }
+        }
+    }
+
+    private void skip() {
+        start++;
+        bytesSkipped++;
+    }
+
+    private void compact() {
+        int n = end - start;
+        System.arraycopy(buf, start, buf, 0, n);
+        start = 0;
+        end = n;
+    }
+}
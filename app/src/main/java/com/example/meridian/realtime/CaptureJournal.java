@@ -0,0 +1,167 @@
+package com.example.meridian.realtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Append-only capture of the raw tracker byte stream, for replaying odd drives.
+ * Records go into memory-mapped segment files, so an append on the reader thread
+ * is a bounds check and a copy; the kernel writes pages back on its own schedule.
+ * When a segment fills, the next one is mapped and the oldest beyond
+ * {@code maxSegments} is deleted.
+ *
+ * Segment layout: header (magic, version, index, created time), then records of
+ * {@code i64 timeMs, i32 type << 24 | length, bytes}. The unused tail of a segment
+ * is zero, and a zero type/length word ends it. Big-endian throughout.
+ */
+public final class CaptureJournal implements AutoCloseable {
+
+    static final int MAGIC = 0x4D524A31; // "MRJ1"
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER = 20;
+    static final int RECORD_HEADER = 12;
+    static final int MAX_RECORD = 0xFFFFFF;
+
+    /** Raw bytes as read from the link. */
+    public static final int TYPE_DATA = 1;
+    /** The link was (re)connected; the decoder must start over in text mode. */
+    public static final int TYPE_RESET = 2;
+
+    static final String SUFFIX = ".mrj";
+
+    public static final int DEFAULT_SEGMENT_BYTES = 8 * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    private final File dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+
+    private MappedByteBuffer segment;
+    private int segmentIndex = -1;
+    private boolean closed;
+
+    private long recordsWritten;
+    private long bytesWritten;
+    private long recordsSkipped;
+
+    public CaptureJournal(File dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public CaptureJournal(File dir, int segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes < SEGMENT_HEADER + RECORD_HEADER + 1) throw new IllegalArgumentException("segmentBytes");
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.segmentIndex = lastSegmentIndex(dir);
+        rotate(System.currentTimeMillis());
+    }
+
+    public synchronized void appendData(long timeMs, byte[] b, int off, int len) throws IOException {
+        append(TYPE_DATA, timeMs, b, off, len);
+    }
+
+    public synchronized void appendReset(long timeMs) throws IOException {
+        append(TYPE_RESET, timeMs, null, 0, 0);
+    }
+
+    /** Flushes dirty pages of the current segment to storage. */
+    public synchronized void force() {
+        if (segment != null) segment.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (segment != null) segment.force();
+        segment = null;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    public synchronized long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /** Reads too large for a single segment; they are dropped rather than split. */
+    public synchronized long getRecordsSkipped() {
+        return recordsSkipped;
+    }
+
+    private void append(int type, long timeMs, byte[] b, int off, int len) throws IOException {
+        if (closed) return;
+        int need = RECORD_HEADER + len;
+        if (len > MAX_RECORD || need > segmentBytes - SEGMENT_HEADER) {
+            recordsSkipped++;
+            return;
+        }
+        if (segment.remaining() < need) rotate(timeMs);
+
+        segment.putLong(timeMs);
+        segment.putInt((type << 24) | len);
+        if (len > 0) segment.put(b, off, len);
+        recordsWritten++;
+        bytesWritten += len;
+    }
+
+    private void rotate(long timeMs) throws IOException {
+        if (segment != null) segment.force();
+        segmentIndex++;
+        File f = segmentFile(dir, segmentIndex);
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(segmentBytes);
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segment.order(ByteOrder.BIG_ENDIAN);
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        segment.putInt(segmentIndex);
+        segment.putLong(timeMs);
+        deleteOldSegments();
+    }
+
+    private void deleteOldSegments() {
+        File[] segments = listSegments(dir);
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            segments[i].delete();
+        }
+    }
+
+    static File segmentFile(File dir, int index) {
+        return new File(dir, String.format(Locale.US, "segment-%08d%s", index, SUFFIX));
+    }
+
+    /** Segment files in write order. */
+    static File[] listSegments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("segment-") && name.endsWith(SUFFIX));
+        if (files == null) return new File[0];
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return files;
+    }
+
+    private static int lastSegmentIndex(File dir) {
+        File[] segments = listSegments(dir);
+        if (segments.length == 0) return -1;
+        String name = segments[segments.length - 1].getName();
+        try {
+            return Integer.parseInt(name.substring("segment-".length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.meridian.realtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a tracker link up for the length of a session. Connects through a
+ * {@link SensorTransport}, sends the handshake, pumps bytes into the decoder and,
+ * when the link drops, reconnects with jittered exponential backoff. Everything
+ * downstream of the decoder (window, rate limits) is untouched by a reconnect.
+ * With a {@link LinkHealthMonitor} attached, a heartbeat thread also pings the
+ * tracker while connected, in whichever framing the decoder negotiated, and drops
+ * a link that has stayed stale for {@link LinkHealthMonitor#RECONNECT_AFTER_MS}.
+ */
+public final class ConnectionSupervisor {
+
+    public interface Callback {
+        void onConnecting(int attempt);
+        void onConnected(String name, boolean reconnect);
+        void onDisconnected(Exception cause);
+        void onGaveUp(Exception cause);
+    }
+
+    public interface Clock {
+        long nowMs();
+        void sleep(long ms) throws InterruptedException;
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override public long nowMs() { return System.currentTimeMillis(); }
+        @Override public void sleep(long ms) throws InterruptedException { Thread.sleep(ms); }
+    };
+
+    public static final long BASE_DELAY_MS = 500L;
+    public static final long MAX_DELAY_MS = 30_000L;
+
+    private final SensorTransport transport;
+    private final byte[] handshake;
+    private final SensorStreamDecoder decoder;
+    private final Callback callback;
+    private final Clock clock;
+    private final Random random;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private Thread thread;
+    private volatile SensorTransport.Link link;
+    private LinkHealthMonitor health;
+    private volatile CaptureJournal capture;
+    private Thread heartbeatThread;
+
+    private volatile boolean connected;
+    private volatile int reconnectCount;
+    private volatile int failedAttempts;
+    private volatile int staleDrops;
+    private volatile long totalDowntimeMs;
+    private volatile long downSinceMs = -1;
+
+    public ConnectionSupervisor(SensorTransport transport, byte[] handshake,
+                                SensorStreamDecoder decoder, Callback callback) {
+        this(transport, handshake, decoder, callback, SYSTEM_CLOCK, new Random());
+    }
+
+    ConnectionSupervisor(SensorTransport transport, byte[] handshake, SensorStreamDecoder decoder,
+                         Callback callback, Clock clock, Random random) {
+        this.transport = transport;
+        this.handshake = handshake;
+        this.decoder = decoder;
+        this.callback = callback;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    public void start() {
+        if (!running.compareAndSet(false, true)) return;
+        thread = new Thread(this::run, "BT-Session");
+        thread.start();
+    }
+
+    public void stop() {
+        if (!running.compareAndSet(true, false)) return;
+        closeLink();
+        thread.interrupt();
+    }
+
+    /** Call before {@link #start()}. */
+    public void setLinkHealthMonitor(LinkHealthMonitor health) {
+        this.health = health;
+        decoder.setPongListener(health == null ? null : seq -> health.onPong(seq, clock.nowMs()));
+    }
+
+    /** Records every connect and every read into {@code capture}; null turns capture off. */
+    public void setCaptureJournal(CaptureJournal capture) {
+        this.capture = capture;
+    }
+
+    public LinkHealthMonitor getLinkHealthMonitor() {
+        return health;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /** Successful connections after the first one. */
+    public int getReconnectCount() {
+        return reconnectCount;
+    }
+
+    public int getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    /** Links dropped by the heartbeat because they went stale. */
+    public int getStaleDrops() {
+        return staleDrops;
+    }
+
+    /** Time spent between a drop and the following reconnect, excluding the current gap. */
+    public long getTotalDowntimeMs() {
+        return totalDowntimeMs;
+    }
+
+    public long getCurrentDowntimeMs() {
+        long since = downSinceMs;
+        return since < 0 ? 0 : clock.nowMs() - since;
+    }
+
+    /** Delay before retry number {@code attempt} (1-based): half fixed, half random. */
+    long backoffDelayMs(int attempt) {
+        long cap = BASE_DELAY_MS << Math.min(attempt - 1, 16);
+        if (cap > MAX_DELAY_MS || cap <= 0) cap = MAX_DELAY_MS;
+        long half = cap / 2;
+        return half + (long) (random.nextDouble() * (cap - half));
+    }
+
+    private void run() {
+        boolean everConnected = false;
+        int attempt = 0;
+
+        while (running.get()) {
+            callback.onConnecting(attempt + 1);
+            try {
+                SensorTransport.Link l = transport.connect();
+                link = l;
+                if (!running.get()) break;
+
+                OutputStream out = l.getOutputStream();
+                out.write(handshake);
+                out.flush();
+
+                decoder.reset();
+                CaptureJournal c = capture;
+                if (c != null) {
+                    try {
+                        c.appendReset(clock.nowMs());
+                    } catch (IOException e) {
+                        capture = null;
+                    }
+                }
+                connected = true;
+                attempt = 0;
+                if (downSinceMs >= 0) {
+                    totalDowntimeMs += clock.nowMs() - downSinceMs;
+                    downSinceMs = -1;
+                }
+                if (everConnected) reconnectCount++;
+                if (health != null) {
+                    health.onConnected(clock.nowMs());
+                    startHeartbeat(l, out);
+                }
+                callback.onConnected(transport.getName(), everConnected);
+                everConnected = true;
+
+                Exception cause = pump(l.getInputStream());
+                connected = false;
+                stopHeartbeat();
+                closeLink();
+                if (!running.get()) break;
+                downSinceMs = clock.nowMs();
+                callback.onDisconnected(cause);
+            } catch (SensorTransport.UnavailableException | SecurityException e) {
+                connected = false;
+                closeLink();
+                running.set(false);
+                callback.onGaveUp(e);
+                return;
+            } catch (IOException e) {
+                connected = false;
+                stopHeartbeat();
+                closeLink();
+                if (!running.get()) break;
+                failedAttempts++;
+                if (everConnected && downSinceMs < 0) downSinceMs = clock.nowMs();
+            }
+
+            attempt++;
+            try {
+                clock.sleep(backoffDelayMs(attempt));
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        connected = false;
+        stopHeartbeat();
+        closeLink();
+    }
+
+    private void startHeartbeat(SensorTransport.Link l, OutputStream out) {
+        heartbeatThread = new Thread(() -> runHeartbeat(l, out), "BT-Heartbeat");
+        heartbeatThread.start();
+    }
+
+    private void stopHeartbeat() {
+        if (health != null) health.onDisconnected();
+        Thread t = heartbeatThread;
+        heartbeatThread = null;
+        if (t != null) t.interrupt();
+    }
+
+    /** Ends with the link; a failed write closes it so the pump notices too. */
+    private void runHeartbeat(SensorTransport.Link l, OutputStream out) {
+        byte[] buf = new byte[BinaryFrameCodec.PING_FRAME + 16];
+        long staleSinceMs = -1;
+        try {
+            while (running.get() && link == l) {
+                clock.sleep(LinkHealthMonitor.PING_INTERVAL_MS);
+                if (!running.get() || link != l) return;
+                long now = clock.nowMs();
+                if (!health.isStale(now)) {
+                    staleSinceMs = -1;
+                } else if (staleSinceMs < 0) {
+                    staleSinceMs = now;
+                } else if (now - staleSinceMs >= LinkHealthMonitor.RECONNECT_AFTER_MS) {
+                    // Samples stopped or pongs went unanswered on a link that still
+                    // looks open; a fresh connection is the only way back.
+                    staleDrops++;
+                    closeLink();
+                    return;
+                }
+                long seq = health.nextPing(now);
+                int n = decoder.isBinary()
+                        ? BinaryFrameCodec.encodeHeartbeat(BinaryFrameCodec.TYPE_PING, seq, buf, 0)
+                        : encodeTextPing(seq, buf);
+                out.write(buf, 0, n);
+                out.flush();
+            }
+        } catch (InterruptedException ignored) {
+        } catch (IOException e) {
+            if (link == l) closeLink();
+        }
+    }
+
+    static int encodeTextPing(long seq, byte[] out) {
+        int p = 0;
+        for (int i = 0; i < SensorStreamDecoder.PING_PREFIX.length(); i++) {
+            out[p++] = (byte) SensorStreamDecoder.PING_PREFIX.charAt(i);
+        }
+        int digitsStart = p;
+        do {
+            out[p++] = (byte) ('0' + seq % 10);
+            seq /= 10;
+        } while (seq > 0);
+        for (int i = digitsStart, j = p - 1; i < j; i++, j--) {
+            byte t = out[i];
+            out[i] = out[j];
+            out[j] = t;
+        }
+        out[p++] = '\n';
+        return p;
+    }
+
+    private Exception pump(InputStream in) {
+        byte[] buf = new byte[512];
+        try {
+            while (running.get()) {
+                int n = in.read(buf);
+                if (n < 0) return new IOException("Stream closed by device");
+                if (n == 0) continue;
+                CaptureJournal c = capture;
+                if (c != null) {
+                    try {
+                        c.appendData(clock.nowMs(), buf, 0, n);
+                    } catch (IOException e) {
+                        // A full disk must not cost the live session; stop capturing.
+                        capture = null;
+                    }
+                }
+                decoder.feed(buf, 0, n);
+            }
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    private void closeLink() {
+        SensorTransport.Link l = link;
+        link = null;
+        if (l != null) {
+            try { l.close(); } catch (Exception ignored) {}
+        }
+    }
+}
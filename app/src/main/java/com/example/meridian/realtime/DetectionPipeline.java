@@ -0,0 +1,316 @@
+package com.example.meridian.realtime;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Staged real-time path: the reader thread {@link #offer}s samples into a SPSC ring,
+ * a detector thread drains it (window stats, hazard decision, UI snapshot) and hands
+ * detections to a dispatcher thread through a bounded queue. No stage ever blocks
+ * the one before it; overflow is dropped and counted in {@link PipelineStats}.
+ */
+public final class DetectionPipeline {
+
+    /** Performs one report. Called on the dispatcher thread and may block. */
+    public interface ReportSink {
+        void report(HazardEvent event) throws Exception;
+    }
+
+    /** Callbacks arrive on pipeline threads; post to the UI yourself. */
+    public interface Listener {
+        void onSnapshotAvailable();
+        void onPhoneFixMissing();
+        void onReportStarted(HazardEvent event);
+        void onReportFinished(HazardEvent event, Exception error);
+    }
+
+    public static final int SAMPLE_QUEUE_CAPACITY = 4096;
+    public static final int REPORT_QUEUE_CAPACITY = 16;
+    private static final long FIX_WARNING_INTERVAL_MS = 5_000L;
+    private static final long WINDOW_MS = 60_000L;
+    /** Percentiles walk the histogram, so road noise is re-read about once a second. */
+    private static final long NOISE_UPDATE_MS = 1_000L;
+    /** Fewer samples than this in the window say nothing about the road. */
+    private static final int MIN_NOISE_SAMPLES = 200;
+    private static final long IDLE_PARK_NS = TimeUnit.MILLISECONDS.toNanos(5);
+    /** Queued behind a flush's events; the dispatcher opens the flush's latch on it. */
+    private static final HazardEvent FLUSH_MARK = new HazardEvent(0, Double.NaN, Double.NaN, 0, null);
+
+    private final ReportSink sink;
+    private final Listener listener;
+
+    private final SampleRingBuffer samples = new SampleRingBuffer(SAMPLE_QUEUE_CAPACITY);
+    private final BlockingQueue<HazardEvent> reports = new ArrayBlockingQueue<>(REPORT_QUEUE_CAPACITY);
+    private final HazardDetector detector = new HazardDetector();
+    private final SlidingWindowStats azWindow =
+            new SlidingWindowStats(WINDOW_MS, 1 << 15, -8.0, 16.0, 0.01);
+    private final PipelineStats stats = new PipelineStats();
+
+    private final LiveSnapshot working = new LiveSnapshot();
+    private final LiveSnapshot published = new LiveSnapshot();
+    private final AtomicBoolean snapshotPending = new AtomicBoolean(false);
+    private long lastFixWarningMs = Long.MIN_VALUE / 2;
+    private long lastNoiseUpdateMs = Long.MIN_VALUE / 2;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    /** Flushes the detector has not seen yet. */
+    private final ConcurrentLinkedQueue<CountDownLatch> flushRequests = new ConcurrentLinkedQueue<>();
+    /** One latch per {@link #FLUSH_MARK} in the report queue, in queue order. */
+    private final ConcurrentLinkedQueue<CountDownLatch> flushesQueued = new ConcurrentLinkedQueue<>();
+    private volatile boolean detectorParked;
+    private Thread detectorThread;
+    private Thread dispatcherThread;
+
+    public DetectionPipeline(ReportSink sink, Listener listener) {
+        this.sink = sink;
+        this.listener = listener;
+    }
+
+    public void start() {
+        if (!running.compareAndSet(false, true)) return;
+        detectorThread = new Thread(this::runDetector, "RT-Detector");
+        dispatcherThread = new Thread(this::runDispatcher, "RT-Dispatcher");
+        detectorThread.start();
+        dispatcherThread.start();
+    }
+
+    public void stop() {
+        if (!running.compareAndSet(true, false)) return;
+        detectorThread.interrupt();
+        dispatcherThread.interrupt();
+        LockSupport.unpark(detectorThread);
+    }
+
+    /** Producer side, reader thread only. Never blocks. */
+    public boolean offer(SensorSample sample) {
+        if (!samples.offer(sample)) {
+            stats.samplesDropped.incrementAndGet();
+            return false;
+        }
+        stats.samplesIn.incrementAndGet();
+        if (detectorParked) LockSupport.unpark(detectorThread);
+        return true;
+    }
+
+    public void setUsePhoneGps(boolean usePhoneGps) {
+        detector.setUsePhoneGps(usePhoneGps);
+    }
+
+    public boolean isUsingPhoneGps() {
+        return detector.isUsingPhoneGps();
+    }
+
+    public void updatePhoneLocation(double lat, double lon) {
+        updatePhoneLocation(System.currentTimeMillis(), lat, lon, Double.NaN, Double.NaN);
+    }
+
+    /** {@code timeMs} is on the same clock as {@link SensorSample#receivedAtMs}. */
+    public void updatePhoneLocation(long timeMs, double lat, double lon, double speedMps, double bearingDeg) {
+        detector.updatePhoneLocation(timeMs, lat, lon, speedMps, bearingDeg);
+    }
+
+    /** Any thread. See {@link HazardDetector#getHardwareFixTimeMs()}. */
+    public long getHardwareFixTimeMs() {
+        return detector.getHardwareFixTimeMs();
+    }
+
+    /** Any thread. See {@link HazardDetector#getLastImpactMs()}. */
+    public long getLastImpactMs() {
+        return detector.getLastImpactMs();
+    }
+
+    /** Any thread. Latest speed from the selected source's fixes, NaN if unknown. */
+    public double getSpeedMps() {
+        double phone = detector.getPhoneHistory().latestSpeedMps();
+        double hardware = detector.getHardwareHistory().latestSpeedMps();
+        if (detector.isUsingPhoneGps()) return Double.isNaN(phone) ? hardware : phone;
+        return Double.isNaN(hardware) ? phone : hardware;
+    }
+
+    /** Replaces the report rate limits; held-back events stay held under the new ones. */
+    public void setRateLimits(ReportRateLimiter.Config config) {
+        detector.setRateLimiter(new ReportRateLimiter(config));
+    }
+
+    /**
+     * Any thread but the pipeline's. For the end of a session: processes the
+     * samples already offered, then hands the events the detector is still
+     * holding back (see {@link HazardDetector#drainHeld}) and every queued report
+     * to the sink. Returns once the sink has taken them all, or false if that
+     * took longer than {@code timeoutMs}. With the pipeline stopped the held
+     * events are reported on the calling thread.
+     */
+    public boolean flushHeld(long timeoutMs) {
+        if (!running.get()) {
+            for (HazardEvent event : detector.drainHeld()) {
+                stats.detections.incrementAndGet();
+                if (!deliver(event)) return false;
+            }
+            return true;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        flushRequests.add(done);
+        LockSupport.unpark(detectorThread);
+        try {
+            return done.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** Detections made while this monitor reports a stale or slow link are suppressed. */
+    public void setLinkHealthMonitor(LinkHealthMonitor linkHealth) {
+        detector.setLinkHealthMonitor(linkHealth);
+    }
+
+    /** Copies the latest coalesced values and re-arms {@link Listener#onSnapshotAvailable}. */
+    public void readSnapshot(LiveSnapshot into) {
+        snapshotPending.set(false);
+        synchronized (published) {
+            into.copyFrom(published);
+        }
+    }
+
+    public PipelineStats getStats() {
+        return stats;
+    }
+
+    private void runDetector() {
+        SensorSample s = new SensorSample();
+        while (running.get()) {
+            if (!flushRequests.isEmpty()) {
+                while (samples.poll(s)) process(s);
+                if (!dispatchHeld()) return;
+                continue;
+            }
+            if (!samples.poll(s)) {
+                detectorParked = true;
+                if (samples.size() == 0) LockSupport.parkNanos(IDLE_PARK_NS);
+                detectorParked = false;
+                continue;
+            }
+            process(s);
+        }
+    }
+
+    private void process(SensorSample s) {
+        stats.samplesProcessed.incrementAndGet();
+
+        if (s.hasAz) azWindow.add(s.receivedAtMs, s.az);
+        else azWindow.advanceTo(s.receivedAtMs);
+        if (s.receivedAtMs - lastNoiseUpdateMs >= NOISE_UPDATE_MS) {
+            lastNoiseUpdateMs = s.receivedAtMs;
+            detector.setRoadNoiseG(roadNoiseG());
+        }
+
+        HazardEvent event = detector.onSample(s);
+        if (event != null) {
+            stats.detections.incrementAndGet();
+            if (!reports.offer(event)) stats.reportsDropped.incrementAndGet();
+        } else if (detector.isSuppressed()) {
+            stats.detections.incrementAndGet();
+            stats.reportsSuppressed.incrementAndGet();
+        } else if (detector.isRateLimited()) {
+            stats.reportsRateLimited.incrementAndGet();
+        } else if (detector.isMissingFix()
+                && s.receivedAtMs - lastFixWarningMs >= FIX_WARNING_INTERVAL_MS) {
+            lastFixWarningMs = s.receivedAtMs;
+            listener.onPhoneFixMissing();
+        }
+
+        publish(s);
+    }
+
+    /**
+     * Queues the held events and a mark behind them for each flush requested.
+     * Unlike {@link #process} this waits for room: a session is ending and nothing
+     * else is coming. False if the pipeline was stopped meanwhile.
+     */
+    private boolean dispatchHeld() {
+        try {
+            for (HazardEvent event : detector.drainHeld()) {
+                stats.detections.incrementAndGet();
+                reports.put(event);
+            }
+            CountDownLatch flush;
+            while ((flush = flushRequests.poll()) != null) {
+                flushesQueued.add(flush);
+                reports.put(FLUSH_MARK);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Spread of the last minute of samples as a standard deviation: half the
+     * p16-p84 range, which the occasional pothole barely moves. NaN until the
+     * window holds enough samples.
+     */
+    private double roadNoiseG() {
+        if (azWindow.size() < MIN_NOISE_SAMPLES) return Double.NaN;
+        return (azWindow.percentile(0.84) - azWindow.percentile(0.16)) / 2;
+    }
+
+    private void publish(SensorSample s) {
+        LiveSnapshot w = working;
+        w.hasLat = s.hasLat;
+        w.hasLon = s.hasLon;
+        w.hasAz = s.hasAz;
+        w.lat = s.lat;
+        w.lon = s.lon;
+        w.az = s.az;
+        double max = azWindow.max();
+        w.azMax60s = (Double.isNaN(max) || max < 0) ? 0 : max;
+        w.samplesProcessed = stats.samplesProcessed.get();
+        w.samplesDropped = stats.samplesDropped.get();
+
+        synchronized (published) {
+            published.copyFrom(w);
+        }
+        if (snapshotPending.compareAndSet(false, true)) {
+            stats.snapshotsPublished.incrementAndGet();
+            listener.onSnapshotAvailable();
+        }
+    }
+
+    private void runDispatcher() {
+        while (running.get()) {
+            HazardEvent event;
+            try {
+                event = reports.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (event == FLUSH_MARK) {
+                CountDownLatch flush = flushesQueued.poll();
+                if (flush != null) flush.countDown();
+                continue;
+            }
+            if (!deliver(event)) return;
+        }
+    }
+
+    /** Reports one event; false if interrupted. */
+    private boolean deliver(HazardEvent event) {
+        listener.onReportStarted(event);
+        try {
+            sink.report(event);
+            stats.reportsSent.incrementAndGet();
+            listener.onReportFinished(event, null);
+        } catch (InterruptedException e) {
+            return false;
+        } catch (Exception e) {
+            stats.reportsFailed.incrementAndGet();
+            listener.onReportFinished(event, e);
+        }
+        return true;
+    }
+}
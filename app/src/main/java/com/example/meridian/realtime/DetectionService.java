@@ -0,0 +1,854 @@
+package com.example.meridian.realtime;
+
+import static android.content.ContentValues.TAG;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothAdapter;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.location.Location;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import com.example.meridian.R;
+import com.example.meridian.firebase.CellSummary;
+import com.example.meridian.firebase.FirestoreManager;
+import com.example.meridian.firebase.Geohash;
+import com.example.meridian.firebase.OutboxEntry;
+import com.example.meridian.firebase.ReportOutbox;
+import com.example.meridian.items.Pothole;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Foreground service that owns the tracker session: the supervised Bluetooth link,
+ * the detection pipeline and the phone location subscription. It outlives the
+ * real-time screen, so rotations and screen-off do not drop the connection;
+ * {@link RealTimeDataActivity} only binds to it for live values.
+ */
+public class DetectionService extends Service {
+
+    public static final String ACTION_START = "com.example.meridian.realtime.START";
+    public static final String ACTION_STOP = "com.example.meridian.realtime.STOP";
+
+    private static final String CHANNEL_ID = "meridian_detection";
+    private static final int NOTIFICATION_ID = 390;
+
+    private static final boolean OFFER_BINARY_MODE = true;
+
+    public static final String PREF_TRANSPORT = "transport";
+    public static final String PREF_GATEWAY_HOST = "gatewayHost";
+    public static final String PREF_GATEWAY_PORT = "gatewayPort";
+    public static final String PREF_CAPTURE = "captureRawStream";
+    public static final String PREF_REPORT_BURST = "reportBurst";
+    public static final String PREF_REPORTS_PER_MINUTE = "reportsPerMinute";
+    public static final String PREF_SEVERE_MAX_LATENCY_S = "severeMaxLatencySec";
+    public static final String TRANSPORT_RFCOMM = "rfcomm";
+    public static final String TRANSPORT_TCP = "tcp";
+    /** No tracker: the phone's own accelerometer, positioned by phone GPS. */
+    public static final String TRANSPORT_PHONE_IMU = "phoneImu";
+    /** {@code detectedBy} of automatic reports, by where the accelerometer was. */
+    public static final String DETECTED_BY_HARDWARE = "Hardware Device";
+    public static final String DETECTED_BY_PHONE = "Phone Sensors";
+
+    private static final String POTHOLES = "potholes";
+    /** Pothole map field: detection id to the hits it counted, for repeat detections. */
+    private static final String REPEATS = "repeatDetections";
+    private static final long MAX_SESSION_MS = TimeUnit.HOURS.toMillis(8);
+    private static final long LOCATION_CHECK_MS = 2_000L;
+    /** The sink only posts to the trip thread, so a flush normally takes milliseconds. */
+    private static final long FLUSH_TIMEOUT_MS = 1_000L;
+
+    /** Callbacks run on the main thread, except {@link #onSnapshotAvailable()}. */
+    public interface Listener {
+        void onStatus(String status);
+        void onMessage(String message, boolean important);
+        void onPhoneLocation(double lat, double lon);
+        void onSnapshotAvailable();
+    }
+
+    public class LocalBinder extends Binder {
+        public DetectionService getService() {
+            return DetectionService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    private BluetoothAdapter btAdapter;
+    private ConnectionSupervisor supervisor;
+    private CaptureJournal capture;
+    private final LinkHealthMonitor linkHealth = new LinkHealthMonitor();
+
+    private final AtomicBoolean sessionActive = new AtomicBoolean(false);
+    private final SensorStreamDecoder streamDecoder = new SensorStreamDecoder(this::handleSample);
+
+    private FirebaseFirestore db;
+    private DetectionPipeline pipeline;
+    private final SpatialDedup dedup = new SpatialDedup();
+    /** Summary cells already loaded into {@link #dedup} this session. */
+    private final Set<String> seededCells = ConcurrentHashMap.newKeySet();
+    /** RT-Location thread; the tracker position for {@link #seedDedupAround}. */
+    private final LiveSnapshot position = new LiveSnapshot();
+    /** Set when a session starts; kept after it ends for the detections it flushes. */
+    private volatile String detectedBy = DETECTED_BY_HARDWARE;
+    private TripSession trip;
+    private HandlerThread tripThread;
+    private Handler tripHandler;
+    private volatile ReportOutbox outbox;
+    private ConnectivityManager connectivity;
+    private volatile boolean networkGood;
+
+    private FusedLocationProviderClient fusedLocationClient;
+    private HandlerThread locationThread;
+    private Handler locationHandler;
+    private LocationController locationController;
+
+    private SensorManager sensorManager;
+    private HandlerThread imuThread;
+    private PhoneImuSource imuSource;
+
+    private PowerManager.WakeLock wakeLock;
+
+    private volatile Listener listener;
+    private volatile String status = "Not connected";
+
+    /**
+     * Starts a session with the chosen transport. Returns false, starting nothing,
+     * when that transport has no foreground service type the app may use yet; the
+     * caller asks for the missing permission.
+     */
+    public static boolean start(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE && foregroundTypes(context) == 0) {
+            return false;
+        }
+        Intent intent = new Intent(context, DetectionService.class).setAction(ACTION_START);
+        ContextCompat.startForegroundService(context, intent);
+        return true;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        db = FirebaseFirestore.getInstance();
+        btAdapter = BluetoothAdapter.getDefaultAdapter();
+        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
+
+        pipeline = new DetectionPipeline(this::holdForTrip, pipelineListener);
+        pipeline.setUsePhoneGps(getSharedPreferences("RealTimeSettings", MODE_PRIVATE)
+                .getBoolean("usePhoneGps", false));
+        pipeline.setLinkHealthMonitor(linkHealth);
+        pipeline.setRateLimits(loadRateLimits());
+        pipeline.start();
+
+        locationThread = new HandlerThread("RT-Location");
+        locationThread.start();
+        locationHandler = new Handler(locationThread.getLooper());
+        locationController = new LocationController(new LocationController.Config(), locationSubscriber);
+
+        sensorManager = getSystemService(SensorManager.class);
+        imuSource = new PhoneImuSource(pipeline::offer);
+
+        trip = new TripSession(loadTripConfig());
+        tripThread = new HandlerThread("RT-Trip");
+        tripThread.start();
+        tripHandler = new Handler(tripThread.getLooper());
+        // Opening the outbox replays its log from disk.
+        tripHandler.post(this::attachOutbox);
+        connectivity = getSystemService(ConnectivityManager.class);
+        connectivity.registerDefaultNetworkCallback(networkCallback);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : ACTION_START;
+
+        if (ACTION_STOP.equals(action)) {
+            stopSession();
+            ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        if (!startInForeground()) {
+            // A permission was revoked after start() checked it.
+            setStatus("Permission required");
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        startSession();
+        return START_NOT_STICKY;
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        stopSession();
+        pipeline.stop();
+        locationThread.quitSafely();
+        connectivity.unregisterNetworkCallback(networkCallback);
+        tripHandler.post(() -> {
+            ReportOutbox out = outbox;
+            if (out != null) out.setListener(null);
+        });
+        tripThread.quitSafely();
+        super.onDestroy();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        if (listener != null) listener.onStatus(status);
+    }
+
+    public DetectionPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public boolean isSessionActive() {
+        return sessionActive.get();
+    }
+
+    /** Reconnect and downtime metrics for the current session, or null before it starts. */
+    public ConnectionSupervisor getSupervisor() {
+        return supervisor;
+    }
+
+    public LinkHealthMonitor getLinkHealthMonitor() {
+        return linkHealth;
+    }
+
+    /** Phone GPS subscription and its fix rate and on-time, for the current service. */
+    public LocationController getLocationController() {
+        return locationController;
+    }
+
+    public void setUsePhoneGps(boolean usePhoneGps) {
+        pipeline.setUsePhoneGps(usePhoneGps);
+        if (sessionActive.get()) locationHandler.post(() -> updateLocation(false));
+    }
+
+    private void startSession() {
+        if (!sessionActive.compareAndSet(false, true)) return;
+
+        acquireWakeLock();
+        seededCells.clear();
+        locationHandler.post(checkLocation);
+
+        boolean phoneImu = isPhoneImuMode();
+        detectedBy = phoneImu ? DETECTED_BY_PHONE : DETECTED_BY_HARDWARE;
+        if (phoneImu) {
+            // There is no link to watch; the phone's sensors are always there.
+            pipeline.setLinkHealthMonitor(null);
+            startPhoneImu();
+            return;
+        }
+        pipeline.setLinkHealthMonitor(linkHealth);
+        supervisor = new ConnectionSupervisor(
+                createTransport(), buildHandshake(), streamDecoder, supervisorCallback);
+        supervisor.setLinkHealthMonitor(linkHealth);
+        supervisor.setCaptureJournal(openCaptureJournal());
+        supervisor.start();
+    }
+
+    private void stopSession() {
+        if (!sessionActive.compareAndSet(true, false)) return;
+
+        if (supervisor != null) supervisor.stop();
+        stopPhoneImu();
+        if (capture != null) {
+            capture.close();
+            capture = null;
+        }
+        locationHandler.removeCallbacks(checkLocation);
+        locationHandler.post(() -> {
+            locationController.stop(System.currentTimeMillis());
+            Log.d(TAG, String.format(Locale.US, "Phone GPS: %d fixes, %.1f/min, %d s at high accuracy",
+                    locationController.getFixes(),
+                    locationController.getFixesPerMinute(System.currentTimeMillis()),
+                    locationController.getGpsOnMs(System.currentTimeMillis()) / 1000));
+        });
+        // The trip is over: upload whatever it still holds. Waiting here puts the
+        // events the rate limiter kept back on the trip thread before the release,
+        // and before onDestroy stops the pipeline and the trip thread.
+        if (!pipeline.flushHeld(FLUSH_TIMEOUT_MS)) Log.w(TAG, "Held detections not flushed in time");
+        tripHandler.post(this::releaseTrip);
+        releaseWakeLock();
+        setStatus("Not connected");
+    }
+
+    private void endSession(String finalStatus) {
+        main.post(() -> {
+            stopSession();
+            setStatus(finalStatus);
+            ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+            stopSelf();
+        });
+    }
+
+    private static boolean hasBtConnectPermission(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return true;
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    static boolean hasLocationPermission(Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED
+                || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Foreground service types the chosen transport may run under, 0 if none. Each
+     * type needs its own permission on Android 14: connectedDevice takes
+     * BLUETOOTH_CONNECT for the tracker and CHANGE_NETWORK_STATE (granted at
+     * install) for the TCP gateway; phone sensors rely on location alone.
+     */
+    private static int foregroundTypes(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return 0;
+        String transport = context.getSharedPreferences("RealTimeSettings", MODE_PRIVATE)
+                .getString(PREF_TRANSPORT, TRANSPORT_RFCOMM);
+        int types = 0;
+        if (TRANSPORT_TCP.equals(transport)
+                || (!TRANSPORT_PHONE_IMU.equals(transport) && hasBtConnectPermission(context))) {
+            types |= ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE;
+        }
+        if (hasLocationPermission(context)) types |= ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION;
+        return types;
+    }
+
+    /** Phone accelerometer and its delivery rate, for phone-only sessions. */
+    public PhoneImuSource getPhoneImuSource() {
+        return imuSource;
+    }
+
+    private boolean isPhoneImuMode() {
+        return TRANSPORT_PHONE_IMU.equals(getSharedPreferences("RealTimeSettings", MODE_PRIVATE)
+                .getString(PREF_TRANSPORT, TRANSPORT_RFCOMM));
+    }
+
+    /**
+     * Registers for the accelerometer at the fastest rate the device allows, on its
+     * own thread so the main looper never sees the 200-400 events a second.
+     */
+    private void startPhoneImu() {
+        Sensor accelerometer = sensorManager != null
+                ? sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER) : null;
+        if (accelerometer == null) {
+            endSession("No accelerometer");
+            return;
+        }
+        imuThread = new HandlerThread("RT-IMU", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        imuThread.start();
+        imuSource.reset();
+        // Sensor timestamps are elapsedRealtimeNanos; samples are stamped on the wall clock.
+        imuSource.setClockOffsetMs(System.currentTimeMillis() - SystemClock.elapsedRealtime());
+        sensorManager.registerListener(imuListener, accelerometer,
+                SensorManager.SENSOR_DELAY_FASTEST, new Handler(imuThread.getLooper()));
+        setStatus("Using phone sensors");
+    }
+
+    private void stopPhoneImu() {
+        if (imuThread == null) return;
+        sensorManager.unregisterListener(imuListener);
+        imuThread.quitSafely();
+        imuThread = null;
+        Log.d(TAG, String.format(Locale.US, "Phone IMU: %d readings at %.0f Hz, %d gaps",
+                imuSource.getEvents(), imuSource.getRateHz(), imuSource.getGaps()));
+    }
+
+    private final SensorEventListener imuListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            imuSource.onAccelerometer(event.timestamp, event.values[0], event.values[1], event.values[2]);
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+    };
+
+    /** Bluetooth tracker by default; a network IMU gateway when configured in settings. */
+    private SensorTransport createTransport() {
+        SharedPreferences prefs = getSharedPreferences("RealTimeSettings", MODE_PRIVATE);
+        if (TRANSPORT_TCP.equals(prefs.getString(PREF_TRANSPORT, TRANSPORT_RFCOMM))) {
+            return new TcpTransport(prefs.getString(PREF_GATEWAY_HOST, ""),
+                    prefs.getInt(PREF_GATEWAY_PORT, TcpTransport.DEFAULT_PORT));
+        }
+        return new RfcommTransport(this, btAdapter);
+    }
+
+    /** One journal directory per session under the app's files dir, when capture is on. */
+    private CaptureJournal openCaptureJournal() {
+        SharedPreferences prefs = getSharedPreferences("RealTimeSettings", MODE_PRIVATE);
+        if (!prefs.getBoolean(PREF_CAPTURE, false)) return null;
+
+        String session = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File dir = new File(new File(getExternalFilesDir(null), "captures"), session);
+        try {
+            capture = new CaptureJournal(dir);
+            Log.i(TAG, "Capturing raw tracker stream to " + dir);
+        } catch (IOException e) {
+            Log.w(TAG, "Raw stream capture unavailable", e);
+            capture = null;
+        }
+        return capture;
+    }
+
+    private byte[] buildHandshake() {
+        String lines = (OFFER_BINARY_MODE ? BinaryFrameCodec.OFFER_LINE : "") + "START\n";
+        return lines.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private final ConnectionSupervisor.Callback supervisorCallback = new ConnectionSupervisor.Callback() {
+        @Override
+        public void onConnecting(int attempt) {
+            setStatus(attempt <= 1 ? "Connecting…" : "Reconnecting (attempt " + attempt + ")…");
+        }
+
+        @Override
+        public void onConnected(String name, boolean reconnect) {
+            if (reconnect) {
+                setStatus("Reconnected (" + supervisor.getReconnectCount() + " reconnects, "
+                        + TimeUnit.MILLISECONDS.toSeconds(supervisor.getTotalDowntimeMs()) + " s down)");
+            } else {
+                postMessage("Connected to " + name, false);
+                setStatus("Reading…");
+            }
+        }
+
+        @Override
+        public void onDisconnected(Exception cause) {
+            Log.w("BT", "Link dropped", cause);
+            setStatus("Disconnected, retrying…");
+        }
+
+        @Override
+        public void onGaveUp(Exception cause) {
+            Log.e("BT", "Connection abandoned", cause);
+            String reason = cause.getMessage() != null ? cause.getMessage() : "Connection failed";
+            endSession(cause instanceof SecurityException ? "Permission denied" : reason);
+        }
+    };
+
+    private void handleSample(SensorSample sample) {
+        sample.receivedAtMs = System.currentTimeMillis();
+        linkHealth.onSample(sample.receivedAtMs);
+        pipeline.offer(sample);
+    }
+
+    /** Pipeline sink: queues the detection on the trip thread. */
+    private void holdForTrip(HazardEvent event) {
+        tripHandler.post(() -> queueDetection(event));
+    }
+
+    /**
+     * Trip thread. Writes the detection to the outbox at once, held for as long as
+     * the trip policy wants it batched.
+     */
+    private void queueDetection(HazardEvent event) {
+        long now = System.currentTimeMillis();
+        long holdUntil = sessionActive.get() ? trip.holdUntilMs(event, now, networkGood) : now;
+        try {
+            List<ReportOutbox.Write> writes = new ArrayList<>(2);
+            addWrites(event, writes);
+            FirestoreManager.getOutbox(this).enqueueAll(writes, holdUntil);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not queue detection", e);
+            postMessage("Auto-report failed", false);
+        }
+    }
+
+    /** Trip thread. Sends everything the trip is holding. */
+    private void releaseTrip() {
+        trip.released();
+        ReportOutbox out = outbox;
+        if (out != null) out.releaseHeld();
+    }
+
+    /**
+     * A new pothole document and its map summary entry, or an update to the pothole
+     * this detection repeats. Repeats are recorded in the {@value #REPEATS} map, one
+     * entry per detection; the total is {@code detectionCount} plus its values. A
+     * severity raise rewrites the summary entry too; the outbox commits or drops the
+     * two together, so if the pothole was deleted since, its pin stays gone.
+     */
+    private void addWrites(HazardEvent event, List<ReportOutbox.Write> writes) {
+        String severity = Pothole.severityFor(event.az);
+        int rank = Pothole.severityRank(severity);
+
+        SpatialDedup.Entry near = dedup.findNear(event.lat, event.lon, event.timeMs);
+        if (near != null) {
+            Map<String, Object> updates = new HashMap<>();
+            // Keyed by a fresh id rather than incremented, so a batch sent twice counts once.
+            updates.put(REPEATS + "." + ReportOutbox.newDocumentId(), (long) event.detections);
+            updates.put("lastDetectedAt", new OutboxEntry.TimeValue(event.timeMs));
+            boolean raised = rank > near.severityRank;
+            if (raised) {
+                updates.put("severity", severity);
+                if (event.waveform != null) updates.put("waveform", event.waveform);
+            }
+            dedup.remember(near.id, near.lat, near.lon, event.timeMs, rank, near.known);
+            writes.add(new ReportOutbox.Write(OutboxEntry.OP_UPDATE, POTHOLES, near.id, updates));
+            if (raised) writes.add(CellSummary.entryWrite(near.id, near.lat, near.lon, severity, near.status));
+            return;
+        }
+
+        String id = ReportOutbox.newDocumentId();
+        Map<String, Object> pothole = new HashMap<>();
+        pothole.put("id", id);
+        pothole.put("severity", severity);
+        pothole.put("status", "Reported");
+        pothole.put("detectedBy", detectedBy);
+        pothole.put("timestamp", new OutboxEntry.TimeValue(event.timeMs));
+        pothole.put("location", new OutboxEntry.GeoValue(event.lat, event.lon));
+        pothole.put(Geohash.FIELD, Geohash.encode(event.lat, event.lon, Geohash.STORED_PRECISION));
+        pothole.put("followers", new ArrayList<String>());
+        pothole.put("detectionCount", (long) event.detections);
+        if (event.waveform != null) pothole.put("waveform", event.waveform);
+        dedup.remember(id, event.lat, event.lon, event.timeMs, rank, false);
+        writes.add(new ReportOutbox.Write(OutboxEntry.OP_SET, POTHOLES, id, pothole));
+        writes.add(CellSummary.entryWrite(id, event.lat, event.lon, severity, "Reported"));
+    }
+
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities caps) {
+            boolean good = caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+            if (good != networkGood) {
+                networkGood = good;
+                // Back online: what was held offline has waited long enough.
+                if (good) tripHandler.post(DetectionService.this::releaseTrip);
+            }
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+            networkGood = false;
+        }
+    };
+
+    private TripSession.Config loadTripConfig() {
+        SharedPreferences prefs = getSharedPreferences("RealTimeSettings", MODE_PRIVATE);
+        TripSession.Config c = new TripSession.Config();
+        c.severeMaxLatencyMs = prefs.getInt(PREF_SEVERE_MAX_LATENCY_S,
+                (int) (c.severeMaxLatencyMs / 1000)) * 1000L;
+        return c;
+    }
+
+    /** Batching policy for this service's detections; the outbox holds the detections. */
+    public TripSession getTripSession() {
+        return trip;
+    }
+
+    private ReportRateLimiter.Config loadRateLimits() {
+        SharedPreferences prefs = getSharedPreferences("RealTimeSettings", MODE_PRIVATE);
+        ReportRateLimiter.Config c = new ReportRateLimiter.Config();
+        c.deviceBurst = prefs.getInt(PREF_REPORT_BURST, (int) c.deviceBurst);
+        c.devicePerMinute = prefs.getInt(PREF_REPORTS_PER_MINUTE, (int) c.devicePerMinute);
+        return c;
+    }
+
+    /** Outbox with this service's listener attached, or null until its log is open. */
+    public ReportOutbox getOutbox() {
+        return outbox;
+    }
+
+    /** Trip thread. */
+    private void attachOutbox() {
+        try {
+            ReportOutbox out = FirestoreManager.getOutbox(this);
+            out.setListener(outboxListener);
+            outbox = out;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open the report outbox", e);
+        }
+    }
+
+    private final ReportOutbox.Listener outboxListener = new ReportOutbox.Listener() {
+        @Override
+        public void onFlushed(List<OutboxEntry> batch) {
+            ReportOutbox out = outbox;
+            if (out == null) return;
+            Log.d(TAG, "Outbox flushed " + batch.size() + " writes in " + out.getLastFlushLatencyMs()
+                    + " ms, " + out.getQueueDepth() + " still queued");
+        }
+
+        @Override
+        public void onDropped(OutboxEntry entry, Exception cause) {
+            Log.w(TAG, "Outbox dropped write to " + entry.documentId, cause);
+            // An update was rejected because the pothole is gone; stop merging into it.
+            if (entry.op == OutboxEntry.OP_UPDATE) dedup.forget(entry.documentId);
+        }
+    };
+
+    /**
+     * Seeds the duplicate filter with the potholes on the map in the summary cells
+     * around a position: the cell holding it and its eight neighbours, about 15 km
+     * across. Each cell is read once per session, so calling this on every fix only
+     * costs reads when the trip enters new ground.
+     */
+    private void seedDedupAround(double lat, double lon) {
+        double h = Geohash.cellHeightDeg(CellSummary.PRECISION);
+        double w = Geohash.cellWidthDeg(CellSummary.PRECISION);
+        for (String cell : Geohash.cover(lat - h, lon - w, lat + h, lon + w, CellSummary.PRECISION)) {
+            if (!seededCells.add(cell)) continue;
+            db.collection(CellSummary.COLLECTION).document(cell).get().addOnSuccessListener(doc -> {
+                Object entries = doc.get(CellSummary.FIELD_ENTRIES);
+                if (!(entries instanceof Map)) return;
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) entries).entrySet()) {
+                    CellSummary.Entry p;
+                    try {
+                        p = CellSummary.decode(cell, (String) e.getKey(), String.valueOf(e.getValue()));
+                    } catch (IllegalArgumentException bad) {
+                        continue;
+                    }
+                    if ("Repaired".equals(p.status)) continue;
+                    dedup.remember(p.id, p.lat, p.lon, 0, Pothole.severityRank(p.severity), true)
+                            .status = p.status;
+                }
+                Log.d(TAG, "Duplicate filter seeded from " + cell + ", " + dedup.size() + " potholes");
+            }).addOnFailureListener(e -> {
+                // Try this cell again on a later fix.
+                seededCells.remove(cell);
+                Log.w(TAG, "Could not load potholes in " + cell, e);
+            });
+        }
+    }
+
+    private final DetectionPipeline.Listener pipelineListener = new DetectionPipeline.Listener() {
+        @Override
+        public void onSnapshotAvailable() {
+            Listener l = listener;
+            if (l != null) l.onSnapshotAvailable();
+        }
+
+        @Override
+        public void onPhoneFixMissing() {
+            locationHandler.post(() -> updateLocation(true));
+            postMessage("Waiting for phone GPS signal...", false);
+        }
+
+        @Override
+        public void onReportStarted(HazardEvent event) {
+            setStatus("Reporting pothole…");
+        }
+
+        @Override
+        public void onReportFinished(HazardEvent event, Exception error) {
+            if (error == null) {
+                String severity = Pothole.severityFor(event.az);
+                postMessage("Pothole detected (severity: " + severity + ")", true);
+                setStatus("Detected. Monitoring...");
+            } else {
+                Log.e("RT", "Failed to write pothole", error);
+                setStatus("Report failed");
+                postMessage("Auto-report failed", false);
+            }
+        }
+    };
+
+    private final Runnable checkLocation = new Runnable() {
+        @Override
+        public void run() {
+            if (!sessionActive.get()) return;
+            updateLocation(false);
+            locationHandler.postDelayed(this, LOCATION_CHECK_MS);
+        }
+    };
+
+    /** RT-Location thread. Feeds the controller what it needs to pick a subscription. */
+    private void updateLocation(boolean fixDemanded) {
+        if (!sessionActive.get()) return;
+        long now = System.currentTimeMillis();
+        long hardwareFix = pipeline.getHardwareFixTimeMs();
+        long lastImpact = pipeline.getLastImpactMs();
+        locationController.update(now, pipeline.isUsingPhoneGps(),
+                hardwareFix == Long.MIN_VALUE ? Long.MAX_VALUE : now - hardwareFix,
+                pipeline.getSpeedMps(),
+                lastImpact == Long.MIN_VALUE ? Long.MAX_VALUE : now - lastImpact,
+                fixDemanded);
+        pipeline.readSnapshot(position);
+        if (position.hasLat && position.hasLon) seedDedupAround(position.lat, position.lon);
+    }
+
+    /** Runs on the RT-Location thread; re-requesting with the same callback replaces the request. */
+    private final LocationController.Subscriber locationSubscriber = new LocationController.Subscriber() {
+        @Override
+        public void request(int priority, long intervalMs) {
+            if (!hasLocationPermission(DetectionService.this)) {
+                Log.w(TAG, "Location permission not granted. Phone GPS will be unavailable for reporting.");
+                return;
+            }
+            LocationRequest locationRequest = new LocationRequest.Builder(
+                    priority == LocationController.HIGH_ACCURACY
+                            ? Priority.PRIORITY_HIGH_ACCURACY : Priority.PRIORITY_BALANCED_POWER_ACCURACY,
+                    intervalMs)
+                    .setMinUpdateIntervalMillis(intervalMs / 2)
+                    .build();
+            try {
+                fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, locationThread.getLooper());
+            } catch (SecurityException se) {
+                Log.w(TAG, "Location permission revoked", se);
+            }
+        }
+
+        @Override
+        public void remove() {
+            fusedLocationClient.removeLocationUpdates(locationCallback);
+        }
+    };
+
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult locationResult) {
+            for (Location location : locationResult.getLocations()) {
+                if (location == null) continue;
+                locationController.onFix();
+                double lat = location.getLatitude();
+                double lon = location.getLongitude();
+                pipeline.updatePhoneLocation(fixTimeMs(location), lat, lon,
+                        location.hasSpeed() ? location.getSpeed() : Double.NaN,
+                        location.hasBearing() ? location.getBearing() : Double.NaN);
+                seedDedupAround(lat, lon);
+                main.post(() -> {
+                    Listener l = listener;
+                    if (l != null) l.onPhoneLocation(lat, lon);
+                });
+            }
+        }
+    };
+
+    /**
+     * When the fix was taken, on the wall clock samples are stamped with. Uses the
+     * monotonic fix age rather than {@link Location#getTime()}, which is GPS time.
+     */
+    private static long fixTimeMs(Location location) {
+        long ageNanos = SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos();
+        return System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(Math.max(0, ageNanos));
+    }
+
+    private void setStatus(String s) {
+        status = s;
+        main.post(() -> {
+            Listener l = listener;
+            if (l != null) l.onStatus(s);
+            if (sessionActive.get()) updateNotification(s);
+        });
+    }
+
+    private void postMessage(String message, boolean important) {
+        main.post(() -> {
+            Listener l = listener;
+            if (l != null) l.onMessage(message, important);
+            else if (important) updateNotification(message);
+        });
+    }
+
+    private void acquireWakeLock() {
+        if (wakeLock == null) {
+            PowerManager pm = (PowerManager) getSystemService(POWER_SERVICE);
+            wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Meridian:DetectionSession");
+            wakeLock.setReferenceCounted(false);
+        }
+        wakeLock.acquire(MAX_SESSION_MS);
+    }
+
+    private void releaseWakeLock() {
+        if (wakeLock != null && wakeLock.isHeld()) wakeLock.release();
+    }
+
+    /** Returns false, leaving the service in the background, if Android 14+ would reject every type. */
+    private boolean startInForeground() {
+        int types = foregroundTypes(this);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE && types == 0) return false;
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, buildNotification(status), types);
+        return true;
+    }
+
+    private void updateNotification(String text) {
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) manager.notify(NOTIFICATION_ID, buildNotification(text));
+    }
+
+    private Notification buildNotification(String text) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_ID,
+                    "Pothole Detection",
+                    NotificationManager.IMPORTANCE_LOW
+            );
+            channel.setDescription("Shown while the tracker session is running");
+            getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+
+        int piFlags = PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE;
+        PendingIntent open = PendingIntent.getActivity(this, 0,
+                new Intent(this, RealTimeDataActivity.class), piFlags);
+        PendingIntent stop = PendingIntent.getService(this, 1,
+                new Intent(this, DetectionService.class).setAction(ACTION_STOP), piFlags);
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_notifications_black_24dp)
+                .setContentTitle("Meridian pothole detection")
+                .setContentText(text)
+                .setContentIntent(open)
+                .addAction(0, "Stop", stop)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .build();
+    }
+}
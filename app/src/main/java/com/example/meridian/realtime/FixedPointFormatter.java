@@ -0,0 +1,67 @@
+package com.example.meridian.realtime;
+
+/**
+ * Writes fixed-point decimals into a caller-owned char buffer, so per-frame text
+ * updates do not go through String.format.
+ */
+public final class FixedPointFormatter {
+
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L,
+            10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+
+    private FixedPointFormatter() {}
+
+    /** Appends {@code text} at {@code pos} and returns the new end position. */
+    public static int append(char[] buf, int pos, String text) {
+        int n = text.length();
+        text.getChars(0, n, buf, pos);
+        return pos + n;
+    }
+
+    /**
+     * Appends {@code value} rounded half-up to {@code decimals} places (0..9) and
+     * returns the new end position. Non-finite or out-of-range values print "--".
+     */
+    public static int append(char[] buf, int pos, double value, int decimals) {
+        if (decimals < 0 || decimals >= POW10.length) throw new IllegalArgumentException("decimals");
+        double scaled = Math.abs(value) * POW10[decimals];
+        if (Double.isNaN(value) || Double.isInfinite(value) || scaled >= 9e17) {
+            buf[pos++] = '-';
+            buf[pos++] = '-';
+            return pos;
+        }
+
+        long units = (long) (scaled + 0.5);
+        if (value < 0 && units != 0) buf[pos++] = '-';
+
+        long whole = units / POW10[decimals];
+        long frac = units % POW10[decimals];
+
+        pos = appendLong(buf, pos, whole);
+        if (decimals > 0) {
+            buf[pos++] = '.';
+            for (int d = decimals - 1; d >= 0; d--) {
+                buf[pos + d] = (char) ('0' + (frac % 10));
+                frac /= 10;
+            }
+            pos += decimals;
+        }
+        return pos;
+    }
+
+    public static int appendLong(char[] buf, int pos, long v) {
+        if (v < 0) {
+            buf[pos++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) digits++;
+        for (int i = digits - 1; i >= 0; i--) {
+            buf[pos + i] = (char) ('0' + (v % 10));
+            v /= 10;
+        }
+        return pos + digits;
+    }
+}
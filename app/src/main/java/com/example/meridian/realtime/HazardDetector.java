@@ -0,0 +1,270 @@
+package com.example.meridian.realtime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides, sample by sample, whether a report should be made and where. Runs on
+ * the detector thread only; phone fixes and the GPS-source preference are written
+ * from other threads and read here. Impacts are found by {@link ImpactDetector};
+ * positions come from {@link LocationHistory}, aligned to the time of the impact's
+ * peak; how often impacts become reports is up to the {@link ReportRateLimiter}.
+ */
+public final class HazardDetector {
+
+    /** Raw level that corresponds to the default impact trigger over a 1 g baseline. */
+    public static final double REPORT_THRESHOLD_AZ = 1.25;
+
+    public static final String SOURCE_PHONE = "Phone";
+    public static final String SOURCE_HARDWARE = "Hardware";
+
+    /** Samples kept either side of an event's peak. */
+    public static final long WAVEFORM_HALF_WINDOW_MS = 1_000L;
+
+    /**
+     * A tracker position unchanged for longer than this no longer places reports;
+     * phone fixes are used instead.
+     */
+    public static final long HARDWARE_FIX_FRESH_MS = 5_000L;
+    /** A fallback position further than this in time from the impact is not used. */
+    public static final long FALLBACK_FIX_MAX_AGE_MS = 5_000L;
+
+    private static final int HISTORY_CAPACITY = 64;
+
+    private volatile boolean usePhoneGps;
+    private final LocationHistory phoneHistory = new LocationHistory(HISTORY_CAPACITY);
+    private final LocationHistory hardwareHistory = new LocationHistory(HISTORY_CAPACITY);
+    private final LocationHistory.Position position = new LocationHistory.Position();
+    private double lastHardwareLat = Double.NaN;
+    private double lastHardwareLon = Double.NaN;
+    private volatile long lastHardwareFixMs = Long.MIN_VALUE;
+    private volatile long lastImpactMs = Long.MIN_VALUE;
+
+    private volatile LinkHealthMonitor linkHealth;
+    private volatile ReportRateLimiter pendingLimiter;
+    private ReportRateLimiter limiter = new ReportRateLimiter();
+
+    private final ImpactDetector impacts = new ImpactDetector();
+    private final WaveformRecorder waveform = new WaveformRecorder();
+    /** Completed impact waiting for the rest of its waveform window. */
+    private HazardEvent awaitingWaveform;
+    /** The link stayed reportable for every sample of the open impact. */
+    private boolean impactLinkOk;
+    private boolean missingFix;
+    private boolean rateLimited;
+    private boolean suppressed;
+
+    private long skippedNoFix;
+
+    /**
+     * Impacts seen while this monitor reports a stale or slow link are suppressed
+     * before they reach the rate limiter, so they do not spend its tokens.
+     */
+    public void setLinkHealthMonitor(LinkHealthMonitor linkHealth) {
+        this.linkHealth = linkHealth;
+    }
+
+    /**
+     * Any thread; takes effect on the next sample. Events the old limiter was
+     * holding carry over to the new one.
+     */
+    public void setRateLimiter(ReportRateLimiter limiter) {
+        this.pendingLimiter = limiter;
+    }
+
+    /** Detector thread only. */
+    public ReportRateLimiter getRateLimiter() {
+        return limiter;
+    }
+
+    /** Detector thread only. Road noise in g, see {@link ImpactDetector#setNoiseG}. */
+    public void setRoadNoiseG(double noiseG) {
+        impacts.setNoiseG(noiseG);
+    }
+
+    public void setUsePhoneGps(boolean usePhoneGps) {
+        this.usePhoneGps = usePhoneGps;
+    }
+
+    public boolean isUsingPhoneGps() {
+        return usePhoneGps;
+    }
+
+    /** Any thread. {@code speedMps}/{@code bearingDeg} may be NaN. */
+    public void updatePhoneLocation(long timeMs, double lat, double lon, double speedMps, double bearingDeg) {
+        phoneHistory.add(timeMs, lat, lon, speedMps, bearingDeg);
+    }
+
+    public LocationHistory getPhoneHistory() {
+        return phoneHistory;
+    }
+
+    public LocationHistory getHardwareHistory() {
+        return hardwareHistory;
+    }
+
+    /**
+     * Any thread. When the tracker's position last changed; a tracker that keeps
+     * repeating a frozen fix does not keep it fresh. {@code Long.MIN_VALUE} if never.
+     */
+    public long getHardwareFixTimeMs() {
+        return lastHardwareFixMs;
+    }
+
+    /** Any thread. Peak time of the last completed impact, {@code Long.MIN_VALUE} if none. */
+    public long getLastImpactMs() {
+        return lastImpactMs;
+    }
+
+    /**
+     * Returns an event to report, or null. Each impact yields one event, once the
+     * waveform window after its peak has been recorded (or the next impact ends).
+     * Sets {@link #isMissingFix()} when a fix blocked an impact, {@link #isSuppressed()}
+     * when the link was unhealthy at any point during it and {@link #isRateLimited()}
+     * when the limiter held an event back. The position is taken from the chosen
+     * source's history at the time of the peak. Events the limiter held back earlier
+     * come out of here too, once it lets them go.
+     */
+    public HazardEvent onSample(SensorSample s) {
+        missingFix = false;
+        rateLimited = false;
+        suppressed = false;
+        swapLimiter();
+        if (s.hasLat && s.hasLon) recordHardwareFix(s);
+
+        long now = s.receivedAtMs;
+        if (!s.hasAz) return releaseHeld(now);
+        waveform.record(now, s.az);
+
+        boolean wasInImpact = impacts.isInImpact();
+        boolean completed = impacts.onSample(now, s.az);
+        boolean completedLinkOk = impactLinkOk;
+        if (impacts.isInImpact()) {
+            // A sample after a gap can close one impact and open the next.
+            if (!wasInImpact || completed) impactLinkOk = true;
+            if (impactLinkOk) impactLinkOk = linkReportable(now);
+        }
+        HazardEvent candidate = null;
+        if (completed) {
+            lastImpactMs = impacts.getImpact().peakMs;
+            candidate = locate(impacts.getImpact(), completedLinkOk);
+        }
+
+        HazardEvent captured = null;
+        if (awaitingWaveform != null
+                && (candidate != null || now >= awaitingWaveform.timeMs + WAVEFORM_HALF_WINDOW_MS)) {
+            captured = capture(awaitingWaveform);
+            awaitingWaveform = null;
+        }
+        if (candidate != null) {
+            if (captured == null && now >= candidate.timeMs + WAVEFORM_HALF_WINDOW_MS) {
+                captured = capture(candidate);
+            } else {
+                awaitingWaveform = candidate;
+            }
+        }
+        if (captured == null) return releaseHeld(now);
+
+        HazardEvent event = limiter.admit(captured);
+        rateLimited = event == null;
+        return event;
+    }
+
+    /**
+     * Positions a completed impact; null if no fix or the link was unhealthy. With
+     * the tracker selected but its fixes stale, phone fixes stand in. A fallback
+     * position must be within {@link #FALLBACK_FIX_MAX_AGE_MS} of the impact.
+     */
+    private HazardEvent locate(ImpactDetector.Impact impact, boolean linkOk) {
+        String source;
+        boolean hardwareFresh = impact.peakMs - lastHardwareFixMs <= HARDWARE_FIX_FRESH_MS;
+        if (!usePhoneGps && hardwareFresh && hardwareHistory.positionAt(impact.peakMs, position)) {
+            source = SOURCE_HARDWARE;
+        } else if (phoneHistory.positionAt(impact.peakMs, position)
+                && position.ageMs <= FALLBACK_FIX_MAX_AGE_MS) {
+            source = SOURCE_PHONE;
+        } else if (!usePhoneGps && hardwareHistory.positionAt(impact.peakMs, position)
+                && position.ageMs <= FALLBACK_FIX_MAX_AGE_MS) {
+            source = SOURCE_HARDWARE;
+        } else {
+            skippedNoFix++;
+            missingFix = true;
+            return null;
+        }
+        if (!linkOk) {
+            suppressed = true;
+            return null;
+        }
+        return new HazardEvent(impact.peakMs, position.lat, position.lon, impact.peakAz, source,
+                1, impact.getDurationMs(), impact.energy, null);
+    }
+
+    /**
+     * Detector thread only. Events still held back, for the end of a session: an
+     * impact waiting for the rest of its waveform and whatever the rate limiter
+     * kept. They skip the limits.
+     */
+    public List<HazardEvent> drainHeld() {
+        swapLimiter();
+        List<HazardEvent> out = new ArrayList<>(limiter.getPendingCells() + 1);
+        if (awaitingWaveform != null) {
+            out.add(capture(awaitingWaveform));
+            awaitingWaveform = null;
+        }
+        out.addAll(limiter.drainPending());
+        return out;
+    }
+
+    private void swapLimiter() {
+        ReportRateLimiter next = pendingLimiter;
+        if (next == null) return;
+        pendingLimiter = null;
+        for (HazardEvent e : limiter.drainPending()) next.hold(e);
+        limiter = next;
+    }
+
+    private HazardEvent capture(HazardEvent e) {
+        return e.withWaveform(waveform.encode(e.timeMs, WAVEFORM_HALF_WINDOW_MS));
+    }
+
+    private HazardEvent releaseHeld(long now) {
+        return limiter.getPendingCells() > 0 && linkReportable(now) ? limiter.release(now) : null;
+    }
+
+    private boolean linkReportable(long nowMs) {
+        LinkHealthMonitor health = linkHealth;
+        return health == null || health.isReportable(nowMs);
+    }
+
+    /**
+     * Trackers repeat the last GPS fix on every line, and keep repeating it when they
+     * lose the sky; only changes are new fixes.
+     */
+    private void recordHardwareFix(SensorSample s) {
+        if (s.lat == lastHardwareLat && s.lon == lastHardwareLon) return;
+        lastHardwareFixMs = s.receivedAtMs;
+        lastHardwareLat = s.lat;
+        lastHardwareLon = s.lon;
+        hardwareHistory.add(s.receivedAtMs, s.lat, s.lon, Double.NaN, Double.NaN);
+    }
+
+    public boolean isMissingFix() {
+        return missingFix;
+    }
+
+    public boolean isSuppressed() {
+        return suppressed;
+    }
+
+    public boolean isRateLimited() {
+        return rateLimited;
+    }
+
+    public ImpactDetector getImpactDetector() {
+        return impacts;
+    }
+
+    public long getSkippedNoFix() {
+        return skippedNoFix;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.meridian.realtime;
+
+/** A detection that should become a pothole report. */
+public final class HazardEvent {
+
+    /** Time of the impact's peak. */
+    public final long timeMs;
+    public final double lat;
+    public final double lon;
+    /** Peak on the raw scale, gravity included, as the severity cutoffs expect. */
+    public final double az;
+    public final String locationSource;
+    /** Detections this report stands for; more than one when rate-limited events were folded in. */
+    public final int detections;
+    public final long durationMs;
+    /** Squared deviation from the gravity baseline integrated over the impact, in g^2 s. */
+    public final double energy;
+    /** Trace around the peak from {@link WaveformCodec}, or null. */
+    public final byte[] waveform;
+
+    public HazardEvent(long timeMs, double lat, double lon, double az, String locationSource) {
+        this(timeMs, lat, lon, az, locationSource, 1, 0, 0, null);
+    }
+
+    public HazardEvent(long timeMs, double lat, double lon, double az, String locationSource,
+                       int detections, long durationMs, double energy, byte[] waveform) {
+        this.timeMs = timeMs;
+        this.lat = lat;
+        this.lon = lon;
+        this.az = az;
+        this.locationSource = locationSource;
+        this.detections = detections;
+        this.durationMs = durationMs;
+        this.energy = energy;
+        this.waveform = waveform;
+    }
+
+    public HazardEvent withDetections(int detections) {
+        return new HazardEvent(timeMs, lat, lon, az, locationSource, detections, durationMs, energy, waveform);
+    }
+
+    public HazardEvent withWaveform(byte[] waveform) {
+        return new HazardEvent(timeMs, lat, lon, az, locationSource, detections, durationMs, energy, waveform);
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.meridian.realtime;
+
+/**
+ * Streaming impact detector for the vertical acceleration channel. Per sample it
+ * does a handful of arithmetic operations and keeps no buffers:
+ *
+ * <ol>
+ *   <li>Gravity and slow tilt are tracked by an exponential moving average whose
+ *       time constant follows the real sample spacing; subtracting it is a
+ *       first-order high-pass filter. The baseline is frozen during an impact so
+ *       the impact does not drag it along.</li>
+ *   <li>An impact starts when the deviation rises above {@code triggerG}; a dip
+ *       alone (the wheel dropping away, cresting a rise) never starts one. It ends
+ *       once the deviation has stayed within {@code releaseG} either way for
+ *       {@code quietMs} (hysteresis), or
+ *       after {@code maxImpactMs}, or when samples stop arriving. On a rough road
+ *       both levels rise with the noise given to {@link #setNoiseG}.</li>
+ *   <li>After an impact no new one can start for {@code refractoryMs}, so the
+ *       ringing of one pothole is not reported as several.</li>
+ * </ol>
+ *
+ * One {@link Impact} is produced per impact, with its peak, duration and energy.
+ * Not thread-safe.
+ */
+public final class ImpactDetector {
+
+    public static final class Config {
+        public double initialBaselineG = 1.0;
+        public long baselineTauMs = 2_000L;
+        public double triggerG = 0.25;
+        public double releaseG = 0.15;
+        public long quietMs = 100L;
+        public long refractoryMs = 500L;
+        public long maxImpactMs = 1_000L;
+        /** A longer gap between samples closes the open impact. */
+        public long maxGapMs = 250L;
+        /** The trigger is at least this many times the road noise from {@link #setNoiseG}. */
+        public double noiseFactor = 5.0;
+    }
+
+    /** Reused result holder, overwritten by the next completed impact. */
+    public static final class Impact {
+        public long startMs;
+        public long endMs;
+        public long peakMs;
+        /** Largest upward deviation from the baseline. */
+        public double peakG;
+        /** Baseline plus the peak: the peak on the raw scale, gravity included. */
+        public double peakAz;
+        /** Integral of the squared deviation, in g^2 s. */
+        public double energy;
+        public int samples;
+
+        public long getDurationMs() {
+            return endMs - startMs;
+        }
+    }
+
+    private final Config config;
+    private final Impact open = new Impact();
+    private final Impact completed = new Impact();
+
+    private double baseline;
+    private double triggerG;
+    private double releaseG;
+    private long lastMs = Long.MIN_VALUE;
+    private boolean inImpact;
+    private long quietSinceMs = -1;
+    private long refractoryUntilMs = Long.MIN_VALUE;
+
+    private long samples;
+    private long impacts;
+
+    public ImpactDetector() {
+        this(new Config());
+    }
+
+    public ImpactDetector(Config config) {
+        if (config.releaseG > config.triggerG) throw new IllegalArgumentException("releaseG > triggerG");
+        this.config = config;
+        this.baseline = config.initialBaselineG;
+        this.triggerG = config.triggerG;
+        this.releaseG = config.releaseG;
+    }
+
+    /**
+     * Road noise (a standard deviation, in g) measured over a longer window by the
+     * caller. Raises the trigger to {@code noiseFactor} times it, and the release
+     * level in proportion; never lowers them below the configured ones.
+     */
+    public void setNoiseG(double noiseG) {
+        double t = config.triggerG;
+        if (noiseG > 0 && !Double.isNaN(noiseG)) t = Math.max(t, config.noiseFactor * noiseG);
+        triggerG = t;
+        releaseG = config.releaseG * (t / config.triggerG);
+    }
+
+    /** The trigger level in use, after noise adaptation. */
+    public double getTriggerG() {
+        return triggerG;
+    }
+
+    /**
+     * Feeds one sample. Returns true when an impact has just been completed; read it
+     * with {@link #getImpact()}. Samples must be in time order.
+     */
+    public boolean onSample(long timeMs, double az) {
+        samples++;
+        long dt = lastMs == Long.MIN_VALUE ? 0 : timeMs - lastMs;
+        boolean done = false;
+        if (inImpact && dt > config.maxGapMs) {
+            // The impact ended somewhere in the gap.
+            finish(lastMs);
+            done = true;
+            dt = 0;
+        }
+        lastMs = timeMs;
+
+        double dev = az - baseline;
+        double mag = Math.abs(dev);
+
+        if (inImpact) {
+            open.energy += dev * dev * (dt / 1000.0);
+            open.samples++;
+            if (dev > open.peakG) peak(timeMs, dev);
+            if (mag < releaseG) {
+                if (quietSinceMs < 0) quietSinceMs = timeMs;
+                if (timeMs - quietSinceMs >= config.quietMs) {
+                    finish(quietSinceMs);
+                    return true;
+                }
+            } else {
+                quietSinceMs = -1;
+            }
+            if (timeMs - open.startMs >= config.maxImpactMs) {
+                finish(timeMs);
+                return true;
+            }
+            return false;
+        }
+
+        if (dev >= triggerG && timeMs >= refractoryUntilMs) {
+            inImpact = true;
+            quietSinceMs = -1;
+            open.startMs = timeMs;
+            open.energy = dev * dev * (dt / 1000.0);
+            open.samples = 1;
+            open.peakG = 0;
+            peak(timeMs, dev);
+            return done;
+        }
+
+        if (dt > 0) baseline += (az - baseline) * (dt / (double) (config.baselineTauMs + dt));
+        return done;
+    }
+
+    /** The impact most recently completed. */
+    public Impact getImpact() {
+        return completed;
+    }
+
+    public boolean isInImpact() {
+        return inImpact;
+    }
+
+    public double getBaseline() {
+        return baseline;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getImpacts() {
+        return impacts;
+    }
+
+    private void peak(long timeMs, double dev) {
+        open.peakMs = timeMs;
+        open.peakG = dev;
+        open.peakAz = baseline + dev;
+    }
+
+    private void finish(long endMs) {
+        inImpact = false;
+        open.endMs = Math.max(endMs, open.startMs);
+        refractoryUntilMs = open.endMs + config.refractoryMs;
+        impacts++;
+        completed.startMs = open.startMs;
+        completed.endMs = open.endMs;
+        completed.peakMs = open.peakMs;
+        completed.peakG = open.peakG;
+        completed.peakAz = open.peakAz;
+        completed.energy = open.energy;
+        completed.samples = open.samples;
+    }
+}
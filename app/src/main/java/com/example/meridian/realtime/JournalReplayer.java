@@ -0,0 +1,115 @@
+package com.example.meridian.realtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays a {@link CaptureJournal} back through a decoder, either as fast as
+ * possible or paced to the recorded receive times. Samples decoded during a
+ * record are stamped with that record's time, so a replay makes the same
+ * detections as the original drive.
+ */
+public final class JournalReplayer {
+
+    /** 0 replays as fast as possible; 1 at recorded speed; 2 twice as fast. */
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+    public static final double ORIGINAL_SPEED = 1;
+
+    public static final class Stats {
+        public int segments;
+        public long records;
+        public long bytes;
+        public long resets;
+        public long samples;
+        public long firstTimeMs = -1;
+        public long lastTimeMs = -1;
+        public long elapsedNanos;
+    }
+
+    private final File dir;
+    private final SampleListener downstream;
+    private final SensorStreamDecoder decoder;
+    private long recordTimeMs;
+    private long samples;
+
+    /** Samples reach {@code downstream} with {@code receivedAtMs} set to their record time. */
+    public JournalReplayer(File dir, SampleListener downstream) {
+        this.dir = dir;
+        this.downstream = downstream;
+        this.decoder = new SensorStreamDecoder(this::onSample);
+    }
+
+    public SensorStreamDecoder getDecoder() {
+        return decoder;
+    }
+
+    public Stats replay(double speed) throws IOException, InterruptedException {
+        Stats stats = new Stats();
+        samples = 0;
+        decoder.reset();
+        byte[] buf = new byte[4096];
+        long startNanos = System.nanoTime();
+
+        for (File f : CaptureJournal.listSegments(dir)) {
+            MappedByteBuffer seg;
+            try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+                seg = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            }
+            seg.order(ByteOrder.BIG_ENDIAN);
+            if (seg.remaining() < CaptureJournal.SEGMENT_HEADER
+                    || seg.getInt() != CaptureJournal.MAGIC
+                    || seg.getInt() != CaptureJournal.VERSION) {
+                throw new IOException("Not a capture segment: " + f);
+            }
+            seg.position(CaptureJournal.SEGMENT_HEADER);
+            stats.segments++;
+
+            while (seg.remaining() >= CaptureJournal.RECORD_HEADER) {
+                long timeMs = seg.getLong();
+                int word = seg.getInt();
+                if (word == 0) break;
+                int type = word >>> 24;
+                int len = word & CaptureJournal.MAX_RECORD;
+                if (len > seg.remaining()) throw new IOException("Truncated record in " + f);
+
+                if (stats.firstTimeMs < 0) stats.firstTimeMs = timeMs;
+                stats.lastTimeMs = timeMs;
+                if (speed > 0) pace(startNanos, stats.firstTimeMs, timeMs, speed);
+
+                recordTimeMs = timeMs;
+                stats.records++;
+                if (type == CaptureJournal.TYPE_RESET) {
+                    decoder.reset();
+                    stats.resets++;
+                } else if (type == CaptureJournal.TYPE_DATA) {
+                    if (buf.length < len) buf = new byte[len];
+                    seg.get(buf, 0, len);
+                    decoder.feed(buf, 0, len);
+                    stats.bytes += len;
+                } else {
+                    seg.position(seg.position() + len);
+                }
+            }
+        }
+        stats.samples = samples;
+        stats.elapsedNanos = System.nanoTime() - startNanos;
+        return stats;
+    }
+
+    private void onSample(SensorSample s) {
+        s.receivedAtMs = recordTimeMs;
+        samples++;
+        downstream.onSample(s);
+    }
+
+    private static void pace(long startNanos, long firstMs, long timeMs, double speed)
+            throws InterruptedException {
+        long dueNanos = startNanos + (long) ((timeMs - firstMs) * 1_000_000L / speed);
+        long wait = dueNanos - System.nanoTime();
+        if (wait > 0) Thread.sleep(wait / 1_000_000L, (int) (wait % 1_000_000L));
+    }
+}
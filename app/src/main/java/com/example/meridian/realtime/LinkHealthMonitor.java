@@ -0,0 +1,146 @@
+package com.example.meridian.realtime;
+
+/**
+ * Tracks how fresh the tracker link is. Sample arrival times give staleness; a
+ * ping/pong heartbeat gives round-trip time, kept in a one-minute rolling window
+ * so a slow link can be told apart from a quiet road (samples late vs. no bumps).
+ *
+ * Samples and pongs are recorded from the reader thread, pings from the heartbeat
+ * thread, and {@link #isReportable} is asked from the detector thread.
+ */
+public final class LinkHealthMonitor {
+
+    public static final long PING_INTERVAL_MS = 1_000L;
+    /** No sample for this long and the link is stale. */
+    public static final long STALE_AFTER_MS = 2_000L;
+    /** After a stale gap, samples must flow this long before reports resume. */
+    public static final long RECOVERY_MS = 1_000L;
+    /** An unanswered ping this old marks the link stale (only once pongs have been seen). */
+    public static final long PONG_TIMEOUT_MS = 5_000L;
+    /** Stale this long and the supervisor drops the link and dials again. */
+    public static final long RECONNECT_AFTER_MS = 10_000L;
+    /** Round trips above this are too slow to trust sample positions. */
+    public static final long MAX_RTT_MS = 2_000L;
+
+    private static final long RTT_WINDOW_MS = 60_000L;
+    private static final int MAX_OUTSTANDING = 8;
+
+    /** Copy of the monitor's state for display. */
+    public static final class Snapshot {
+        public boolean connected;
+        public boolean stale;
+        public long sinceLastSampleMs;
+        public long lastRttMs;
+        public double rttP50Ms;
+        public double rttP95Ms;
+        public double rttMaxMs;
+        public long pingsSent;
+        public long pongsReceived;
+        public long staleEpisodes;
+    }
+
+    private volatile boolean connected;
+    private volatile long lastSampleMs = Long.MIN_VALUE / 2;
+    private volatile long freshSinceMs = Long.MIN_VALUE / 2;
+
+    private final long[] pingSeq = new long[MAX_OUTSTANDING];
+    private final long[] pingSentMs = new long[MAX_OUTSTANDING];
+    private long nextSeq = 1;
+    private long pingsSent;
+    private long pongsReceived;
+    private long lastRttMs = -1;
+    private long staleEpisodes;
+    private final SlidingWindowStats rttWindow =
+            new SlidingWindowStats(RTT_WINDOW_MS, 256, 0.0, MAX_RTT_MS * 4, 1.0);
+
+    public synchronized void onConnected(long nowMs) {
+        connected = true;
+        freshSinceMs = nowMs;
+        lastSampleMs = nowMs;
+        for (int i = 0; i < MAX_OUTSTANDING; i++) pingSeq[i] = 0;
+    }
+
+    public void onDisconnected() {
+        connected = false;
+    }
+
+    /** Reader thread, once per decoded sample. */
+    public void onSample(long nowMs) {
+        if (nowMs - lastSampleMs > STALE_AFTER_MS) {
+            freshSinceMs = nowMs;
+            synchronized (this) {
+                staleEpisodes++;
+            }
+        }
+        lastSampleMs = nowMs;
+    }
+
+    /** Returns the sequence number of a new ping to send now. */
+    public synchronized long nextPing(long nowMs) {
+        long seq = nextSeq;
+        nextSeq = (nextSeq + 1) & 0xFFFFFFFFL;
+        if (nextSeq == 0) nextSeq = 1;
+        int slot = (int) (seq % MAX_OUTSTANDING);
+        pingSeq[slot] = seq;
+        pingSentMs[slot] = nowMs;
+        pingsSent++;
+        return seq;
+    }
+
+    /** Returns false for unknown or already-answered sequence numbers. */
+    public synchronized boolean onPong(long seq, long nowMs) {
+        int slot = (int) (seq % MAX_OUTSTANDING);
+        if (seq == 0 || pingSeq[slot] != seq) return false;
+        pingSeq[slot] = 0;
+        // Pongs come back in order, so anything older than this one was lost.
+        for (int i = 0; i < MAX_OUTSTANDING; i++) {
+            if (pingSeq[i] != 0 && pingSentMs[i] <= pingSentMs[slot]) pingSeq[i] = 0;
+        }
+        long rtt = Math.max(0, nowMs - pingSentMs[slot]);
+        lastRttMs = rtt;
+        pongsReceived++;
+        rttWindow.add(nowMs, rtt);
+        return true;
+    }
+
+    public boolean isStale(long nowMs) {
+        if (!connected) return true;
+        if (nowMs - lastSampleMs > STALE_AFTER_MS) return true;
+        synchronized (this) {
+            return pongOverdue(nowMs);
+        }
+    }
+
+    /** True when the link is fresh, has been for {@link #RECOVERY_MS} and is not slow. */
+    public boolean isReportable(long nowMs) {
+        if (isStale(nowMs)) return false;
+        if (nowMs - freshSinceMs < RECOVERY_MS) return false;
+        synchronized (this) {
+            return lastRttMs <= MAX_RTT_MS;
+        }
+    }
+
+    public synchronized void read(Snapshot into, long nowMs) {
+        rttWindow.advanceTo(nowMs);
+        into.connected = connected;
+        into.stale = !connected || nowMs - lastSampleMs > STALE_AFTER_MS || pongOverdue(nowMs);
+        into.sinceLastSampleMs = connected ? Math.max(0, nowMs - lastSampleMs) : -1;
+        into.lastRttMs = lastRttMs;
+        boolean any = rttWindow.size() > 0;
+        into.rttP50Ms = any ? rttWindow.percentile(0.5) : Double.NaN;
+        into.rttP95Ms = any ? rttWindow.percentile(0.95) : Double.NaN;
+        into.rttMaxMs = any ? rttWindow.max() : Double.NaN;
+        into.pingsSent = pingsSent;
+        into.pongsReceived = pongsReceived;
+        into.staleEpisodes = staleEpisodes;
+    }
+
+    /** Trackers that never answer pings are judged on sample flow alone. */
+    private boolean pongOverdue(long nowMs) {
+        if (pongsReceived == 0) return false;
+        for (int i = 0; i < MAX_OUTSTANDING; i++) {
+            if (pingSeq[i] != 0 && nowMs - pingSentMs[i] > PONG_TIMEOUT_MS) return true;
+        }
+        return false;
+    }
+}
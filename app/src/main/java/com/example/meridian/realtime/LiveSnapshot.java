@@ -0,0 +1,28 @@
+package com.example.meridian.realtime;
+
+/** Latest values for the real-time screen, copied out of the pipeline as a unit. */
+public final class LiveSnapshot {
+
+    public double lat;
+    public double lon;
+    public double az;
+    public double azMax60s;
+    public boolean hasLat;
+    public boolean hasLon;
+    public boolean hasAz;
+
+    public long samplesProcessed;
+    public long samplesDropped;
+
+    void copyFrom(LiveSnapshot o) {
+        lat = o.lat;
+        lon = o.lon;
+        az = o.az;
+        azMax60s = o.azMax60s;
+        hasLat = o.hasLat;
+        hasLon = o.hasLon;
+        hasAz = o.hasAz;
+        samplesProcessed = o.samplesProcessed;
+        samplesDropped = o.samplesDropped;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.meridian.realtime;
+
+/**
+ * Decides how hard the phone's GPS should work. The phone is switched off while
+ * the tracker supplies fresh fixes, and otherwise polled at an interval scaled to
+ * vehicle speed and recent detections: a parked car needs a fix every ten seconds,
+ * a fresh impact needs one every second. A subscription is only changed when the
+ * decision changes, and relaxed no sooner than {@code relaxAfterMs} after the last
+ * change, so the fused provider is not re-registered over and over.
+ *
+ * Also keeps the numbers needed to check the savings: fixes delivered, time spent
+ * at high accuracy and at balanced power, and subscription changes.
+ *
+ * Thread-safe.
+ */
+public final class LocationController {
+
+    public static final int OFF = 0;
+    /** Cell/Wi-Fi grade, a fraction of the GPS power. */
+    public static final int BALANCED = 1;
+    public static final int HIGH_ACCURACY = 2;
+
+    /** Applies a decision; called with the controller's lock held, so keep it short. */
+    public interface Subscriber {
+        void request(int priority, long intervalMs);
+        void remove();
+    }
+
+    public static final class Config {
+        /** A tracker fix newer than this makes the phone fix unnecessary. */
+        public long hardwareFreshMs = 5_000L;
+        /** High-rate fixes are kept this long after a detection. */
+        public long activityHoldMs = 30_000L;
+        public double stoppedMps = 1.0;
+        public double fastMps = 20.0;
+        public long stoppedIntervalMs = 10_000L;
+        public long cruiseIntervalMs = 2_000L;
+        public long fastIntervalMs = 1_000L;
+        public long activeIntervalMs = 1_000L;
+        public long relaxAfterMs = 10_000L;
+    }
+
+    private final Config config;
+    private final Subscriber subscriber;
+
+    private int priority = OFF;
+    private long intervalMs;
+    private long lastChangeMs = Long.MIN_VALUE / 2;
+    private long sinceMs = -1;
+
+    private long startedMs = -1;
+    private long highMs;
+    private long balancedMs;
+    private long fixes;
+    private long changes;
+
+    public LocationController(Config config, Subscriber subscriber) {
+        this.config = config;
+        this.subscriber = subscriber;
+    }
+
+    /**
+     * Re-evaluates the subscription.
+     *
+     * @param usePhoneGps       the user picked the phone as the position source
+     * @param hardwareFixAgeMs  age of the newest tracker fix, {@code Long.MAX_VALUE} if none
+     * @param speedMps          latest known speed, NaN if unknown
+     * @param sinceDetectionMs  time since the last detection, {@code Long.MAX_VALUE} if none
+     * @param fixDemanded       a detection just went unreported for want of a phone fix
+     */
+    public synchronized void update(long nowMs, boolean usePhoneGps, long hardwareFixAgeMs,
+                                    double speedMps, long sinceDetectionMs, boolean fixDemanded) {
+        if (startedMs < 0) startedMs = nowMs;
+
+        int p;
+        long interval;
+        if (!usePhoneGps && hardwareFixAgeMs <= config.hardwareFreshMs && !fixDemanded) {
+            p = OFF;
+            interval = 0;
+        } else if (fixDemanded || sinceDetectionMs <= config.activityHoldMs) {
+            p = HIGH_ACCURACY;
+            interval = config.activeIntervalMs;
+        } else if (!Double.isNaN(speedMps) && speedMps < config.stoppedMps) {
+            p = BALANCED;
+            interval = config.stoppedIntervalMs;
+        } else if (!Double.isNaN(speedMps) && speedMps >= config.fastMps) {
+            p = HIGH_ACCURACY;
+            interval = config.fastIntervalMs;
+        } else {
+            p = HIGH_ACCURACY;
+            interval = config.cruiseIntervalMs;
+        }
+
+        if (p == priority && interval == intervalMs) return;
+        // Tightening applies at once; relaxing waits so a brief lull does not flap.
+        boolean relaxing = p < priority || (p == priority && interval > intervalMs);
+        if (relaxing && !fixDemanded && nowMs - lastChangeMs < config.relaxAfterMs) return;
+
+        account(nowMs);
+        if (p == OFF) subscriber.remove();
+        else subscriber.request(p, interval);
+        priority = p;
+        intervalMs = interval;
+        lastChangeMs = nowMs;
+        changes++;
+    }
+
+    /** Stops the subscription, e.g. at the end of a session. */
+    public synchronized void stop(long nowMs) {
+        if (priority == OFF) return;
+        account(nowMs);
+        subscriber.remove();
+        priority = OFF;
+        intervalMs = 0;
+        lastChangeMs = nowMs;
+        changes++;
+    }
+
+    public synchronized void onFix() {
+        fixes++;
+    }
+
+    public synchronized int getPriority() {
+        return priority;
+    }
+
+    public synchronized long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public synchronized long getFixes() {
+        return fixes;
+    }
+
+    public synchronized long getSubscriptionChanges() {
+        return changes;
+    }
+
+    /** Fixes per minute since the first update. */
+    public synchronized double getFixesPerMinute(long nowMs) {
+        if (startedMs < 0 || nowMs <= startedMs) return 0;
+        return fixes * 60_000.0 / (nowMs - startedMs);
+    }
+
+    /** Time subscribed at high accuracy, i.e. with the GPS receiver on. */
+    public synchronized long getGpsOnMs(long nowMs) {
+        return highMs + (priority == HIGH_ACCURACY && sinceMs >= 0 ? nowMs - sinceMs : 0);
+    }
+
+    public synchronized long getBalancedMs(long nowMs) {
+        return balancedMs + (priority == BALANCED && sinceMs >= 0 ? nowMs - sinceMs : 0);
+    }
+
+    private void account(long nowMs) {
+        if (sinceMs >= 0) {
+            if (priority == HIGH_ACCURACY) highMs += nowMs - sinceMs;
+            else if (priority == BALANCED) balancedMs += nowMs - sinceMs;
+        }
+        sinceMs = nowMs;
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.meridian.realtime;
+
+/**
+ * Recent position fixes in a fixed ring of primitive arrays, ordered by time.
+ * {@link #positionAt} finds the fixes around a timestamp by binary search and
+ * interpolates between them, or dead-reckons forward from the newest fix using
+ * its speed and bearing (or the velocity between the last two fixes). A report
+ * then lands where the bump happened instead of at the last 1-2 s fix.
+ *
+ * All methods are synchronized: fixes may arrive on a location thread while the
+ * detector thread looks positions up.
+ */
+public final class LocationHistory {
+
+    public static final int EXACT = 0;
+    public static final int INTERPOLATED = 1;
+    public static final int DEAD_RECKONED = 2;
+    /** Outside what the history can answer; the nearest fix was used as is. */
+    public static final int NEAREST = 3;
+
+    /** Dead reckoning is not trusted further than this past the newest fix. */
+    public static final long MAX_EXTRAPOLATION_MS = 3_000L;
+    /** Fixes further apart than this are not interpolated between. */
+    public static final long MAX_GAP_MS = 10_000L;
+
+    private static final double EARTH_RADIUS_M = 6_371_000.0;
+
+    /** Reused result holder. */
+    public static final class Position {
+        public double lat;
+        public double lon;
+        public int method;
+        /** Distance in time to the fix(es) the position was derived from. */
+        public long ageMs;
+    }
+
+    private final int mask;
+    private final long[] time;
+    private final double[] lat;
+    private final double[] lon;
+    private final double[] speed;
+    private final double[] bearing;
+    private int head;
+    private int size;
+    private long rejected;
+
+    /** {@code capacity} must be a power of two. */
+    public LocationHistory(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity");
+        mask = capacity - 1;
+        time = new long[capacity];
+        lat = new double[capacity];
+        lon = new double[capacity];
+        speed = new double[capacity];
+        bearing = new double[capacity];
+    }
+
+    /**
+     * Adds a fix; {@code speedMps} and {@code bearingDeg} may be NaN when unknown.
+     * Fixes older than the newest one are rejected; a fix with the same time replaces it.
+     */
+    public synchronized boolean add(long timeMs, double latDeg, double lonDeg,
+                                    double speedMps, double bearingDeg) {
+        int slot;
+        if (size > 0) {
+            int last = (head + size - 1) & mask;
+            if (timeMs < time[last]) {
+                rejected++;
+                return false;
+            }
+            if (timeMs == time[last]) {
+                slot = last;
+            } else {
+                slot = push();
+            }
+        } else {
+            slot = push();
+        }
+        time[slot] = timeMs;
+        lat[slot] = latDeg;
+        lon[slot] = lonDeg;
+        speed[slot] = speedMps;
+        bearing[slot] = bearingDeg;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /** Time of the newest fix, or {@code Long.MIN_VALUE} when empty. */
+    public synchronized long newestTimeMs() {
+        return size == 0 ? Long.MIN_VALUE : time[(head + size - 1) & mask];
+    }
+
+    /**
+     * Speed at the newest fix: its own speed when the source gave one, else the
+     * distance from the fix before it over the time between. NaN if unknown.
+     */
+    public synchronized double latestSpeedMps() {
+        if (size == 0) return Double.NaN;
+        int a = (head + size - 1) & mask;
+        if (!Double.isNaN(speed[a])) return speed[a];
+        if (size < 2) return Double.NaN;
+        int p = (head + size - 2) & mask;
+        long span = time[a] - time[p];
+        if (span <= 0 || span > MAX_GAP_MS) return Double.NaN;
+        double north = Math.toRadians(lat[a] - lat[p]) * EARTH_RADIUS_M;
+        double east = Math.toRadians(lon[a] - lon[p]) * EARTH_RADIUS_M * Math.cos(Math.toRadians(lat[a]));
+        return Math.hypot(north, east) / (span / 1000.0);
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /** Fills {@code out} with the best estimate at {@code timeMs}; false when empty. */
+    public synchronized boolean positionAt(long timeMs, Position out) {
+        if (size == 0) return false;
+
+        // Index of the last fix at or before timeMs, in logical order; -1 if none.
+        int lo = 0, hi = size - 1, before = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (time[(head + mid) & mask] <= timeMs) {
+                before = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        if (before < 0) {
+            set(out, head, NEAREST, time[head & mask] - timeMs);
+            return true;
+        }
+
+        int a = (head + before) & mask;
+        long dtA = timeMs - time[a];
+        if (dtA == 0) {
+            set(out, a, EXACT, 0);
+            return true;
+        }
+
+        if (before < size - 1) {
+            int b = (head + before + 1) & mask;
+            long span = time[b] - time[a];
+            if (span > MAX_GAP_MS) {
+                int nearest = dtA <= time[b] - timeMs ? a : b;
+                set(out, nearest, NEAREST, Math.min(dtA, time[b] - timeMs));
+                return true;
+            }
+            double f = dtA / (double) span;
+            out.lat = lat[a] + (lat[b] - lat[a]) * f;
+            out.lon = lon[a] + (lon[b] - lon[a]) * f;
+            out.method = INTERPOLATED;
+            out.ageMs = Math.min(dtA, time[b] - timeMs);
+            return true;
+        }
+
+        return deadReckon(a, before, dtA, out);
+    }
+
+    private boolean deadReckon(int a, int logical, long dtMs, Position out) {
+        double northMps, eastMps;
+        if (!Double.isNaN(speed[a]) && !Double.isNaN(bearing[a])) {
+            double br = Math.toRadians(bearing[a]);
+            northMps = speed[a] * Math.cos(br);
+            eastMps = speed[a] * Math.sin(br);
+        } else if (logical > 0) {
+            int p = (head + logical - 1) & mask;
+            long span = time[a] - time[p];
+            if (span <= 0 || span > MAX_GAP_MS) {
+                set(out, a, NEAREST, dtMs);
+                return true;
+            }
+            double s = span / 1000.0;
+            northMps = Math.toRadians(lat[a] - lat[p]) * EARTH_RADIUS_M / s;
+            eastMps = Math.toRadians(lon[a] - lon[p]) * EARTH_RADIUS_M
+                    * Math.cos(Math.toRadians(lat[a])) / s;
+        } else {
+            set(out, a, NEAREST, dtMs);
+            return true;
+        }
+
+        double t = Math.min(dtMs, MAX_EXTRAPOLATION_MS) / 1000.0;
+        out.lat = lat[a] + Math.toDegrees(northMps * t / EARTH_RADIUS_M);
+        out.lon = lon[a] + Math.toDegrees(eastMps * t
+                / (EARTH_RADIUS_M * Math.cos(Math.toRadians(lat[a]))));
+        out.method = DEAD_RECKONED;
+        out.ageMs = dtMs;
+        return true;
+    }
+
+    private void set(Position out, int slot, int method, long ageMs) {
+        out.lat = lat[slot];
+        out.lon = lon[slot];
+        out.method = method;
+        out.ageMs = ageMs;
+    }
+
+    private int push() {
+        if (size == time.length) {
+            head = (head + 1) & mask;
+            size--;
+        }
+        int slot = (head + size) & mask;
+        size++;
+        return slot;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.meridian.realtime;
+
+/**
+ * Turns the phone's accelerometer into tracker-like samples, so drivers without a
+ * tracker still get automatic detection. Gravity is tracked with a low-pass of the
+ * raw readings; each reading is projected onto it and scaled to g, so a phone at
+ * rest in any mount reads 1 g, like the tracker's vertical axis.
+ *
+ * {@link #onAccelerometer} runs on the sensor thread at up to a few hundred Hz and
+ * allocates nothing: one reused sample is handed to the listener, normally
+ * {@link DetectionPipeline#offer}, whose primitive ring copies it.
+ */
+public final class PhoneImuSource {
+
+    public static final double STANDARD_GRAVITY = 9.80665;
+    /** Time constant of the gravity estimate; much longer than an impact. */
+    public static final long GRAVITY_TAU_NS = 1_000_000_000L;
+    /** After a gap this long the gravity estimate restarts from the next reading. */
+    public static final long MAX_GAP_NS = 250_000_000L;
+
+    private final SampleListener listener;
+    private final SensorSample sample = new SensorSample();
+
+    private volatile long clockOffsetMs;
+    private double gx, gy, gz;
+    private long lastNs = Long.MIN_VALUE;
+
+    private long firstNs = Long.MIN_VALUE;
+    private volatile long events;
+    private volatile long gaps;
+    private volatile double rateHz;
+
+    public PhoneImuSource(SampleListener listener) {
+        this.listener = listener;
+        sample.hasAz = true;
+    }
+
+    /**
+     * Maps sensor timestamps onto the wall clock samples are stamped with:
+     * {@code receivedAtMs = clockOffsetMs + timestampNs / 1e6}.
+     */
+    public void setClockOffsetMs(long clockOffsetMs) {
+        this.clockOffsetMs = clockOffsetMs;
+    }
+
+    /** Sensor thread. Readings in m/s^2, device axes, gravity included. */
+    public void onAccelerometer(long timestampNs, float x, float y, float z) {
+        long dt = timestampNs - lastNs;
+        if (lastNs == Long.MIN_VALUE || dt > MAX_GAP_NS || dt < 0) {
+            if (lastNs != Long.MIN_VALUE) gaps++;
+            gx = x;
+            gy = y;
+            gz = z;
+        } else {
+            double alpha = dt / (double) (GRAVITY_TAU_NS + dt);
+            gx += alpha * (x - gx);
+            gy += alpha * (y - gy);
+            gz += alpha * (z - gz);
+        }
+        lastNs = timestampNs;
+
+        double g = Math.sqrt(gx * gx + gy * gy + gz * gz);
+        if (g < 1e-3) return;
+        sample.az = (x * gx + y * gy + z * gz) / (g * STANDARD_GRAVITY);
+        sample.receivedAtMs = clockOffsetMs + timestampNs / 1_000_000L;
+
+        if (firstNs == Long.MIN_VALUE) firstNs = timestampNs;
+        long n = ++events;
+        if (timestampNs > firstNs) rateHz = (n - 1) * 1e9 / (timestampNs - firstNs);
+        listener.onSample(sample);
+    }
+
+    /** Forgets the gravity estimate and counters, e.g. at the start of a session. */
+    public void reset() {
+        lastNs = Long.MIN_VALUE;
+        firstNs = Long.MIN_VALUE;
+        events = 0;
+        gaps = 0;
+        rateHz = 0;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    /** Readings more than {@link #MAX_GAP_NS} apart. */
+    public long getGaps() {
+        return gaps;
+    }
+
+    /** Mean delivery rate since the first reading. */
+    public double getRateHz() {
+        return rateHz;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.meridian.realtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Counters for each stage of {@link DetectionPipeline}. */
+public final class PipelineStats {
+
+    final AtomicLong samplesIn = new AtomicLong();
+    final AtomicLong samplesDropped = new AtomicLong();
+    final AtomicLong samplesProcessed = new AtomicLong();
+    final AtomicLong detections = new AtomicLong();
+    final AtomicLong reportsDropped = new AtomicLong();
+    final AtomicLong reportsSuppressed = new AtomicLong();
+    final AtomicLong reportsRateLimited = new AtomicLong();
+    final AtomicLong reportsSent = new AtomicLong();
+    final AtomicLong reportsFailed = new AtomicLong();
+    final AtomicLong snapshotsPublished = new AtomicLong();
+
+    /** Samples accepted from the reader. */
+    public long getSamplesIn() { return samplesIn.get(); }
+
+    /** Samples refused because the detector queue was full. */
+    public long getSamplesDropped() { return samplesDropped.get(); }
+
+    public long getSamplesProcessed() { return samplesProcessed.get(); }
+
+    public long getDetections() { return detections.get(); }
+
+    /** Detections refused because the report queue was full. */
+    public long getReportsDropped() { return reportsDropped.get(); }
+
+    /** Detections not reported because the link was stale or slow. */
+    public long getReportsSuppressed() { return reportsSuppressed.get(); }
+
+    /** Impacts held back by the rate limiter; they are reported later, folded together. */
+    public long getReportsRateLimited() { return reportsRateLimited.get(); }
+
+    public long getReportsSent() { return reportsSent.get(); }
+
+    public long getReportsFailed() { return reportsFailed.get(); }
+
+    /** Times the UI was woken; many samples share one wake-up. */
+    public long getSnapshotsPublished() { return snapshotsPublished.get(); }
+}
@@ -0,0 +1,249 @@
+package com.example.meridian.realtime;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import com.example.meridian.firebase.ReportOutbox;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Renders the pipeline's {@link LiveSnapshot} at most once per vsync (or at a lower,
+ * configurable rate). {@link #invalidate()} may be called from any thread and any
+ * number of times; only the latest snapshot is drawn. Text is built in reused char
+ * buffers and a view is only touched when its text actually changed.
+ */
+public class RealTimeDisplay implements Choreographer.FrameCallback {
+
+    private static final int LINE_CAPACITY = 80;
+    /**
+     * Link age and the outbox keep changing with no new samples, so they are
+     * refreshed on a timer too.
+     */
+    private static final long LINK_REFRESH_MS = 500L;
+
+    private final DetectionPipeline pipeline;
+    private final TextView tvLat, tvLon, tvGz;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final Choreographer choreographer;
+
+    private final LiveSnapshot snapshot = new LiveSnapshot();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private boolean frameScheduled;
+    private boolean started;
+    private boolean showHardwarePosition = true;
+
+    private long minFrameIntervalNanos;
+    private long lastFrameNanos;
+
+    private final Line latLine = new Line();
+    private final Line lonLine = new Line();
+    private final Line gzLine = new Line();
+    private final Line linkLine = new Line();
+    private final Line outboxLine = new Line();
+
+    private LinkHealthMonitor linkHealth;
+    private TextView tvLink;
+    private final LinkHealthMonitor.Snapshot link = new LinkHealthMonitor.Snapshot();
+
+    private Supplier<ReportOutbox> outbox;
+    private TextView tvOutbox;
+
+    private final Runnable scheduleFrame = this::scheduleFrame;
+    private final Runnable linkTick = new Runnable() {
+        @Override
+        public void run() {
+            if (!started) return;
+            invalidate();
+            main.postDelayed(this, LINK_REFRESH_MS);
+        }
+    };
+
+    /** Must be created on the main thread. */
+    public RealTimeDisplay(DetectionPipeline pipeline, TextView tvLat, TextView tvLon, TextView tvGz) {
+        this.pipeline = pipeline;
+        this.tvLat = tvLat;
+        this.tvLon = tvLon;
+        this.tvGz = tvGz;
+        this.choreographer = Choreographer.getInstance();
+    }
+
+    /** 0 renders on every vsync that has new data. */
+    public void setMaxFramesPerSecond(int fps) {
+        minFrameIntervalNanos = fps <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / fps;
+    }
+
+    /** When false the lat/lon views are left to the phone location callback. */
+    public void setShowHardwarePosition(boolean show) {
+        showHardwarePosition = show;
+        latLine.invalidate();
+        lonLine.invalidate();
+    }
+
+    /** Shows freshness and round-trip stats in {@code tvLink}. Call before {@link #start()}. */
+    public void setLinkHealth(LinkHealthMonitor linkHealth, TextView tvLink) {
+        this.linkHealth = linkHealth;
+        this.tvLink = tvLink;
+        linkLine.invalidate();
+    }
+
+    /**
+     * Shows the outbox's queue depth and flush latency in {@code tvOutbox}; the
+     * supplier may return null while the outbox is still opening. Call before
+     * {@link #start()}.
+     */
+    public void setOutbox(Supplier<ReportOutbox> outbox, TextView tvOutbox) {
+        this.outbox = outbox;
+        this.tvOutbox = tvOutbox;
+        outboxLine.invalidate();
+    }
+
+    public void start() {
+        started = true;
+        if (linkHealth != null || outbox != null) main.postDelayed(linkTick, LINK_REFRESH_MS);
+        if (dirty.get()) scheduleFrame();
+    }
+
+    public void stop() {
+        started = false;
+        main.removeCallbacks(linkTick);
+        if (frameScheduled) {
+            choreographer.removeFrameCallback(this);
+            frameScheduled = false;
+        }
+    }
+
+    public void invalidate() {
+        if (dirty.compareAndSet(false, true)) main.post(scheduleFrame);
+    }
+
+    private void scheduleFrame() {
+        if (!started || frameScheduled) return;
+        frameScheduled = true;
+        choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        if (!started) return;
+
+        long sinceLast = frameTimeNanos - lastFrameNanos;
+        if (minFrameIntervalNanos > 0 && sinceLast < minFrameIntervalNanos) {
+            frameScheduled = true;
+            choreographer.postFrameCallbackDelayed(this,
+                    TimeUnit.NANOSECONDS.toMillis(minFrameIntervalNanos - sinceLast));
+            return;
+        }
+        lastFrameNanos = frameTimeNanos;
+
+        dirty.set(false);
+        pipeline.readSnapshot(snapshot);
+        render(snapshot);
+    }
+
+    private void render(LiveSnapshot s) {
+        if (showHardwarePosition) {
+            Line l = latLine.begin();
+            if (s.hasLat) l.text("Latitude ").number(s.lat, 6);
+            else l.text("Latitude : --");
+            l.applyTo(tvLat);
+
+            l = lonLine.begin();
+            if (s.hasLon) l.text("Longitude ").number(s.lon, 6);
+            else l.text("Longitude : --");
+            l.applyTo(tvLon);
+        }
+
+        Line g = gzLine.begin();
+        if (s.hasAz) g.text("Accel g ").number(s.az, 2);
+        if (s.azMax60s > 0) {
+            if (g.len > 0) g.text(" | ");
+            g.text("Az Max 60s ").number(s.azMax60s, 2);
+        }
+        g.applyTo(tvGz);
+
+        if (linkHealth != null) renderLink();
+        if (outbox != null) renderOutbox();
+    }
+
+    private void renderOutbox() {
+        ReportOutbox out = outbox.get();
+        Line l = outboxLine.begin();
+        if (out == null) {
+            l.text("Outbox: --");
+        } else {
+            l.text("Outbox: ").number(out.getQueueDepth(), 0).text(" queued");
+            if (out.getBatches() > 0) {
+                l.text(" | flush last/mean/max ").number(out.getLastFlushLatencyMs(), 0)
+                        .text("/").number(out.getMeanFlushLatencyMs(), 0)
+                        .text("/").number(out.getMaxFlushLatencyMs(), 0).text(" ms");
+            }
+        }
+        l.applyTo(tvOutbox);
+    }
+
+    private void renderLink() {
+        LinkHealthMonitor.Snapshot k = link;
+        linkHealth.read(k, System.currentTimeMillis());
+
+        Line l = linkLine.begin();
+        if (!k.connected) {
+            l.text("Link: down");
+        } else {
+            l.text(k.stale ? "Link: STALE " : "Link: ok ")
+                    .number(k.sinceLastSampleMs / 1000.0, 1).text("s");
+            if (k.lastRttMs >= 0) {
+                l.text(" | RTT p50/95/max ").number(k.rttP50Ms, 0)
+                        .text("/").number(k.rttP95Ms, 0)
+                        .text("/").number(k.rttMaxMs, 0).text(" ms");
+            }
+        }
+        l.applyTo(tvLink);
+    }
+
+    private static final class Line {
+        final char[] buf = new char[LINE_CAPACITY];
+        final char[] shown = new char[LINE_CAPACITY];
+        int len;
+        int shownLen = -1;
+
+        Line begin() {
+            len = 0;
+            return this;
+        }
+
+        Line text(String t) {
+            len = FixedPointFormatter.append(buf, len, t);
+            return this;
+        }
+
+        Line number(double v, int decimals) {
+            len = FixedPointFormatter.append(buf, len, v, decimals);
+            return this;
+        }
+
+        void invalidate() {
+            shownLen = -1;
+        }
+
+        boolean sameAsShown() {
+            if (len != shownLen) return false;
+            for (int i = 0; i < len; i++) {
+                if (buf[i] != shown[i]) return false;
+            }
+            return true;
+        }
+
+        void applyTo(TextView view) {
+            if (sameAsShown()) return;
+            System.arraycopy(buf, 0, shown, 0, len);
+            shownLen = len;
+            view.setText(buf, 0, len);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.meridian.realtime;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caps how often detections become reports: one token bucket for the device and
+ * one per road cell, so a rough stretch cannot flood writes while a pothole right
+ * after another elsewhere still gets through. A report needs a token from both.
+ *
+ * Events that are refused are not lost: they are folded into one pending event
+ * per cell (strongest impact kept, detections counted) and released as a single
+ * report once that cell and the device have tokens again. The report then merges
+ * into the pothole written for the first event. At the end of a session, or when
+ * the limits change, {@link #drainPending} hands back whatever is still waiting.
+ *
+ * Detector thread only.
+ */
+public final class ReportRateLimiter {
+
+    public static final class Config {
+        public double deviceBurst = 5;
+        public double devicePerMinute = 12;
+        public double cellBurst = 1;
+        public double cellPerMinute = 2;
+        public double cellSizeM = 50;
+        /** Cell buckets kept; the least recently used is dropped, which only makes it more lenient. */
+        public int maxCells = 256;
+        /** Cells with refused events waiting; further cells are counted as dropped. */
+        public int maxPending = 64;
+    }
+
+    private static final double METRES_PER_DEGREE = 111_320.0;
+    /** Pending events are looked at this often, not on every sample. */
+    private static final long RELEASE_CHECK_MS = 1_000L;
+
+    private static final class Pending {
+        HazardEvent strongest;
+        int detections;
+
+        HazardEvent toEvent() {
+            return strongest.withDetections(detections);
+        }
+    }
+
+    private final Config config;
+    private final double cellDegLat;
+    private TokenBucket device;
+    private final Map<Long, TokenBucket> cells;
+    private final Map<Long, Pending> pending = new LinkedHashMap<>();
+    private long nextReleaseCheckMs = Long.MIN_VALUE;
+
+    private long admitted;
+    private long limitedByDevice;
+    private long limitedByCell;
+    private long released;
+    private long droppedPending;
+
+    public ReportRateLimiter() {
+        this(new Config());
+    }
+
+    public ReportRateLimiter(Config config) {
+        if (config.cellSizeM <= 0) throw new IllegalArgumentException("cellSizeM");
+        this.config = config;
+        this.cellDegLat = config.cellSizeM / METRES_PER_DEGREE;
+        final int maxCells = config.maxCells;
+        this.cells = new LinkedHashMap<Long, TokenBucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, TokenBucket> eldest) {
+                return size() > maxCells;
+            }
+        };
+    }
+
+    /**
+     * Returns the event to report now, with any refused detections from its cell
+     * folded in, or null if it was refused and kept for later.
+     */
+    public HazardEvent admit(HazardEvent e) {
+        long key = cellKey(e.lat, e.lon);
+        TokenBucket cell = cell(key, e.timeMs);
+        TokenBucket dev = device(e.timeMs);
+
+        boolean cellOk = cell.available(e.timeMs) >= 1;
+        boolean deviceOk = dev.available(e.timeMs) >= 1;
+        if (cellOk && deviceOk) {
+            cell.tryTake(e.timeMs);
+            dev.tryTake(e.timeMs);
+            admitted++;
+            Pending p = pending.remove(key);
+            return p == null ? e : fold(p, e).toEvent();
+        }
+
+        if (!cellOk) limitedByCell++;
+        else limitedByDevice++;
+        keep(key, e);
+        return null;
+    }
+
+    /** Keeps {@code e} pending, as if refused, without counting it as limited. */
+    public void hold(HazardEvent e) {
+        keep(cellKey(e.lat, e.lon), e);
+    }
+
+    /** Every pending event, oldest cell first, without spending tokens. */
+    public List<HazardEvent> drainPending() {
+        List<HazardEvent> out = new ArrayList<>(pending.size());
+        for (Pending p : pending.values()) out.add(p.toEvent());
+        pending.clear();
+        return out;
+    }
+
+    /** A pending event whose cell and the device have tokens again, or null. Cheap to call per sample. */
+    public HazardEvent release(long nowMs) {
+        if (pending.isEmpty() || nowMs < nextReleaseCheckMs) return null;
+        nextReleaseCheckMs = nowMs + RELEASE_CHECK_MS;
+        if (device(nowMs).available(nowMs) < 1) return null;
+
+        Iterator<Map.Entry<Long, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Pending> en = it.next();
+            if (!cell(en.getKey(), nowMs).tryTake(nowMs)) continue;
+            device.tryTake(nowMs);
+            it.remove();
+            released++;
+            return en.getValue().toEvent();
+        }
+        return null;
+    }
+
+    public int getPendingCells() {
+        return pending.size();
+    }
+
+    public long getAdmitted() {
+        return admitted;
+    }
+
+    public long getLimitedByDevice() {
+        return limitedByDevice;
+    }
+
+    public long getLimitedByCell() {
+        return limitedByCell;
+    }
+
+    /** Pending events later reported. */
+    public long getReleased() {
+        return released;
+    }
+
+    /** Refused events that could not be kept because too many cells were pending. */
+    public long getDroppedPending() {
+        return droppedPending;
+    }
+
+    private TokenBucket device(long nowMs) {
+        if (device == null) device = new TokenBucket(config.deviceBurst, config.devicePerMinute, nowMs);
+        return device;
+    }
+
+    private TokenBucket cell(long key, long nowMs) {
+        TokenBucket b = cells.get(key);
+        if (b == null) {
+            b = new TokenBucket(config.cellBurst, config.cellPerMinute, nowMs);
+            cells.put(key, b);
+        }
+        return b;
+    }
+
+    private void keep(long key, HazardEvent e) {
+        Pending p = pending.get(key);
+        if (p == null) {
+            if (pending.size() >= config.maxPending) {
+                droppedPending++;
+                return;
+            }
+            p = new Pending();
+            pending.put(key, p);
+        }
+        fold(p, e);
+    }
+
+    private static Pending fold(Pending p, HazardEvent e) {
+        if (p.strongest == null || e.az > p.strongest.az) p.strongest = e;
+        p.detections += e.detections;
+        return p;
+    }
+
+    private long cellKey(double lat, double lon) {
+        long row = (long) Math.floor(lat / cellDegLat);
+        double rowLat = Math.min(89.0, Math.abs(row * cellDegLat));
+        long col = (long) Math.floor(lon / (cellDegLat / Math.cos(Math.toRadians(rowLat))));
+        return (row << 32) ^ (col & 0xFFFFFFFFL);
+    }
+}
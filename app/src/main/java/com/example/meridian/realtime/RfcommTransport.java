@@ -0,0 +1,116 @@
+package com.example.meridian.realtime;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.text.TextUtils;
+
+import androidx.core.content.ContextCompat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.UUID;
+
+/** Classic Bluetooth SPP link to the paired tracker. The resolved device is cached. */
+public class RfcommTransport implements SensorTransport {
+
+    private static final String DEVICE_MAC_ADDRESS = "40:F5:20:57:9C:1E";
+    private static final String DEVICE_NAME_MATCH = "Meridian Pothole Tracker";
+    private static final UUID SPP_UUID =
+            UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+
+    private final Context context;
+    private final BluetoothAdapter btAdapter;
+    private volatile BluetoothDevice device;
+
+    public RfcommTransport(Context context, BluetoothAdapter btAdapter) {
+        this.context = context.getApplicationContext();
+        this.btAdapter = btAdapter;
+    }
+
+    @Override
+    @SuppressLint("MissingPermission")
+    public Link connect() throws IOException {
+        if (btAdapter == null) throw new UnavailableException("Bluetooth not supported");
+        if (!hasBtConnectPermission()) throw new UnavailableException("Permission required");
+
+        BluetoothDevice d = device;
+        if (d == null) {
+            d = pickPairedDeviceSafe();
+            if (d == null) throw new UnavailableException("No paired device found");
+            device = d;
+        }
+
+        try {
+            if (btAdapter.isDiscovering()) btAdapter.cancelDiscovery();
+        } catch (SecurityException ignored) {}
+
+        BluetoothSocket socket = d.createRfcommSocketToServiceRecord(SPP_UUID);
+        try {
+            socket.connect();
+        } catch (IOException e) {
+            try { socket.close(); } catch (Exception ignored) {}
+            throw e;
+        }
+
+        return new Link() {
+            @Override public InputStream getInputStream() throws IOException { return socket.getInputStream(); }
+            @Override public OutputStream getOutputStream() throws IOException { return socket.getOutputStream(); }
+            @Override public void close() throws IOException { socket.close(); }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return safeName(device);
+    }
+
+    private boolean hasBtConnectPermission() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return true;
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    @SuppressLint("MissingPermission")
+    private BluetoothDevice pickPairedDeviceSafe() {
+        Set<BluetoothDevice> bonded;
+        try { bonded = btAdapter.getBondedDevices(); } catch (SecurityException se) { return null; }
+        if (bonded == null || bonded.isEmpty()) return null;
+
+        if (!TextUtils.isEmpty(DEVICE_MAC_ADDRESS)) {
+            for (BluetoothDevice d : bonded)
+                if (eqAddr(d.getAddress(), DEVICE_MAC_ADDRESS)) return d;
+        }
+        if (!TextUtils.isEmpty(DEVICE_NAME_MATCH)) {
+            String needle = DEVICE_NAME_MATCH.toLowerCase();
+            for (BluetoothDevice d : bonded) {
+                try {
+                    String name = d.getName();
+                    if (name != null && name.toLowerCase().contains(needle)) return d;
+                } catch (SecurityException ignored) {}
+            }
+        }
+        return bonded.iterator().next();
+    }
+
+    private boolean eqAddr(String a, String b) {
+        return a != null && b != null && a.trim().equalsIgnoreCase(b.trim());
+    }
+
+    @SuppressLint("MissingPermission")
+    private String safeName(BluetoothDevice d) {
+        try {
+            String n = (d == null) ? null : d.getName();
+            return (n == null || n.isEmpty()) ? (d != null ? d.getAddress() : "device") : n;
+        } catch (SecurityException se) {
+            return (d != null ? d.getAddress() : "device");
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.meridian.realtime;
+
+/** Receives decoded samples. The sample is reused; copy out anything you keep. */
+public interface SampleListener {
+    void onSample(SensorSample sample);
+}
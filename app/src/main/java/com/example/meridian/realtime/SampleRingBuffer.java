@@ -0,0 +1,92 @@
+package com.example.meridian.realtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free single-producer/single-consumer queue of samples, stored in
+ * primitive arrays. {@link #offer} never blocks: when the consumer falls behind
+ * the sample is refused and the caller counts the drop.
+ */
+public final class SampleRingBuffer {
+
+    private static final byte HAS_LAT = 1;
+    private static final byte HAS_LON = 2;
+    private static final byte HAS_AZ = 4;
+    private static final byte HAS_DEVICE_TIME = 8;
+
+    private final int mask;
+    private final double[] lat;
+    private final double[] lon;
+    private final double[] az;
+    private final long[] deviceTimeMs;
+    private final long[] receivedAtMs;
+    private final byte[] flags;
+
+    // Producer writes tail, consumer writes head; lazySet is enough to publish the
+    // slot contents because each side only reads the other's counter.
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private long cachedHead;
+    private long cachedTail;
+
+    public SampleRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two");
+        mask = capacity - 1;
+        lat = new double[capacity];
+        lon = new double[capacity];
+        az = new double[capacity];
+        deviceTimeMs = new long[capacity];
+        receivedAtMs = new long[capacity];
+        flags = new byte[capacity];
+    }
+
+    /** Producer side. Returns false if the buffer is full. */
+    public boolean offer(SensorSample s) {
+        long t = tail.get();
+        if (t - cachedHead > mask) {
+            cachedHead = head.get();
+            if (t - cachedHead > mask) return false;
+        }
+        int i = (int) (t & mask);
+        lat[i] = s.lat;
+        lon[i] = s.lon;
+        az[i] = s.az;
+        deviceTimeMs[i] = s.deviceTimeMs;
+        receivedAtMs[i] = s.receivedAtMs;
+        flags[i] = (byte) ((s.hasLat ? HAS_LAT : 0) | (s.hasLon ? HAS_LON : 0)
+                | (s.hasAz ? HAS_AZ : 0) | (s.hasDeviceTime ? HAS_DEVICE_TIME : 0));
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /** Consumer side. Returns false if the buffer is empty. */
+    public boolean poll(SensorSample into) {
+        long h = head.get();
+        if (h >= cachedTail) {
+            cachedTail = tail.get();
+            if (h >= cachedTail) return false;
+        }
+        int i = (int) (h & mask);
+        byte f = flags[i];
+        into.lat = lat[i];
+        into.lon = lon[i];
+        into.az = az[i];
+        into.deviceTimeMs = deviceTimeMs[i];
+        into.receivedAtMs = receivedAtMs[i];
+        into.hasLat = (f & HAS_LAT) != 0;
+        into.hasLon = (f & HAS_LON) != 0;
+        into.hasAz = (f & HAS_AZ) != 0;
+        into.hasDeviceTime = (f & HAS_DEVICE_TIME) != 0;
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
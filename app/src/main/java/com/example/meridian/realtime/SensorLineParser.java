@@ -0,0 +1,253 @@
+package com.example.meridian.realtime;
+
+/**
+ * Parses the tracker's ASCII stream ({@code lat=..,lon=..,az=..\n}) straight from the
+ * raw read buffers. Numbers are decoded in place into a reused {@link SensorSample},
+ * so steady-state parsing does not allocate. Lines split across reads are carried
+ * over in a fixed-size buffer; lines longer than that are dropped.
+ *
+ * Not thread-safe: feed it from the reader thread only.
+ */
+public final class SensorLineParser {
+
+    /** Gets lines that carry no sample fields, e.g. handshake acknowledgements. */
+    public interface ControlListener {
+        /** Not a known control line; counted as rejected. */
+        int REJECTED = 0;
+        int HANDLED = 1;
+        /** Handled, and the rest of the current buffer is not text any more. */
+        int STOP = 2;
+
+        /** Returns {@link #REJECTED}, {@link #HANDLED} or {@link #STOP}. */
+        int onControlLine(byte[] buf, int start, int end);
+    }
+
+    static final int MAX_LINE_LENGTH = 256;
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final SampleListener listener;
+    private ControlListener controlListener;
+    private boolean stopRequested;
+    private final SensorSample sample = new SensorSample();
+
+    private final byte[] pending = new byte[MAX_LINE_LENGTH];
+    private int pendingLen;
+    private boolean pendingOverflow;
+
+    private long linesParsed;
+    private long linesRejected;
+
+    public SensorLineParser(SampleListener listener) {
+        this.listener = listener;
+    }
+
+    public void setControlListener(ControlListener controlListener) {
+        this.controlListener = controlListener;
+    }
+
+    /**
+     * Consumes {@code len} bytes, or fewer if the control listener asked to stop,
+     * and returns how many were consumed.
+     */
+    public int feed(byte[] buf, int off, int len) {
+        int end = off + len;
+        int start = off;
+        stopRequested = false;
+
+        for (int i = off; i < end; i++) {
+            if (buf[i] != '\n') continue;
+
+            if (pendingLen == 0 && !pendingOverflow) {
+                parseLine(buf, start, i);
+            } else {
+                appendPending(buf, start, i);
+                if (pendingOverflow) linesRejected++;
+                else parseLine(pending, 0, pendingLen);
+                pendingLen = 0;
+                pendingOverflow = false;
+            }
+            start = i + 1;
+            if (stopRequested) return start - off;
+        }
+
+        if (start < end) appendPending(buf, start, end);
+        return len;
+    }
+
+    public void reset() {
+        pendingLen = 0;
+        pendingOverflow = false;
+    }
+
+    public long getLinesParsed() {
+        return linesParsed;
+    }
+
+    public long getLinesRejected() {
+        return linesRejected;
+    }
+
+    private void appendPending(byte[] buf, int from, int to) {
+        int n = to - from;
+        if (pendingOverflow || pendingLen + n > MAX_LINE_LENGTH) {
+            pendingOverflow = true;
+            return;
+        }
+        System.arraycopy(buf, from, pending, pendingLen, n);
+        pendingLen += n;
+    }
+
+    private void parseLine(byte[] b, int start, int end) {
+        sample.clear();
+
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || b[i] == ',') {
+                parseField(b, fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+
+        if (sample.isEmpty()) {
+            if (isBlank(b, start, end)) return;
+            int result = controlListener == null
+                    ? ControlListener.REJECTED : controlListener.onControlLine(b, start, end);
+            if (result == ControlListener.STOP) stopRequested = true;
+            else if (result == ControlListener.REJECTED) linesRejected++;
+            return;
+        }
+        linesParsed++;
+        listener.onSample(sample);
+    }
+
+    private void parseField(byte[] b, int start, int end) {
+        int eq = -1;
+        for (int i = start; i < end; i++) {
+            if (b[i] == '=') {
+                eq = i;
+                break;
+            }
+        }
+        if (eq < 0) return;
+
+        int ks = start, ke = eq;
+        while (ks < ke && isSpace(b[ks])) ks++;
+        while (ke > ks && isSpace(b[ke - 1])) ke--;
+
+        int key = keyOf(b, ks, ke);
+        if (key == KEY_NONE) return;
+
+        double v = parseDecimal(b, eq + 1, end);
+        if (Double.isNaN(v)) return;
+
+        switch (key) {
+            case KEY_LAT: sample.lat = v; sample.hasLat = true; break;
+            case KEY_LON: sample.lon = v; sample.hasLon = true; break;
+            case KEY_AZ:  sample.az  = v; sample.hasAz  = true; break;
+        }
+    }
+
+    private static final int KEY_NONE = 0;
+    private static final int KEY_LAT = 1;
+    private static final int KEY_LON = 2;
+    private static final int KEY_AZ = 3;
+
+    private static int keyOf(byte[] b, int s, int e) {
+        int n = e - s;
+        if (n == 2 && lower(b[s]) == 'a' && lower(b[s + 1]) == 'z') return KEY_AZ;
+        if (n == 3 && lower(b[s]) == 'l') {
+            int c1 = lower(b[s + 1]), c2 = lower(b[s + 2]);
+            if (c1 == 'a' && c2 == 't') return KEY_LAT;
+            if (c1 == 'o' && c2 == 'n') return KEY_LON;
+        }
+        return KEY_NONE;
+    }
+
+    /**
+     * Decodes a plain decimal (optional sign, fraction and exponent) without going
+     * through a String. Returns NaN when the text is not a number. Digits beyond the
+     * 18th significant one are ignored, which is far below the tracker's precision.
+     */
+    static double parseDecimal(byte[] b, int s, int e) {
+        while (s < e && isSpace(b[s])) s++;
+        while (e > s && isSpace(b[e - 1])) e--;
+        if (s >= e) return Double.NaN;
+
+        boolean negative = false;
+        if (b[s] == '-' || b[s] == '+') {
+            negative = b[s] == '-';
+            s++;
+        }
+
+        long mantissa = 0;
+        int significant = 0;
+        int scale = 0;
+        boolean dot = false;
+        boolean anyDigit = false;
+
+        while (s < e) {
+            int c = b[s];
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (significant < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) significant++;
+                    if (dot) scale--;
+                } else if (!dot) {
+                    scale++;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else if (c == 'e' || c == 'E') {
+                break;
+            } else {
+                return Double.NaN;
+            }
+            s++;
+        }
+        if (!anyDigit) return Double.NaN;
+
+        if (s < e) {
+            s++;
+            if (s >= e) return Double.NaN;
+            boolean expNegative = false;
+            if (b[s] == '-' || b[s] == '+') {
+                expNegative = b[s] == '-';
+                s++;
+            }
+            if (s >= e) return Double.NaN;
+            int exp = 0;
+            while (s < e) {
+                int c = b[s++];
+                if (c < '0' || c > '9') return Double.NaN;
+                if (exp < 10_000) exp = exp * 10 + (c - '0');
+            }
+            scale += expNegative ? -exp : exp;
+        }
+
+        double v = mantissa;
+        if (scale < 0) {
+            v = (-scale < POW10.length) ? v / POW10[-scale] : v / Math.pow(10, -scale);
+        } else if (scale > 0) {
+            v = (scale < POW10.length) ? v * POW10[scale] : v * Math.pow(10, scale);
+        }
+        return negative ? -v : v;
+    }
+
+    private static boolean isBlank(byte[] b, int s, int e) {
+        for (int i = s; i < e; i++) if (!isSpace(b[i])) return false;
+        return true;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    private static int lower(byte c) {
+        return (c >= 'A' && c <= 'Z') ? c + 32 : c;
+    }
+}
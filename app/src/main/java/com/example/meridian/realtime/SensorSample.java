@@ -0,0 +1,49 @@
+package com.example.meridian.realtime;
+
+/**
+ * One decoded tracker reading. Instances are reused by the parsers, so consumers
+ * must copy out whatever they need before returning from their callback.
+ */
+public final class SensorSample {
+
+    public double lat;
+    public double lon;
+    public double az;
+    /** Tracker clock in ms, only sent in binary mode. */
+    public long deviceTimeMs;
+    /** Phone wall-clock time the bytes carrying this sample were read. */
+    public long receivedAtMs;
+
+    public boolean hasLat;
+    public boolean hasLon;
+    public boolean hasAz;
+    public boolean hasDeviceTime;
+
+    public void clear() {
+        lat = 0;
+        lon = 0;
+        az = 0;
+        deviceTimeMs = 0;
+        receivedAtMs = 0;
+        hasLat = false;
+        hasLon = false;
+        hasAz = false;
+        hasDeviceTime = false;
+    }
+
+    public boolean isEmpty() {
+        return !hasLat && !hasLon && !hasAz;
+    }
+
+    public void copyFrom(SensorSample other) {
+        lat = other.lat;
+        lon = other.lon;
+        az = other.az;
+        deviceTimeMs = other.deviceTimeMs;
+        receivedAtMs = other.receivedAtMs;
+        hasLat = other.hasLat;
+        hasLon = other.hasLon;
+        hasAz = other.hasAz;
+        hasDeviceTime = other.hasDeviceTime;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.meridian.realtime;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Front end for everything read from the tracker. Starts in text mode and switches
+ * to binary frames when the tracker acknowledges the binary offer sent with the
+ * handshake; trackers that ignore the offer simply stay on text lines.
+ */
+public final class SensorStreamDecoder {
+
+    /** Heartbeat replies, as {@code PONG <seq>} lines or {@code TYPE_PONG} frames. */
+    public interface PongListener {
+        void onPong(long seq);
+    }
+
+    /** Text form of a heartbeat; the tracker answers with {@link #PONG_PREFIX} and the same number. */
+    public static final String PING_PREFIX = "PING ";
+    public static final String PONG_PREFIX = "PONG ";
+
+    private static final byte[] ACK = BinaryFrameCodec.ACK_LINE.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PONG = PONG_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    private final SensorLineParser lineParser;
+    private final BinaryFrameDecoder frameDecoder;
+    private volatile boolean binary;
+    private PongListener pongListener;
+
+    public SensorStreamDecoder(SampleListener listener) {
+        lineParser = new SensorLineParser(listener);
+        frameDecoder = new BinaryFrameDecoder(listener);
+        lineParser.setControlListener(this::onControlLine);
+        frameDecoder.setFrameListener(this::onFrame);
+    }
+
+    public void setPongListener(PongListener pongListener) {
+        this.pongListener = pongListener;
+    }
+
+    public void feed(byte[] buf, int off, int len) {
+        if (!binary) {
+            int used = lineParser.feed(buf, off, len);
+            off += used;
+            len -= used;
+        }
+        if (binary && len > 0) frameDecoder.feed(buf, off, len);
+    }
+
+    public void reset() {
+        binary = false;
+        lineParser.reset();
+        frameDecoder.reset();
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public SensorLineParser getLineParser() {
+        return lineParser;
+    }
+
+    public BinaryFrameDecoder getFrameDecoder() {
+        return frameDecoder;
+    }
+
+    private int onControlLine(byte[] b, int start, int end) {
+        while (end > start && (b[end - 1] == '\r' || b[end - 1] == ' ')) end--;
+        while (start < end && b[start] == ' ') start++;
+        if (startsWith(b, start, end, PONG)) {
+            long seq = parseSeq(b, start + PONG.length, end);
+            if (seq < 0) return SensorLineParser.ControlListener.REJECTED;
+            if (pongListener != null) pongListener.onPong(seq);
+            return SensorLineParser.ControlListener.HANDLED;
+        }
+        if (end - start != ACK.length || !startsWith(b, start, end, ACK)) {
+            return SensorLineParser.ControlListener.REJECTED;
+        }
+        binary = true;
+        return SensorLineParser.ControlListener.STOP;
+    }
+
+    private void onFrame(int type, byte[] b, int payloadOff, int payloadLength) {
+        if (type == BinaryFrameCodec.TYPE_PONG && pongListener != null) {
+            pongListener.onPong(BinaryFrameCodec.decodeHeartbeatSeq(b, payloadOff));
+        }
+    }
+
+    private static boolean startsWith(byte[] b, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (b[start + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /** Unsigned decimal up to 32 bits, or -1. */
+    private static long parseSeq(byte[] b, int start, int end) {
+        if (start >= end || end - start > 10) return -1;
+        long v = 0;
+        for (int i = start; i < end; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v <= 0xFFFFFFFFL ? v : -1;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.meridian.realtime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/** A way of reaching a tracker. {@link #connect()} may be called again after a link drops. */
+public interface SensorTransport {
+
+    /** Blocks until connected. */
+    Link connect() throws IOException;
+
+    String getName();
+
+    interface Link extends Closeable {
+        InputStream getInputStream() throws IOException;
+        OutputStream getOutputStream() throws IOException;
+    }
+
+    /** The transport cannot work at all (no device, no permission); retrying is pointless. */
+    class UnavailableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public UnavailableException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.meridian.realtime;
+
+/**
+ * Rolling statistics over the last {@code windowMs} of samples, backed by primitive
+ * ring buffers. Max uses a monotonic deque, mean/RMS use running sums and the
+ * percentiles come from a fixed-width histogram, so {@link #add} is amortized O(1)
+ * and never allocates. If more than {@code capacity} samples arrive inside one
+ * window the oldest are evicted early.
+ *
+ * Not thread-safe: update and query from the same thread.
+ */
+public final class SlidingWindowStats {
+
+    private final long windowMs;
+    private final int mask;
+
+    private final long[] times;
+    private final double[] values;
+    private long head;
+    private long tail;
+
+    private final long[] maxDeque;
+    private long maxHead;
+    private long maxTail;
+
+    private double sum;
+    private double sumSq;
+    private int addsSinceResum;
+
+    private final double histMin;
+    private final double binWidth;
+    private final int[] bins;
+
+    public SlidingWindowStats(long windowMs, int capacity,
+                              double histMin, double histMax, double binWidth) {
+        if (windowMs <= 0) throw new IllegalArgumentException("windowMs must be positive");
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two");
+        if (!(histMax > histMin) || !(binWidth > 0))
+            throw new IllegalArgumentException("bad histogram range");
+
+        this.windowMs = windowMs;
+        this.mask = capacity - 1;
+        this.times = new long[capacity];
+        this.values = new double[capacity];
+        this.maxDeque = new long[capacity];
+        this.histMin = histMin;
+        this.binWidth = binWidth;
+        this.bins = new int[(int) Math.ceil((histMax - histMin) / binWidth)];
+    }
+
+    public void add(long timeMs, double value) {
+        advanceTo(timeMs);
+        if (size() == values.length) evictOldest();
+
+        int i = (int) (tail & mask);
+        times[i] = timeMs;
+        values[i] = value;
+
+        while (maxTail > maxHead && values[(int) (maxDeque[(int) ((maxTail - 1) & mask)] & mask)] <= value) {
+            maxTail--;
+        }
+        maxDeque[(int) (maxTail & mask)] = tail;
+        maxTail++;
+        tail++;
+
+        sum += value;
+        sumSq += value * value;
+        bins[binOf(value)]++;
+
+        // Subtracting evicted values slowly drifts the running sums; rebuild them
+        // once per buffer's worth of samples to keep the cost amortized O(1).
+        if (++addsSinceResum >= values.length) resum();
+    }
+
+    /** Evicts samples that have fallen out of the window as of {@code nowMs}. */
+    public void advanceTo(long nowMs) {
+        long cutoff = nowMs - windowMs;
+        while (head < tail && times[(int) (head & mask)] < cutoff) evictOldest();
+    }
+
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    public double max() {
+        if (maxHead == maxTail) return Double.NaN;
+        return values[(int) (maxDeque[(int) (maxHead & mask)] & mask)];
+    }
+
+    public double mean() {
+        int n = size();
+        return n == 0 ? Double.NaN : sum / n;
+    }
+
+    public double rms() {
+        int n = size();
+        return n == 0 ? Double.NaN : Math.sqrt(Math.max(0, sumSq) / n);
+    }
+
+    /**
+     * Approximate quantile ({@code q} in [0, 1]), accurate to one histogram bin.
+     * Values outside the histogram range are counted in the edge bins.
+     */
+    public double percentile(double q) {
+        int n = size();
+        if (n == 0) return Double.NaN;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, q)) * n));
+        long seen = 0;
+        for (int b = 0; b < bins.length; b++) {
+            seen += bins[b];
+            if (seen >= rank) return histMin + (b + 0.5) * binWidth;
+        }
+        return histMin + (bins.length - 0.5) * binWidth;
+    }
+
+    public void clear() {
+        head = tail = 0;
+        maxHead = maxTail = 0;
+        sum = sumSq = 0;
+        addsSinceResum = 0;
+        java.util.Arrays.fill(bins, 0);
+    }
+
+    private void evictOldest() {
+        double v = values[(int) (head & mask)];
+        sum -= v;
+        sumSq -= v * v;
+        bins[binOf(v)]--;
+        if (maxHead < maxTail && maxDeque[(int) (maxHead & mask)] == head) maxHead++;
+        head++;
+        if (head == tail) {
+            sum = 0;
+            sumSq = 0;
+        }
+    }
+
+    private void resum() {
+        double s = 0, sq = 0;
+        for (long seq = head; seq < tail; seq++) {
+            double v = values[(int) (seq & mask)];
+            s += v;
+            sq += v * v;
+        }
+        sum = s;
+        sumSq = sq;
+        addsSinceResum = 0;
+    }
+
+    private int binOf(double v) {
+        int b = (int) Math.floor((v - histMin) / binWidth);
+        if (b < 0) return 0;
+        return Math.min(b, bins.length - 1);
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.meridian.realtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatial hash of potholes this device reported recently and potholes already in
+ * Firestore, so a detection near one of them updates that document instead of
+ * creating another. Cells are one radius wide, so a lookup only scans the 3x3
+ * cells around the point.
+ *
+ * Own reports match for {@code windowMs}; known potholes match until forgotten.
+ */
+public final class SpatialDedup {
+
+    public static final double DEFAULT_RADIUS_M = 15.0;
+    public static final long DEFAULT_WINDOW_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final double METRES_PER_DEGREE = 111_320.0;
+    private static final int EVICT_EVERY = 64;
+
+    public static final class Entry {
+        public final String id;
+        public final double lat;
+        public final double lon;
+        /** Loaded from the database rather than reported by this session. */
+        public final boolean known;
+        public long lastSeenMs;
+        public int severityRank;
+        public int hits;
+        /** As the map shows it; a severity raise rewrites the summary entry with it. */
+        public volatile String status = "Reported";
+
+        Entry(String id, double lat, double lon, boolean known, long lastSeenMs, int severityRank) {
+            this.id = id;
+            this.lat = lat;
+            this.lon = lon;
+            this.known = known;
+            this.lastSeenMs = lastSeenMs;
+            this.severityRank = severityRank;
+        }
+    }
+
+    private final double radiusM;
+    private final long windowMs;
+    private final double cellDegLat;
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final Map<String, Entry> byId = new HashMap<>();
+    private int sinceEvict;
+
+    private long matches;
+
+    public SpatialDedup() {
+        this(DEFAULT_RADIUS_M, DEFAULT_WINDOW_MS);
+    }
+
+    public SpatialDedup(double radiusM, long windowMs) {
+        if (radiusM <= 0) throw new IllegalArgumentException("radiusM");
+        this.radiusM = radiusM;
+        this.windowMs = windowMs;
+        this.cellDegLat = radiusM / METRES_PER_DEGREE;
+    }
+
+    /** Nearest matching pothole within the radius, or null. */
+    public synchronized Entry findNear(double lat, double lon, long nowMs) {
+        long row = row(lat);
+        Entry best = null;
+        double bestM = radiusM;
+        for (long r = row - 1; r <= row + 1; r++) {
+            long col = col(lon, r);
+            for (long c = col - 1; c <= col + 1; c++) {
+                List<Entry> list = cells.get(key(r, c));
+                if (list == null) continue;
+                for (int i = 0; i < list.size(); i++) {
+                    Entry e = list.get(i);
+                    if (!e.known && nowMs - e.lastSeenMs > windowMs) continue;
+                    double d = distanceM(lat, lon, e.lat, e.lon);
+                    if (d <= bestM) {
+                        bestM = d;
+                        best = e;
+                    }
+                }
+            }
+        }
+        if (best != null) matches++;
+        return best;
+    }
+
+    /** Adds or refreshes a pothole. Returns the stored entry. */
+    public synchronized Entry remember(String id, double lat, double lon, long timeMs,
+                                       int severityRank, boolean known) {
+        Entry existing = byId.get(id);
+        if (existing != null) {
+            existing.lastSeenMs = Math.max(existing.lastSeenMs, timeMs);
+            existing.severityRank = Math.max(existing.severityRank, severityRank);
+            return existing;
+        }
+        Entry e = new Entry(id, lat, lon, known, timeMs, severityRank);
+        long r = row(lat);
+        cells.computeIfAbsent(key(r, col(lon, r)), k -> new ArrayList<>(2)).add(e);
+        byId.put(id, e);
+        if (++sinceEvict >= EVICT_EVERY) {
+            sinceEvict = 0;
+            evict(timeMs);
+        }
+        return e;
+    }
+
+    /** Drops a pothole, e.g. after it was repaired or deleted. */
+    public synchronized void forget(String id) {
+        Entry e = byId.remove(id);
+        if (e == null) return;
+        long r = row(e.lat);
+        long k = key(r, col(e.lon, r));
+        List<Entry> list = cells.get(k);
+        if (list != null) {
+            list.remove(e);
+            if (list.isEmpty()) cells.remove(k);
+        }
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    /** Lookups that found a pothole to merge into. */
+    public synchronized long getMatches() {
+        return matches;
+    }
+
+    private void evict(long nowMs) {
+        Iterator<List<Entry>> it = cells.values().iterator();
+        while (it.hasNext()) {
+            List<Entry> list = it.next();
+            for (int i = list.size() - 1; i >= 0; i--) {
+                Entry e = list.get(i);
+                if (!e.known && nowMs - e.lastSeenMs > windowMs) {
+                    list.remove(i);
+                    byId.remove(e.id);
+                }
+            }
+            if (list.isEmpty()) it.remove();
+        }
+    }
+
+    private long row(double lat) {
+        return (long) Math.floor(lat / cellDegLat);
+    }
+
+    /** Columns are sized with the cosine of their row, so a row's cells stay square. */
+    private long col(double lon, long row) {
+        double rowLat = Math.min(89.0, Math.abs(row * cellDegLat));
+        double cellDegLon = cellDegLat / Math.cos(Math.toRadians(rowLat));
+        return (long) Math.floor(lon / cellDegLon);
+    }
+
+    private static long key(long row, long col) {
+        return (row << 32) ^ (col & 0xFFFFFFFFL);
+    }
+
+    static double distanceM(double lat1, double lon1, double lat2, double lon2) {
+        double y = Math.toRadians(lat2 - lat1);
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        return Math.sqrt(x * x + y * y) * 6_371_000.0;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.meridian.realtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/** Network-attached IMU gateway speaking the same line/frame protocol over TCP. */
+public class TcpTransport implements SensorTransport {
+
+    public static final int DEFAULT_PORT = 5760;
+    public static final int CONNECT_TIMEOUT_MS = 5_000;
+
+    private final String host;
+    private final int port;
+
+    public TcpTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public Link connect() throws IOException {
+        if (host == null || host.trim().isEmpty() || port <= 0 || port > 65535) {
+            throw new UnavailableException("No gateway address configured");
+        }
+
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(host.trim(), port), CONNECT_TIMEOUT_MS);
+        } catch (IOException e) {
+            try { socket.close(); } catch (Exception ignored) {}
+            throw e;
+        }
+
+        return new Link() {
+            @Override public InputStream getInputStream() throws IOException { return socket.getInputStream(); }
+            @Override public OutputStream getOutputStream() throws IOException { return socket.getOutputStream(); }
+            @Override public void close() throws IOException { socket.close(); }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return host + ":" + port;
+    }
+}
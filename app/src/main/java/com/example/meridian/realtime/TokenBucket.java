@@ -0,0 +1,42 @@
+package com.example.meridian.realtime;
+
+/**
+ * Classic token bucket: holds up to {@code capacity} tokens and refills at a fixed
+ * rate, so short bursts pass while the long-run rate stays capped. Refill is
+ * computed lazily from the caller's clock. Not thread-safe.
+ */
+public final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerMs;
+    private double tokens;
+    private long lastMs;
+
+    /** Starts full at {@code nowMs}. */
+    public TokenBucket(double capacity, double tokensPerMinute, long nowMs) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity");
+        if (tokensPerMinute <= 0) throw new IllegalArgumentException("tokensPerMinute");
+        this.capacity = capacity;
+        this.tokensPerMs = tokensPerMinute / 60_000.0;
+        this.tokens = capacity;
+        this.lastMs = nowMs;
+    }
+
+    public double available(long nowMs) {
+        refill(nowMs);
+        return tokens;
+    }
+
+    public boolean tryTake(long nowMs) {
+        refill(nowMs);
+        if (tokens < 1) return false;
+        tokens -= 1;
+        return true;
+    }
+
+    private void refill(long nowMs) {
+        if (nowMs <= lastMs) return;
+        tokens = Math.min(capacity, tokens + (nowMs - lastMs) * tokensPerMs);
+        lastMs = nowMs;
+    }
+}
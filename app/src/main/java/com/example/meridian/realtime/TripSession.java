@@ -0,0 +1,94 @@
+package com.example.meridian.realtime;
+
+/**
+ * Decides how long a drive's detections wait in the durable outbox, so a trip
+ * costs a few batched commits instead of one round trip per impact. Each
+ * detection is written to the outbox at once, held until the time
+ * {@link #holdUntilMs} picks; one that comes due takes the ones queued before it
+ * along (see {@link com.example.meridian.firebase.ReportOutbox}).
+ *
+ * Detections are grouped from the first one held. The group goes out:
+ * <ul>
+ *   <li>when the trip ends ({@link #released} after releasing the outbox);</li>
+ *   <li>{@code severeMaxLatencyMs} after a severe detection, connected or not;</li>
+ *   <li>with the network good, once {@code batchSize} detections are held or the
+ *       first has waited {@code maxDelayMs};</li>
+ *   <li>once {@code maxHeld} are held, so an offline trip still goes out in
+ *       bounded batches.</li>
+ * </ul>
+ * Offline, other detections are held until one of these, or until the network
+ * comes back and the caller releases the outbox.
+ *
+ * Thread-safe.
+ */
+public final class TripSession {
+
+    public static final class Config {
+        public int batchSize = 20;
+        public long maxDelayMs = 5 * 60_000L;
+        public long severeMaxLatencyMs = 15_000L;
+        /** Peak at or above this is severe; matches the "Severe" cutoff in Pothole. */
+        public double severeAz = 4.0;
+        public int maxHeld = 200;
+    }
+
+    private final Config config;
+    /** Time the first detection of the open group was held, or -1 with no group. */
+    private long groupStartMs = -1;
+    private int groupSize;
+
+    private long added;
+    private long batches;
+
+    public TripSession() {
+        this(new Config());
+    }
+
+    public TripSession(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * When the outbox should send the writes for {@code e}: {@code nowMs} to send
+     * the group now, {@code Long.MAX_VALUE} to hold it until released.
+     */
+    public synchronized long holdUntilMs(HazardEvent e, long nowMs, boolean networkGood) {
+        added++;
+        // Online, a group this old has already gone out on its deadline.
+        if (networkGood && groupSize > 0 && nowMs - groupStartMs >= config.maxDelayMs) endGroup();
+        if (groupSize == 0) groupStartMs = nowMs;
+        groupSize++;
+        if (groupSize >= (networkGood ? config.batchSize : config.maxHeld)) {
+            endGroup();
+            return nowMs;
+        }
+        long until = networkGood ? groupStartMs + config.maxDelayMs : Long.MAX_VALUE;
+        if (e.az >= config.severeAz) until = Math.min(until, nowMs + config.severeMaxLatencyMs);
+        return until;
+    }
+
+    /** The caller released everything held; the next detection starts a new group. */
+    public synchronized void released() {
+        if (groupSize > 0) endGroup();
+    }
+
+    /** Detections in the open group. */
+    public synchronized int getHeld() {
+        return groupSize;
+    }
+
+    public synchronized long getAdded() {
+        return added;
+    }
+
+    /** Groups closed so far. */
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    private void endGroup() {
+        groupSize = 0;
+        groupStartMs = -1;
+        batches++;
+    }
+}
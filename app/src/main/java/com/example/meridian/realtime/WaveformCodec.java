@@ -0,0 +1,127 @@
+package com.example.meridian.realtime;
+
+/**
+ * Packs a short vertical-acceleration trace into a few hundred bytes. Layout:
+ *
+ * <pre>
+ *   u8      version (1)
+ *   varint  sample count n
+ *   svarint first sample time, ms relative to the event
+ *   svarint first value, centi-g
+ *   n-1 x   varint time delta ms, svarint value delta centi-g
+ * </pre>
+ *
+ * svarint is a zigzag-encoded varint, so small steps either way take one byte.
+ * At 100 Hz a 2 s window is typically 2-3 bytes per sample.
+ */
+public final class WaveformCodec {
+
+    public static final int VERSION = 1;
+    /** Values are stored in hundredths of a g. */
+    public static final double SCALE = 100.0;
+
+    /** Decoded trace: times relative to the event, values in g. */
+    public static final class Waveform {
+        public final long[] offsetsMs;
+        public final double[] az;
+
+        Waveform(long[] offsetsMs, double[] az) {
+            this.offsetsMs = offsetsMs;
+            this.az = az;
+        }
+
+        public int size() {
+            return az.length;
+        }
+    }
+
+    private WaveformCodec() {}
+
+    /** Worst-case encoded size for {@code samples} samples. */
+    public static int maxEncodedLength(int samples) {
+        return 1 + 5 + samples * (10 + 5);
+    }
+
+    /**
+     * Writes {@code count} samples, taken from ring buffers at {@code (start + i) & mask},
+     * into {@code out}. Returns the number of bytes written. Does not allocate.
+     */
+    public static int encode(long eventTimeMs, long[] times, short[] centiG, int start, int count,
+                             int mask, byte[] out) {
+        int p = 0;
+        out[p++] = VERSION;
+        p = putVarint(out, p, count);
+        if (count == 0) return p;
+
+        int i0 = start & mask;
+        long prevT = times[i0];
+        int prevV = centiG[i0];
+        p = putVarint(out, p, zigzag(prevT - eventTimeMs));
+        p = putVarint(out, p, zigzag(prevV));
+        for (int i = 1; i < count; i++) {
+            int k = (start + i) & mask;
+            p = putVarint(out, p, times[k] - prevT);
+            p = putVarint(out, p, zigzag(centiG[k] - prevV));
+            prevT = times[k];
+            prevV = centiG[k];
+        }
+        return p;
+    }
+
+    public static short toCentiG(double az) {
+        long v = Math.round(az * SCALE);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+    }
+
+    public static Waveform decode(byte[] blob) {
+        int[] pos = {0};
+        if (blob == null || blob.length < 2) throw new IllegalArgumentException("Waveform too short");
+        int version = blob[pos[0]++];
+        if (version != VERSION) throw new IllegalArgumentException("Unknown waveform version " + version);
+        long n = getVarint(blob, pos);
+        if (n < 0 || n > blob.length) throw new IllegalArgumentException("Bad sample count " + n);
+
+        long[] t = new long[(int) n];
+        double[] v = new double[(int) n];
+        if (n == 0) return new Waveform(t, v);
+        long time = unzigzag(getVarint(blob, pos));
+        long value = unzigzag(getVarint(blob, pos));
+        t[0] = time;
+        v[0] = value / SCALE;
+        for (int i = 1; i < n; i++) {
+            time += getVarint(blob, pos);
+            value += unzigzag(getVarint(blob, pos));
+            t[i] = time;
+            v[i] = value / SCALE;
+        }
+        return new Waveform(t, v);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static int putVarint(byte[] out, int p, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out[p++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out[p++] = (byte) v;
+        return p;
+    }
+
+    private static long getVarint(byte[] in, int[] pos) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= in.length) throw new IllegalArgumentException("Truncated waveform");
+            byte b = in[pos[0]++];
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.meridian.realtime;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent vertical-acceleration samples in a preallocated ring so
+ * the window around an event can be encoded after the fact. Recording is two
+ * array stores; encoding uses a scratch buffer and allocates only the result.
+ * Detector thread only.
+ */
+public final class WaveformRecorder {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final int mask;
+    private final long[] times;
+    private final short[] values;
+    private final byte[] scratch;
+    private long written;
+
+    public WaveformRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** {@code capacity} must be a power of two. */
+    public WaveformRecorder(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity");
+        mask = capacity - 1;
+        times = new long[capacity];
+        values = new short[capacity];
+        scratch = new byte[WaveformCodec.maxEncodedLength(capacity)];
+    }
+
+    public void record(long timeMs, double az) {
+        int k = (int) (written & mask);
+        times[k] = timeMs;
+        values[k] = WaveformCodec.toCentiG(az);
+        written++;
+    }
+
+    /** Encodes the samples within {@code halfWindowMs} of {@code centreMs} that are still held. */
+    public byte[] encode(long centreMs, long halfWindowMs) {
+        long held = Math.min(written, times.length);
+        long first = written - held;
+        // Oldest sample inside the window; samples are in time order.
+        long lo = first, hi = written;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (times[(int) (mid & mask)] < centreMs - halfWindowMs) lo = mid + 1;
+            else hi = mid;
+        }
+        long end = lo;
+        while (end < written && times[(int) (end & mask)] <= centreMs + halfWindowMs) end++;
+
+        int len = WaveformCodec.encode(centreMs, times, values, (int) (lo & mask),
+                (int) (end - lo), mask, scratch);
+        return Arrays.copyOf(scratch, len);
+    }
+}
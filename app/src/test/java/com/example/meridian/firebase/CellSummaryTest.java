@@ -0,0 +1,74 @@
+package com.example.meridian.firebase;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CellSummaryTest {
+
+    @Test
+    public void entryRoundTripsToATenthOfAMetre() {
+        double lat = 45.5017123, lon = -73.5673456;
+        String cell = CellSummary.cellOf(lat, lon);
+        String code = CellSummary.encode(lat, lon, "Moderate", "In Progress");
+        assertEquals(8, code.length());
+
+        CellSummary.Entry e = CellSummary.decode(cell, "abc", code);
+        assertEquals("abc", e.id);
+        assertEquals(lat, e.lat, 1e-6);
+        assertEquals(lon, e.lon, 1e-6);
+        assertEquals("Moderate", e.severity);
+        assertEquals("In Progress", e.status);
+    }
+
+    @Test
+    public void cornersOfTheCellFitTheCode() {
+        String cell = CellSummary.cellOf(-33.9, 151.2);
+        double[] b = Geohash.bounds(cell);
+        double lat = b[2] - 1e-9, lon = b[3] - 1e-9;
+        CellSummary.Entry e = CellSummary.decode(cell, "x", CellSummary.encode(lat, lon, "Severe", "Reported"));
+        assertEquals(lat, e.lat, 1e-6);
+        assertEquals(lon, e.lon, 1e-6);
+        e = CellSummary.decode(cell, "x", CellSummary.encode(b[0], b[1], null, null));
+        assertEquals(b[0], e.lat, 1e-9);
+        assertEquals("Unknown", e.severity);
+        assertEquals("Unknown", e.status);
+    }
+
+    /** The same points as GOLDEN in tools/map-index-backfill/backfill.js. */
+    @Test
+    public void codesMatchTheBackfillScript() {
+        assertEquals("e4qvod32", CellSummary.encode(45.5017123, -73.5673456, "Moderate", "In Progress"));
+        assertEquals("jw5lp941", CellSummary.encode(-33.9, 151.2, "Severe", "Reported"));
+        assertEquals("00000000", CellSummary.encode(0.0, 0.0, null, null));
+        assertEquals("q6xq6x23", CellSummary.encode(89.99, 179.99, "minor", "Repaired"));
+        assertEquals("anumua10", CellSummary.encode(45.4972161, -73.5787963, "Negligible", "Unknown"));
+        assertEquals("r3gx0", CellSummary.cellOf(-33.9, 151.2));
+        assertEquals("f25dvgmfs", Geohash.encode(45.5017123, -73.5673456, Geohash.STORED_PRECISION));
+        assertEquals("zzzzzy0tw", Geohash.encode(89.99, 179.99, Geohash.STORED_PRECISION));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedCodes() {
+        CellSummary.decode("f25dv", "x", "zz");
+    }
+
+    @Test
+    public void entryWriteMergesOneKeyOfTheCellDocument() {
+        ReportOutbox.Write w = CellSummary.entryWrite("id1", 45.5, -73.56, "Minor", "Reported");
+        assertEquals(OutboxEntry.OP_MERGE, w.op);
+        assertEquals(CellSummary.COLLECTION, w.collection);
+        assertEquals(CellSummary.cellOf(45.5, -73.56), w.documentId);
+        assertEquals(1, w.fields.size());
+        assertTrue(w.fields.containsKey("p.id1"));
+    }
+
+    @Test
+    public void boundsContainTheEncodedPoint() {
+        double[] b = Geohash.bounds(Geohash.encode(42.6, -5.6, 5));
+        assertTrue(b[0] <= 42.6 && 42.6 < b[2]);
+        assertTrue(b[1] <= -5.6 && -5.6 < b[3]);
+        assertEquals(Geohash.cellHeightDeg(5), b[2] - b[0], 1e-12);
+        assertEquals(Geohash.cellWidthDeg(5), b[3] - b[1], 1e-12);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.meridian.firebase;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GeohashTest {
+
+    @Test
+    public void encodesKnownPoints() {
+        assertEquals("ezs42", Geohash.encode(42.6, -5.6, 5));
+        assertEquals("u4pruydqqvj", Geohash.encode(57.64911, 10.40744, 11));
+    }
+
+    @Test
+    public void storedHashFallsInsideItsCellsRange() {
+        String stored = Geohash.encode(45.5017, -73.5673, Geohash.STORED_PRECISION);
+        String cell = Geohash.encode(45.5017, -73.5673, 5);
+        assertTrue(stored.compareTo(cell) >= 0);
+        assertTrue(stored.compareTo(Geohash.rangeEnd(cell)) < 0);
+        String next = Geohash.successor(cell);
+        assertTrue(Geohash.rangeEnd(cell).compareTo(next) < 0);
+        assertTrue(stored.compareTo(next) < 0);
+    }
+
+    @Test
+    public void coverContainsEveryPointOfTheBox() {
+        double s = 45.45, w = -73.65, n = 45.55, e = -73.50;
+        List<String> cells = Geohash.cover(s, w, n, e, 5);
+        assertEquals(Geohash.countCover(s, w, n, e, 5), cells.size());
+        for (double lat = s; lat <= n; lat += 0.01) {
+            for (double lon = w; lon <= e; lon += 0.01) {
+                assertTrue(cells.contains(Geohash.encode(lat, lon, 5)));
+            }
+        }
+        for (int i = 1; i < cells.size(); i++) assertTrue(cells.get(i - 1).compareTo(cells.get(i)) < 0);
+    }
+
+    @Test
+    public void coverSplitsAtTheAntimeridian() {
+        List<String> cells = Geohash.cover(-1, 179, 1, -179, 2);
+        assertTrue(cells.contains(Geohash.encode(0, 179.5, 2)));
+        assertTrue(cells.contains(Geohash.encode(0, -179.5, 2)));
+        assertEquals(Geohash.countCover(-1, 179, 1, -179, 2), cells.size());
+    }
+
+    @Test
+    public void successorCarries() {
+        assertEquals("ezs43", Geohash.successor("ezs42"));
+        assertEquals("ezs50", Geohash.successor("ezs4z"));
+        assertNull(Geohash.successor("zz"));
+    }
+}
@@ -0,0 +1,432 @@
+package com.example.meridian.firebase;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReportOutboxTest {
+
+    private File dir;
+
+    private File newFile() throws Exception {
+        dir = Files.createTempDirectory("outbox").toFile();
+        return new File(dir, "outbox.log");
+    }
+
+    @After
+    public void cleanUp() {
+        if (dir == null) return;
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    private static Map<String, Object> report(int n) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("id", "doc" + n);
+        m.put("severity", "Moderate");
+        m.put("location", new OutboxEntry.GeoValue(45.5 + n * 1e-4, -73.6));
+        m.put("timestamp", new OutboxEntry.TimeValue(1_700_000_000_000L + n));
+        m.put("followers", Collections.<String>emptyList());
+        m.put("waveform", new byte[] {1, 2, (byte) n});
+        return m;
+    }
+
+    /** Records batches; fails while {@code failing} names a document in the batch. */
+    private static final class FakeWriter implements ReportOutbox.BatchWriter {
+        final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        volatile int transientFailures;
+        volatile String rejectId;
+
+        @Override
+        public void write(List<OutboxEntry> batch) throws Exception {
+            if (transientFailures > 0) {
+                transientFailures--;
+                throw new java.io.IOException("offline");
+            }
+            List<String> ids = new ArrayList<>();
+            for (OutboxEntry e : batch) {
+                if (e.documentId.equals(rejectId)) throw new IllegalStateException("rejected");
+                ids.add(e.documentId);
+            }
+            batches.add(ids);
+        }
+
+        @Override
+        public boolean isPermanent(Exception e) {
+            return e instanceof IllegalStateException;
+        }
+    }
+
+    private static void awaitEmpty(ReportOutbox outbox) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (outbox.getQueueDepth() > 0) {
+            if (System.currentTimeMillis() > deadline) fail("outbox did not drain");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void pendingWritesSurviveReopen() throws Exception {
+        File file = newFile();
+        OutboxStore store = new OutboxStore(file);
+        for (int i = 0; i < 3; i++) store.append(1000 + i, OutboxEntry.OP_SET, "potholes", "doc" + i, report(i));
+        store.append(2000, OutboxEntry.OP_UPDATE, "potholes", "doc0",
+                Collections.<String, Object>singletonMap("lastDetectedAt", new OutboxEntry.TimeValue(2000)));
+        store.completeOldest(1);
+        store.close();
+
+        OutboxStore reopened = new OutboxStore(file);
+        List<OutboxEntry> pending = new ArrayList<>(reopened.pending());
+        assertEquals(3, pending.size());
+        assertEquals("doc1", pending.get(0).documentId);
+        assertEquals(1001, pending.get(0).enqueuedAtMs);
+        OutboxEntry.GeoValue geo = (OutboxEntry.GeoValue) pending.get(0).fields.get("location");
+        assertEquals(45.5001, geo.lat, 1e-12);
+        assertEquals(Collections.emptyList(), pending.get(0).fields.get("followers"));
+        assertArrayEquals(new byte[] {1, 2, 1}, (byte[]) pending.get(0).fields.get("waveform"));
+        assertEquals(OutboxEntry.OP_UPDATE, pending.get(2).op);
+        assertEquals(2000, ((OutboxEntry.TimeValue) pending.get(2).fields.get("lastDetectedAt")).epochMs);
+
+        OutboxEntry next = reopened.append(3000, OutboxEntry.OP_SET, "potholes", "doc9", report(9));
+        assertEquals(5, next.seq);
+        assertEquals(0, reopened.getTruncatedBytes());
+        reopened.close();
+    }
+
+    @Test
+    public void tornTailIsCutOff() throws Exception {
+        File file = newFile();
+        OutboxStore store = new OutboxStore(file);
+        store.append(1, OutboxEntry.OP_SET, "potholes", "a", report(1));
+        store.append(2, OutboxEntry.OP_SET, "potholes", "b", report(2));
+        store.close();
+        long intact = file.length();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 5, 6});
+        }
+
+        OutboxStore reopened = new OutboxStore(file);
+        assertEquals(2, reopened.pending().size());
+        assertEquals(10, reopened.getTruncatedBytes());
+        assertEquals(intact, file.length());
+        reopened.append(3, OutboxEntry.OP_SET, "potholes", "c", report(3));
+        reopened.close();
+
+        OutboxStore again = new OutboxStore(file);
+        assertEquals(3, again.pending().size());
+        assertEquals("c", again.pending().peekLast().documentId);
+        again.close();
+    }
+
+    @Test
+    public void compactsOnceMostEntriesAreDone() throws Exception {
+        File file = newFile();
+        OutboxStore store = new OutboxStore(file);
+        for (int i = 0; i < 600; i++) store.append(i, OutboxEntry.OP_SET, "potholes", "d" + i, report(i));
+        long full = file.length();
+        for (int i = 0; i < 599; i++) store.completeOldest(1);
+        assertTrue("compacted " + file.length() + " vs " + full, file.length() < full / 4);
+        store.close();
+
+        OutboxStore reopened = new OutboxStore(file);
+        assertEquals(1, reopened.pending().size());
+        assertEquals("d599", reopened.pending().peekFirst().documentId);
+        reopened.close();
+    }
+
+    @Test
+    public void failedCompactionLeavesTheLogWorking() throws Exception {
+        File file = newFile();
+        // A directory where the new log would go makes every compaction fail.
+        File tmp = new File(file.getPath() + ".tmp");
+        assertTrue(tmp.mkdir());
+        OutboxStore store = new OutboxStore(file);
+        for (int i = 0; i < 600; i++) store.append(i, OutboxEntry.OP_SET, "potholes", "d" + i, report(i));
+        for (int i = 0; i < 598; i++) store.completeOldest(1);
+        assertEquals(1, store.getCompactFailures());
+        store.append(700, OutboxEntry.OP_SET, "potholes", "late", report(0));
+        store.completeOldest(1);
+        store.close();
+
+        OutboxStore reopened = new OutboxStore(file);
+        assertEquals(2, reopened.pending().size());
+        assertEquals("d599", reopened.pending().peekFirst().documentId);
+        assertEquals("late", reopened.pending().peekLast().documentId);
+
+        assertTrue(tmp.delete());
+        for (int i = 0; i < 2; i++) reopened.completeOldest(1);
+        reopened.close();
+        OutboxStore again = new OutboxStore(file);
+        assertEquals(0, again.pending().size());
+        again.close();
+    }
+
+    @Test
+    public void flushesInOrderInBoundedBatches() throws Exception {
+        FakeWriter writer = new FakeWriter();
+        ReportOutbox outbox = new ReportOutbox(newFile(), writer);
+        for (int i = 0; i < 250; i++) outbox.enqueue(OutboxEntry.OP_SET, "potholes", "d" + i, report(i));
+        assertEquals(250, outbox.getQueueDepth());
+
+        outbox.start();
+        awaitEmpty(outbox);
+        outbox.stop();
+
+        assertEquals(3, writer.batches.size());
+        assertEquals(ReportOutbox.MAX_BATCH, writer.batches.get(0).size());
+        assertEquals(50, writer.batches.get(2).size());
+        List<String> all = new ArrayList<>();
+        for (List<String> b : writer.batches) all.addAll(b);
+        for (int i = 0; i < 250; i++) assertEquals("d" + i, all.get(i));
+        assertEquals(250, outbox.getWritten());
+        assertEquals(3, outbox.getBatches());
+    }
+
+    @Test
+    public void enqueueAllGoesOutAsOneBatch() throws Exception {
+        FakeWriter writer = new FakeWriter();
+        File file = newFile();
+        ReportOutbox outbox = new ReportOutbox(file, writer);
+        outbox.start();
+        List<ReportOutbox.Write> writes = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            writes.add(new ReportOutbox.Write(OutboxEntry.OP_SET, "potholes", "t" + i, report(i)));
+        }
+        outbox.enqueueAll(writes);
+        awaitEmpty(outbox);
+        outbox.stop();
+
+        assertEquals(1, writer.batches.size());
+        assertEquals(30, writer.batches.get(0).size());
+        assertEquals("t29", writer.batches.get(0).get(29));
+
+        OutboxStore reopened = new OutboxStore(file);
+        assertEquals(0, reopened.pending().size());
+        assertEquals(31, reopened.append(0, OutboxEntry.OP_SET, "potholes", "x", report(0)).seq);
+        reopened.close();
+    }
+
+    @Test
+    public void heldWritesWaitUntilSomethingBehindThemIsDue() throws Exception {
+        FakeWriter writer = new FakeWriter();
+        ReportOutbox outbox = new ReportOutbox(newFile(), writer);
+        outbox.start();
+        List<ReportOutbox.Write> held = new ArrayList<>();
+        held.add(new ReportOutbox.Write(OutboxEntry.OP_SET, "potholes", "h0", report(0)));
+        held.add(new ReportOutbox.Write(OutboxEntry.OP_SET, "potholes", "h1", report(1)));
+        outbox.enqueueAll(held, Long.MAX_VALUE);
+        outbox.enqueueAll(Collections.singletonList(
+                new ReportOutbox.Write(OutboxEntry.OP_SET, "potholes", "h2", report(2))),
+                System.currentTimeMillis() + 200);
+        Thread.sleep(50);
+        assertEquals(3, outbox.getHeld());
+        assertTrue(writer.batches.isEmpty());
+
+        // h2's hold runs out and takes h0 and h1 along.
+        awaitEmpty(outbox);
+        assertEquals(Arrays.asList(Arrays.asList("h0", "h1", "h2")), writer.batches);
+
+        outbox.enqueueAll(Collections.singletonList(
+                new ReportOutbox.Write(OutboxEntry.OP_SET, "potholes", "h3", report(3))), Long.MAX_VALUE);
+        outbox.enqueue(OutboxEntry.OP_SET, "potholes", "now", report(4));
+        awaitEmpty(outbox);
+        outbox.enqueueAll(Collections.singletonList(
+                new ReportOutbox.Write(OutboxEntry.OP_SET, "potholes", "h5", report(5))), Long.MAX_VALUE);
+        outbox.releaseHeld();
+        awaitEmpty(outbox);
+        outbox.stop();
+
+        assertEquals(Arrays.asList("h3", "now"), writer.batches.get(1));
+        assertEquals(Arrays.asList("h5"), writer.batches.get(2));
+        assertEquals(0, outbox.getHeld());
+    }
+
+    @Test
+    public void heldWritesAreDueAfterReopen() throws Exception {
+        File file = newFile();
+        ReportOutbox outbox = new ReportOutbox(file, new FakeWriter());
+        outbox.enqueueAll(Collections.singletonList(
+                new ReportOutbox.Write(OutboxEntry.OP_SET, "potholes", "h", report(0))), Long.MAX_VALUE);
+        assertEquals(1, outbox.getHeld());
+
+        FakeWriter writer = new FakeWriter();
+        ReportOutbox reopened = new ReportOutbox(file, writer);
+        assertEquals(0, reopened.getHeld());
+        reopened.start();
+        awaitEmpty(reopened);
+        reopened.stop();
+        assertEquals(Arrays.asList(Arrays.asList("h")), writer.batches);
+    }
+
+    @Test
+    public void retriesAfterTransientFailure() throws Exception {
+        FakeWriter writer = new FakeWriter();
+        writer.transientFailures = 2;
+        ReportOutbox outbox = new ReportOutbox(newFile(), writer);
+        outbox.start();
+        outbox.enqueue(OutboxEntry.OP_SET, "potholes", "a", report(1));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (outbox.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            outbox.flushNow();
+            Thread.sleep(5);
+        }
+        outbox.stop();
+
+        assertEquals(0, outbox.getQueueDepth());
+        assertEquals(2, outbox.getFailures());
+        assertEquals(Arrays.asList(Arrays.asList("a")), writer.batches);
+    }
+
+    @Test
+    public void timedOutBatchIsOfferedAgainUnchanged() throws Exception {
+        List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+        java.util.concurrent.CountDownLatch timedOut = new java.util.concurrent.CountDownLatch(1);
+        ReportOutbox outbox = new ReportOutbox(newFile(), new ReportOutbox.BatchWriter() {
+            @Override
+            public void write(List<OutboxEntry> batch) throws Exception {
+                List<String> ids = new ArrayList<>();
+                for (OutboxEntry e : batch) ids.add(e.documentId);
+                calls.add(ids);
+                if (calls.size() == 1) {
+                    timedOut.countDown();
+                    throw new java.util.concurrent.TimeoutException();
+                }
+            }
+
+            @Override
+            public boolean isPermanent(Exception e) {
+                return false;
+            }
+        });
+        outbox.enqueue(OutboxEntry.OP_SET, "potholes", "a", report(1));
+        outbox.start();
+        assertTrue(timedOut.await(5, java.util.concurrent.TimeUnit.SECONDS));
+        outbox.enqueue(OutboxEntry.OP_SET, "potholes", "b", report(2));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (outbox.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            outbox.flushNow();
+            Thread.sleep(5);
+        }
+        outbox.stop();
+
+        assertEquals(Arrays.asList(Arrays.asList("a"), Arrays.asList("a"), Arrays.asList("b")), calls);
+        assertEquals(1, outbox.getFailures());
+        assertEquals(2, outbox.getWritten());
+    }
+
+    @Test
+    public void permanentFailureDropsOnlyTheOffendingWrite() throws Exception {
+        FakeWriter writer = new FakeWriter();
+        writer.rejectId = "d2";
+        ReportOutbox outbox = new ReportOutbox(newFile(), writer);
+        List<String> dropped = Collections.synchronizedList(new ArrayList<>());
+        outbox.setListener(new ReportOutbox.Listener() {
+            @Override
+            public void onFlushed(List<OutboxEntry> batch) {}
+
+            @Override
+            public void onDropped(OutboxEntry entry, Exception cause) {
+                dropped.add(entry.documentId);
+            }
+        });
+        for (int i = 0; i < 5; i++) outbox.enqueue(OutboxEntry.OP_SET, "potholes", "d" + i, report(i));
+
+        outbox.start();
+        awaitEmpty(outbox);
+        outbox.stop();
+
+        assertEquals(Collections.singletonList("d2"), dropped);
+        assertEquals(1, outbox.getDropped());
+        assertEquals(4, outbox.getWritten());
+        List<String> all = new ArrayList<>();
+        for (List<String> b : writer.batches) all.addAll(b);
+        assertEquals(Arrays.asList("d0", "d1", "d3", "d4"), all);
+    }
+
+    @Test
+    public void rejectedGroupIsDroppedWhole() throws Exception {
+        File file = newFile();
+        ReportOutbox first = new ReportOutbox(file, new FakeWriter());
+        first.enqueue(OutboxEntry.OP_SET, "potholes", "d0", report(0));
+        first.enqueueAll(Arrays.asList(
+                new ReportOutbox.Write(OutboxEntry.OP_UPDATE, "potholes", "d1", report(1)),
+                new ReportOutbox.Write(OutboxEntry.OP_MERGE, "potholeCells", "s1", report(1))));
+        first.enqueueAll(Arrays.asList(
+                new ReportOutbox.Write(OutboxEntry.OP_UPDATE, "potholes", "d2", report(2)),
+                new ReportOutbox.Write(OutboxEntry.OP_MERGE, "potholeCells", "s2", report(2))));
+        first.enqueue(OutboxEntry.OP_SET, "potholes", "d3", report(3));
+
+        // Groups are read back from the log.
+        FakeWriter writer = new FakeWriter();
+        writer.rejectId = "d2";
+        ReportOutbox outbox = new ReportOutbox(file, writer);
+        List<String> dropped = Collections.synchronizedList(new ArrayList<>());
+        outbox.setListener(new ReportOutbox.Listener() {
+            @Override
+            public void onFlushed(List<OutboxEntry> batch) {}
+
+            @Override
+            public void onDropped(OutboxEntry entry, Exception cause) {
+                dropped.add(entry.documentId);
+            }
+        });
+        outbox.start();
+        awaitEmpty(outbox);
+        outbox.stop();
+
+        assertEquals(Arrays.asList("d2", "s2"), dropped);
+        assertEquals(2, outbox.getDropped());
+        assertEquals(Arrays.asList(Arrays.asList("d0"), Arrays.asList("d1", "s1"), Arrays.asList("d3")),
+                writer.batches);
+    }
+
+    @Test
+    public void groupsAreNotSplitAcrossBatches() throws Exception {
+        FakeWriter writer = new FakeWriter();
+        ReportOutbox outbox = new ReportOutbox(newFile(), writer);
+        for (int i = 0; i < ReportOutbox.MAX_BATCH - 1; i++) {
+            outbox.enqueue(OutboxEntry.OP_SET, "potholes", "d" + i, report(i));
+        }
+        outbox.enqueueAll(Arrays.asList(
+                new ReportOutbox.Write(OutboxEntry.OP_SET, "potholes", "p", report(0)),
+                new ReportOutbox.Write(OutboxEntry.OP_MERGE, "potholeCells", "s", report(0))));
+        outbox.start();
+        awaitEmpty(outbox);
+        outbox.stop();
+
+        assertEquals(2, writer.batches.size());
+        assertEquals(ReportOutbox.MAX_BATCH - 1, writer.batches.get(0).size());
+        assertEquals(Arrays.asList("p", "s"), writer.batches.get(1));
+    }
+
+    @Test
+    public void retryDelayGrowsWithinBounds() throws Exception {
+        ReportOutbox outbox = new ReportOutbox(newFile(), new FakeWriter());
+        for (int f = 1; f < 40; f++) {
+            long cap = Math.min(ReportOutbox.MAX_RETRY_MS, ReportOutbox.BASE_RETRY_MS << Math.min(f - 1, 16));
+            long d = outbox.retryDelayMs(f);
+            assertTrue(f + ": " + d, d >= cap / 2 && d <= cap);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedValues() throws Exception {
+        ReportOutbox outbox = new ReportOutbox(newFile(), new FakeWriter());
+        outbox.enqueue(OutboxEntry.OP_SET, "potholes", "a",
+                Collections.<String, Object>singletonMap("when", new java.util.Date()));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.meridian.map;
+
+import com.example.meridian.firebase.CellSummary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CellEntryDiffTest {
+
+    private static final double LAT = 45.5017, LON = -73.5673;
+    private static final String CELL = CellSummary.cellOf(LAT, LON);
+
+    private static final class Recorder implements CellEntryDiff.Callback {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onAdded(CellSummary.Entry entry) {
+            events.add("+" + entry.id + ":" + entry.status);
+        }
+
+        @Override
+        public void onChanged(CellSummary.Entry entry) {
+            events.add("~" + entry.id + ":" + entry.status);
+        }
+
+        @Override
+        public void onRemoved(String potholeId) {
+            events.add("-" + potholeId);
+        }
+    }
+
+    private static Map<String, Object> entries(String... idAndStatus) {
+        Map<String, Object> m = new HashMap<>();
+        for (int i = 0; i < idAndStatus.length; i += 2) {
+            m.put(idAndStatus[i], CellSummary.encode(LAT + i * 1e-5, LON, "Minor", idAndStatus[i + 1]));
+        }
+        return m;
+    }
+
+    @Test
+    public void firstSnapshotAddsEveryEntry() {
+        CellEntryDiff diff = new CellEntryDiff();
+        Recorder r = new Recorder();
+        diff.apply(CELL, entries("a", "Reported", "b", "Repaired"), r);
+        assertEquals(2, r.events.size());
+        assertTrue(r.events.contains("+a:Reported"));
+        assertTrue(r.events.contains("+b:Repaired"));
+        assertEquals(2, diff.size());
+    }
+
+    @Test
+    public void onlyTheChangedEntryCallsBack() {
+        CellEntryDiff diff = new CellEntryDiff();
+        diff.apply(CELL, entries("a", "Reported", "b", "Reported", "c", "Reported"), new Recorder());
+
+        Recorder r = new Recorder();
+        diff.apply(CELL, entries("a", "Reported", "b", "In Progress", "c", "Reported"), r);
+        assertEquals(List.of("~b:In Progress"), r.events);
+
+        r = new Recorder();
+        diff.apply(CELL, entries("a", "Reported", "b", "In Progress", "c", "Reported"), r);
+        assertTrue(r.events.isEmpty());
+    }
+
+    @Test
+    public void missingEntryIsRemoved() {
+        CellEntryDiff diff = new CellEntryDiff();
+        diff.apply(CELL, entries("a", "Reported", "b", "Reported"), new Recorder());
+
+        Recorder r = new Recorder();
+        diff.apply(CELL, entries("a", "Reported"), r);
+        assertEquals(List.of("-b"), r.events);
+        assertEquals(1, diff.size());
+    }
+
+    @Test
+    public void goneCellRemovesAllItsEntries() {
+        CellEntryDiff diff = new CellEntryDiff();
+        diff.apply(CELL, entries("a", "Reported", "b", "Reported"), new Recorder());
+        Map<String, Object> elsewhere = new HashMap<>();
+        elsewhere.put("z", CellSummary.encode(-33.9, 151.2, "Severe", "Reported"));
+        diff.apply(CellSummary.cellOf(-33.9, 151.2), elsewhere, new Recorder());
+
+        Recorder r = new Recorder();
+        diff.apply(CELL, null, r);
+        assertEquals(2, r.events.size());
+        assertTrue(r.events.contains("-a"));
+        assertTrue(r.events.contains("-b"));
+        assertEquals(1, diff.size());
+    }
+
+    @Test
+    public void malformedEntryKeepsThePreviousOne() {
+        CellEntryDiff diff = new CellEntryDiff();
+        diff.apply(CELL, entries("a", "Reported"), new Recorder());
+
+        Map<String, Object> bad = new HashMap<>();
+        bad.put("a", "zz");
+        bad.put("n", "zz");
+        Recorder r = new Recorder();
+        diff.apply(CELL, bad, r);
+        assertTrue(r.events.isEmpty());
+        assertEquals(2, diff.getMalformed());
+        assertEquals(1, diff.size());
+
+        diff.apply(CELL, entries("a", "Repaired"), r);
+        assertEquals(List.of("~a:Repaired"), r.events);
+    }
+
+    @Test
+    public void clearForgetsWhatWasShown() {
+        CellEntryDiff diff = new CellEntryDiff();
+        diff.apply(CELL, entries("a", "Reported"), new Recorder());
+        diff.clear();
+        Recorder r = new Recorder();
+        diff.apply(CELL, entries("a", "Reported"), r);
+        assertEquals(List.of("+a:Reported"), r.events);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.meridian.map;
+
+import com.example.meridian.firebase.CellSummary;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PinBatchTest {
+
+    private static final double LAT = 45.5017, LON = -73.5673;
+    private static final String CELL = CellSummary.cellOf(LAT, LON);
+
+    private static Map<String, Object> entries(String... idAndStatus) {
+        Map<String, Object> m = new HashMap<>();
+        for (int i = 0; i < idAndStatus.length; i += 2) {
+            m.put(idAndStatus[i], CellSummary.encode(LAT + i * 1e-5, LON, "Severe", idAndStatus[i + 1]));
+        }
+        return m;
+    }
+
+    @Test
+    public void collectsOneSnapshotOfEdits() {
+        CellEntryDiff diff = new CellEntryDiff();
+        PinBatch.Builder b = new PinBatch.Builder();
+        diff.apply(CELL, entries("a", "Reported", "b", "Reported"), b);
+        PinBatch first = b.build(1);
+        assertEquals(2, first.added.size());
+        assertEquals(1, first.cells);
+        assertTrue(first.decodeNanos >= 0);
+
+        b = new PinBatch.Builder();
+        diff.apply(CELL, entries("a", "Repaired"), b);
+        PinBatch second = b.build(1);
+        assertEquals(0, second.added.size());
+        assertEquals("a", second.changed.get(0).id);
+        assertEquals("Repaired", second.changed.get(0).status);
+        assertEquals("b", second.removed.get(0));
+        assertEquals(2, second.size());
+
+        b = new PinBatch.Builder();
+        diff.apply(CELL, entries("a", "Repaired"), b);
+        assertTrue(b.build(1).isEmpty());
+    }
+
+    @Test
+    public void builtBatchCannotChange() {
+        PinBatch.Builder b = new PinBatch.Builder();
+        b.onRemoved("x");
+        PinBatch batch = b.build(1);
+        try {
+            batch.removed.add("y");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            b.onRemoved("y");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, batch.removed.size());
+    }
+}
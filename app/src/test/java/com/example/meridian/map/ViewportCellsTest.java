@@ -0,0 +1,85 @@
+package com.example.meridian.map;
+
+import com.example.meridian.firebase.Geohash;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ViewportCellsTest {
+
+    private final ViewportCells cells = new ViewportCells();
+
+    private static int count(List<ViewportCells.Range> ranges) {
+        int n = 0;
+        for (ViewportCells.Range r : ranges) n += r.cells.size();
+        return n;
+    }
+
+    @Test
+    public void neighbourhoodUsesFineCellsAndFewQueries() {
+        List<ViewportCells.Range> ranges = cells.request(45.50, -73.58, 45.51, -73.56);
+        int n = count(ranges);
+        assertTrue(n > 0 && n <= ViewportCells.MAX_CELLS);
+        assertEquals(ViewportCells.MAX_PRECISION, ranges.get(0).start.length());
+        assertTrue(ranges.size() <= n);
+        // Every point in the viewport falls in one of the ranges.
+        String stored = Geohash.encode(45.505, -73.57, Geohash.STORED_PRECISION);
+        boolean inside = false;
+        for (ViewportCells.Range r : ranges) {
+            inside |= stored.compareTo(r.start) >= 0 && stored.compareTo(r.end) < 0;
+        }
+        assertTrue(inside);
+    }
+
+    @Test
+    public void panningOnlyFetchesNewlyExposedCells() {
+        List<ViewportCells.Range> first = cells.request(45.50, -73.58, 45.51, -73.56);
+        for (ViewportCells.Range r : first) cells.onLoaded(r);
+        int loaded = cells.getLoadedCells();
+
+        assertTrue(cells.request(45.50, -73.58, 45.51, -73.56).isEmpty());
+
+        List<ViewportCells.Range> panned = cells.request(45.50, -73.57, 45.51, -73.55);
+        assertTrue(count(panned) > 0);
+        assertTrue(count(panned) < loaded);
+    }
+
+    @Test
+    public void zoomingInsideALoadedCoarseCellLoadsNothing() {
+        List<ViewportCells.Range> city = cells.request(45.40, -73.80, 45.70, -73.45);
+        assertTrue(count(city) > 0);
+        assertTrue(city.get(0).start.length() < ViewportCells.MAX_PRECISION);
+        // In flight counts as covered.
+        assertTrue(cells.request(45.50, -73.58, 45.51, -73.56).isEmpty());
+        for (ViewportCells.Range r : city) cells.onLoaded(r);
+        assertTrue(cells.request(45.50, -73.58, 45.51, -73.56).isEmpty());
+    }
+
+    @Test
+    public void failedRangesAreRequestedAgain() {
+        List<ViewportCells.Range> first = cells.request(45.50, -73.58, 45.51, -73.56);
+        for (ViewportCells.Range r : first) cells.onFailed(r);
+        assertEquals(count(first), count(cells.request(45.50, -73.58, 45.51, -73.56)));
+    }
+
+    @Test
+    public void continentViewLoadsNothing() {
+        assertTrue(cells.request(25, -125, 50, -65).isEmpty());
+    }
+
+    @Test
+    public void cappedPrecisionRangesContainTheCellDocumentIds() {
+        ViewportCells summaries = new ViewportCells(ViewportCells.MIN_PRECISION, 5);
+        List<ViewportCells.Range> ranges = summaries.request(45.50, -73.58, 45.51, -73.56);
+        String id = Geohash.encode(45.505, -73.57, 5);
+        boolean inside = false;
+        for (ViewportCells.Range r : ranges) {
+            assertTrue(r.start.length() <= 5);
+            inside |= id.compareTo(r.start) >= 0 && id.compareTo(r.end) < 0;
+        }
+        assertTrue(inside);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BinaryFrameCodecTest {
+
+    private final List<double[]> samples = new ArrayList<>();
+
+    private final BinaryFrameDecoder decoder = new BinaryFrameDecoder(s -> samples.add(new double[]{
+            s.hasLat ? s.lat : Double.NaN,
+            s.hasLon ? s.lon : Double.NaN,
+            s.az,
+            s.deviceTimeMs
+    }));
+
+    private static byte[] frame(long t, double lat, double lon, double az) {
+        byte[] out = new byte[BinaryFrameCodec.SAMPLE_FRAME];
+        int n = BinaryFrameCodec.encodeSample(t, lat, lon, az, true, out, 0);
+        assertEquals(BinaryFrameCodec.SAMPLE_FRAME, n);
+        return out;
+    }
+
+    @Test
+    public void crcMatchesReferenceVector() {
+        byte[] check = "123456789".getBytes();
+        assertEquals(0x29B1, BinaryFrameCodec.crc16(check, 0, check.length));
+    }
+
+    @Test
+    public void roundTripsSample() {
+        byte[] f = frame(123_456L, 45.4972161, -73.5787963, 1.374);
+        decoder.feed(f, 0, f.length);
+
+        assertEquals(1, samples.size());
+        double[] s = samples.get(0);
+        assertEquals(45.4972161, s[0], 1e-7);
+        assertEquals(-73.5787963, s[1], 1e-7);
+        assertEquals(1.374, s[2], 1e-9);
+        assertEquals(123_456L, (long) s[3]);
+    }
+
+    @Test
+    public void deviceTimeIsUnsigned() {
+        byte[] f = frame(0xFFFF_FFF0L, 0, 0, 0);
+        decoder.feed(f, 0, f.length);
+        assertEquals(0xFFFF_FFF0L, (long) samples.get(0)[3]);
+    }
+
+    @Test
+    public void missingFixIsReported() {
+        byte[] out = new byte[BinaryFrameCodec.SAMPLE_FRAME];
+        BinaryFrameCodec.encodeSample(1, 10, 20, 0.5, false, out, 0);
+        decoder.feed(out, 0, out.length);
+
+        assertTrue(Double.isNaN(samples.get(0)[0]));
+        assertTrue(Double.isNaN(samples.get(0)[1]));
+        assertEquals(0.5, samples.get(0)[2], 1e-9);
+    }
+
+    @Test
+    public void saturatesAzAtInt16Range() {
+        byte[] f = frame(1, 0, 0, 99.0);
+        decoder.feed(f, 0, f.length);
+        assertEquals(32.767, samples.get(0)[2], 1e-9);
+    }
+
+    @Test
+    public void decodesFramesSplitByteByByte() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (int i = 0; i < 10; i++) bos.write(frame(i, i, -i, i / 10.0), 0, BinaryFrameCodec.SAMPLE_FRAME);
+        byte[] all = bos.toByteArray();
+
+        for (int i = 0; i < all.length; i++) decoder.feed(all, i, 1);
+
+        assertEquals(10, samples.size());
+        assertEquals(9.0, samples.get(9)[0], 1e-7);
+        assertEquals(0, decoder.getBytesSkipped());
+    }
+
+    @Test
+    public void resyncsAfterCorruptionAndGarbage() {
+        byte[] good1 = frame(1, 1, 1, 1);
+        byte[] bad = frame(2, 2, 2, 2);
+        bad[9] ^= 0x40;
+        byte[] good2 = frame(3, 3, 3, 3);
+        byte[] garbage = {0x00, (byte) 0xA5, 0x13, (byte) 0xA5, 0x5A, (byte) 0xFF, 0x01};
+        byte[] good3 = frame(4, 4, 4, 4);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(good1, 0, good1.length);
+        bos.write(bad, 0, bad.length);
+        bos.write(good2, 0, good2.length);
+        bos.write(garbage, 0, garbage.length);
+        bos.write(good3, 0, good3.length);
+        byte[] all = bos.toByteArray();
+        decoder.feed(all, 0, all.length);
+
+        assertEquals(3, samples.size());
+        assertEquals(1, (long) samples.get(0)[3]);
+        assertEquals(3, (long) samples.get(1)[3]);
+        assertEquals(4, (long) samples.get(2)[3]);
+        assertEquals(1, decoder.getCrcErrors());
+    }
+
+    @Test
+    public void survivesRandomNoiseBetweenFrames() {
+        Random rnd = new Random(7);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int frames = 500;
+        for (int i = 0; i < frames; i++) {
+            byte[] f = frame(i, 45, -73, 1);
+            bos.write(f, 0, f.length);
+            byte[] noise = new byte[rnd.nextInt(8)];
+            rnd.nextBytes(noise);
+            for (int k = 0; k < noise.length; k++) if ((noise[k] & 0xFF) == 0xA5) noise[k] = 0;
+            bos.write(noise, 0, noise.length);
+        }
+        byte[] all = bos.toByteArray();
+        for (int off = 0; off < all.length; off += 61) {
+            decoder.feed(all, off, Math.min(61, all.length - off));
+        }
+        assertEquals(frames, samples.size());
+    }
+
+    @Test
+    public void forwardsOtherFrameTypes() {
+        final int[] seen = new int[2];
+        decoder.setFrameListener((type, buf, off, len) -> {
+            seen[0] = type;
+            seen[1] = len;
+        });
+        byte[] out = new byte[BinaryFrameCodec.MAX_FRAME];
+        out[BinaryFrameCodec.HEADER_LENGTH] = 42;
+        int n = BinaryFrameCodec.finishFrame(0x7F, 1, out, 0);
+        decoder.feed(out, 0, n);
+
+        assertEquals(0x7F, seen[0]);
+        assertEquals(1, seen[1]);
+        assertTrue(samples.isEmpty());
+    }
+}
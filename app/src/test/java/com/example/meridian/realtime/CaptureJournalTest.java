@@ -0,0 +1,127 @@
+package com.example.meridian.realtime;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CaptureJournalTest {
+
+    private File dir;
+
+    private File newDir() throws Exception {
+        dir = Files.createTempDirectory("capture").toFile();
+        return dir;
+    }
+
+    @After
+    public void cleanUp() {
+        if (dir == null) return;
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void replayReproducesSamplesAcrossSegments() throws Exception {
+        TrackerSimulator sim = new TrackerSimulator(new TrackerSimulator.Config());
+        List<String> live = new ArrayList<>();
+        SensorStreamDecoder liveDecoder = new SensorStreamDecoder(
+                s -> live.add(s.lat + "," + s.lon + "," + s.az));
+
+        byte[] buf = new byte[sim.maxSampleLength() * 8];
+        try (CaptureJournal journal = new CaptureJournal(newDir(), 4096, 1000)) {
+            journal.appendReset(0);
+            for (int chunk = 0; chunk < 500; chunk++) {
+                int len = 0;
+                for (int i = 0; i < 8; i++) len += sim.next(buf, len);
+                journal.appendData(sim.getTimeMs(), buf, 0, len);
+                liveDecoder.feed(buf, 0, len);
+            }
+            assertEquals(501, journal.getRecordsWritten());
+        }
+        assertTrue("rotated", CaptureJournal.listSegments(dir).length > 10);
+
+        List<String> replayed = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        JournalReplayer replayer = new JournalReplayer(dir, s -> {
+            replayed.add(s.lat + "," + s.lon + "," + s.az);
+            times.add(s.receivedAtMs);
+        });
+        JournalReplayer.Stats stats = replayer.replay(JournalReplayer.AS_FAST_AS_POSSIBLE);
+
+        assertEquals(live, replayed);
+        assertEquals(4_000, stats.samples);
+        assertEquals(501, stats.records);
+        assertEquals(1, stats.resets);
+        assertEquals(80L, (long) times.get(0));
+        assertEquals(sim.getTimeMs(), stats.lastTimeMs);
+    }
+
+    @Test
+    public void oldSegmentsAreDeleted() throws Exception {
+        byte[] data = new byte[100];
+        try (CaptureJournal journal = new CaptureJournal(newDir(), 512, 3)) {
+            for (int i = 0; i < 50; i++) journal.appendData(i, data, 0, data.length);
+            journal.appendData(50, new byte[1024], 0, 1024);
+            assertEquals(1, journal.getRecordsSkipped());
+        }
+        File[] segments = CaptureJournal.listSegments(dir);
+        assertEquals(3, segments.length);
+        assertTrue(segments[0].getName().compareTo(CaptureJournal.segmentFile(dir, 5).getName()) > 0);
+    }
+
+    @Test
+    public void originalSpeedFollowsRecordedTimes() throws Exception {
+        byte[] line = "az=1.0\n".getBytes(StandardCharsets.US_ASCII);
+        try (CaptureJournal journal = new CaptureJournal(newDir())) {
+            for (int i = 0; i <= 10; i++) journal.appendData(1_000 + i * 20L, line, 0, line.length);
+        }
+        JournalReplayer.Stats stats = new JournalReplayer(dir, s -> {}).replay(JournalReplayer.ORIGINAL_SPEED);
+        assertEquals(11, stats.samples);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(stats.elapsedNanos) >= 190);
+    }
+
+    @Test
+    public void supervisorCapturesTheLiveSession() throws Exception {
+        PipeTransport transport = new PipeTransport("loopback");
+        List<Double> live = Collections.synchronizedList(new ArrayList<>());
+        ConnectionSupervisor sup = new ConnectionSupervisor(transport, "START\n".getBytes(StandardCharsets.US_ASCII),
+                new SensorStreamDecoder(s -> live.add(s.az)), new ConnectionSupervisor.Callback() {
+                    @Override public void onConnecting(int attempt) {}
+                    @Override public void onConnected(String name, boolean reconnect) {}
+                    @Override public void onDisconnected(Exception cause) {}
+                    @Override public void onGaveUp(Exception cause) {}
+                });
+        CaptureJournal journal = new CaptureJournal(newDir());
+        sup.setCaptureJournal(journal);
+        sup.start();
+        try {
+            PipeTransport.Device device = transport.awaitDevice(2, TimeUnit.SECONDS);
+            OutputStream out = device.getOutputStream();
+            out.write("az=0.5\naz=1.".getBytes(StandardCharsets.US_ASCII));
+            out.write("5\naz=2.5\n".getBytes(StandardCharsets.US_ASCII));
+            long deadline = System.currentTimeMillis() + 2_000;
+            while (live.size() < 3 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        } finally {
+            sup.stop();
+            journal.close();
+        }
+
+        List<Double> replayed = new ArrayList<>();
+        JournalReplayer.Stats stats = new JournalReplayer(dir, s -> replayed.add(s.az))
+                .replay(JournalReplayer.AS_FAST_AS_POSSIBLE);
+        assertEquals(List.of(0.5, 1.5, 2.5), live);
+        assertEquals(live, replayed);
+        assertEquals(1, stats.resets);
+    }
+}
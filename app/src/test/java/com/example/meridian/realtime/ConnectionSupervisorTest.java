@@ -0,0 +1,231 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectionSupervisorTest {
+
+    /** Hands out scripted links; each link replays its bytes then reports EOF. */
+    private static class FakeTransport implements SensorTransport {
+        final Deque<Object> script = new ArrayDeque<>();
+        final List<ByteArrayOutputStream> outputs = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch exhausted = new CountDownLatch(1);
+
+        FakeTransport thenData(String text) {
+            script.add(text.getBytes(StandardCharsets.US_ASCII));
+            return this;
+        }
+
+        FakeTransport thenFail(IOException e) {
+            script.add(e);
+            return this;
+        }
+
+        @Override
+        public synchronized Link connect() throws IOException {
+            Object next = script.poll();
+            if (next == null) {
+                exhausted.countDown();
+                throw new UnavailableException("script exhausted");
+            }
+            if (next instanceof IOException) throw (IOException) next;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            outputs.add(out);
+            InputStream in = new ByteArrayInputStream((byte[]) next);
+            return new Link() {
+                @Override public InputStream getInputStream() { return in; }
+                @Override public OutputStream getOutputStream() { return out; }
+                @Override public void close() {}
+            };
+        }
+
+        @Override
+        public String getName() {
+            return "fake";
+        }
+    }
+
+    private static class FakeClock implements ConnectionSupervisor.Clock {
+        final List<Long> sleeps = Collections.synchronizedList(new ArrayList<>());
+        volatile long now = 1_000;
+
+        @Override public long nowMs() { return now; }
+
+        @Override public void sleep(long ms) {
+            sleeps.add(ms);
+            now += ms;
+        }
+    }
+
+    private static class RecordingCallback implements ConnectionSupervisor.Callback {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch gaveUp = new CountDownLatch(1);
+
+        @Override public void onConnecting(int attempt) {}
+        @Override public void onConnected(String name, boolean reconnect) { events.add(reconnect ? "reconnected" : "connected"); }
+        @Override public void onDisconnected(Exception cause) { events.add("disconnected"); }
+        @Override public void onGaveUp(Exception cause) { events.add("gave up"); gaveUp.countDown(); }
+    }
+
+    private static final byte[] HANDSHAKE = "START\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void reconnectsAndResendsHandshake() throws Exception {
+        FakeTransport transport = new FakeTransport()
+                .thenData("az=1\naz=2\n")
+                .thenFail(new IOException("refused"))
+                .thenData("az=3\n");
+        List<Double> seen = Collections.synchronizedList(new ArrayList<>());
+        SensorStreamDecoder decoder = new SensorStreamDecoder(s -> seen.add(s.az));
+        RecordingCallback callback = new RecordingCallback();
+        FakeClock clock = new FakeClock();
+
+        ConnectionSupervisor sup = new ConnectionSupervisor(
+                transport, HANDSHAKE, decoder, callback, clock, new Random(1));
+        sup.start();
+        assertTrue(callback.gaveUp.await(2, TimeUnit.SECONDS));
+
+        assertEquals(List.of(1.0, 2.0, 3.0), seen);
+        assertEquals(2, transport.outputs.size());
+        for (ByteArrayOutputStream out : transport.outputs) {
+            assertArrayEquals(HANDSHAKE, out.toByteArray());
+        }
+        assertEquals(List.of("connected", "disconnected", "reconnected", "disconnected", "gave up"),
+                callback.events);
+        assertEquals(1, sup.getReconnectCount());
+        assertEquals(1, sup.getFailedAttempts());
+        assertFalse(sup.isRunning());
+    }
+
+    @Test
+    public void downtimeCoversTheGapBetweenLinks() throws Exception {
+        FakeTransport transport = new FakeTransport()
+                .thenData("az=1\n")
+                .thenFail(new IOException("refused"))
+                .thenFail(new IOException("refused"))
+                .thenData("az=1\n");
+        RecordingCallback callback = new RecordingCallback();
+        FakeClock clock = new FakeClock();
+
+        ConnectionSupervisor sup = new ConnectionSupervisor(transport, HANDSHAKE,
+                new SensorStreamDecoder(s -> {}), callback, clock, new Random(2));
+        sup.start();
+        assertTrue(callback.gaveUp.await(2, TimeUnit.SECONDS));
+
+        long gap = clock.sleeps.get(0) + clock.sleeps.get(1) + clock.sleeps.get(2);
+        assertEquals(gap, sup.getTotalDowntimeMs());
+    }
+
+    @Test
+    public void backoffGrowsWithJitterAndIsCapped() {
+        ConnectionSupervisor sup = new ConnectionSupervisor(new FakeTransport(), HANDSHAKE,
+                new SensorStreamDecoder(s -> {}), new RecordingCallback(), new FakeClock(), new Random(3));
+
+        long previousCap = 0;
+        for (int attempt = 1; attempt <= 20; attempt++) {
+            long cap = Math.min(ConnectionSupervisor.MAX_DELAY_MS,
+                    ConnectionSupervisor.BASE_DELAY_MS << Math.min(attempt - 1, 16));
+            for (int i = 0; i < 50; i++) {
+                long d = sup.backoffDelayMs(attempt);
+                assertTrue(d >= cap / 2 && d <= cap);
+            }
+            assertTrue(cap >= previousCap);
+            previousCap = cap;
+        }
+        assertEquals(ConnectionSupervisor.MAX_DELAY_MS, previousCap);
+    }
+
+    @Test
+    public void dropsALinkThatStaysStale() throws Exception {
+        // Open but silent: read blocks until the link is closed.
+        CountDownLatch closed = new CountDownLatch(1);
+        InputStream silent = new InputStream() {
+            @Override public int read() throws IOException {
+                try {
+                    closed.await();
+                } catch (InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+                throw new IOException("closed");
+            }
+        };
+        SensorTransport transport = new SensorTransport() {
+            int connects;
+
+            @Override public synchronized Link connect() throws IOException {
+                if (connects++ > 0) throw new UnavailableException("done");
+                return new Link() {
+                    @Override public InputStream getInputStream() { return silent; }
+                    @Override public OutputStream getOutputStream() { return new ByteArrayOutputStream(); }
+                    @Override public void close() { closed.countDown(); }
+                };
+            }
+            @Override public String getName() { return "silent"; }
+        };
+        RecordingCallback callback = new RecordingCallback();
+        ConnectionSupervisor sup = new ConnectionSupervisor(transport, HANDSHAKE,
+                new SensorStreamDecoder(s -> {}), callback, new FakeClock(), new Random(5));
+        sup.setLinkHealthMonitor(new LinkHealthMonitor());
+        sup.start();
+
+        assertTrue(callback.gaveUp.await(2, TimeUnit.SECONDS));
+        assertEquals(1, sup.getStaleDrops());
+        assertEquals(List.of("connected", "disconnected", "gave up"), callback.events);
+    }
+
+    @Test
+    public void stopEndsTheSession() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        InputStream blocking = new InputStream() {
+            @Override public int read() throws IOException {
+                try {
+                    Thread.sleep(Long.MAX_VALUE);
+                } catch (InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+                return -1;
+            }
+        };
+        SensorTransport transport = new SensorTransport() {
+            @Override public Link connect() {
+                return new Link() {
+                    @Override public InputStream getInputStream() { return blocking; }
+                    @Override public OutputStream getOutputStream() { return new ByteArrayOutputStream(); }
+                    @Override public void close() {}
+                };
+            }
+            @Override public String getName() { return "blocking"; }
+        };
+        RecordingCallback callback = new RecordingCallback() {
+            @Override public void onConnected(String name, boolean reconnect) { connected.countDown(); }
+        };
+
+        ConnectionSupervisor sup = new ConnectionSupervisor(transport, HANDSHAKE,
+                new SensorStreamDecoder(s -> {}), callback, new FakeClock(), new Random(4));
+        sup.start();
+        assertTrue(connected.await(2, TimeUnit.SECONDS));
+        assertTrue(sup.isConnected());
+
+        sup.stop();
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (sup.isConnected() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertFalse(sup.isConnected());
+        assertTrue(callback.events.isEmpty());
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DetectionPipelineTest {
+
+    private static class RecordingListener implements DetectionPipeline.Listener {
+        final AtomicInteger snapshots = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        final AtomicInteger missingFix = new AtomicInteger();
+
+        @Override public void onSnapshotAvailable() { snapshots.incrementAndGet(); }
+        @Override public void onPhoneFixMissing() { missingFix.incrementAndGet(); }
+        @Override public void onReportStarted(HazardEvent event) {}
+        @Override public void onReportFinished(HazardEvent event, Exception error) { finished.incrementAndGet(); }
+    }
+
+    private static SensorSample sample(long t, double az) {
+        SensorSample s = new SensorSample();
+        s.receivedAtMs = t;
+        // A moving tracker: a fix that never changes would go stale.
+        s.lat = 45.5 + t * 1e-7;
+        s.lon = -73.6;
+        s.az = az;
+        s.hasLat = s.hasLon = s.hasAz = true;
+        return s;
+    }
+
+    @Test
+    public void ringBufferPreservesOrderAcrossThreads() throws Exception {
+        SampleRingBuffer ring = new SampleRingBuffer(64);
+        int n = 200_000;
+        Thread producer = new Thread(() -> {
+            SensorSample s = new SensorSample();
+            for (int i = 0; i < n; ) {
+                s.receivedAtMs = i;
+                s.hasAz = (i & 1) == 0;
+                if (ring.offer(s)) i++;
+            }
+        });
+        producer.start();
+
+        SensorSample out = new SensorSample();
+        for (int expected = 0; expected < n; ) {
+            if (!ring.poll(out)) continue;
+            assertEquals(expected, out.receivedAtMs);
+            assertEquals((expected & 1) == 0, out.hasAz);
+            expected++;
+        }
+        producer.join();
+        assertFalse(ring.poll(out));
+    }
+
+    @Test
+    public void reportsOffTheProducerThread() throws Exception {
+        CountDownLatch reported = new CountDownLatch(1);
+        long[] reportThread = new long[1];
+        RecordingListener listener = new RecordingListener();
+        DetectionPipeline pipeline = new DetectionPipeline(e -> {
+            reportThread[0] = Thread.currentThread().getId();
+            reported.countDown();
+        }, listener);
+        pipeline.start();
+        try {
+            pipeline.offer(sample(1_000, 0.9));
+            pipeline.offer(sample(1_010, 2.5));
+            pipeline.offer(sample(1_020, 3.0));
+            // The impact is reported once the second after its peak has been recorded.
+            for (long t = 1_030; t <= 2_100; t += 10) pipeline.offer(sample(t, 1.0));
+
+            assertTrue(reported.await(2, TimeUnit.SECONDS));
+            assertTrue(reportThread[0] != Thread.currentThread().getId());
+            waitFor(() -> listener.finished.get() == 1);
+            assertEquals(1, pipeline.getStats().getDetections());
+            assertEquals(1, pipeline.getStats().getReportsSent());
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void suppressesReportsWhileLinkIsStale() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        DetectionPipeline pipeline = new DetectionPipeline(e -> {}, listener);
+        LinkHealthMonitor health = new LinkHealthMonitor();
+        pipeline.setLinkHealthMonitor(health);
+        pipeline.start();
+        try {
+            health.onConnected(0);
+            // First sample after a 10 s gap: fresh again but still recovering.
+            health.onSample(10_000);
+            pipeline.offer(sample(10_000, 3.0));
+            for (long t = 10_100; t <= 20_000; t += 100) health.onSample(t);
+            pipeline.offer(sample(20_000, 3.0));
+            for (long t = 20_100; t <= 21_100; t += 100) pipeline.offer(sample(t, 1.0));
+
+            PipelineStats stats = pipeline.getStats();
+            waitFor(() -> listener.finished.get() == 1);
+            assertEquals(2, stats.getDetections());
+            assertEquals(1, stats.getReportsSuppressed());
+            assertEquals(1, stats.getReportsSent());
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void slowSinkNeverBlocksTheProducer() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener();
+        DetectionPipeline pipeline = new DetectionPipeline(e -> release.await(), listener);
+        // However many samples the ring drops on a slow machine, every impact the
+        // detector does see must become a report, so the report queue overflows.
+        ReportRateLimiter.Config unlimited = new ReportRateLimiter.Config();
+        unlimited.deviceBurst = unlimited.cellBurst = 10_000;
+        unlimited.devicePerMinute = unlimited.cellPerMinute = 10_000;
+        pipeline.setRateLimits(unlimited);
+        pipeline.start();
+        try {
+            int n = 100_000;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                // One hazard every 5 s of sample time keeps the detector emitting.
+                pipeline.offer(sample(i * 50L, i % 100 == 0 ? 3.0 : 1.0));
+            }
+            long producerMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+            PipelineStats stats = pipeline.getStats();
+            waitFor(() -> stats.getSamplesProcessed() == stats.getSamplesIn());
+            assertEquals(n, stats.getSamplesIn() + stats.getSamplesDropped());
+            assertTrue(stats.getReportsDropped() > 0);
+            assertTrue("snapshots should be coalesced", listener.snapshots.get() <= 1);
+            assertTrue("producer took " + producerMs + " ms", producerMs < 2_000);
+        } finally {
+            release.countDown();
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void warnsWhenPhoneFixIsMissing() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        DetectionPipeline pipeline = new DetectionPipeline(e -> {}, listener);
+        pipeline.setUsePhoneGps(true);
+        pipeline.start();
+        try {
+            offerImpact(pipeline, 0);
+            waitFor(() -> pipeline.getStats().getSamplesProcessed() == 120);
+            assertEquals(1, listener.missingFix.get());
+            assertEquals(0, pipeline.getStats().getDetections());
+
+            pipeline.updatePhoneLocation(2_000, 45, -73, Double.NaN, Double.NaN);
+            offerImpact(pipeline, 2_000);
+            waitFor(() -> pipeline.getStats().getDetections() == 1);
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void flushHandsHeldBackEventsToTheSink() throws Exception {
+        List<HazardEvent> sent = Collections.synchronizedList(new ArrayList<>());
+        RecordingListener listener = new RecordingListener();
+        DetectionPipeline pipeline = new DetectionPipeline(sent::add, listener);
+        pipeline.start();
+        try {
+            // Three impacts within one 50 m cell, which allows one report a burst.
+            offerImpact(pipeline, 0);
+            offerImpact(pipeline, 1_200);
+            offerImpact(pipeline, 2_400);
+            waitFor(() -> pipeline.getStats().getSamplesProcessed() == 360);
+            waitFor(() -> sent.size() == 1);
+            assertEquals(2, pipeline.getStats().getReportsRateLimited());
+
+            assertTrue(pipeline.flushHeld(5_000));
+            assertEquals(2, sent.size());
+            assertEquals(2, sent.get(1).detections);
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void flushThenStopLosesNothing() throws Exception {
+        List<HazardEvent> sent = Collections.synchronizedList(new ArrayList<>());
+        RecordingListener listener = new RecordingListener();
+        DetectionPipeline pipeline = new DetectionPipeline(e -> {
+            Thread.sleep(20);
+            sent.add(e);
+        }, listener);
+        pipeline.start();
+        // Offered and stopped right away, as when a session ends from the notification.
+        offerImpact(pipeline, 0);
+        offerImpact(pipeline, 1_200);
+        offerImpact(pipeline, 2_400);
+        assertTrue(pipeline.flushHeld(5_000));
+        pipeline.stop();
+
+        assertEquals(2, sent.size());
+        assertEquals(1, sent.get(0).detections);
+        assertEquals(2, sent.get(1).detections);
+        assertEquals(360, pipeline.getStats().getSamplesProcessed());
+    }
+
+    @Test
+    public void flushAfterStopReportsOnTheCallingThread() throws Exception {
+        List<HazardEvent> sent = Collections.synchronizedList(new ArrayList<>());
+        RecordingListener listener = new RecordingListener();
+        DetectionPipeline pipeline = new DetectionPipeline(sent::add, listener);
+        pipeline.start();
+        offerImpact(pipeline, 0);
+        offerImpact(pipeline, 1_200);
+        waitFor(() -> pipeline.getStats().getSamplesProcessed() == 240);
+        waitFor(() -> sent.size() == 1);
+        pipeline.stop();
+
+        assertTrue(pipeline.flushHeld(0));
+        assertEquals(2, sent.size());
+    }
+
+    /** A 20 ms impact followed by enough quiet for it to be reported; 120 samples. */
+    private static void offerImpact(DetectionPipeline pipeline, long start) {
+        for (int i = 0; i < 120; i++) pipeline.offer(sample(start + i * 10L, i < 2 ? 2.0 : 1.0));
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void waitFor(Condition c) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!c.met()) {
+            if (System.currentTimeMillis() > deadline) fail("timed out");
+            Thread.sleep(2);
+        }
+    }
+}
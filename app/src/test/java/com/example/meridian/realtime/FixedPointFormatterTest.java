@@ -0,0 +1,42 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class FixedPointFormatterTest {
+
+    private static String fmt(double v, int decimals) {
+        char[] buf = new char[40];
+        int n = FixedPointFormatter.append(buf, 0, v, decimals);
+        return new String(buf, 0, n);
+    }
+
+    @Test
+    public void matchesStringFormat() {
+        double[] values = {0, 1, -1, 45.4972161, -73.5787963, 1.375, 0.004, -0.004, 12345.678901, 2.5};
+        for (double v : values) {
+            for (int d : new int[]{0, 2, 6}) {
+                String expected = String.format(Locale.ROOT, "%." + d + "f", v);
+                if (expected.equals("-0") || expected.matches("-0\\.0+")) expected = expected.substring(1);
+                assertEquals(v + "/" + d, expected, fmt(v, d));
+            }
+        }
+    }
+
+    @Test
+    public void printsDashesForNonFinite() {
+        assertEquals("--", fmt(Double.NaN, 2));
+        assertEquals("--", fmt(Double.POSITIVE_INFINITY, 2));
+    }
+
+    @Test
+    public void appendsAfterPrefix() {
+        char[] buf = new char[40];
+        int n = FixedPointFormatter.append(buf, 0, "Accel g ");
+        n = FixedPointFormatter.append(buf, n, 1.237, 2);
+        assertEquals("Accel g 1.24", new String(buf, 0, n));
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ImpactDetectorTest {
+
+    /** Damped pothole ringing like the tracker simulator's, {@code peak} g over gravity. */
+    private static double pothole(long sinceMs, double peak) {
+        if (sinceMs < 0 || sinceMs >= 120) return 0;
+        double t = sinceMs / 120.0;
+        return peak * Math.exp(-4 * t) * Math.cos(3 * Math.PI * t);
+    }
+
+    @Test
+    public void reportsOneImpactPerPotholeWithPeakDurationAndEnergy() {
+        ImpactDetector d = new ImpactDetector();
+        Random noise = new Random(7);
+        int completed = 0, overThreshold = 0;
+        ImpactDetector.Impact last = null;
+        for (long t = 0; t < 5_000; t += 10) {
+            double az = 1.0 + noise.nextGaussian() * 0.05 + pothole(t - 2_000, 2.5);
+            if (az >= HazardDetector.REPORT_THRESHOLD_AZ) overThreshold++;
+            if (d.onSample(t, az)) {
+                completed++;
+                last = d.getImpact();
+                assertEquals(2_000, last.startMs);
+                assertEquals(2_000, last.peakMs);
+                assertEquals(2.5, last.peakG, 0.2);
+                assertEquals(3.5, last.peakAz, 0.2);
+                assertTrue("duration " + last.getDurationMs(),
+                        last.getDurationMs() >= 40 && last.getDurationMs() <= 200);
+                assertTrue(last.energy > 0.05);
+            }
+        }
+        assertEquals(1, completed);
+        assertTrue("thresholding alone saw " + overThreshold + " samples", overThreshold > 1);
+        assertEquals(1, d.getImpacts());
+        assertEquals(500, d.getSamples());
+    }
+
+    @Test
+    public void followsSlowTiltWithoutTriggering() {
+        ImpactDetector d = new ImpactDetector();
+        Random noise = new Random(3);
+        // Gravity on the z axis drifts from 1.0 to 1.4 g over a minute as the mount tilts.
+        for (long t = 0; t < 60_000; t += 10) {
+            double az = 1.0 + 0.4 * t / 60_000.0 + noise.nextGaussian() * 0.03;
+            assertFalse("at " + t, d.onSample(t, az));
+        }
+        assertEquals(1.4, d.getBaseline(), 0.05);
+    }
+
+    @Test
+    public void roadNoiseRaisesTheTrigger() {
+        int[] completed = new int[2];
+        for (int adapt = 0; adapt < 2; adapt++) {
+            ImpactDetector d = new ImpactDetector();
+            if (adapt == 1) d.setNoiseG(0.1);
+            Random noise = new Random(5);
+            for (long t = 0; t < 60_000; t += 10) {
+                double az = 1.0 + noise.nextGaussian() * 0.1 + pothole(t - 30_000, 2.5);
+                if (d.onSample(t, az)) completed[adapt]++;
+            }
+        }
+        assertTrue("fixed trigger saw " + completed[0], completed[0] > 10);
+        // Only the pothole is left.
+        assertEquals(1, completed[1]);
+    }
+
+    @Test
+    public void noiseNeverLowersTheConfiguredTrigger() {
+        ImpactDetector d = new ImpactDetector();
+        d.setNoiseG(0.01);
+        assertEquals(0.25, d.getTriggerG(), 1e-9);
+        d.setNoiseG(Double.NaN);
+        assertEquals(0.25, d.getTriggerG(), 1e-9);
+        d.setNoiseG(0.2);
+        assertEquals(1.0, d.getTriggerG(), 1e-9);
+    }
+
+    @Test
+    public void dipAloneDoesNotReport() {
+        ImpactDetector d = new ImpactDetector();
+        HazardDetector detector = new HazardDetector();
+        SensorSample s = new SensorSample();
+        s.lat = 45.5;
+        s.lon = -73.6;
+        s.hasLat = s.hasLon = s.hasAz = true;
+        for (long t = 0; t < 10_000; t += 10) {
+            // Cresting a rise every 2 s: gravity drops by up to 0.6 g and comes back.
+            double az = 1.0 - 0.6 * Math.max(0, Math.sin(Math.PI * ((t % 2_000) - 1_000) / 300.0))
+                    * ((t % 2_000) >= 1_000 && (t % 2_000) < 1_300 ? 1 : 0);
+            assertFalse("at " + t, d.onSample(t, az));
+            s.receivedAtMs = t;
+            s.az = az;
+            assertNull(detector.onSample(s));
+        }
+        assertEquals(0, d.getImpacts());
+    }
+
+    @Test
+    public void dipBeforeTheHitKeepsThePeakUpward() {
+        ImpactDetector d = new ImpactDetector();
+        int completed = 0;
+        for (long t = 0; t < 3_000; t += 10) {
+            // The wheel drops 0.8 g for 40 ms, then hits the far edge at +1.5 g.
+            double az = 1.0 + (t >= 1_000 && t < 1_040 ? -0.8 : 0) + pothole(t - 1_040, 1.5);
+            if (d.onSample(t, az)) {
+                completed++;
+                assertEquals(1_040, d.getImpact().startMs);
+                assertEquals(1.5, d.getImpact().peakG, 0.05);
+                assertEquals(2.5, d.getImpact().peakAz, 0.05);
+            }
+        }
+        assertEquals(1, completed);
+    }
+
+    @Test
+    public void refractoryPeriodMergesRinging() {
+        ImpactDetector d = new ImpactDetector();
+        int completed = 0;
+        for (long t = 0; t < 4_000; t += 10) {
+            double az = 1.0 + pothole(t - 1_000, 2.0) + pothole(t - 1_300, 1.0) + pothole(t - 2_500, 2.0);
+            if (d.onSample(t, az)) completed++;
+        }
+        // The bounce 300 ms after the first hit falls in its refractory period.
+        assertEquals(2, completed);
+    }
+
+    @Test
+    public void gapInSamplesClosesTheOpenImpact() {
+        ImpactDetector d = new ImpactDetector();
+        assertFalse(d.onSample(0, 1.0));
+        assertFalse(d.onSample(10, 3.0));
+        assertTrue(d.isInImpact());
+        assertTrue(d.onSample(5_000, 1.0));
+        assertEquals(10, d.getImpact().startMs);
+        assertEquals(10, d.getImpact().endMs);
+        assertFalse(d.isInImpact());
+    }
+
+    @Test
+    public void longDisturbanceIsCutAtMaxDuration() {
+        ImpactDetector.Config c = new ImpactDetector.Config();
+        c.maxImpactMs = 300;
+        c.refractoryMs = 100;
+        ImpactDetector d = new ImpactDetector(c);
+        int completed = 0;
+        for (long t = 0; t < 1_000; t += 10) {
+            if (d.onSample(t, t >= 100 && t < 700 ? 2.0 : 1.0)) {
+                completed++;
+                if (completed == 1) assertEquals(300, d.getImpact().getDurationMs());
+            }
+        }
+        assertEquals(2, completed);
+    }
+
+    @Test
+    public void hazardDetectorReportsOneEventPerImpactAtThePeak() {
+        HazardDetector detector = new HazardDetector();
+        SensorSample s = new SensorSample();
+        s.lat = 45.5;
+        s.lon = -73.6;
+        s.hasLat = s.hasLon = s.hasAz = true;
+
+        int events = 0;
+        for (long t = 0; t < 6_000; t += 10) {
+            if (t == 3_000) s.lat += 300 / 111_320.0;
+            s.receivedAtMs = t;
+            s.az = 1.0 + pothole(t - 1_000, 2.0) + pothole(t - 4_000, 4.0);
+            HazardEvent e = detector.onSample(s);
+            if (e == null) continue;
+            events++;
+            assertEquals(events == 1 ? 1_000 : 4_000, e.timeMs);
+            assertEquals(events == 1 ? 3.0 : 5.0, e.az, 0.01);
+            assertTrue(e.durationMs > 0 && e.energy > 0);
+        }
+        assertEquals(2, events);
+    }
+}
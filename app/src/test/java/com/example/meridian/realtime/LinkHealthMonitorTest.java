@@ -0,0 +1,99 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LinkHealthMonitorTest {
+
+    private final LinkHealthMonitor health = new LinkHealthMonitor();
+    private final LinkHealthMonitor.Snapshot snap = new LinkHealthMonitor.Snapshot();
+
+    private void samples(long from, long to, long step) {
+        for (long t = from; t <= to; t += step) health.onSample(t);
+    }
+
+    @Test
+    public void staleAfterSamplesStopAndReportableOnlyAfterRecovery() {
+        assertTrue(health.isStale(0));
+
+        health.onConnected(1_000);
+        samples(1_000, 3_000, 100);
+        assertFalse(health.isStale(3_000));
+        assertTrue(health.isReportable(3_000));
+
+        assertTrue(health.isStale(3_000 + LinkHealthMonitor.STALE_AFTER_MS + 1));
+        assertFalse(health.isReportable(3_000 + LinkHealthMonitor.STALE_AFTER_MS + 1));
+
+        // Samples resume after the gap: fresh again, but reports wait out the recovery period.
+        long resume = 10_000;
+        health.onSample(resume);
+        assertFalse(health.isStale(resume));
+        assertFalse(health.isReportable(resume));
+        samples(resume, resume + LinkHealthMonitor.RECOVERY_MS, 100);
+        assertTrue(health.isReportable(resume + LinkHealthMonitor.RECOVERY_MS));
+
+        health.read(snap, resume + LinkHealthMonitor.RECOVERY_MS);
+        assertEquals(1, snap.staleEpisodes);
+
+        health.onDisconnected();
+        assertTrue(health.isStale(resume + LinkHealthMonitor.RECOVERY_MS));
+    }
+
+    @Test
+    public void measuresRoundTripsIntoRollingHistogram() {
+        health.onConnected(0);
+        for (int i = 0; i < 20; i++) {
+            long sent = i * 1_000L;
+            long seq = health.nextPing(sent);
+            health.onSample(sent);
+            assertTrue(health.onPong(seq, sent + 10 + i * 10));
+            assertFalse("duplicate pong", health.onPong(seq, sent + 500));
+        }
+        assertFalse("unknown seq", health.onPong(12345, 20_000));
+
+        health.read(snap, 20_000);
+        assertEquals(20, snap.pingsSent);
+        assertEquals(20, snap.pongsReceived);
+        assertEquals(200, snap.lastRttMs);
+        assertEquals(200, snap.rttMaxMs, 1e-9);
+        assertEquals(105, snap.rttP50Ms, 10);
+        assertTrue(snap.rttP95Ms >= 180);
+
+        // A minute later the old round trips have left the window.
+        health.read(snap, 20_000 + 61_000);
+        assertTrue(Double.isNaN(snap.rttP50Ms));
+    }
+
+    @Test
+    public void slowOrUnansweredPingsBlockReports() {
+        health.onConnected(0);
+        samples(0, 2_000, 100);
+        health.nextPing(0);
+        // Firmware that never answered a ping is judged on sample flow alone.
+        samples(2_000, 8_000, 100);
+        assertTrue(health.isReportable(8_000));
+
+        long seq = health.nextPing(8_000);
+        health.onPong(seq, 8_000 + LinkHealthMonitor.MAX_RTT_MS + 1);
+        samples(8_000, 11_000, 100);
+        assertFalse("slow link", health.isReportable(11_000));
+
+        seq = health.nextPing(11_000);
+        health.onPong(seq, 11_050);
+        assertTrue(health.isReportable(11_050));
+
+        health.nextPing(12_000);
+        samples(11_000, 17_100, 100);
+        assertTrue("pong overdue", health.isStale(17_100));
+    }
+
+    @Test
+    public void textPingEncoding() {
+        byte[] out = new byte[32];
+        int n = ConnectionSupervisor.encodeTextPing(4_294_967_295L, out);
+        assertEquals("PING 4294967295\n", new String(out, 0, n, java.nio.charset.StandardCharsets.US_ASCII));
+        n = ConnectionSupervisor.encodeTextPing(0, out);
+        assertEquals("PING 0\n", new String(out, 0, n, java.nio.charset.StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.meridian.realtime;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes several {@link TrackerSimulator} streams through the same decoder and
+ * {@link DetectionPipeline} the service uses, one pipeline per stream as on a
+ * phone, and reports sustained throughput, feed-to-report latency and drops.
+ * Sample times are simulated, so a long drive replays in seconds.
+ */
+public final class LoadHarness {
+
+    /** Samples handed to the decoder per read, about what one Bluetooth read returns. */
+    private static final int CHUNK_SAMPLES = 32;
+    private static final long DRAIN_TIMEOUT_MS = 10_000L;
+
+    public static final class Result {
+        public int streams;
+        public long samplesSent;
+        public long samplesProcessed;
+        public long samplesDropped;
+        public long potholesInjected;
+        public long detections;
+        public long reportsSent;
+        public long elapsedNanos;
+        public double latencyP50Us = Double.NaN;
+        public double latencyP99Us = Double.NaN;
+        public double latencyMaxUs = Double.NaN;
+
+        public double linesPerSecond() {
+            return elapsedNanos == 0 ? 0 : samplesSent * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d streams: %d samples in %d ms (%.0f lines/s), %d dropped, "
+                            + "%d/%d potholes reported, latency p50 %.0f us p99 %.0f us max %.0f us",
+                    streams, samplesSent, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    linesPerSecond(), samplesDropped, reportsSent, potholesInjected,
+                    latencyP50Us, latencyP99Us, latencyMaxUs);
+        }
+    }
+
+    private final int streams;
+    private final TrackerSimulator.Config base;
+
+    public LoadHarness(int streams, TrackerSimulator.Config base) {
+        this.streams = streams;
+        this.base = base;
+    }
+
+    /**
+     * Sends {@code samplesPerStream} samples on every stream, each paced at
+     * {@code rateHz} (0 for as fast as possible), and waits for the pipelines to drain.
+     */
+    public Result run(long samplesPerStream, double rateHz) throws InterruptedException {
+        Stream[] all = new Stream[streams];
+        for (int i = 0; i < streams; i++) {
+            TrackerSimulator.Config c = copy(base);
+            c.seed = base.seed + i;
+            all[i] = new Stream(c, samplesPerStream, rateHz);
+        }
+
+        long t0 = System.nanoTime();
+        for (Stream s : all) s.thread.start();
+        for (Stream s : all) s.thread.join();
+        long elapsed = System.nanoTime() - t0;
+
+        Result r = new Result();
+        r.streams = streams;
+        r.elapsedNanos = elapsed;
+        long[] latencies = new long[0];
+        for (Stream s : all) {
+            s.drain();
+            PipelineStats st = s.pipeline.getStats();
+            r.samplesSent += s.sent;
+            r.samplesProcessed += st.getSamplesProcessed();
+            r.samplesDropped += st.getSamplesDropped();
+            r.detections += st.getDetections();
+            r.reportsSent += st.getReportsSent();
+            r.potholesInjected += s.sim.getPotholesInjected();
+            s.pipeline.stop();
+
+            long[] l = s.latencies();
+            long[] merged = Arrays.copyOf(latencies, latencies.length + l.length);
+            System.arraycopy(l, 0, merged, latencies.length, l.length);
+            latencies = merged;
+        }
+        if (latencies.length > 0) {
+            Arrays.sort(latencies);
+            r.latencyP50Us = latencies[(int) ((latencies.length - 1) * 0.50)] / 1000.0;
+            r.latencyP99Us = latencies[(int) ((latencies.length - 1) * 0.99)] / 1000.0;
+            r.latencyMaxUs = latencies[latencies.length - 1] / 1000.0;
+        }
+        return r;
+    }
+
+    private static TrackerSimulator.Config copy(TrackerSimulator.Config o) {
+        TrackerSimulator.Config c = new TrackerSimulator.Config();
+        c.sampleRateHz = o.sampleRateHz;
+        c.startLat = o.startLat;
+        c.startLon = o.startLon;
+        c.bearingDeg = o.bearingDeg;
+        c.speedMps = o.speedMps;
+        c.noiseG = o.noiseG;
+        c.potholePeakG = o.potholePeakG;
+        c.potholeSpacingM = o.potholeSpacingM;
+        c.binary = o.binary;
+        return c;
+    }
+
+    private static final class Stream {
+        final TrackerSimulator sim;
+        final SensorStreamDecoder decoder;
+        final DetectionPipeline pipeline;
+        final Thread thread;
+
+        final long samples;
+        final long intervalNanos;
+        long sent;
+
+        /** Simulated time of each sample in the current chunk, in decode order. */
+        final long[] chunkTimes = new long[CHUNK_SAMPLES];
+        int chunkIndex;
+
+        /** Feed time of samples above the report threshold, keyed by sample time. */
+        final Map<Long, Long> fedAt = new ConcurrentHashMap<>();
+        long[] latency = new long[64];
+        int latencyCount;
+
+        Stream(TrackerSimulator.Config config, long samples, double rateHz) {
+            this.sim = new TrackerSimulator(config);
+            this.samples = samples;
+            this.intervalNanos = rateHz > 0 ? (long) (1e9 / rateHz) : 0;
+            this.pipeline = new DetectionPipeline(this::onReport, NO_OP);
+            this.decoder = new SensorStreamDecoder(s -> {
+                s.receivedAtMs = chunkTimes[chunkIndex++];
+                pipeline.offer(s);
+            });
+            this.thread = new Thread(this::produce, "Sim-" + config.seed);
+            if (config.binary) {
+                byte[] ack = (BinaryFrameCodec.ACK_LINE + "\n").getBytes(StandardCharsets.US_ASCII);
+                decoder.feed(ack, 0, ack.length);
+            }
+            pipeline.start();
+        }
+
+        private void produce() {
+            byte[] buf = new byte[CHUNK_SAMPLES * sim.maxSampleLength()];
+            long next = System.nanoTime();
+            while (sent < samples) {
+                int n = (int) Math.min(CHUNK_SAMPLES, samples - sent);
+                int len = 0;
+                long hot = 0;
+                for (int i = 0; i < n; i++) {
+                    len += sim.next(buf, len);
+                    chunkTimes[i] = sim.getTimeMs();
+                    if (sim.getLastAz() >= HazardDetector.REPORT_THRESHOLD_AZ) {
+                        hot |= 1L << i;
+                    }
+                }
+
+                if (intervalNanos > 0) {
+                    next += intervalNanos * n;
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                }
+
+                long now = System.nanoTime();
+                for (int i = 0; hot != 0; i++, hot >>>= 1) {
+                    if ((hot & 1) != 0) fedAt.put(chunkTimes[i], now);
+                }
+                chunkIndex = 0;
+                decoder.feed(buf, 0, len);
+                sent += n;
+            }
+        }
+
+        private void onReport(HazardEvent event) {
+            Long fed = fedAt.remove(event.timeMs);
+            if (fed == null) return;
+            long l = System.nanoTime() - fed;
+            synchronized (this) {
+                if (latencyCount == latency.length) latency = Arrays.copyOf(latency, latencyCount * 2);
+                latency[latencyCount++] = l;
+            }
+        }
+
+        synchronized long[] latencies() {
+            return Arrays.copyOf(latency, latencyCount);
+        }
+
+        void drain() throws InterruptedException {
+            PipelineStats st = pipeline.getStats();
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+            while (System.currentTimeMillis() < deadline
+                    && (st.getSamplesProcessed() < st.getSamplesIn()
+                    || st.getReportsSent() + st.getReportsFailed() + st.getReportsDropped()
+                    < st.getDetections())) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static final DetectionPipeline.Listener NO_OP = new DetectionPipeline.Listener() {
+        @Override public void onSnapshotAvailable() {}
+        @Override public void onPhoneFixMissing() {}
+        @Override public void onReportStarted(HazardEvent event) {}
+        @Override public void onReportFinished(HazardEvent event, Exception error) {}
+    };
+}
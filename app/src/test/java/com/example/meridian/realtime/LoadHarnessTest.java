@@ -0,0 +1,58 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LoadHarnessTest {
+
+    @Test
+    public void simulatorEmitsParsableLinesWithPotholes() {
+        TrackerSimulator.Config c = new TrackerSimulator.Config();
+        TrackerSimulator sim = new TrackerSimulator(c);
+        int[] count = new int[1];
+        double[] maxAz = new double[1];
+        SensorLineParser parser = new SensorLineParser(s -> {
+            count[0]++;
+            assertTrue(s.hasLat && s.hasLon && s.hasAz);
+            maxAz[0] = Math.max(maxAz[0], s.az);
+        });
+
+        byte[] buf = new byte[sim.maxSampleLength()];
+        for (int i = 0; i < 3_000; i++) {
+            int n = sim.next(buf, 0);
+            assertEquals('\n', buf[n - 1]);
+            parser.feed(buf, 0, n);
+        }
+        assertEquals(3_000, count[0]);
+        assertEquals(0, parser.getLinesRejected());
+        // 30 s at 15 m/s covers 450 m: two potholes with the default spacing.
+        assertTrue(sim.getPotholesInjected() >= 1);
+        assertTrue(maxAz[0] > c.potholePeakG);
+    }
+
+    @Test
+    public void pacedStreamsReportEveryPothole() throws Exception {
+        for (boolean binary : new boolean[] {false, true}) {
+            TrackerSimulator.Config c = new TrackerSimulator.Config();
+            c.binary = binary;
+            LoadHarness.Result r = new LoadHarness(4, c).run(20_000, 40_000);
+
+            assertEquals(80_000, r.samplesSent);
+            assertEquals(0, r.samplesDropped);
+            assertEquals(r.samplesSent, r.samplesProcessed);
+            assertTrue(r.potholesInjected > 0);
+            assertEquals(r.potholesInjected, r.reportsSent);
+            assertTrue(r.latencyP50Us > 0);
+        }
+    }
+
+    @Test
+    public void unpacedStreamsAccountForEverySample() throws Exception {
+        LoadHarness.Result r = new LoadHarness(8, new TrackerSimulator.Config()).run(50_000, 0);
+
+        assertEquals(400_000, r.samplesSent);
+        assertEquals(r.samplesSent, r.samplesProcessed + r.samplesDropped);
+        assertTrue(r.linesPerSecond() > 0);
+    }
+}
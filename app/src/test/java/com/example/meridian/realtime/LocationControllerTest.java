@@ -0,0 +1,93 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocationControllerTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private final List<String> calls = new ArrayList<>();
+    private final LocationController controller = new LocationController(new LocationController.Config(),
+            new LocationController.Subscriber() {
+                @Override public void request(int priority, long intervalMs) { calls.add(priority + "@" + intervalMs); }
+                @Override public void remove() { calls.add("off"); }
+            });
+
+    @Test
+    public void phoneStaysOffWhileTrackerFixesAreFresh() {
+        for (long t = 0; t < 60_000; t += 2_000) controller.update(t, false, 1_000, 15, NEVER, false);
+        assertTrue(calls.isEmpty());
+        assertEquals(LocationController.OFF, controller.getPriority());
+        assertEquals(0, controller.getGpsOnMs(60_000));
+
+        // Tracker goes quiet: phone takes over at once.
+        controller.update(60_000, false, 6_000, 15, NEVER, false);
+        assertEquals(1, calls.size());
+        assertEquals(LocationController.HIGH_ACCURACY, controller.getPriority());
+        assertEquals(2_000, controller.getIntervalMs());
+    }
+
+    @Test
+    public void intervalFollowsSpeedAndDetections() {
+        controller.update(0, true, NEVER, 0.2, NEVER, false);
+        assertEquals(LocationController.BALANCED, controller.getPriority());
+        assertEquals(10_000, controller.getIntervalMs());
+
+        controller.update(2_000, true, NEVER, 25, NEVER, false);
+        assertEquals(LocationController.HIGH_ACCURACY, controller.getPriority());
+        assertEquals(1_000, controller.getIntervalMs());
+
+        // An impact keeps the fast rate even after slowing down.
+        controller.update(30_000, true, NEVER, 5, 1_000, false);
+        assertEquals(1_000, controller.getIntervalMs());
+        controller.update(70_000, true, NEVER, 5, 41_000, false);
+        assertEquals(2_000, controller.getIntervalMs());
+        assertEquals(3, controller.getSubscriptionChanges());
+    }
+
+    @Test
+    public void unchangedDecisionIsNotResubscribed() {
+        for (long t = 0; t < 100_000; t += 2_000) controller.update(t, true, NEVER, 12, NEVER, false);
+        assertEquals(1, calls.size());
+        assertEquals("2@2000", calls.get(0));
+    }
+
+    @Test
+    public void relaxingWaitsButTighteningDoesNot() {
+        controller.update(0, true, NEVER, 12, NEVER, false);
+        controller.update(2_000, true, NEVER, 0, NEVER, false);
+        assertEquals(2_000, controller.getIntervalMs());
+        controller.update(10_000, true, NEVER, 0, NEVER, false);
+        assertEquals(10_000, controller.getIntervalMs());
+
+        // A missed fix asks for the fast rate straight away, even from off.
+        controller.update(11_000, false, 1_000, 0, NEVER, true);
+        assertEquals(LocationController.HIGH_ACCURACY, controller.getPriority());
+        assertEquals(1_000, controller.getIntervalMs());
+        controller.update(12_000, false, 1_000, 0, 1_000, false);
+        assertEquals(LocationController.HIGH_ACCURACY, controller.getPriority());
+        controller.update(22_000, false, 1_000, 0, 11_000, false);
+        assertEquals(LocationController.OFF, controller.getPriority());
+        assertEquals("off", calls.get(calls.size() - 1));
+    }
+
+    @Test
+    public void countsFixesAndTimeOn() {
+        controller.update(0, true, NEVER, 12, NEVER, false);
+        for (int i = 0; i < 30; i++) controller.onFix();
+        controller.update(60_000, true, NEVER, 0, NEVER, false);
+        controller.stop(120_000);
+
+        assertEquals(30, controller.getFixes());
+        assertEquals(15.0, controller.getFixesPerMinute(120_000), 1e-9);
+        assertEquals(60_000, controller.getGpsOnMs(200_000));
+        assertEquals(60_000, controller.getBalancedMs(200_000));
+        assertEquals("off", calls.get(calls.size() - 1));
+        assertEquals(LocationController.OFF, controller.getPriority());
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocationHistoryTest {
+
+    private final LocationHistory history = new LocationHistory(8);
+    private final LocationHistory.Position p = new LocationHistory.Position();
+
+    @Test
+    public void interpolatesBetweenFixes() {
+        assertFalse(history.positionAt(0, p));
+        history.add(1_000, 45.0, -73.0, Double.NaN, Double.NaN);
+        history.add(2_000, 45.001, -73.002, Double.NaN, Double.NaN);
+
+        assertTrue(history.positionAt(1_250, p));
+        assertEquals(LocationHistory.INTERPOLATED, p.method);
+        assertEquals(45.00025, p.lat, 1e-9);
+        assertEquals(-73.0005, p.lon, 1e-9);
+        assertEquals(250, p.ageMs);
+
+        history.positionAt(2_000, p);
+        assertEquals(LocationHistory.EXACT, p.method);
+        assertEquals(45.001, p.lat, 0);
+
+        history.positionAt(500, p);
+        assertEquals(LocationHistory.NEAREST, p.method);
+        assertEquals(45.0, p.lat, 0);
+    }
+
+    @Test
+    public void deadReckonsFromSpeedAndBearing() {
+        // 20 m/s due north: 0.5 s later the vehicle is 10 m further.
+        history.add(1_000, 45.0, -73.0, 20, 0);
+        assertTrue(history.positionAt(1_500, p));
+        assertEquals(LocationHistory.DEAD_RECKONED, p.method);
+        double metres = Math.toRadians(p.lat - 45.0) * 6_371_000.0;
+        assertEquals(10.0, metres, 0.01);
+        assertEquals(-73.0, p.lon, 1e-12);
+
+        // Capped at the extrapolation limit.
+        history.positionAt(1_000 + 60_000, p);
+        metres = Math.toRadians(p.lat - 45.0) * 6_371_000.0;
+        assertEquals(20.0 * LocationHistory.MAX_EXTRAPOLATION_MS / 1000, metres, 0.01);
+    }
+
+    @Test
+    public void deadReckonsFromLastTwoFixesWithoutSpeed() {
+        history.add(0, 45.0, -73.0, Double.NaN, Double.NaN);
+        history.add(1_000, 45.0, -72.999, Double.NaN, Double.NaN);
+        history.positionAt(1_500, p);
+        assertEquals(LocationHistory.DEAD_RECKONED, p.method);
+        assertEquals(-72.9985, p.lon, 1e-7);
+        assertEquals(45.0, p.lat, 1e-9);
+    }
+
+    @Test
+    public void ringKeepsNewestAndRejectsOutOfOrder() {
+        for (int i = 0; i < 20; i++) history.add(i * 1_000L, i, 0, Double.NaN, Double.NaN);
+        assertEquals(8, history.size());
+        assertFalse(history.add(5_000, 99, 0, Double.NaN, Double.NaN));
+        assertEquals(1, history.getRejected());
+
+        history.positionAt(15_500, p);
+        assertEquals(15.5, p.lat, 1e-9);
+        history.positionAt(3_000, p);
+        assertEquals(LocationHistory.NEAREST, p.method);
+        assertEquals(12.0, p.lat, 0);
+        assertEquals(19_000, history.newestTimeMs());
+    }
+
+    @Test
+    public void detectorPositionsReportAtSampleTime() {
+        HazardDetector detector = new HazardDetector();
+        detector.setUsePhoneGps(true);
+        detector.updatePhoneLocation(10_000, 45.0, -73.0, Double.NaN, Double.NaN);
+        detector.updatePhoneLocation(12_000, 45.002, -73.0, Double.NaN, Double.NaN);
+
+        SensorSample s = new SensorSample();
+        s.hasAz = true;
+        HazardEvent e = null;
+        // The event comes out once the waveform after the peak is in, positioned at the peak.
+        for (long t = 11_490; t <= 12_600 && e == null; t += 10) {
+            s.receivedAtMs = t;
+            s.az = t == 11_500 ? 2.0 : 1.0;
+            e = detector.onSample(s);
+        }
+        assertNotNull(e);
+        assertEquals(11_500, e.timeMs);
+        assertEquals(45.0015, e.lat, 1e-9);
+        assertEquals(HazardDetector.SOURCE_PHONE, e.locationSource);
+    }
+
+    @Test
+    public void latestSpeedFromFixOrFromLastTwoFixes() {
+        assertTrue(Double.isNaN(history.latestSpeedMps()));
+        history.add(0, 45.0, -73.0, Double.NaN, Double.NaN);
+        assertTrue(Double.isNaN(history.latestSpeedMps()));
+        // 0.001 deg of latitude is about 111 m, covered in 10 s.
+        history.add(10_000, 45.001, -73.0, Double.NaN, Double.NaN);
+        assertEquals(11.1, history.latestSpeedMps(), 0.1);
+        history.add(11_000, 45.0011, -73.0, 7.5, 0);
+        assertEquals(7.5, history.latestSpeedMps(), 0);
+    }
+
+    @Test
+    public void staleTrackerFallsBackToPhoneFixes() {
+        HazardDetector detector = new HazardDetector();
+        SensorSample s = new SensorSample();
+        s.hasLat = true;
+        s.hasLon = true;
+        s.lat = 46.0;
+        s.lon = -74.0;
+        s.receivedAtMs = 0;
+        detector.onSample(s);
+        detector.updatePhoneLocation(19_000, 45.0, -73.0, Double.NaN, Double.NaN);
+
+        s.hasLat = false;
+        s.hasLon = false;
+        s.hasAz = true;
+        HazardEvent e = null;
+        for (long t = 19_490; t <= 21_000 && e == null; t += 10) {
+            s.receivedAtMs = t;
+            s.az = t == 19_500 ? 2.0 : 1.0;
+            e = detector.onSample(s);
+        }
+        assertNotNull(e);
+        assertEquals(HazardDetector.SOURCE_PHONE, e.locationSource);
+        assertEquals(45.0, e.lat, 0);
+        assertEquals(0, detector.getHardwareFixTimeMs());
+        assertEquals(19_500, detector.getLastImpactMs());
+    }
+
+    @Test
+    public void frozenTrackerFixFallsBackToPhoneFixes() {
+        HazardDetector detector = new HazardDetector();
+        detector.updatePhoneLocation(19_000, 45.0, -73.0, Double.NaN, Double.NaN);
+        SensorSample s = new SensorSample();
+        s.hasLat = true;
+        s.hasLon = true;
+        s.lat = 46.0;
+        s.lon = -74.0;
+        s.hasAz = true;
+        HazardEvent e = null;
+        // The tracker lost the sky at t=0 and keeps sending its last fix.
+        for (long t = 0; t <= 21_000 && e == null; t += 10) {
+            s.receivedAtMs = t;
+            s.az = t == 19_500 ? 2.0 : 1.0;
+            e = detector.onSample(s);
+        }
+        assertNotNull(e);
+        assertEquals(HazardDetector.SOURCE_PHONE, e.locationSource);
+        assertEquals(45.0, e.lat, 0);
+        assertEquals(0, detector.getHardwareFixTimeMs());
+    }
+
+    @Test
+    public void oldPhoneFixDoesNotPlaceAReport() {
+        HazardDetector detector = new HazardDetector();
+        detector.setUsePhoneGps(true);
+        detector.updatePhoneLocation(0, 45.0, -73.0, Double.NaN, Double.NaN);
+        SensorSample s = new SensorSample();
+        s.hasAz = true;
+        boolean missing = false;
+        for (long t = 19_490; t <= 21_000; t += 10) {
+            s.receivedAtMs = t;
+            s.az = t == 19_500 ? 2.0 : 1.0;
+            assertNull(detector.onSample(s));
+            missing |= detector.isMissingFix();
+        }
+        assertTrue(missing);
+        assertEquals(1, detector.getSkippedNoFix());
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class PhoneImuSourceTest {
+
+    private static final double G = PhoneImuSource.STANDARD_GRAVITY;
+    private static final long PERIOD_NS = 2_500_000L;
+
+    /** Gravity along a tilted axis, as in a dashboard mount. */
+    private static final double UX = 0.0, UY = Math.sin(Math.toRadians(60)), UZ = Math.cos(Math.toRadians(60));
+
+    private static void feed(PhoneImuSource src, long i, double verticalG) {
+        double a = verticalG * G;
+        src.onAccelerometer(i * PERIOD_NS, (float) (UX * a), (float) (UY * a), (float) (UZ * a));
+    }
+
+    @Test
+    public void tiltedPhoneAtRestReadsOneG() {
+        double[] last = new double[1];
+        PhoneImuSource src = new PhoneImuSource(s -> last[0] = s.az);
+        for (long i = 0; i < 400; i++) feed(src, i, 1.0);
+        assertEquals(1.0, last[0], 1e-4);
+        assertEquals(400, src.getEvents());
+        assertEquals(400.0, src.getRateHz(), 0.5);
+    }
+
+    @Test
+    public void verticalBumpIsProjectedOntoGravity() {
+        double[] last = new double[1];
+        long[] time = new long[1];
+        PhoneImuSource src = new PhoneImuSource(s -> {
+            last[0] = s.az;
+            time[0] = s.receivedAtMs;
+        });
+        src.setClockOffsetMs(1_000_000);
+        for (long i = 0; i < 800; i++) feed(src, i, 1.0);
+        feed(src, 800, 2.5);
+        assertEquals(2.5, last[0], 0.01);
+        assertEquals(1_000_000 + 800 * PERIOD_NS / 1_000_000, time[0]);
+
+        // Sideways acceleration (braking) barely moves the vertical reading.
+        src.onAccelerometer(801 * PERIOD_NS, (float) (0.5 * G), (float) (UY * G), (float) (UZ * G));
+        assertEquals(1.0, last[0], 0.01);
+    }
+
+    @Test
+    public void gapRestartsTheGravityEstimate() {
+        double[] last = new double[1];
+        PhoneImuSource src = new PhoneImuSource(s -> last[0] = s.az);
+        for (long i = 0; i < 100; i++) feed(src, i, 1.0);
+        // Picked up and laid flat during a pause: the new orientation is adopted at once.
+        src.onAccelerometer(100 * PERIOD_NS + PhoneImuSource.MAX_GAP_NS + 1, 0f, 0f, (float) G);
+        assertEquals(1.0, last[0], 1e-6);
+        assertEquals(1, src.getGaps());
+    }
+
+    @Test
+    public void syntheticDriveFeedsTheDetector() {
+        HazardDetector detector = new HazardDetector();
+        detector.setUsePhoneGps(true);
+        for (long t = 0; t <= 30_000; t += 1_000) {
+            detector.updatePhoneLocation(t, 45.0 + t * 1.6e-7, -73.0, Double.NaN, Double.NaN);
+        }
+        AtomicInteger events = new AtomicInteger();
+        PhoneImuSource src = new PhoneImuSource(s -> {
+            if (detector.onSample(s) != null) events.incrementAndGet();
+        });
+        // 30 s at 400 Hz with two potholes 10 s apart, each a 20 ms jolt.
+        for (long i = 0; i < 12_000; i++) {
+            boolean jolt = (i >= 4_000 && i < 4_008) || (i >= 8_000 && i < 8_008);
+            feed(src, i, jolt ? 2.2 : 1.0 + 0.02 * Math.sin(i * 0.7));
+        }
+        assertEquals(2, events.get());
+    }
+
+    @Test
+    public void steadyStateDoesNotAllocate() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        assumeTrue(mx instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) mx;
+        assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        SampleRingBuffer ring = new SampleRingBuffer(1024);
+        SensorSample out = new SensorSample();
+        PhoneImuSource src = new PhoneImuSource(ring::offer);
+        for (long i = 0; i < 10_000; i++) {
+            feed(src, i, 1.0);
+            ring.poll(out);
+        }
+
+        long tid = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(tid);
+        for (long i = 10_000; i < 210_000; i++) {
+            feed(src, i, 1.0);
+            ring.poll(out);
+        }
+        long allocated = bean.getThreadAllocatedBytes(tid) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
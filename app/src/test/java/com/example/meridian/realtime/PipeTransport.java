@@ -0,0 +1,195 @@
+package com.example.meridian.realtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process loopback: each {@link #connect()} creates a fresh pair of pipes and
+ * hands the far end to whoever plays the tracker via {@link #awaitDevice}. Lets
+ * tests and benchmarks drive the full pipeline without a radio.
+ */
+public class PipeTransport implements SensorTransport {
+
+    public static final int DEFAULT_BUFFER = 64 * 1024;
+
+    /** The tracker's side of one connection. */
+    public static final class Device {
+        private final Pipe toPhone;
+        private final Pipe fromPhone;
+
+        Device(Pipe toPhone, Pipe fromPhone) {
+            this.toPhone = toPhone;
+            this.fromPhone = fromPhone;
+        }
+
+        /** Bytes the phone sent (handshake, pings). */
+        public InputStream getInputStream() {
+            return fromPhone.in;
+        }
+
+        /** Bytes delivered to the phone's decoder. */
+        public OutputStream getOutputStream() {
+            return toPhone.out;
+        }
+
+        /** Drops the link as a tracker going out of range would. */
+        public void disconnect() {
+            toPhone.close();
+            fromPhone.close();
+        }
+    }
+
+    private final String name;
+    private final int bufferSize;
+    private final BlockingQueue<Device> devices = new LinkedBlockingQueue<>();
+    private volatile boolean available = true;
+
+    public PipeTransport(String name) {
+        this(name, DEFAULT_BUFFER);
+    }
+
+    public PipeTransport(String name, int bufferSize) {
+        this.name = name;
+        this.bufferSize = bufferSize;
+    }
+
+    /** Later connects fail with {@link UnavailableException}. */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    @Override
+    public Link connect() throws IOException {
+        if (!available) throw new UnavailableException(name + " is unavailable");
+        Pipe toPhone = new Pipe(bufferSize);
+        Pipe fromPhone = new Pipe(bufferSize);
+        devices.add(new Device(toPhone, fromPhone));
+        return new Link() {
+            @Override public InputStream getInputStream() { return toPhone.in; }
+            @Override public OutputStream getOutputStream() { return fromPhone.out; }
+            @Override public void close() {
+                toPhone.close();
+                fromPhone.close();
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /** Waits for the phone side to connect; null on timeout. */
+    public Device awaitDevice(long timeout, TimeUnit unit) throws InterruptedException {
+        return devices.poll(timeout, unit);
+    }
+
+    /**
+     * Bounded byte ring guarded by its own monitor. Unlike {@code PipedInputStream}
+     * it does not care which threads read and write, so short-lived writers are fine.
+     */
+    static final class Pipe {
+        private final byte[] buf;
+        private int head;
+        private int count;
+        private boolean closed;
+
+        final InputStream in = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return Pipe.this.read(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                synchronized (Pipe.this) {
+                    return count;
+                }
+            }
+
+            @Override
+            public void close() {
+                Pipe.this.close();
+            }
+        };
+
+        final OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                Pipe.this.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                Pipe.this.close();
+            }
+        };
+
+        Pipe(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (count == 0) {
+                if (closed) return -1;
+                waitInterruptibly();
+            }
+            int n = Math.min(len, count);
+            int first = Math.min(n, buf.length - head);
+            System.arraycopy(buf, head, b, off, first);
+            System.arraycopy(buf, 0, b, off + first, n - first);
+            head = (head + n) % buf.length;
+            count -= n;
+            notifyAll();
+            return n;
+        }
+
+        synchronized void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (closed) throw new IOException("Pipe closed");
+                if (count == buf.length) {
+                    waitInterruptibly();
+                    continue;
+                }
+                int tail = (head + count) % buf.length;
+                int n = Math.min(len, Math.min(buf.length - count, buf.length - tail));
+                System.arraycopy(b, off, buf, tail, n);
+                count += n;
+                off += n;
+                len -= n;
+                notifyAll();
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        private void waitInterruptibly() throws InterruptedIOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
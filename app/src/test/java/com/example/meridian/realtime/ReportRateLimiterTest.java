@@ -0,0 +1,121 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReportRateLimiterTest {
+
+    private static final double METRE = 1 / 111_320.0;
+
+    private static HazardEvent event(long t, double northM, double az) {
+        return new HazardEvent(t, 45.5 + northM * METRE, -73.6, az, HazardDetector.SOURCE_HARDWARE);
+    }
+
+    @Test
+    public void bucketAllowsBurstThenSustainedRate() {
+        TokenBucket b = new TokenBucket(3, 60, 0);
+        assertTrue(b.tryTake(0));
+        assertTrue(b.tryTake(0));
+        assertTrue(b.tryTake(0));
+        assertFalse(b.tryTake(0));
+        assertFalse(b.tryTake(999));
+        assertTrue(b.tryTake(1_000));
+        assertFalse(b.tryTake(1_500));
+        // Idle time refills to capacity and no further.
+        assertEquals(3.0, b.available(60_000), 1e-9);
+    }
+
+    @Test
+    public void deviceBudgetCapsBurstsAcrossCells() {
+        ReportRateLimiter.Config c = new ReportRateLimiter.Config();
+        c.deviceBurst = 3;
+        c.devicePerMinute = 6;
+        ReportRateLimiter limiter = new ReportRateLimiter(c);
+
+        int admitted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (limiter.admit(event(i * 100L, i * 200, 2.0)) != null) admitted++;
+        }
+        assertEquals(3, admitted);
+        assertEquals(7, limiter.getLimitedByDevice());
+        assertEquals(0, limiter.getLimitedByCell());
+        assertEquals(7, limiter.getPendingCells());
+
+        // 10 s refills one token: one held-back cell is released per check.
+        HazardEvent released = limiter.release(11_000);
+        assertNotNull(released);
+        assertEquals(1, released.detections);
+        assertNull(limiter.release(11_500));
+    }
+
+    @Test
+    public void refusedEventsInACellAreFoldedAndReleasedOnce() {
+        ReportRateLimiter limiter = new ReportRateLimiter();
+
+        HazardEvent first = limiter.admit(event(0, 0, 1.5));
+        assertNotNull(first);
+        assertEquals(1, first.detections);
+
+        assertNull(limiter.admit(event(2_000, 3, 1.8)));
+        assertNull(limiter.admit(event(4_000, 5, 3.5)));
+        assertNull(limiter.admit(event(6_000, 2, 2.0)));
+        assertEquals(3, limiter.getLimitedByCell());
+        assertEquals(1, limiter.getPendingCells());
+
+        // The cell earns its next token after 30 s.
+        assertNull(limiter.release(20_000));
+        HazardEvent merged = limiter.release(31_000);
+        assertNotNull(merged);
+        assertEquals(3, merged.detections);
+        assertEquals(3.5, merged.az, 0);
+        assertEquals(4_000, merged.timeMs);
+        assertEquals(0, limiter.getPendingCells());
+        assertEquals(1, limiter.getReleased());
+    }
+
+    @Test
+    public void admittedEventCarriesPendingDetectionsOfItsCell() {
+        ReportRateLimiter limiter = new ReportRateLimiter();
+        assertNotNull(limiter.admit(event(0, 0, 2.0)));
+        assertNull(limiter.admit(event(1_000, 0, 2.0)));
+
+        HazardEvent next = limiter.admit(event(40_000, 0, 1.4));
+        assertNotNull(next);
+        assertEquals(2, next.detections);
+        assertEquals(0, limiter.getPendingCells());
+    }
+
+    @Test
+    public void distinctCellsDoNotShareABudget() {
+        ReportRateLimiter limiter = new ReportRateLimiter();
+        assertNotNull(limiter.admit(event(0, 0, 2.0)));
+        assertNull(limiter.admit(event(100, 10, 2.0)));
+        assertNotNull(limiter.admit(event(200, 300, 2.0)));
+    }
+
+    @Test
+    public void pendingEventsDrainWithoutTokensAndCarryOver() {
+        ReportRateLimiter limiter = new ReportRateLimiter();
+        assertNotNull(limiter.admit(event(0, 0, 2.0)));
+        assertNull(limiter.admit(event(1_000, 0, 2.5)));
+        assertNull(limiter.admit(event(2_000, 0, 1.5)));
+        assertNotNull(limiter.admit(event(3_000, 300, 2.0)));
+        assertNull(limiter.admit(event(4_000, 300, 2.0)));
+
+        ReportRateLimiter next = new ReportRateLimiter();
+        for (HazardEvent e : limiter.drainPending()) next.hold(e);
+        assertEquals(0, limiter.getPendingCells());
+        assertEquals(2, next.getPendingCells());
+        assertEquals(0, next.getLimitedByCell());
+
+        List<HazardEvent> out = next.drainPending();
+        assertEquals(2, out.size());
+        assertEquals(2, out.get(0).detections);
+        assertEquals(2.5, out.get(0).az, 0);
+        assertEquals(1, out.get(1).detections);
+        assertEquals(0, next.getPendingCells());
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SensorLineParserTest {
+
+    private final List<double[]> samples = new ArrayList<>();
+
+    private final SensorLineParser parser = new SensorLineParser(s -> samples.add(new double[]{
+            s.hasLat ? s.lat : Double.NaN,
+            s.hasLon ? s.lon : Double.NaN,
+            s.hasAz ? s.az : Double.NaN
+    }));
+
+    private void feed(String text) {
+        byte[] b = text.getBytes(StandardCharsets.US_ASCII);
+        parser.feed(b, 0, b.length);
+    }
+
+    @Test
+    public void parsesFullLine() {
+        feed("lat=45.497216,lon=-73.578796,az=1.37\n");
+
+        assertEquals(1, samples.size());
+        assertEquals(45.497216, samples.get(0)[0], 0);
+        assertEquals(-73.578796, samples.get(0)[1], 0);
+        assertEquals(1.37, samples.get(0)[2], 0);
+    }
+
+    @Test
+    public void handlesLinesSplitAcrossReads() {
+        feed("lat=45.49");
+        feed("7216,lon=-73.5");
+        feed("78796,az=0.98\nlat=1,lon=2,");
+        assertEquals(1, samples.size());
+
+        feed("az=3\r\n");
+        assertEquals(2, samples.size());
+        assertEquals(45.497216, samples.get(0)[0], 0);
+        assertEquals(3.0, samples.get(1)[2], 0);
+    }
+
+    @Test
+    public void toleratesSpacingCaseAndMissingFields() {
+        feed("  LAT = 10.5 , Az=-2.25 \n");
+
+        assertEquals(1, samples.size());
+        assertEquals(10.5, samples.get(0)[0], 0);
+        assertTrue(Double.isNaN(samples.get(0)[1]));
+        assertEquals(-2.25, samples.get(0)[2], 0);
+    }
+
+    @Test
+    public void skipsMalformedValuesAndUnknownLines() {
+        feed("lat=abc,lon=5,az=1.2.3\n");
+        feed("hello world\n\n");
+
+        assertEquals(1, samples.size());
+        assertTrue(Double.isNaN(samples.get(0)[0]));
+        assertEquals(5.0, samples.get(0)[1], 0);
+        assertEquals(1, parser.getLinesRejected());
+    }
+
+    @Test
+    public void dropsOverlongLinesAndRecovers() {
+        StringBuilder sb = new StringBuilder("lat=");
+        for (int i = 0; i < SensorLineParser.MAX_LINE_LENGTH; i++) sb.append('1');
+        feed(sb.toString());
+        feed(",az=1\naz=2\n");
+
+        assertEquals(1, samples.size());
+        assertEquals(2.0, samples.get(0)[2], 0);
+        assertEquals(1, parser.getLinesRejected());
+    }
+
+    @Test
+    public void decimalDecodingMatchesDoubleValueOf() {
+        String[] inputs = {"0", "-0.5", "+3.25", "45.4972161", "-73.5787963", ".5", "7.",
+                "1e3", "2.5E-2", "123456789.123456789", "0.000001"};
+        for (String in : inputs) {
+            byte[] b = in.getBytes(StandardCharsets.US_ASCII);
+            double expected = Double.parseDouble(in);
+            assertEquals(in, expected, SensorLineParser.parseDecimal(b, 0, b.length),
+                    Math.abs(expected) * 1e-15);
+        }
+        byte[] bad = "1e".getBytes(StandardCharsets.US_ASCII);
+        assertTrue(Double.isNaN(SensorLineParser.parseDecimal(bad, 0, bad.length)));
+    }
+
+    @Test
+    public void steadyStateParsingDoesNotAllocate() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        assumeTrue(mx instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) mx;
+        assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        final double[] sink = new double[1];
+        final long[] count = new long[1];
+        SensorLineParser p = new SensorLineParser(s -> {
+            sink[0] += s.az;
+            count[0]++;
+        });
+
+        byte[] stream = ("lat=45.497216,lon=-73.578796,az=1.37\n"
+                + "lat=45.497219,lon=-73.578801,az=0.96\n").getBytes(StandardCharsets.US_ASCII);
+        int chunk = 29;
+
+        for (int i = 0; i < 20_000; i++) feedInChunks(p, stream, chunk);
+
+        long tid = Thread.currentThread().getId();
+        int rounds = 100_000;
+        long before = bean.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < rounds; i++) feedInChunks(p, stream, chunk);
+        long allocated = bean.getThreadAllocatedBytes(tid) - before;
+
+        long lines = rounds * 2L;
+
+        assertEquals(40_000L + lines, count[0]);
+        assertTrue("allocated " + allocated + " bytes for " + lines + " lines", allocated < 1024);
+    }
+
+    private static void feedInChunks(SensorLineParser p, byte[] data, int chunk) {
+        for (int off = 0; off < data.length; off += chunk) {
+            p.feed(data, off, Math.min(chunk, data.length - off));
+        }
+    }
+}
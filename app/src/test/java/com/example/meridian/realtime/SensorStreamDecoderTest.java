@@ -0,0 +1,168 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class SensorStreamDecoderTest {
+
+    private int count;
+    private double lastAz;
+
+    private final SensorStreamDecoder decoder = new SensorStreamDecoder(s -> {
+        count++;
+        lastAz = s.az;
+    });
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void staysInTextModeWithoutAck() {
+        byte[] b = ascii("lat=1,lon=2,az=0.5\nMODE=TEXT\nlat=1,lon=2,az=0.7\n");
+        decoder.feed(b, 0, b.length);
+
+        assertFalse(decoder.isBinary());
+        assertEquals(2, count);
+        assertEquals(0.7, lastAz, 0);
+    }
+
+    @Test
+    public void switchesToBinaryMidBuffer() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] text = ascii("lat=1,lon=2,az=0.5\n" + BinaryFrameCodec.ACK_LINE + "\r\n");
+        bos.write(text, 0, text.length);
+        byte[] frame = new byte[BinaryFrameCodec.SAMPLE_FRAME];
+        BinaryFrameCodec.encodeSample(10, 1, 2, 1.5, true, frame, 0);
+        bos.write(frame, 0, frame.length);
+        byte[] all = bos.toByteArray();
+
+        decoder.feed(all, 0, all.length);
+
+        assertTrue(decoder.isBinary());
+        assertEquals(2, count);
+        assertEquals(1.5, lastAz, 1e-9);
+    }
+
+    @Test
+    public void resetReturnsToText() {
+        byte[] ack = ascii(BinaryFrameCodec.ACK_LINE + "\n");
+        decoder.feed(ack, 0, ack.length);
+        assertTrue(decoder.isBinary());
+
+        decoder.reset();
+        byte[] line = ascii("az=2\n");
+        decoder.feed(line, 0, line.length);
+        assertFalse(decoder.isBinary());
+        assertEquals(1, count);
+    }
+
+    @Test
+    public void deliversPongsInBothModes() {
+        java.util.List<Long> pongs = new java.util.ArrayList<>();
+        decoder.setPongListener(pongs::add);
+
+        byte[] text = ascii("PONG 7\nlat=1,lon=2,az=0.5\nPONG x\n" + BinaryFrameCodec.ACK_LINE + "\n");
+        decoder.feed(text, 0, text.length);
+        assertEquals(1, count);
+        assertTrue(decoder.isBinary());
+
+        byte[] frame = new byte[BinaryFrameCodec.PING_FRAME];
+        int n = BinaryFrameCodec.encodeHeartbeat(BinaryFrameCodec.TYPE_PONG, 0xFFFFFFF0L, frame, 0);
+        decoder.feed(frame, 0, n);
+
+        assertEquals(java.util.Arrays.asList(7L, 0xFFFFFFF0L), pongs);
+        // Only the malformed pong counts as rejected.
+        assertEquals(1, decoder.getLineParser().getLinesRejected());
+    }
+
+    @Test
+    public void binaryFramesAreAtMostHalfTheSizeOfText() {
+        int n = 50_000;
+        byte[] text = textStream(n);
+        byte[] bin = binaryStream(n);
+
+        SensorLineParser textParser = new SensorLineParser(s -> count++);
+        BinaryFrameDecoder binDecoder = new BinaryFrameDecoder(s -> count++);
+
+        feedInChunks(text, (b, o, l) -> textParser.feed(b, o, l));
+        feedInChunks(bin, binDecoder::feed);
+
+        assertEquals(2L * n, count);
+        assertTrue(bin.length * 2 <= text.length);
+    }
+
+    @Test
+    public void binaryDecodesAtLeastAsFastAsText() {
+        int n = 50_000;
+        byte[] text = textStream(n);
+        byte[] bin = binaryStream(n);
+
+        SensorLineParser textParser = new SensorLineParser(s -> count++);
+        BinaryFrameDecoder binDecoder = new BinaryFrameDecoder(s -> count++);
+
+        // Best of several rounds, after the first has warmed both paths up.
+        long textNs = Long.MAX_VALUE, binNs = Long.MAX_VALUE;
+        for (int round = 0; round < 8; round++) {
+            long t0 = System.nanoTime();
+            feedInChunks(text, (b, o, l) -> textParser.feed(b, o, l));
+            long t1 = System.nanoTime();
+            feedInChunks(bin, binDecoder::feed);
+            long t2 = System.nanoTime();
+            if (round == 0) continue;
+            textNs = Math.min(textNs, t1 - t0);
+            binNs = Math.min(binNs, t2 - t1);
+        }
+
+        assertEquals(16L * n, count);
+        // Same samples both ways, so samples per second compare as inverse times.
+        assertTrue("binary " + binNs + " ns, text " + textNs + " ns", binNs <= textNs);
+    }
+
+    private static byte[] textStream(int n) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < n; i++) {
+            byte[] line = ascii(String.format(Locale.ROOT, "lat=%.7f,lon=%.7f,az=%.3f\n",
+                    lat(i), lon(i), az(i)));
+            out.write(line, 0, line.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] binaryStream(int n) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] frame = new byte[BinaryFrameCodec.SAMPLE_FRAME];
+        for (int i = 0; i < n; i++) {
+            BinaryFrameCodec.encodeSample(i, lat(i), lon(i), az(i), true, frame, 0);
+            out.write(frame, 0, frame.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static double lat(int i) {
+        return 45.4972161 + i * 1e-7;
+    }
+
+    private static double lon(int i) {
+        return -73.5787963 - i * 1e-7;
+    }
+
+    private static double az(int i) {
+        return 1 + (i % 200) / 1000.0;
+    }
+
+    private interface Sink {
+        void feed(byte[] b, int off, int len);
+    }
+
+    private static void feedInChunks(byte[] data, Sink sink) {
+        for (int off = 0; off < data.length; off += 512) {
+            sink.feed(data, off, Math.min(512, data.length - off));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SensorTransportTest {
+
+    private static final byte[] HANDSHAKE = "START\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static class CountingCallback implements ConnectionSupervisor.Callback {
+        final CountDownLatch reconnected = new CountDownLatch(1);
+        @Override public void onConnecting(int attempt) {}
+        @Override public void onConnected(String name, boolean reconnect) { if (reconnect) reconnected.countDown(); }
+        @Override public void onDisconnected(Exception cause) {}
+        @Override public void onGaveUp(Exception cause) {}
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int c; (c = in.read()) >= 0 && c != '\n'; ) sb.append((char) c);
+        return sb.toString();
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    @Test
+    public void loopbackPipeDrivesTheWholePipeline() throws Exception {
+        List<HazardEvent> reported = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch twoReports = new CountDownLatch(2);
+        DetectionPipeline pipeline = new DetectionPipeline(e -> {
+            reported.add(e);
+            twoReports.countDown();
+        }, new DetectionPipeline.Listener() {
+            @Override public void onSnapshotAvailable() {}
+            @Override public void onPhoneFixMissing() {}
+            @Override public void onReportStarted(HazardEvent event) {}
+            @Override public void onReportFinished(HazardEvent event, Exception error) {}
+        });
+        AtomicInteger clock = new AtomicInteger();
+        SensorStreamDecoder decoder = new SensorStreamDecoder(s -> {
+            // Sample time advances 10 s per sample: each gap closes the open impact and
+            // keeps the rate limits out of the way.
+            s.receivedAtMs = clock.addAndGet(10_000);
+            pipeline.offer(s);
+        });
+        PipeTransport transport = new PipeTransport("loopback");
+        CountingCallback callback = new CountingCallback();
+        ConnectionSupervisor sup = new ConnectionSupervisor(transport, HANDSHAKE, decoder, callback);
+
+        pipeline.start();
+        sup.start();
+        try {
+            PipeTransport.Device device = transport.awaitDevice(2, TimeUnit.SECONDS);
+            assertNotNull(device);
+            assertEquals("START", readLine(device.getInputStream()));
+            write(device.getOutputStream(), "lat=45.5,lon=-73.6,az=1.0\nlat=45.5,lon=-73.6,az=2.0\n");
+
+            device.disconnect();
+            device = transport.awaitDevice(5, TimeUnit.SECONDS);
+            assertNotNull("supervisor reconnects", device);
+            assertTrue(callback.reconnected.await(2, TimeUnit.SECONDS));
+            assertEquals("START", readLine(device.getInputStream()));
+            write(device.getOutputStream(), "lat=45.6,lon=-73.7,az=3.0\nlat=45.6,lon=-73.7,az=1.0\n");
+
+            assertTrue(twoReports.await(2, TimeUnit.SECONDS));
+            assertEquals(2.0, reported.get(0).az, 1e-9);
+            assertEquals(45.6, reported.get(1).lat, 1e-9);
+        } finally {
+            sup.stop();
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void tcpTransportReadsFromGateway() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            List<Double> seen = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch got = new CountDownLatch(2);
+            SensorStreamDecoder decoder = new SensorStreamDecoder(s -> {
+                seen.add(s.az);
+                got.countDown();
+            });
+            TcpTransport transport = new TcpTransport("127.0.0.1", server.getLocalPort());
+            ConnectionSupervisor sup = new ConnectionSupervisor(transport, HANDSHAKE, decoder, new CountingCallback());
+            sup.start();
+            try (Socket gateway = server.accept()) {
+                assertEquals("START", readLine(gateway.getInputStream()));
+                write(gateway.getOutputStream(), "az=0.5\naz=1.5\n");
+                assertTrue(got.await(2, TimeUnit.SECONDS));
+                assertEquals(List.of(0.5, 1.5), seen);
+                assertTrue(sup.isConnected());
+            } finally {
+                sup.stop();
+            }
+        }
+    }
+
+    @Test
+    public void unconfiguredGatewayIsUnavailable() {
+        try {
+            new TcpTransport("", TcpTransport.DEFAULT_PORT).connect();
+            fail();
+        } catch (SensorTransport.UnavailableException expected) {
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    @Test
+    public void pipeBlocksUntilDataAndEndsOnClose() throws Exception {
+        PipeTransport.Pipe pipe = new PipeTransport.Pipe(8);
+        Thread writer = new Thread(() -> {
+            try {
+                byte[] data = new byte[100];
+                for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+                pipe.out.write(data);
+                pipe.close();
+            } catch (IOException ignored) {}
+        });
+        writer.start();
+
+        byte[] buf = new byte[7];
+        int total = 0;
+        for (int n; (n = pipe.in.read(buf, 0, buf.length)) >= 0; ) {
+            for (int i = 0; i < n; i++) assertEquals((byte) (total + i), buf[i]);
+            total += n;
+        }
+        writer.join();
+        assertEquals(100, total);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SlidingWindowStatsTest {
+
+    @Test
+    public void emptyWindowReportsNaN() {
+        SlidingWindowStats w = new SlidingWindowStats(1_000, 16, 0, 10, 0.1);
+        assertTrue(Double.isNaN(w.max()));
+        assertTrue(Double.isNaN(w.mean()));
+        assertTrue(Double.isNaN(w.percentile(0.5)));
+    }
+
+    @Test
+    public void evictsByTimeAndTracksMax() {
+        SlidingWindowStats w = new SlidingWindowStats(1_000, 16, 0, 10, 0.1);
+        w.add(0, 5);
+        w.add(100, 1);
+        w.add(200, 2);
+        assertEquals(5, w.max(), 0);
+
+        w.advanceTo(1_050);
+        assertEquals(2, w.size());
+        assertEquals(2, w.max(), 0);
+        assertEquals(1.5, w.mean(), 1e-12);
+        assertEquals(Math.sqrt(2.5), w.rms(), 1e-12);
+
+        w.advanceTo(5_000);
+        assertEquals(0, w.size());
+        assertTrue(Double.isNaN(w.max()));
+    }
+
+    @Test
+    public void evictsOldestWhenCapacityIsExceeded() {
+        SlidingWindowStats w = new SlidingWindowStats(60_000, 4, 0, 10, 0.1);
+        for (int i = 0; i < 6; i++) w.add(i, 9 - i);
+        assertEquals(4, w.size());
+        assertEquals(7, w.max(), 0);
+    }
+
+    @Test
+    public void matchesBruteForceOnRandomStream() {
+        Random rnd = new Random(42);
+        SlidingWindowStats w = new SlidingWindowStats(500, 1024, -4, 8, 0.01);
+        ArrayDeque<double[]> ref = new ArrayDeque<>();
+
+        long t = 0;
+        for (int i = 0; i < 20_000; i++) {
+            t += 1 + rnd.nextInt(10);
+            double v = 1 + rnd.nextGaussian() * 0.5;
+            w.add(t, v);
+            ref.addLast(new double[]{t, v});
+            while (ref.peekFirst()[0] < t - 500) ref.removeFirst();
+
+            double max = Double.NEGATIVE_INFINITY, sum = 0;
+            for (double[] e : ref) {
+                max = Math.max(max, e[1]);
+                sum += e[1];
+            }
+            assertEquals(ref.size(), w.size());
+            assertEquals(max, w.max(), 0);
+            assertEquals(sum / ref.size(), w.mean(), 1e-9);
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinOneBin() {
+        SlidingWindowStats w = new SlidingWindowStats(10_000, 1024, 0, 2, 0.01);
+        for (int i = 0; i < 100; i++) w.add(i, i / 100.0);
+        assertEquals(0.49, w.percentile(0.5), 0.01);
+        assertEquals(0.94, w.percentile(0.95), 0.01);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpatialDedupTest {
+
+    /** Degrees of latitude per metre. */
+    private static final double M = 1 / 111_320.0;
+
+    @Test
+    public void matchesWithinRadiusAcrossCellBorders() {
+        SpatialDedup dedup = new SpatialDedup(15, 60_000);
+        dedup.remember("a", 45.5, -73.6, 0, 1, false);
+
+        assertNull(dedup.findNear(45.5 + 20 * M, -73.6, 1_000));
+        SpatialDedup.Entry e = dedup.findNear(45.5 + 10 * M, -73.6, 1_000);
+        assertNotNull(e);
+        assertEquals("a", e.id);
+
+        // Scan a line through the entry: every point within 15 m matches, none beyond.
+        for (int m = -30; m <= 30; m++) {
+            if (Math.abs(m) == 15) continue;
+            double lon = -73.6 + m * M / Math.cos(Math.toRadians(45.5));
+            boolean near = dedup.findNear(45.5, lon, 1_000) != null;
+            assertEquals("offset " + m, Math.abs(m) <= 14, near);
+        }
+    }
+
+    @Test
+    public void ownReportsExpireButKnownPotholesDoNot() {
+        SpatialDedup dedup = new SpatialDedup(15, 60_000);
+        dedup.remember("mine", 45.5, -73.6, 0, 1, false);
+        dedup.remember("known", 45.6, -73.6, 0, 2, true);
+
+        assertNotNull(dedup.findNear(45.5, -73.6, 60_000));
+        assertNull(dedup.findNear(45.5, -73.6, 60_001));
+        assertNotNull(dedup.findNear(45.6, -73.6, 10_000_000));
+
+        // A repeat detection refreshes the window.
+        dedup.remember("mine", 45.5, -73.6, 50_000, 3, false);
+        SpatialDedup.Entry e = dedup.findNear(45.5, -73.6, 100_000);
+        assertNotNull(e);
+        assertEquals(3, e.severityRank);
+    }
+
+    @Test
+    public void picksNearestAndForgets() {
+        SpatialDedup dedup = new SpatialDedup(15, 60_000);
+        dedup.remember("far", 45.5 + 12 * M, -73.6, 0, 1, true);
+        dedup.remember("close", 45.5 + 3 * M, -73.6, 0, 1, true);
+        assertEquals("close", dedup.findNear(45.5, -73.6, 0).id);
+
+        dedup.forget("close");
+        assertEquals("far", dedup.findNear(45.5, -73.6, 0).id);
+        assertEquals(1, dedup.size());
+        assertEquals(2, dedup.getMatches());
+    }
+
+    @Test
+    public void evictsExpiredReports() {
+        SpatialDedup dedup = new SpatialDedup(15, 1_000);
+        for (int i = 0; i < 200; i++) {
+            dedup.remember("r" + i, 45 + i * 100 * M, -73, i * 100L, 1, false);
+        }
+        assertTrue(dedup.size() < 200);
+        assertNotNull(dedup.findNear(45 + 199 * 100 * M, -73, 19_900));
+    }
+}
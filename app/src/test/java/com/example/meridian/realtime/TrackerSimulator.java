@@ -0,0 +1,127 @@
+package com.example.meridian.realtime;
+
+import java.util.Random;
+
+/**
+ * Synthetic "Meridian Pothole Tracker": drives a straight line at constant speed
+ * and emits one sample per tick in the tracker's own wire format, either
+ * {@code lat=,lon=,az=} lines or {@link BinaryFrameCodec} sample frames. Vertical
+ * acceleration is 1 g plus road noise, with a damped pothole impulse injected
+ * every so many metres. Deterministic for a given seed.
+ */
+public final class TrackerSimulator {
+
+    private static final double EARTH_RADIUS_M = 6_371_000.0;
+    private static final int TEXT_LINE_MAX = 64;
+    /** Impulse length; about a wheel's worth of ringing. */
+    private static final long IMPULSE_MS = 120L;
+
+    public static final class Config {
+        public double sampleRateHz = 100;
+        public double startLat = 45.4972;
+        public double startLon = -73.5790;
+        public double bearingDeg = 90;
+        public double speedMps = 15;
+        public double noiseG = 0.05;
+        public double potholeSpacingM = 200;
+        public double potholePeakG = 2.5;
+        public boolean binary;
+        public long seed = 1;
+    }
+
+    private final Config config;
+    private final Random random;
+    private final char[] line = new char[TEXT_LINE_MAX];
+
+    private final long tickMicros;
+    private final double northPerMs;
+    private final double eastPerMs;
+
+    private long timeMicros;
+    private double travelledM;
+    private double nextPotholeM;
+    private long impulseStartMs = Long.MIN_VALUE / 2;
+
+    private double lat;
+    private double lon;
+    private double az;
+    private long potholesInjected;
+
+    public TrackerSimulator(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed);
+        this.tickMicros = Math.max(1, Math.round(1_000_000.0 / config.sampleRateHz));
+        double b = Math.toRadians(config.bearingDeg);
+        this.northPerMs = config.speedMps * Math.cos(b) / 1000.0;
+        this.eastPerMs = config.speedMps * Math.sin(b) / 1000.0;
+        this.nextPotholeM = config.potholeSpacingM;
+        this.lat = config.startLat;
+        this.lon = config.startLon;
+    }
+
+    /** Advances one tick and writes the sample at {@code off}; returns its length. */
+    public int next(byte[] out, int off) {
+        step();
+        if (config.binary) {
+            return BinaryFrameCodec.encodeSample(getTimeMs(), lat, lon, az, true, out, off);
+        }
+        int n = FixedPointFormatter.append(line, 0, "lat=");
+        n = FixedPointFormatter.append(line, n, lat, 6);
+        n = FixedPointFormatter.append(line, n, ",lon=");
+        n = FixedPointFormatter.append(line, n, lon, 6);
+        n = FixedPointFormatter.append(line, n, ",az=");
+        n = FixedPointFormatter.append(line, n, az, 3);
+        line[n++] = '\n';
+        for (int i = 0; i < n; i++) out[off + i] = (byte) line[i];
+        return n;
+    }
+
+    /** Upper bound on the bytes one {@link #next} call writes. */
+    public int maxSampleLength() {
+        return config.binary ? BinaryFrameCodec.SAMPLE_FRAME : TEXT_LINE_MAX;
+    }
+
+    public long getTimeMs() {
+        return timeMicros / 1000;
+    }
+
+    public long getTickMicros() {
+        return tickMicros;
+    }
+
+    /** Vertical acceleration of the last sample. */
+    public double getLastAz() {
+        return az;
+    }
+
+    public long getPotholesInjected() {
+        return potholesInjected;
+    }
+
+    private void step() {
+        long prevMs = getTimeMs();
+        timeMicros += tickMicros;
+        long nowMs = getTimeMs();
+        long dtMs = nowMs - prevMs;
+
+        double north = northPerMs * dtMs;
+        double east = eastPerMs * dtMs;
+        lat += Math.toDegrees(north / EARTH_RADIUS_M);
+        lon += Math.toDegrees(east / (EARTH_RADIUS_M * Math.cos(Math.toRadians(lat))));
+        travelledM += Math.hypot(north, east);
+
+        if (config.potholeSpacingM > 0 && travelledM >= nextPotholeM) {
+            impulseStartMs = nowMs;
+            potholesInjected++;
+            nextPotholeM += config.potholeSpacingM * (0.75 + 0.5 * random.nextDouble());
+        }
+
+        double v = 1.0 + random.nextGaussian() * config.noiseG;
+        long sinceImpulse = nowMs - impulseStartMs;
+        if (sinceImpulse >= 0 && sinceImpulse < IMPULSE_MS) {
+            double t = sinceImpulse / (double) IMPULSE_MS;
+            v += config.potholePeakG * Math.exp(-4 * t) * Math.cos(3 * Math.PI * t);
+        }
+        az = v;
+    }
+}
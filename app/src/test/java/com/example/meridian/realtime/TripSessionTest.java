@@ -0,0 +1,67 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TripSessionTest {
+
+    private static HazardEvent event(double az) {
+        return new HazardEvent(0, 45.5, -73.6, az, HazardDetector.SOURCE_HARDWARE);
+    }
+
+    @Test
+    public void holdsForABatchOrTheMaximumDelay() {
+        TripSession.Config c = new TripSession.Config();
+        c.batchSize = 3;
+        c.maxDelayMs = 60_000;
+        TripSession trip = new TripSession(c);
+
+        assertEquals(60_000, trip.holdUntilMs(event(2.0), 0, true));
+        assertEquals("the group shares one deadline", 60_000, trip.holdUntilMs(event(2.0), 1_000, true));
+        assertEquals("a full batch goes now", 3_000, trip.holdUntilMs(event(2.0), 3_000, true));
+        assertEquals(0, trip.getHeld());
+
+        assertEquals(70_000, trip.holdUntilMs(event(2.0), 10_000, true));
+        // The deadline passed, so the outbox sent that group; this starts the next.
+        assertEquals(130_000, trip.holdUntilMs(event(2.0), 70_000, true));
+        assertEquals(1, trip.getHeld());
+        assertEquals(2, trip.getBatches());
+    }
+
+    @Test
+    public void holdsOfflineUntilASevereDetection() {
+        TripSession.Config c = new TripSession.Config();
+        c.batchSize = 2;
+        c.severeMaxLatencyMs = 15_000;
+        TripSession trip = new TripSession(c);
+
+        assertEquals(Long.MAX_VALUE, trip.holdUntilMs(event(2.0), 0, false));
+        assertEquals("offline ignores the batch size", Long.MAX_VALUE, trip.holdUntilMs(event(2.0), 1_000, false));
+        assertEquals(615_000, trip.holdUntilMs(event(4.5), 600_000, false));
+        assertEquals(3, trip.getHeld());
+
+        trip.released();
+        assertEquals(0, trip.getHeld());
+        assertEquals(1, trip.getBatches());
+        assertEquals(3, trip.getAdded());
+    }
+
+    @Test
+    public void severeDetectionShortensTheGroupDeadline() {
+        TripSession trip = new TripSession();
+        assertEquals(300_000, trip.holdUntilMs(event(2.0), 0, true));
+        assertEquals(25_000, trip.holdUntilMs(event(4.5), 10_000, true));
+        assertEquals(300_000, trip.holdUntilMs(event(2.0), 20_000, true));
+    }
+
+    @Test
+    public void boundsAnOfflineGroup() {
+        TripSession.Config c = new TripSession.Config();
+        c.maxHeld = 10;
+        TripSession trip = new TripSession(c);
+        for (int i = 0; i < 9; i++) assertEquals(Long.MAX_VALUE, trip.holdUntilMs(event(2.0), i, false));
+        assertEquals(9, trip.holdUntilMs(event(2.0), 9, false));
+        assertEquals(1, trip.getBatches());
+    }
+}
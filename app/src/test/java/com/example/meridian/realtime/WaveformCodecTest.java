@@ -0,0 +1,95 @@
+package com.example.meridian.realtime;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WaveformCodecTest {
+
+    @Test
+    public void twoSecondWindowFitsInAFewHundredBytes() {
+        WaveformRecorder rec = new WaveformRecorder();
+        Random noise = new Random(11);
+        double[] expected = new double[1000];
+        for (int i = 0; i < 1000; i++) {
+            long t = i * 10L;
+            double az = 1.0 + noise.nextGaussian() * 0.05 + (t == 5_000 ? 2.5 : 0);
+            expected[i] = az;
+            rec.record(t, az);
+        }
+
+        byte[] blob = rec.encode(5_000, 1_000);
+        assertTrue("blob is " + blob.length + " bytes", blob.length < 600);
+
+        WaveformCodec.Waveform w = WaveformCodec.decode(blob);
+        assertEquals(201, w.size());
+        assertEquals(-1_000, w.offsetsMs[0]);
+        assertEquals(1_000, w.offsetsMs[200]);
+        for (int i = 0; i < w.size(); i++) {
+            assertEquals(i * 10L - 1_000, w.offsetsMs[i]);
+            assertEquals(expected[400 + i], w.az[i], 0.005 + 1e-9);
+        }
+        assertEquals(3.5, w.az[100], 0.2);
+    }
+
+    @Test
+    public void keepsIrregularSpacingAndOnlyHeldSamples() {
+        WaveformRecorder rec = new WaveformRecorder(64);
+        long t = 0;
+        for (int i = 0; i < 200; i++) {
+            t += (i % 3 == 0) ? 0 : 45;
+            rec.record(t, 1.0 + (i % 7) * 0.01);
+        }
+        // Only the last 64 samples are held, so the window is cut at the start.
+        WaveformCodec.Waveform w = WaveformCodec.decode(rec.encode(t - 500, 1_000));
+        assertTrue(w.size() > 0 && w.size() <= 64);
+        for (int i = 1; i < w.size(); i++) assertTrue(w.offsetsMs[i] >= w.offsetsMs[i - 1]);
+        assertEquals(500, w.offsetsMs[w.size() - 1]);
+    }
+
+    @Test
+    public void emptyWindowRoundTrips() {
+        WaveformRecorder rec = new WaveformRecorder();
+        rec.record(0, 1.0);
+        assertEquals(0, WaveformCodec.decode(rec.encode(10_000, 1_000)).size());
+    }
+
+    @Test
+    public void clampsOutOfRangeValues() {
+        assertEquals(Short.MAX_VALUE, WaveformCodec.toCentiG(1e6));
+        assertEquals(Short.MIN_VALUE, WaveformCodec.toCentiG(-1e6));
+        assertEquals(-125, WaveformCodec.toCentiG(-1.25));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedBlob() {
+        WaveformRecorder rec = new WaveformRecorder();
+        for (int i = 0; i < 50; i++) rec.record(i * 10L, 1.0 + i);
+        byte[] blob = rec.encode(250, 1_000);
+        WaveformCodec.decode(java.util.Arrays.copyOf(blob, blob.length - 3));
+    }
+
+    @Test
+    public void detectorAttachesWaveformAroundThePeak() {
+        HazardDetector detector = new HazardDetector();
+        SensorSample s = new SensorSample();
+        s.lat = 45.5;
+        s.lon = -73.6;
+        s.hasLat = s.hasLon = s.hasAz = true;
+        HazardEvent event = null;
+        for (long t = 0; t < 4_000 && event == null; t += 10) {
+            s.receivedAtMs = t;
+            s.az = t == 2_000 ? 3.0 : 1.0;
+            event = detector.onSample(s);
+            if (event != null) assertTrue("emitted at " + t, t >= 3_000);
+        }
+        assertNotNull(event);
+        assertNotNull(event.waveform);
+        WaveformCodec.Waveform w = WaveformCodec.decode(event.waveform);
+        assertEquals(-1_000, w.offsetsMs[0]);
+        assertEquals(1_000, w.offsetsMs[w.size() - 1]);
+        assertEquals(3.0, w.az[100], 1e-9);
+    }
+}
@@ -0,0 +1,171 @@
+#!/usr/bin/env node
+/*
+ * One-off index of potholes reported before the map read cell summaries.
+ *
+ * The app only reads potholeCells/<cell> documents (see CellSummary.java), and
+ * only maintains entries for the reports it writes. This gives every older
+ * pothole with a location its geohash field and merges its entry into its
+ * cell summary. Safe to run again: both writes are idempotent, and a pothole
+ * whose entry is already there is written with the same code. A pothole deleted
+ * while it runs may get its entry back; run it before the map change ships.
+ *
+ * Usage, with a service account of the project:
+ *   npm install firebase-admin
+ *   GOOGLE_APPLICATION_CREDENTIALS=key.json node backfill.js [--dry-run]
+ *   node backfill.js --self-test   # encoding only, no credentials needed
+ *
+ * The encoding mirrors Geohash.java and CellSummary.java; the self-test checks
+ * the same codes as CellSummaryTest.codesMatchTheBackfillScript.
+ */
+'use strict';
+
+const POTHOLES = 'potholes';
+const CELLS = 'potholeCells';
+const FIELD_ENTRIES = 'p';
+const FIELD_GEOHASH = 'geohash';
+const CELL_PRECISION = 5;
+const STORED_PRECISION = 9;
+const PAGE = 500;
+
+const BASE32 = '0123456789bcdefghjkmnpqrstuvwxyz';
+const OFFSET_DIGITS = 3;
+const UNIT_DEG = 1e-6;
+const SEVERITIES = ['Unknown', 'Negligible', 'Minor', 'Moderate', 'Severe'];
+const STATUSES = ['Unknown', 'Reported', 'In Progress', 'Repaired'];
+
+function geohash(lat, lon, precision) {
+  let latLo = -90, latHi = 90, lonLo = -180, lonHi = 180;
+  let even = true, bits = 0, ch = 0, out = '';
+  while (out.length < precision) {
+    if (even) {
+      const mid = (lonLo + lonHi) / 2;
+      if (lon >= mid) { ch = (ch << 1) | 1; lonLo = mid; } else { ch <<= 1; lonHi = mid; }
+    } else {
+      const mid = (latLo + latHi) / 2;
+      if (lat >= mid) { ch = (ch << 1) | 1; latLo = mid; } else { ch <<= 1; latHi = mid; }
+    }
+    even = !even;
+    if (++bits === 5) {
+      out += BASE32[ch];
+      bits = 0;
+      ch = 0;
+    }
+  }
+  return out;
+}
+
+/** [south, west] corner of a cell. */
+function corner(cell) {
+  let latLo = -90, latHi = 90, lonLo = -180, lonHi = 180;
+  let even = true;
+  for (const c of cell) {
+    const v = BASE32.indexOf(c);
+    for (let bit = 4; bit >= 0; bit--) {
+      const one = ((v >> bit) & 1) !== 0;
+      if (even) {
+        const mid = (lonLo + lonHi) / 2;
+        if (one) lonLo = mid; else lonHi = mid;
+      } else {
+        const mid = (latLo + latHi) / 2;
+        if (one) latLo = mid; else latHi = mid;
+      }
+      even = !even;
+    }
+  }
+  return [latLo, lonLo];
+}
+
+function offset(deg) {
+  // Java's Math.round: floor(x + 0.5).
+  const units = Math.max(0, Math.floor(deg / UNIT_DEG + 0.5));
+  return units.toString(36).padStart(OFFSET_DIGITS, '0');
+}
+
+function indexOf(values, v) {
+  if (typeof v !== 'string') return 0;
+  for (let i = 1; i < values.length; i++) {
+    if (values[i].toLowerCase() === v.toLowerCase()) return i;
+  }
+  return 0;
+}
+
+function cellOf(lat, lon) {
+  return geohash(lat, lon, CELL_PRECISION);
+}
+
+function encode(lat, lon, severity, status) {
+  const [south, west] = corner(cellOf(lat, lon));
+  return offset(lat - south) + offset(lon - west)
+      + indexOf(SEVERITIES, severity).toString(36)
+      + indexOf(STATUSES, status).toString(36);
+}
+
+// lat, lon, severity, status, cell, code, stored geohash; from the Java classes.
+const GOLDEN = [
+  [45.5017123, -73.5673456, 'Moderate', 'In Progress', 'f25dv', 'e4qvod32', 'f25dvgmfs'],
+  [-33.9, 151.2, 'Severe', 'Reported', 'r3gx0', 'jw5lp941', 'r3gx0ssqp'],
+  [0.0, 0.0, null, null, 's0000', '00000000', 's00000000'],
+  [89.99, 179.99, 'minor', 'Repaired', 'zzzzz', 'q6xq6x23', 'zzzzzy0tw'],
+  [45.4972161, -73.5787963, 'Negligible', 'Unknown', 'f25dv', 'anumua10', 'f25dvdt83'],
+];
+
+function selfTest() {
+  let failed = 0;
+  for (const [lat, lon, severity, status, cell, code, hash] of GOLDEN) {
+    const got = [cellOf(lat, lon), encode(lat, lon, severity, status), geohash(lat, lon, STORED_PRECISION)];
+    if (got[0] !== cell || got[1] !== code || got[2] !== hash) {
+      console.error(`${lat},${lon}: expected ${cell} ${code} ${hash}, got ${got.join(' ')}`);
+      failed++;
+    }
+  }
+  if (failed > 0) process.exit(1);
+  console.log(`Encoding matches for ${GOLDEN.length} points`);
+}
+
+async function backfill(dryRun) {
+  const admin = require('firebase-admin');
+  admin.initializeApp();
+  const db = admin.firestore();
+  const writer = db.bulkWriter();
+
+  let read = 0, hashed = 0, entries = 0, last = null;
+  const cells = new Set();
+  for (;;) {
+    let query = db.collection(POTHOLES).orderBy(admin.firestore.FieldPath.documentId()).limit(PAGE);
+    if (last) query = query.startAfter(last);
+    const page = await query.get();
+    if (page.empty) break;
+    for (const doc of page.docs) {
+      read++;
+      const loc = doc.get('location');
+      if (!loc) continue;
+      const lat = loc.latitude, lon = loc.longitude;
+      if (!doc.get(FIELD_GEOHASH)) {
+        hashed++;
+        if (!dryRun) writer.update(doc.ref, {[FIELD_GEOHASH]: geohash(lat, lon, STORED_PRECISION)});
+      }
+      const cell = cellOf(lat, lon);
+      cells.add(cell);
+      entries++;
+      if (!dryRun) {
+        writer.set(db.collection(CELLS).doc(cell),
+            {[FIELD_ENTRIES]: {[doc.id]: encode(lat, lon, doc.get('severity'), doc.get('status'))}},
+            {merge: true});
+      }
+    }
+    last = page.docs[page.docs.length - 1];
+  }
+  await writer.close();
+  console.log(`${read} potholes read, ${hashed} given a geohash, `
+      + `${entries} summary entries in ${cells.size} cells${dryRun ? ' (dry run)' : ''}`);
+}
+
+const args = process.argv.slice(2);
+if (args.includes('--self-test')) {
+  selfTest();
+} else {
+  backfill(args.includes('--dry-run')).catch(e => {
+    console.error(e);
+    process.exit(1);
+  });
+}